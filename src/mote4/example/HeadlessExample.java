@@ -0,0 +1,126 @@
+package mote4.example;
+
+import mote4.scenegraph.Layer;
+import mote4.scenegraph.Scene;
+import mote4.scenegraph.Window;
+import mote4.scenegraph.target.FBO;
+import mote4.util.matrix.Transform;
+import mote4.util.profile.GpuTimer;
+import mote4.util.profile.Profiler;
+import mote4.util.shader.ShaderMap;
+import mote4.util.shader.ShaderUtils;
+import mote4.util.shader.Uniform;
+import mote4.util.texture.TextureMap;
+import mote4.util.vertex.builder.StaticMeshBuilder;
+import mote4.util.vertex.mesh.MeshMap;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * Renders a set number of frames without a display and prints where the
+ * time went, as a starting point for benchmarks and CI smoke tests.
+ *
+ * A grid of spinning quads is drawn to an FBO in its own Layer, and the
+ * default Layer draws that FBO's texture to the screen.  The context is
+ * created with OSMesa, so only Mesa's libOSMesa is needed.  The loop runs
+ * unthrottled and exits after the last frame, printing Profiler.report().
+ *
+ * Usage: HeadlessExample [frames] [width height]
+ * @author Peter
+ */
+public class HeadlessExample {
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int width = args.length > 2 ? Integer.parseInt(args[1]) : 640;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 360;
+
+        Profiler.setEnabled(true);
+        Window.initHeadless(width, height, true);
+        Window.setFPS(0); // no framelimit, render as fast as possible
+        GpuTimer.setEnabled(true);
+
+        ShaderUtils.addProgram("mote/texture.vert", "mote/texture.frag", "texture");
+        ShaderUtils.addProgram("mote/color.vert", "mote/color.frag", "color");
+        MeshMap.add(StaticMeshBuilder.loadQuadMesh(), "quad");
+
+        // the offscreen Layer is rendered first, the default Layer is always last
+        Layer offscreen = new Layer(new FBO(width, height, true, false, null).addToTextureMap("offscreen"));
+        offscreen.addScene(new Quads());
+        Window.addLayer(offscreen);
+        Window.addScene(new Present());
+
+        // loopFrames() prints Profiler.report(), GPU times are printed on shutdown
+        Window.addOnDestroyCallback(() -> System.out.println(GpuTimer.report()));
+        Window.loopFrames(frames);
+    }
+
+    /**
+     * Draws a grid of spinning colored quads.
+     */
+    private static class Quads implements Scene {
+        private static final int GRID = 16;
+        private final Transform transform = new Transform();
+        private double time;
+
+        @Override
+        public void update(double time, double delta) {
+            this.time = time;
+        }
+
+        @Override
+        public void render(double time, double delta) {
+            glClearColor(.1f, .1f, .15f, 1);
+            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+            glEnable(GL_DEPTH_TEST);
+
+            ShaderMap.use("color");
+            transform.bind();
+            for (int y = 0; y < GRID; y++)
+                for (int x = 0; x < GRID; x++) {
+                    float u = (float)x/GRID, v = (float)y/GRID;
+                    Uniform.vec("color", u, v, 1-u, 1);
+                    transform.model.setIdentity();
+                    transform.model.translate(-1+(x+.5f)*2/GRID, -1+(y+.5f)*2/GRID, 0);
+                    transform.model.rotate((float)this.time*(1+u+v), 0, 0, 1);
+                    transform.model.scale(.8f/GRID, .8f/GRID, 1);
+                    transform.model.bind();
+                    MeshMap.render("quad");
+                }
+            glDisable(GL_DEPTH_TEST);
+        }
+
+        @Override
+        public void framebufferResized(int width, int height) {
+            transform.projection.setOrthographic(-1, 1, 1, -1, -1, 1);
+        }
+
+        @Override
+        public void destroy() {}
+    }
+
+    /**
+     * Draws the offscreen Layer's texture over the whole screen.
+     */
+    private static class Present implements Scene {
+        private final Transform transform = new Transform();
+
+        @Override
+        public void update(double time, double delta) {}
+
+        @Override
+        public void render(double time, double delta) {
+            glClear(GL_COLOR_BUFFER_BIT);
+            ShaderMap.use("texture");
+            transform.bind();
+            TextureMap.bind("offscreen");
+            MeshMap.render("quad");
+        }
+
+        @Override
+        public void framebufferResized(int width, int height) {}
+
+        @Override
+        public void destroy() {}
+    }
+}
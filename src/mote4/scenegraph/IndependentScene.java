@@ -0,0 +1,10 @@
+package mote4.scenegraph;
+
+/**
+ * Marks a Scene whose update() does not read or write state shared with any
+ * other Scene, and makes no OpenGL calls.  When parallel updates are enabled
+ * in Window, independent scenes are updated on a thread pool at the same time
+ * as each other and as the remaining scenes.
+ * @author Peter
+ */
+public interface IndependentScene extends Scene {}
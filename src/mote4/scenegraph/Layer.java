@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import mote4.scenegraph.target.Target;
+import mote4.util.profile.Profiler;
 
 /**
  * A Layer contains a Target and a list of Scenes to render.
@@ -40,15 +41,22 @@ public class Layer {
     public Target getTarget() { return target; }
     
     public void update(double time, double delta) {
-        for (Scene s : scenes)
+        for (Scene s : scenes) {
+            Profiler.begin(s);
             s.update(time, delta);
+            Profiler.end();
+        }
     }
     public void makeCurrent() {
         target.makeCurrent();
     }
     public void render(double time, double delta) {
-        for (Scene s : scenes)
-            s.render(time, delta);
+        double alpha = Window.getInterpolationAlpha();
+        for (Scene s : scenes) {
+            Profiler.begin(s);
+            s.render(time, delta, alpha);
+            Profiler.end();
+        }
     }
     public void framebufferResized(int width, int height) {
         for (Scene s : scenes)
@@ -0,0 +1,32 @@
+package mote4.scenegraph;
+
+import mote4.util.render.CommandList;
+
+/**
+ * A Scene that records its draw commands instead of drawing directly.
+ * In a RecordingLayer, record() is called for every RecordedScene in parallel,
+ * and the lists are then replayed on the OpenGL thread in the order the
+ * scenes were added.  record() must not make any OpenGL calls.
+ * @author Peter
+ */
+public interface RecordedScene extends Scene {
+    /**
+     * Records this frame's draw commands.  May be called on any thread.
+     * The interpolation alpha is available from Window.getInterpolationAlpha().
+     * @param commands An empty list to record into.
+     * @param time
+     * @param delta
+     */
+    void record(CommandList commands, double time, double delta);
+
+    /**
+     * Records and replays on the current thread, for when the scene is
+     * used in a plain Layer.
+     */
+    @Override
+    default void render(double time, double delta) {
+        CommandList commands = new CommandList();
+        record(commands, time, delta);
+        commands.replay();
+    }
+}
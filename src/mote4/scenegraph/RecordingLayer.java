@@ -0,0 +1,91 @@
+package mote4.scenegraph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import mote4.scenegraph.target.Target;
+import mote4.util.profile.Profiler;
+import mote4.util.render.CommandList;
+
+/**
+ * A Layer that records its RecordedScenes in parallel.
+ * render() records a CommandList for every RecordedScene on a thread pool,
+ * then replays the lists on the calling thread, which must own the OpenGL
+ * context.  Other Scenes are rendered normally, in their place in the order.
+ * @author Peter
+ */
+public class RecordingLayer extends Layer {
+
+    private final ForkJoinPool pool;
+    private final List<CommandList> lists = new ArrayList<>();
+    private final List<Callable<Void>> tasks = new ArrayList<>();
+    private final List<RuntimeException> errors = new ArrayList<>();
+
+    public RecordingLayer(Target t) {
+        this(t, Runtime.getRuntime().availableProcessors());
+    }
+    /**
+     * @param t
+     * @param threads The number of threads to record with.
+     */
+    public RecordingLayer(Target t, int threads) {
+        super(t);
+        pool = new ForkJoinPool(Math.max(1, threads));
+    }
+
+    @Override
+    public void render(double time, double delta) {
+        while (lists.size() < scenes.size())
+            lists.add(new CommandList());
+        tasks.clear();
+        errors.clear();
+        for (int i = 0; i < scenes.size(); i++) {
+            errors.add(null);
+            if (scenes.get(i) instanceof RecordedScene) {
+                final int index = i;
+                final RecordedScene scene = (RecordedScene)scenes.get(i);
+                final CommandList list = lists.get(i);
+                list.clear();
+                tasks.add(() -> {
+                    Profiler.begin(scene);
+                    try {
+                        scene.record(list, time, delta);
+                    } catch (RuntimeException e) {
+                        errors.set(index, e);
+                    }
+                    Profiler.end();
+                    return null;
+                });
+            }
+        }
+        if (tasks.size() == 1)
+            try {
+                tasks.get(0).call();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        else if (!tasks.isEmpty())
+            pool.invokeAll(tasks);
+        for (RuntimeException e : errors)
+            if (e != null)
+                throw e;
+
+        for (int i = 0; i < scenes.size(); i++) {
+            Profiler.begin(scenes.get(i));
+            if (scenes.get(i) instanceof RecordedScene) {
+                lists.get(i).replay();
+                lists.get(i).clear();
+            } else
+                scenes.get(i).render(time, delta, Window.getInterpolationAlpha());
+            Profiler.end();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        pool.shutdown();
+    }
+}
@@ -9,6 +9,17 @@ package mote4.scenegraph;
 public interface Scene {
     void update(double time, double delta);
     void render(double time, double delta);
+    /**
+     * Called instead of render(time, delta) by Layer.  When Window uses a
+     * fixed timestep, alpha is how far the frame is between the last
+     * simulation step and the next one; otherwise it is 1.
+     * @param time
+     * @param delta
+     * @param alpha 
+     */
+    default void render(double time, double delta, double alpha) {
+        render(time, delta);
+    }
     /**
      * Called from a Layer the Scene is attached to - will always be the
      * framebuffer dimensions provided by glfw.
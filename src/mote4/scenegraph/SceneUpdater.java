@@ -0,0 +1,203 @@
+package mote4.scenegraph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import mote4.util.profile.Profiler;
+
+/**
+ * Runs the update phase of the game loop with IndependentScenes updated in parallel.
+ * Independent scenes are submitted to a work-stealing pool, while all other
+ * scenes are updated on the calling thread in their usual order.  update()
+ * returns only once every scene has finished, so rendering never overlaps
+ * with an update.
+ *
+ * A Layer whose class overrides update() is updated by calling it on the
+ * calling thread, in its place in the layer order, and none of its scenes
+ * are updated in parallel.
+ *
+ * If a scene updated on the calling thread throws, no further scenes are
+ * updated on it; independent scenes that have not started are skipped and
+ * the exception is rethrown as soon as the running ones finish.  If only
+ * independent scenes throw, the exception of the first failing scene in layer
+ * and scene order is rethrown after all scenes have finished, so the result
+ * does not depend on thread timing.  Other exceptions are added as suppressed.
+ * @author Peter
+ */
+public class SceneUpdater {
+
+    private final ForkJoinPool pool;
+    // every Scene updated on its own, and every Layer updated with Layer.update()
+    private final List<Object> entries = new ArrayList<>();
+    private final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    private final Map<Class<?>,Boolean> overridesUpdate = new HashMap<>();
+    private long[] nanos = new long[16];
+    private Throwable[] errors = new Throwable[16];
+    private long totalNanos;
+    private volatile boolean stopped; // set when a serial scene fails, so waiting scenes are skipped
+
+    public SceneUpdater() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    /**
+     * @param threads The number of threads to update independent scenes with.
+     */
+    public SceneUpdater(int threads) {
+        pool = new ForkJoinPool(Math.max(1, threads));
+    }
+
+    /**
+     * Updates every scene in the given layers.
+     * @param layers
+     * @param time
+     * @param delta
+     */
+    public void update(List<Layer> layers, double time, double delta) {
+        long start = System.nanoTime();
+        entries.clear();
+        for (Layer l : layers) {
+            if (overridesUpdate(l))
+                entries.add(l);
+            else
+                entries.addAll(l.scenes);
+        }
+        int n = entries.size();
+        if (nanos.length < n) {
+            nanos = new long[n*2];
+            errors = new Throwable[n*2];
+        }
+
+        tasks.clear();
+        stopped = false;
+        for (int i = 0; i < n; i++) {
+            errors[i] = null;
+            nanos[i] = -1;
+            if (entries.get(i) instanceof IndependentScene) {
+                final int index = i;
+                tasks.add(pool.submit(() -> {
+                    if (!stopped)
+                        update(index, time, delta);
+                }));
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (entries.get(i) instanceof IndependentScene)
+                continue;
+            update(i, time, delta);
+            if (errors[i] != null) {
+                // stop like a serial loop would, but not while other scenes are still updating
+                stopped = true;
+                join(start);
+                for (int j = 0; j < n; j++)
+                    if (j != i && errors[j] != null)
+                        errors[i].addSuppressed(errors[j]);
+                rethrow(errors[i]);
+            }
+        }
+        join(start);
+
+        Throwable first = null;
+        for (int i = 0; i < n; i++) {
+            if (errors[i] == null)
+                continue;
+            if (first == null)
+                first = errors[i];
+            else
+                first.addSuppressed(errors[i]);
+        }
+        if (first != null)
+            rethrow(first);
+    }
+
+    private void join(long start) {
+        for (ForkJoinTask<?> task : tasks)
+            task.quietlyJoin();
+        totalNanos = System.nanoTime()-start;
+    }
+
+    private static void rethrow(Throwable t) {
+        if (t instanceof RuntimeException)
+            throw (RuntimeException)t;
+        if (t instanceof Error)
+            throw (Error)t;
+        throw new IllegalStateException(t);
+    }
+
+    private void update(int index, double time, double delta) {
+        long start = System.nanoTime();
+        Object e = entries.get(index);
+        if (e instanceof Layer) {
+            try {
+                ((Layer)e).update(time, delta);
+            } catch (Throwable t) {
+                errors[index] = t;
+            }
+        } else {
+            Scene s = (Scene)e;
+            Profiler.begin(s);
+            try {
+                s.update(time, delta);
+            } catch (Throwable t) {
+                errors[index] = t;
+            }
+            Profiler.end();
+        }
+        nanos[index] = System.nanoTime()-start;
+    }
+
+    /**
+     * Whether a layer's class has its own update(), which must be called instead of updating its scenes.
+     */
+    private boolean overridesUpdate(Layer l) {
+        return overridesUpdate.computeIfAbsent(l.getClass(), c -> {
+            try {
+                return c.getMethod("update", double.class, double.class).getDeclaringClass() != Layer.class;
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * How long a scene's last update took.
+     * @param s
+     * @return The time in nanoseconds, or -1 if the scene was not updated on its own last frame,
+     *         as happens when it failed to start or its Layer overrides update().
+     */
+    public long updateNanos(Scene s) {
+        for (int i = 0; i < entries.size(); i++)
+            if (entries.get(i) == s)
+                return nanos[i];
+        return -1;
+    }
+    /**
+     * How long the last update phase took, from start until every scene finished.
+     * @return The time in nanoseconds.
+     */
+    public long totalNanos() { return totalNanos; }
+
+    /**
+     * The update time of every scene in the last frame, and of every Layer
+     * that overrides update().
+     * @return
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < entries.size(); i++) {
+            Object e = entries.get(i);
+            String name = e.getClass().getSimpleName().isEmpty() ? e.getClass().getName() : e.getClass().getSimpleName();
+            String kind = e instanceof IndependentScene ? "parallel" : e instanceof Layer ? "layer" : "serial";
+            sb.append(String.format("%-32s %-8s %8.3f ms%n", name, kind, nanos[i]/1e6));
+        }
+        sb.append(String.format("%-41s %8.3f ms%n", "total", totalNanos/1e6));
+        return sb.toString();
+    }
+
+    public void destroy() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,162 @@
+package mote4.scenegraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks SceneUpdater against the serial loop of Layer.update() calls it
+ * replaces, without a window.
+ *
+ * Serial scenes must be updated in layer and scene order, and layers that
+ * override update() must be updated through it.  A failing serial scene must
+ * stop the serial scenes after it and be rethrown at once, with no scene
+ * still updating afterwards.  When only independent scenes fail, the first
+ * in order must be rethrown with the others suppressed.
+ *
+ * Usage: SceneUpdaterCheck [frames]
+ * @author Peter
+ */
+public class SceneUpdaterCheck {
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        SceneUpdater updater = new SceneUpdater(4);
+        try {
+            checkOrder(updater, frames);
+            checkSerialFailure(updater);
+            checkIndependentFailures(updater);
+        } finally {
+            updater.destroy();
+        }
+        System.out.println("OK: "+frames+" frames updated in order, failures rethrown like the serial loop");
+    }
+
+    private static void checkOrder(SceneUpdater updater, int frames) {
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger independent = new AtomicInteger();
+        Layer first = new Layer(null), custom, last = new Layer(null);
+        first.addScene(new Serial("a", log));
+        first.addScene(new Independent(independent, null));
+        first.addScene(new Serial("b", log));
+        custom = new Layer(null) {
+            @Override
+            public void update(double time, double delta) {
+                log.add("custom");
+            }
+        };
+        custom.addScene(new Serial("hidden", log));
+        custom.addScene(new Independent(independent, null));
+        last.addScene(new Independent(independent, null));
+        last.addScene(new Serial("c", log));
+        List<Layer> layers = List.of(first, custom, last);
+
+        for (int f = 0; f < frames; f++) {
+            log.clear();
+            updater.update(layers, f, 1);
+            if (!log.equals(List.of("a", "b", "custom", "c")))
+                fail("frame "+f+" updated "+log+", expected [a, b, custom, c]");
+        }
+        if (independent.get() != 2*frames)
+            fail(independent.get()+" independent updates in "+frames+" frames, expected "+2*frames);
+        if (updater.updateNanos(first.scenes.get(0)) < 0 || updater.updateNanos(custom.scenes.get(0)) != -1)
+            fail("only scenes updated on their own should have an update time");
+    }
+
+    private static void checkSerialFailure(SceneUpdater updater) {
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger(), independent = new AtomicInteger();
+        RuntimeException error = new IllegalStateException("serial");
+        Layer layer = new Layer(null);
+        layer.addScene(new Serial("a", log));
+        for (int i = 0; i < 8; i++)
+            layer.addScene(new Independent(independent, running));
+        layer.addScene(new Scene() {
+            @Override public void update(double time, double delta) { throw error; }
+            @Override public void render(double time, double delta) {}
+            @Override public void framebufferResized(int width, int height) {}
+            @Override public void destroy() {}
+        });
+        layer.addScene(new Serial("after", log));
+
+        try {
+            updater.update(List.of(layer), 0, 1);
+            fail("a failing serial scene was not rethrown");
+        } catch (IllegalStateException e) {
+            if (e != error)
+                fail("rethrew "+e+" instead of the serial scene's exception");
+        }
+        if (running.get() != 0)
+            fail(running.get()+" independent scenes were still updating after update() threw");
+        if (!log.equals(List.of("a")))
+            fail("updated "+log+" although a serial scene before them failed");
+    }
+
+    private static void checkIndependentFailures(SceneUpdater updater) {
+        Layer layer = new Layer(null);
+        List<RuntimeException> errors = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            RuntimeException error = new IllegalArgumentException("independent "+i);
+            errors.add(error);
+            layer.addScene(new Independent(null, null) {
+                @Override
+                public void update(double time, double delta) {
+                    throw error;
+                }
+            });
+        }
+        try {
+            updater.update(List.of(layer), 0, 1);
+            fail("failing independent scenes were not rethrown");
+        } catch (IllegalArgumentException e) {
+            if (e != errors.get(0))
+                fail("rethrew "+e.getMessage()+" instead of the first scene's exception");
+            if (e.getSuppressed().length != errors.size()-1)
+                fail(e.getSuppressed().length+" suppressed exceptions, expected "+(errors.size()-1));
+        }
+    }
+
+    private static class Serial implements Scene {
+        private final String name;
+        private final List<String> log;
+        Serial(String name, List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+        @Override public void update(double time, double delta) { log.add(name); }
+        @Override public void render(double time, double delta) {}
+        @Override public void framebufferResized(int width, int height) {}
+        @Override public void destroy() {}
+    }
+
+    private static class Independent implements IndependentScene {
+        private final AtomicInteger updates, running;
+        Independent(AtomicInteger updates, AtomicInteger running) {
+            this.updates = updates;
+            this.running = running;
+        }
+        @Override
+        public void update(double time, double delta) {
+            if (running != null)
+                running.incrementAndGet();
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (updates != null)
+                updates.incrementAndGet();
+            if (running != null)
+                running.decrementAndGet();
+        }
+        @Override public void render(double time, double delta) {}
+        @Override public void framebufferResized(int width, int height) {}
+        @Override public void destroy() {}
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: "+message);
+        System.exit(1);
+    }
+}
@@ -11,6 +11,10 @@ import mote4.scenegraph.target.Framebuffer;
 import mote4.util.ErrorUtils;
 import mote4.util.audio.ALContext;
 import mote4.util.audio.AudioPlayback;
+import mote4.util.pacing.FramePacer;
+import mote4.util.pacing.ParkPacer;
+import mote4.util.profile.GpuTimer;
+import mote4.util.profile.Profiler;
 import mote4.util.shader.ShaderMap;
 import mote4.util.texture.TextureMap;
 import mote4.util.vertex.mesh.MeshMap;
@@ -21,6 +25,7 @@ import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.glfw.GLFWImage;
 import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.opengl.GL;
+import org.lwjgl.system.Configuration;
 import org.lwjgl.system.MemoryStack;
 
 import static org.lwjgl.glfw.Callbacks.*;
@@ -40,7 +45,6 @@ import static org.lwjgl.system.MemoryUtil.*;
 public class Window {
  
     private static long window = -1; // the glfw window handle
-    private static long variableYieldTime, lastTime; // used in sync()
     private static long currentMonitor;
     private static double DELTA_MAX = .04; // highest delta value a frame can have
     
@@ -50,15 +54,28 @@ public class Window {
     private static boolean useVsync = true, // default setting for vsync unless specified
                             displayDelta = false,
                             isFullscreen = false,
+                            isHeadless = false, // hidden window, for running without a display
+                            useOSMesa = false, // software OpenGL context, for running without a GPU
                             windowHasFocus = false;
     private static int targetFps = 60, // when vsync is disabled, use this framerate
                         windowWidth = -1, windowHeight = -1, // window size
                         fbWidth = -1, fbHeight = -1; // framebuffer size
     private static double cursorX = -1, cursorY = -1, // cursor position
                           deltaTime, currentTime;
+    private static double fixedStep = 0, // length of a simulation step, or 0 for variable steps
+                          accumulator, simulationTime, alpha = 1;
+    private static int maxSteps = 5; // most simulation steps run in one frame
+    private static int frameLimit = -1; // frames to run before exiting, or -1 to run until closed
+    private static int exitStatus = 0;
     
+    private static final StringBuilder deltaTitle = new StringBuilder();
+    private static double deltaTitleTime, deltaTitleSum;
+    private static int deltaTitleFrames;
+
     private static ArrayList<Layer> layers;
     private static Layer defaultLayer;
+    private static SceneUpdater sceneUpdater; // null when updates are serial
+    private static FramePacer framePacer = new ParkPacer();
     private static ArrayList<Runnable> onDestroyCallbacks;
 
     /**
@@ -96,6 +113,28 @@ public class Window {
         init(0, 0, false,true,percentHeight,aspectRatio);
     }
 
+    /**
+     * Initialize an OpenGL context with a window that is never shown, for
+     * running tests and benchmarks without a display.  Rendering goes to the
+     * hidden window's framebuffer, which is always w by h.
+     * Combine with loopFrames() to render a set number of frames and exit.
+     * @param w
+     * @param h
+     * @param software If true, the context is created with OSMesa on GLFW's
+     *                 null platform, which needs neither a display nor a GPU,
+     *                 only Mesa's libOSMesa (llvmpipe).  If false, a hidden
+     *                 window is created on the native platform, which still
+     *                 needs a display server such as Xvfb.
+     */
+    public static void initHeadless(int w, int h, boolean software) {
+        if (window != -1)
+            return; // the window has already been initialized
+        isFullscreen = false;
+        isHeadless = true;
+        useOSMesa = software;
+        init(w,h,false,false,0,0);
+    }
+
     private static void init(int w, int h, boolean fullscreen, boolean percent, double percentHeight, double aspectRatio) {
         if (window != -1)
             return; // the window has already been initialized
@@ -124,6 +163,12 @@ public class Window {
         // will print the error message in System.err.
         GLFWErrorCallback.createPrint(System.err).set();
  
+        if (useOSMesa) {
+            // no display is needed on the null platform, and OpenGL functions come from OSMesa
+            glfwInitHint(GLFW_PLATFORM, GLFW_PLATFORM_NULL);
+            if (Configuration.OPENGL_LIBRARY_NAME.get() == null)
+                Configuration.OPENGL_LIBRARY_NAME.set("libOSMesa.so.8");
+        }
         // Initialize GLFW. Most GLFW functions will not work before doing this.
         if (!glfwInit())
             throw new IllegalStateException("Unable to initialize GLFW.");
@@ -142,6 +187,19 @@ public class Window {
         glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 3);
         glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GLFW_TRUE);
         glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE);
+        if (useOSMesa)
+            glfwWindowHint(GLFW_CONTEXT_CREATION_API, GLFW_OSMESA_CONTEXT_API);
+
+        if (isHeadless) {
+            glfwWindowHint(GLFW_RESIZABLE, GLFW_FALSE);
+            window = glfwCreateWindow(initWidth, initHeight, windowTitle, NULL, NULL);
+            if (window == NULL)
+                throw new RuntimeException("Failed to create the headless GLFW window");
+            createCallbacks();
+            glfwMakeContextCurrent(window);
+            glfwSwapInterval(0);
+            return; // the window is never shown
+        }
 
         // create the window
         currentMonitor = glfwGetPrimaryMonitor();
@@ -240,9 +298,22 @@ public class Window {
     public static void loop(int fps) {
         targetFps = fps;loop();
     }
+    /**
+     * Run the game loop for a number of frames, then shut down like when the
+     * window is closed.  Intended for headless tests and benchmarks; the
+     * program exits with status 1 if the loop threw an exception.
+     * The framerate set with setFPS() still applies, use 0 to run unthrottled.
+     * @param frames
+     */
+    public static void loopFrames(int frames) {
+        frameLimit = Math.max(0, frames);
+        loop();
+    }
     public static void loop() {
         glfwSetTime(0); // largely unnecessary
         double lastTime = glfwGetTime();
+        simulationTime = lastTime;
+        accumulator = 0;
         glClearColor(0, 0, 0, 0);
         
         // if the default layer has any scenes, add it to the END of the list
@@ -255,44 +326,82 @@ public class Window {
         AudioPlayback.startUpdateThread();
  
         // run the rendering loop until the user has attempted to close the window
+        int frame = 0;
         try {
-            while (!glfwWindowShouldClose(window)) {
+            while (!glfwWindowShouldClose(window) && (frameLimit < 0 || frame < frameLimit)) {
                 // calculate deltaTime from start of last frame
                 currentTime = glfwGetTime();
                 deltaTime = (currentTime - lastTime);
                 lastTime = currentTime;
-                if (displayDelta) {
-                    double displayFps = 1/deltaTime;
-                    double displayDelta = deltaTime*1000;
-                    glfwSetWindowTitle(window,"Delta: "+String.format("%.2f", displayDelta)+"\tFPS: "+String.format("%.1f", displayFps)+"/"+targetFps);
+                if (displayDelta)
+                    updateDeltaTitle();
+
+                Profiler.begin("update");
+                if (fixedStep > 0) {
+                    // run as many whole steps as have passed, carrying the remainder to the next frame
+                    accumulator += deltaTime;
+                    double frameDelta = Math.min(DELTA_MAX, deltaTime);
+                    // during a step, delta() is the step length like the delta passed to update()
+                    deltaTime = fixedStep;
+                    int steps = 0;
+                    while (accumulator >= fixedStep && steps < maxSteps) {
+                        update(simulationTime, fixedStep);
+                        simulationTime += fixedStep;
+                        accumulator -= fixedStep;
+                        steps++;
+                    }
+                    if (accumulator >= fixedStep)
+                        accumulator %= fixedStep; // too far behind, drop the steps that could not run
+                    alpha = accumulator/fixedStep;
+                    deltaTime = frameDelta;
+                } else {
+                    deltaTime = Math.min(DELTA_MAX, deltaTime); // prevent delta from exceeding 1/25, 25fps
+                    update(currentTime, deltaTime);
                 }
-
-                deltaTime = Math.min(DELTA_MAX, deltaTime); // prevent delta from exceeding 1/25, 25fps
-
-                for (Layer l : layers)
-                    l.update(currentTime, deltaTime);
+                Profiler.end();
                 // all updates are performed before all renders
+                Profiler.begin("render");
                 for (Layer l : layers) {
+                    Profiler.begin(l);
+                    GpuTimer.beginLayer(l);
                     l.makeCurrent();
                     l.render(currentTime, deltaTime);
+                    GpuTimer.endLayer();
+                    Profiler.end();
                 }
+                Profiler.end();
 
+                Profiler.begin("swap");
                 glfwSwapBuffers(window); // swap the color buffers
+                Profiler.end();
+                GpuTimer.frame();
 
                 // Poll for window events. The key callback above will only be
                 // invoked during this call.
+                Profiler.begin("events");
                 glfwPollEvents();
+                Profiler.end();
 
+                Profiler.begin("sync");
                 if (!isFullscreen || !useVsync) // sync manually if vsync is disabled or in windowed mode
-                    sync(targetFps);
+                    framePacer.sync(targetFps);
                 else
                     glfwSwapInterval(1); // TODO this fixes vsync not applying when it is enabled and fullscreen is enabled, but it's called every frame... probably fine?
+                Profiler.end();
+                Profiler.frame();
+                frame++;
             }
-            System.out.println("Window was closed, terminating...");
+            if (frameLimit >= 0 && frame == frameLimit) {
+                System.out.println("Ran "+frame+" frames, terminating...");
+                if (Profiler.isEnabled())
+                    System.out.println(Profiler.report());
+            } else
+                System.out.println("Window was closed, terminating...");
         }
         catch (Exception e) {
             System.err.println("Uncaught exception in game loop:");
             e.printStackTrace();
+            exitStatus = 1;
         }
 
         AudioPlayback.stopUpdateThread();
@@ -313,6 +422,9 @@ public class Window {
 
             for (var callback : onDestroyCallbacks)
                 callback.run();
+            if (sceneUpdater != null)
+                sceneUpdater.destroy();
+            GpuTimer.destroy();
 
             // free the window callbacks and destroy the window
             glfwFreeCallbacks(window);
@@ -328,55 +440,48 @@ public class Window {
             System.exit(1);
         }
 
-        System.exit(0);
+        System.exit(exitStatus);
     }
 
-    /**
-     * An accurate sync method that adapts automatically
-     * to the system it runs on to provide reliable results.
-     * 
-     * @param fps The desired frame rate, in frames per second
-     * @author kappa (On the LWJGL Forums)
-     */
-    private static void sync(int fps) {
-        if (fps <= 0) return;
-          
-        long sleepTime = 1000000000 / fps; // nanoseconds to sleep this frame
-        // yieldTime + remainder micro & nano seconds if smaller than sleepTime
-        long yieldTime = Math.min(sleepTime, variableYieldTime + sleepTime % (1000*1000));
-        long overSleep = 0; // time the sync goes over by
-          
-        try {
-            while (true) {
-                long t = System.nanoTime() - lastTime;
-                  
-                if (t < sleepTime - yieldTime) {
-                    Thread.sleep(1);
-                } else if (t < sleepTime) {
-                    // burn the last few CPU cycles to ensure accuracy
-                    Thread.yield();
-                } else {
-                    overSleep = t - sleepTime;
-                    break; // exit while loop
-                }
+    private static void update(double time, double delta) {
+        if (sceneUpdater != null)
+            sceneUpdater.update(layers, time, delta);
+        else
+            for (Layer l : layers) {
+                Profiler.begin(l);
+                l.update(time, delta);
+                Profiler.end();
             }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } finally {
-            lastTime = System.nanoTime() - Math.min(overSleep, sleepTime);
+    }
 
-            // auto tune the time sync should yield
-            if (overSleep > variableYieldTime) {
-                // increase by 200 microseconds (1/5 a ms)
-                variableYieldTime = Math.min(variableYieldTime + 200*1000, sleepTime);
-            }
-            else if (overSleep < variableYieldTime - 200*1000) {
-                // decrease by 2 microseconds
-                variableYieldTime = Math.max(variableYieldTime - 2*1000, 0);
-            }
-        }
+    /**
+     * Shows the average delta and framerate in the window title, updated
+     * four times a second rather than every frame.
+     */
+    private static void updateDeltaTitle() {
+        deltaTitleSum += deltaTime;
+        deltaTitleFrames++;
+        if (currentTime-deltaTitleTime < .25)
+            return;
+        double delta = deltaTitleSum/deltaTitleFrames;
+        deltaTitle.setLength(0);
+        deltaTitle.append("Delta: ");
+        appendFixed(deltaTitle, delta*1000, 100);
+        deltaTitle.append("\tFPS: ");
+        appendFixed(deltaTitle, 1/delta, 10);
+        deltaTitle.append('/').append(targetFps);
+        glfwSetWindowTitle(window, deltaTitle);
+        deltaTitleTime = currentTime;
+        deltaTitleSum = 0;
+        deltaTitleFrames = 0;
+    }
+    private static void appendFixed(StringBuilder sb, double value, int scale) {
+        long v = Math.round(value*scale);
+        sb.append(v/scale).append('.');
+        for (int s = scale/10; s > 0; s /= 10)
+            sb.append(v/s % 10);
     }
-    
+
     // Game loop utilities
     public static void setVsync(boolean enable) {
         useVsync = enable;
@@ -390,6 +495,62 @@ public class Window {
             
     }
     public static boolean isVsyncEnabled() { return useVsync; }
+    /**
+     * Updates IndependentScenes in parallel with each other and with the
+     * remaining scenes.  Layers that override update() are still updated
+     * through it, see SceneUpdater.
+     * All updates finish before any Layer is rendered.
+     * @param threads The number of threads to use, or 0 to update serially.
+     */
+    public static void setParallelUpdate(int threads) {
+        if (sceneUpdater != null)
+            sceneUpdater.destroy();
+        sceneUpdater = threads > 0 ? new SceneUpdater(threads) : null;
+    }
+    /**
+     * The updater used when parallel updates are enabled, for its timings.
+     * @return The updater, or null if updates are serial.
+     */
+    public static SceneUpdater getSceneUpdater() { return sceneUpdater; }
+    /**
+     * Updates scenes in steps of a fixed length instead of once per frame.
+     * Each frame runs as many steps as the time since the last frame covers,
+     * passing the step length as the delta to Scene.update(), which is also
+     * what delta() returns during a step; rendering sees the frame's delta.
+     * The time left over is carried to the next frame, and the fraction of a
+     * step it makes up is passed to Scene.render() as the interpolation alpha.
+     * @param step The length of a step in seconds, or 0 to update once per frame.
+     * @param maxSteps The most steps to run in one frame.  If the game falls
+     *                 further behind, the remaining time is dropped and the
+     *                 simulation runs slower than real time.
+     */
+    public static void setFixedTimestep(double step, int maxSteps) {
+        if (step > 0 && maxSteps < 1)
+            throw new IllegalArgumentException("At least one step must be allowed per frame.");
+        fixedStep = Math.max(0, step);
+        Window.maxSteps = maxSteps;
+        accumulator = 0;
+        alpha = 1;
+    }
+    public static double getFixedTimestep() { return fixedStep; }
+    /**
+     * How far the current frame is between the last simulation step and the
+     * next one, for interpolating between the previous and current state
+     * while rendering.  Always 1 when the timestep is not fixed.
+     * @return A value from 0 to 1.
+     */
+    public static double getInterpolationAlpha() { return alpha; }
+
+    /**
+     * Sets how the loop waits for the next frame when vsync is not used.
+     * The default is a ParkPacer, which uses the least CPU.
+     * @param pacer
+     */
+    public static void setFramePacer(FramePacer pacer) {
+        pacer.reset();
+        framePacer = pacer;
+    }
+    public static FramePacer getFramePacer() { return framePacer; }
     public static void setFPS(int fps) {
         targetFps = fps;
     }
@@ -523,6 +684,8 @@ public class Window {
      * @param h
      */
     public static void setWindowed(int w, int h) {
+        if (isHeadless)
+            return; // a headless window has no monitor
         GLFWVidMode mode = glfwGetVideoMode(currentMonitor);
         glfwWindowHint(GLFW_RED_BITS, mode.redBits());
         glfwWindowHint(GLFW_GREEN_BITS, mode.greenBits());
@@ -542,6 +705,8 @@ public class Window {
      * @param aspectRatio The aspect ratio of the window, used to calculate the width.
      */
     public static void setWindowedPercent(double percentHeight, double aspectRatio) {
+        if (isHeadless)
+            return; // a headless window has no monitor
         GLFWVidMode mode = glfwGetVideoMode(currentMonitor);
 
         int h = (int)(mode.height()*percentHeight);
@@ -562,6 +727,8 @@ public class Window {
      * Switch to an exclusive fullscreen mode.
      */
     public static void setFullscreen() {
+        if (isHeadless)
+            return; // a headless window has no monitor
         GLFWVidMode mode = glfwGetVideoMode(currentMonitor);
         glfwWindowHint(GLFW_RED_BITS, mode.redBits());
         glfwWindowHint(GLFW_GREEN_BITS, mode.greenBits());
@@ -579,6 +746,7 @@ public class Window {
         //glClear(GL_COLOR_BUFFER_BIT);
     }
     public static boolean isFullscreen() { return isFullscreen; }
+    public static boolean isHeadless() { return isHeadless; }
     
     // Cursor utilities
     /**
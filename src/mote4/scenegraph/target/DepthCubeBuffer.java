@@ -1,6 +1,7 @@
 package mote4.scenegraph.target;
 
 import mote4.util.ErrorUtils;
+import mote4.util.state.GLState;
 import mote4.util.texture.TextureMap;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL12.*;
@@ -32,20 +33,20 @@ public class DepthCubeBuffer extends Target {
         // slower than a render buffer, but it can be easily sampled later
         depthTextureID = glGenTextures();
         
-        glBindTexture(GL_TEXTURE_CUBE_MAP, depthTextureID);
+        GLState.bindTexture(GL_TEXTURE_CUBE_MAP, depthTextureID);
         for (int i = 0; i < 6; i++)
             glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, 0, GL_DEPTH_COMPONENT16,
                          width, height, 0, GL_DEPTH_COMPONENT, GL_FLOAT, (java.nio.ByteBuffer) null);  
         //glBindTexture(GL_TEXTURE_2D, depthTextureID);
         //glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT16, width, height, 0, GL_DEPTH_COMPONENT, GL_FLOAT, (java.nio.ByteBuffer) null);
         
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
+        GLState.texParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        GLState.texParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        GLState.texParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        GLState.texParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        GLState.texParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
         // special mode for shadow textures (or something)
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_COMPARE_MODE, GL_COMPARE_R_TO_TEXTURE);
+        GLState.texParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_COMPARE_MODE, GL_COMPARE_R_TO_TEXTURE);
 
         // replaces calls to glFramebufferTexture2D
         glFramebufferTexture(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, depthTextureID, 0);
@@ -56,7 +57,7 @@ public class DepthCubeBuffer extends Target {
         if (glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE)
             throw new IllegalStateException("Error constructing DepthCubeTexture.");
         
-        glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
+        GLState.bindTexture(GL_TEXTURE_CUBE_MAP, 0);
         glBindFramebuffer(GL_FRAMEBUFFER, 0);
 
         // make sure nothing screwy happened
@@ -77,8 +78,10 @@ public class DepthCubeBuffer extends Target {
     public void destroy() {
         if (textureName != null)
             TextureMap.delete(textureName);
-        else
+        else {
+            GLState.deleteTexture(depthTextureID);
             glDeleteTextures(depthTextureID);
+        }
         glDeleteFramebuffers(bufferIndex);
     }
 }
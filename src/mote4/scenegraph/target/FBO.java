@@ -5,6 +5,7 @@ import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
 import static org.lwjgl.opengl.GL30.*;
 
 import mote4.util.ErrorUtils;
+import mote4.util.state.GLState;
 import mote4.util.texture.Texture;
 import mote4.util.texture.TextureMap;
 import org.lwjgl.BufferUtils;
@@ -63,9 +64,9 @@ public class FBO extends Target {
         }
         
         // bind the texture
-        glBindTexture(GL_TEXTURE_2D, colorTextureID);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        GLState.bindTexture(GL_TEXTURE_2D, colorTextureID);
+        GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
         
         // create the texture data
         if (tex == null)
@@ -145,9 +146,9 @@ public class FBO extends Target {
         textureName = TextureMap.getName(t);
 
         glBindFramebuffer(GL_FRAMEBUFFER, bufferIndex);
-        glBindTexture(GL_TEXTURE_2D, t.ID);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        GLState.bindTexture(GL_TEXTURE_2D, t.ID);
+        GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
         // attach the texture to the framebuffer
         glFramebufferTexture2D(GL_FRAMEBUFFER,       // must be GL_FRAMEBUFFER
                                GL_COLOR_ATTACHMENT0, // color attatchment point
@@ -199,8 +200,10 @@ public class FBO extends Target {
         glDeleteRenderbuffers(stencilRenderBufferID);
         if (textureName != null) {
             TextureMap.delete(textureName);
-        } else
+        } else {
+            GLState.deleteTexture(colorTextureID);
             glDeleteTextures(colorTextureID);
+        }
         glDeleteFramebuffers(bufferIndex);
     }
 }
\ No newline at end of file
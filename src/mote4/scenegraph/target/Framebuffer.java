@@ -1,6 +1,7 @@
 package mote4.scenegraph.target;
 
 import mote4.scenegraph.Window;
+import mote4.util.profile.GpuTimer;
 import org.lwjgl.opengl.GL11;
 
 import static org.lwjgl.opengl.GL30.GL_FRAMEBUFFER;
@@ -24,6 +25,7 @@ public class Framebuffer extends Target {
     @Override
     public void makeCurrent() {
         current = this;
+        GpuTimer.pass(this);
         glBindFramebuffer(GL_FRAMEBUFFER, bufferIndex);
         int[] size = Window.getFramebufferSize();
         GL11.glViewport(0, 0, size[0], size[1]); 
@@ -1,6 +1,8 @@
 package mote4.scenegraph.target;
 
 import mote4.util.ErrorUtils;
+import mote4.util.profile.GpuTimer;
+import mote4.util.state.GLState;
 import mote4.util.texture.TextureMap;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
@@ -75,7 +77,7 @@ public class MSAAMultiColorFBO extends Target {
             colorTextureID[i] = glGenTextures(); // create a new texture
 
             // bind the texture
-            glBindTexture(GL_TEXTURE_2D_MULTISAMPLE, colorTextureID[i]);
+            GLState.bindTexture(GL_TEXTURE_2D_MULTISAMPLE, colorTextureID[i]);
             //glTexParameteri(GL_TEXTURE_2D_MULTISAMPLE, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE); // filter doesn't apply to multisampled textures
             //glTexParameteri(GL_TEXTURE_2D_MULTISAMPLE, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
 
@@ -177,6 +179,7 @@ public class MSAAMultiColorFBO extends Target {
     @Override
     public void makeCurrent() {
         current = this;
+        GpuTimer.pass(this);
         glBindFramebuffer(GL_FRAMEBUFFER, bufferIndex);
         GL20.glDrawBuffers(drawBuffers);
         GL11.glViewport(0, 0, width, height);
@@ -190,6 +193,7 @@ public class MSAAMultiColorFBO extends Target {
      */
     public void makeCurrent(int index) {
         current = this;
+        GpuTimer.pass(this);
         glBindFramebuffer(GL_FRAMEBUFFER, bufferIndex);
         GL20.glDrawBuffers(GL_COLOR_ATTACHMENT0+index);
         GL11.glViewport(0, 0, width, height);
@@ -242,8 +246,10 @@ public class MSAAMultiColorFBO extends Target {
         for (int i = 0; i < colorTextureID.length; i++) {
             if (textureName[i] != null)
                 TextureMap.delete(textureName[i]);
-            else
+            else {
+                GLState.deleteTexture(colorTextureID[i]);
                 glDeleteTextures(colorTextureID[i]);
+            }
         }
 
         glDeleteFramebuffers(bufferIndex);
@@ -4,6 +4,8 @@ import java.nio.IntBuffer;
 import java.util.Arrays;
 
 import mote4.util.ErrorUtils;
+import mote4.util.profile.GpuTimer;
+import mote4.util.state.GLState;
 import mote4.util.texture.Texture;
 import mote4.util.texture.TextureMap;
 import org.lwjgl.BufferUtils;
@@ -71,9 +73,9 @@ public class MultiColorFBO  extends Target {
             colorTextureID[i] = glGenTextures(); // create a new texture
 
             // bind the texture
-            glBindTexture(GL_TEXTURE_2D, colorTextureID[i]);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+            GLState.bindTexture(GL_TEXTURE_2D, colorTextureID[i]);
+            GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+            GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
 
             // create the texture data
             int internalFormat = formats[i];
@@ -169,6 +171,7 @@ public class MultiColorFBO  extends Target {
     @Override
     public void makeCurrent() {
         current = this;
+        GpuTimer.pass(this);
         glBindFramebuffer(GL_FRAMEBUFFER, bufferIndex);
         GL20.glDrawBuffers(drawBuffers);
         GL11.glViewport(0, 0, width, height);
@@ -180,6 +183,7 @@ public class MultiColorFBO  extends Target {
      */
     public void makeCurrent(int index) {
         current = this;
+        GpuTimer.pass(this);
         glBindFramebuffer(GL_FRAMEBUFFER, bufferIndex);
         GL20.glDrawBuffers(GL_COLOR_ATTACHMENT0+index);
         GL11.glViewport(0, 0, width, height);
@@ -198,8 +202,10 @@ public class MultiColorFBO  extends Target {
         for (int i = 0; i < colorTextureID.length; i++) {
             if (textureName[i] != null)
                 TextureMap.delete(textureName[i]);
-            else
+            else {
+                GLState.deleteTexture(colorTextureID[i]);
                 glDeleteTextures(colorTextureID[i]);
+            }
         }
 
         glDeleteFramebuffers(bufferIndex);
@@ -1,5 +1,7 @@
 package mote4.scenegraph.target;
 
+import mote4.util.profile.GpuTimer;
+
 import static org.lwjgl.opengl.GL30.GL_FRAMEBUFFER;
 import static org.lwjgl.opengl.GL30.glBindFramebuffer;
 import org.lwjgl.opengl.GL11;
@@ -30,6 +32,7 @@ public abstract class Target {
         if (current != null)
             current.endCurrent();
         current = this;
+        GpuTimer.pass(this);
         glBindFramebuffer(GL_FRAMEBUFFER, bufferIndex);
         GL11.glViewport(0, 0, width, height);
     }
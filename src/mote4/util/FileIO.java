@@ -5,6 +5,7 @@ import org.lwjgl.BufferUtils;
 
 import java.io.*;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -44,6 +45,33 @@ public class FileIO {
         }
     }
 
+    /**
+     * Check to see if a resource exists, without printing any errors.
+     * @param filepath
+     * @return
+     */
+    public static boolean hasResource(String filepath) {
+        return FileIO.class.getResource(filepath) != null;
+    }
+
+    /**
+     * Returns the location of a resource on the filesystem.
+     * This is only possible when resources are stored as plain files,
+     * e.g. when running from an IDE rather than a JAR file.
+     * @param filepath
+     * @return The path of the file, or null if it is not a plain file.
+     */
+    public static Path getFilePath(String filepath) {
+        URL url = FileIO.class.getResource(filepath);
+        if (url == null || !url.getProtocol().equals("file"))
+            return null;
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
     public static void saveFileAs(List<String> contents, String filepath) throws IOException {
         Path path = Paths.get(filepath);
         Files.write(path, contents, StandardCharsets.UTF_8);
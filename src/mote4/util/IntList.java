@@ -0,0 +1,99 @@
+package mote4.util;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints.
+ * Avoids the boxing and per-element overhead of ArrayList&lt;Integer&gt;
+ * when storing large amounts of index data.
+ * @author Peter
+ */
+public class IntList {
+
+    private int[] data;
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+    public IntList(int capacity) {
+        data = new int[Math.max(1, capacity)];
+        size = 0;
+    }
+
+    public void add(int f) {
+        if (size == data.length)
+            grow(size+1);
+        data[size++] = f;
+    }
+    public void add(int f1, int f2) {
+        if (size+2 > data.length)
+            grow(size+2);
+        data[size++] = f1;
+        data[size++] = f2;
+    }
+    public void add(int f1, int f2, int f3) {
+        if (size+3 > data.length)
+            grow(size+3);
+        data[size++] = f1;
+        data[size++] = f2;
+        data[size++] = f3;
+    }
+    public void addAll(int... f) {
+        addAll(f, 0, f.length);
+    }
+    public void addAll(int[] f, int offset, int length) {
+        if (size+length > data.length)
+            grow(size+length);
+        System.arraycopy(f, offset, data, size, length);
+        size += length;
+    }
+    public void addAll(IntList list) {
+        addAll(list.data, 0, list.size);
+    }
+
+    public int get(int i) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException("Index "+i+" out of bounds for size "+size+".");
+        return data[i];
+    }
+    public void set(int i, int f) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException("Index "+i+" out of bounds for size "+size+".");
+        data[i] = f;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public void clear() { size = 0; }
+
+    /**
+     * Ensures the list can hold at least the specified number of
+     * elements without reallocating.
+     * @param capacity
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length)
+            grow(capacity);
+    }
+
+    /**
+     * The backing array of this list.  Only the first size() elements are valid,
+     * and the array will be replaced if the list grows.
+     * @return
+     */
+    public int[] array() { return data; }
+
+    /**
+     * Returns a copy of the contents of this list, trimmed to size.
+     * @return
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = Math.max(minCapacity, data.length + (data.length >> 1));
+        data = Arrays.copyOf(data, newCapacity);
+    }
+}
@@ -0,0 +1,104 @@
+package mote4.util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive int keys to objects.
+ * Uses open addressing with linear probing, so lookups do not box the key
+ * or allocate.  Entries cannot be removed individually.
+ * @author Peter
+ */
+public class IntMap<V> {
+
+    private int[] keys;
+    private Object[] values;
+    private boolean[] used;
+    private int size, mask;
+
+    public IntMap() {
+        this(16);
+    }
+    public IntMap(int capacity) {
+        int n = Integer.highestOneBit(Math.max(capacity, 8)*2 - 1);
+        keys = new int[n];
+        values = new Object[n];
+        used = new boolean[n];
+        mask = n-1;
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int i = slot(key);
+        return used[i] ? (V)values[i] : null;
+    }
+
+    public boolean containsKey(int key) {
+        return used[slot(key)];
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value.
+     * @param key
+     * @param value
+     * @return The previous value, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        int i = slot(key);
+        if (used[i]) {
+            V old = (V)values[i];
+            values[i] = value;
+            return old;
+        }
+        used[i] = true;
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        if (size*4 > keys.length*3)
+            rehash(keys.length*2);
+        return null;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * The slot holding the key, or the empty slot where it would be inserted.
+     */
+    private int slot(int key) {
+        int i = hash(key) & mask;
+        while (used[i] && keys[i] != key)
+            i = (i+1) & mask;
+        return i;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        boolean[] oldUsed = used;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        used = new boolean[capacity];
+        mask = capacity-1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int j = slot(oldKeys[i]);
+                used[j] = true;
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package mote4.util.font;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import mote4.util.FileIO;
+import org.lwjgl.system.MemoryStack;
+
+import static org.lwjgl.stb.STBImage.*;
+
+/**
+ * Glyphs from a bitmap font texture laid out in the 16x16 grid used by FontUtils,
+ * with widths from a .metric file.  Only the first 256 codepoints are available.
+ * @author Peter
+ */
+public class BitmapFontSource implements GlyphSource {
+
+    private static final int GRID = 16;
+
+    private final byte[] coverage;
+    private final int imageWidth, cellWidth, cellHeight;
+    private final byte[] metrics;
+
+    /**
+     * Loads a bitmap font.
+     * @param texture The .png file, relative to /res/textures/ and without the extension.
+     * @param metric The .metric file, relative to /res/textures/ and without the extension.
+     * @throws IOException If either file cannot be read.
+     */
+    public BitmapFontSource(String texture, String metric) throws IOException {
+        metrics = FileIO.getByteArray("/res/textures/" + metric + ".metric");
+        if (metrics.length != 258)
+            throw new IllegalArgumentException("Metrics file must be 258 bytes long, was " + metrics.length + " bytes.");
+
+        ByteBuffer raw = FileIO.getByteBuffer("/res/textures/" + texture + ".png");
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1), h = stack.mallocInt(1), comp = stack.mallocInt(1);
+            ByteBuffer image = stbi_load_from_memory(raw, w, h, comp, 4);
+            if (image == null)
+                throw new IOException("Failed to load font image: " + stbi_failure_reason());
+            imageWidth = w.get(0);
+            int imageHeight = h.get(0);
+            boolean hasAlpha = comp.get(0) == 2 || comp.get(0) == 4;
+
+            // keep only the coverage of each pixel
+            coverage = new byte[imageWidth*imageHeight];
+            for (int i = 0; i < coverage.length; i++)
+                coverage[i] = image.get(i*4 + (hasAlpha ? 3 : 0));
+            stbi_image_free(image);
+
+            cellWidth = imageWidth/GRID;
+            cellHeight = imageHeight/GRID;
+        }
+    }
+
+    @Override
+    public boolean hasGlyph(int codepoint) {
+        return codepoint >= 0 && codepoint < GRID*GRID;
+    }
+
+    @Override
+    public void rasterize(int codepoint, Bitmap out) {
+        int charPixelWidth = metrics[256] & 0xFF;
+        // metric widths are relative to the metric's cell width, convert to image pixels
+        int width = Math.round((metrics[codepoint] & 0xFF) * (float)cellWidth / charPixelWidth);
+        width = Math.min(width, cellWidth);
+        out.resize(width, cellHeight);
+        int cx = (codepoint%GRID)*cellWidth,
+            cy = (codepoint/GRID)*cellHeight;
+        for (int y = 0; y < cellHeight; y++)
+            System.arraycopy(coverage, (cy+y)*imageWidth + cx, out.pixels, y*width, width);
+        out.xOffset = 0;
+        out.yOffset = 0;
+        out.advance = (metrics[codepoint] & 0xFF) * (float)cellHeight / charPixelWidth;
+    }
+
+    @Override
+    public float lineHeight() { return cellHeight; }
+
+    @Override
+    public boolean filter() { return false; }
+}
@@ -0,0 +1,54 @@
+package mote4.util.font;
+
+/**
+ * A single character in a GlyphAtlas.
+ * Positions are in units of the font's line height, relative to the pen
+ * position at the top left of the line, with Y pointing down.
+ * @author Peter
+ */
+public class Glyph {
+
+    public final int codepoint;
+    /**
+     * The atlas page holding the glyph's image.
+     */
+    public final int page;
+    /**
+     * Texture coordinates of the glyph's image on its page.
+     */
+    public final float u0, v0, u1, v1;
+    /**
+     * Bounds of the glyph's quad relative to the pen position.
+     */
+    public final float x0, y0, x1, y1;
+    /**
+     * How far the pen moves after this glyph.
+     */
+    public final float advance;
+
+    Glyph(int codepoint, int page,
+          float u0, float v0, float u1, float v1,
+          float x0, float y0, float x1, float y1,
+          float advance)
+    {
+        this.codepoint = codepoint;
+        this.page = page;
+        this.u0 = u0;
+        this.v0 = v0;
+        this.u1 = u1;
+        this.v1 = v1;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.advance = advance;
+    }
+
+    /**
+     * Whether the glyph has an image, whitespace does not.
+     * @return
+     */
+    public boolean isVisible() {
+        return x1 > x0 && y1 > y0;
+    }
+}
@@ -0,0 +1,203 @@
+package mote4.util.font;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import mote4.util.ErrorUtils;
+import mote4.util.IntMap;
+import mote4.util.state.GLState;
+import mote4.util.texture.TextureMap;
+import org.lwjgl.BufferUtils;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+
+/**
+ * A texture atlas of glyphs that is filled on demand.
+ * Glyphs are rasterized by a GlyphSource the first time they are requested,
+ * packed into the current page, and uploaded to it with glTexSubImage2D.
+ * A new page is started when the current page is full, so any number of
+ * Unicode characters can be displayed.
+ *
+ * Pages are added to the TextureMap under the names returned by pageName().
+ * Each page is an RGBA texture that is white, with the glyph coverage in alpha.
+ * @author Peter
+ */
+public class GlyphAtlas {
+
+    private static final int PADDING = 1;
+
+    private final String name;
+    private final GlyphSource source;
+    private final int pageSize;
+    private final IntMap<Glyph> glyphs;
+    private final ArrayList<String> pages;
+    private final GlyphSource.Bitmap bitmap;
+    private RectanglePacker packer;
+    private ByteBuffer upload;
+    private int pageId;
+    private Glyph fallback;
+
+    /**
+     * Creates an empty atlas, the first page is created when the first glyph is added.
+     * @param name The prefix of the page names in the TextureMap.
+     * @param source The source of glyph images.
+     * @param pageSize The width and height of each page, in pixels.
+     */
+    public GlyphAtlas(String name, GlyphSource source, int pageSize) {
+        this.name = name;
+        this.source = source;
+        this.pageSize = pageSize;
+        glyphs = new IntMap<>(256);
+        pages = new ArrayList<>();
+        bitmap = new GlyphSource.Bitmap();
+        upload = BufferUtils.createByteBuffer(64*64*4);
+    }
+
+    /**
+     * Returns a glyph, adding it to the atlas if needed.
+     * Codepoints the source does not have are replaced with '?', or null
+     * if the source has no '?' either.
+     * @param codepoint
+     * @return
+     */
+    public Glyph get(int codepoint) {
+        Glyph g = glyphs.get(codepoint);
+        if (g != null)
+            return g;
+        if (!source.hasGlyph(codepoint)) {
+            if (fallback == null && codepoint != '?' && source.hasGlyph('?'))
+                fallback = get('?');
+            return fallback;
+        }
+        g = add(codepoint);
+        glyphs.put(codepoint, g);
+        return g;
+    }
+
+    /**
+     * Adds all characters in a string to the atlas ahead of time.
+     * @param text
+     */
+    public void preload(String text) {
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            get(cp);
+            i += Character.charCount(cp);
+        }
+    }
+
+    /**
+     * Adds all characters in a string to the atlas ahead of time, letting the
+     * source rasterize them on multiple threads.  Packing and uploading
+     * happens on the calling thread, which must own the OpenGL context.
+     * @param text
+     * @param threads
+     */
+    public void preload(String text, int threads) {
+        IntMap<Boolean> seen = new IntMap<>();
+        int[] codepoints = new int[text.length()];
+        int count = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (glyphs.containsKey(cp) || seen.containsKey(cp) || !source.hasGlyph(cp))
+                continue;
+            seen.put(cp, Boolean.TRUE);
+            codepoints[count++] = cp;
+        }
+
+        GlyphSource.Bitmap[] bitmaps = new GlyphSource.Bitmap[count];
+        for (int i = 0; i < count; i++)
+            bitmaps[i] = new GlyphSource.Bitmap();
+        source.rasterizeAll(codepoints, bitmaps, count, threads);
+        for (int i = 0; i < count; i++)
+            glyphs.put(codepoints[i], add(codepoints[i], bitmaps[i]));
+    }
+
+    private Glyph add(int codepoint) {
+        source.rasterize(codepoint, bitmap);
+        return add(codepoint, bitmap);
+    }
+    private Glyph add(int codepoint, GlyphSource.Bitmap bitmap) {
+        float scale = 1/source.lineHeight();
+        int w = bitmap.width, h = bitmap.height;
+        if (w > pageSize || h > pageSize)
+            throw new IllegalArgumentException("Glyph "+codepoint+" ("+w+"x"+h+") is larger than an atlas page.");
+
+        if (w == 0 || h == 0) // whitespace, nothing to upload
+            return new Glyph(codepoint, 0, 0,0,0,0, 0,0,0,0, bitmap.advance*scale);
+
+        if (packer == null || !packer.pack(w, h)) {
+            newPage();
+            packer.pack(w, h);
+        }
+        int x = packer.x(), y = packer.y();
+        uploadBitmap(bitmap, x, y);
+
+        return new Glyph(codepoint, pages.size()-1,
+                (float)x/pageSize, (float)y/pageSize,
+                (float)(x+w)/pageSize, (float)(y+h)/pageSize,
+                bitmap.xOffset*scale, bitmap.yOffset*scale,
+                (bitmap.xOffset+w)*scale, (bitmap.yOffset+h)*scale,
+                bitmap.advance*scale);
+    }
+
+    private void newPage() {
+        pageId = glGenTextures();
+        GLState.bindTexture(GL_TEXTURE_2D, pageId);
+        // start with a transparent page so padding samples as empty
+        ByteBuffer empty = BufferUtils.createByteBuffer(pageSize*pageSize*4);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, pageSize, pageSize, 0, GL_RGBA, GL_UNSIGNED_BYTE, empty);
+        int filter = source.filter() ? GL_LINEAR : GL_NEAREST;
+        GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, filter);
+        GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, filter);
+        GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        ErrorUtils.checkGLError();
+
+        String pageName = name+"_"+pages.size();
+        TextureMap.add(pageId, pageName);
+        pages.add(pageName);
+        packer = new RectanglePacker(pageSize, pageSize, PADDING);
+    }
+
+    /**
+     * Uploads a bitmap to the current page.
+     */
+    private void uploadBitmap(GlyphSource.Bitmap bitmap, int x, int y) {
+        int w = bitmap.width, h = bitmap.height;
+        if (upload.capacity() < w*h*4)
+            upload = BufferUtils.createByteBuffer(w*h*4*2);
+        upload.clear();
+        for (int i = 0; i < w*h; i++)
+            upload.put((byte)-1).put((byte)-1).put((byte)-1).put(bitmap.pixels[i]);
+        upload.flip();
+
+        GLState.bindTexture(GL_TEXTURE_2D, pageId);
+        glTexSubImage2D(GL_TEXTURE_2D, 0, x, y, w, h, GL_RGBA, GL_UNSIGNED_BYTE, upload);
+        ErrorUtils.checkGLError();
+    }
+
+    public int numPages() { return pages.size(); }
+    /**
+     * The name of a page in the TextureMap.
+     * @param page
+     * @return
+     */
+    public String pageName(int page) { return pages.get(page); }
+    public int pageSize() { return pageSize; }
+    public GlyphSource source() { return source; }
+
+    /**
+     * Deletes all pages and forgets all glyphs.
+     */
+    public void destroy() {
+        for (String page : pages)
+            TextureMap.delete(page);
+        pages.clear();
+        glyphs.clear();
+        packer = null;
+        fallback = null;
+    }
+}
@@ -0,0 +1,74 @@
+package mote4.util.font;
+
+/**
+ * Rasterizes glyphs for a GlyphAtlas.
+ * @author Peter
+ */
+public interface GlyphSource {
+
+    /**
+     * The rasterized image and metrics of one glyph.
+     * All values are in pixels.  The image is a coverage mask,
+     * one byte per pixel from 0 (empty) to 255 (covered), stored in rows.
+     */
+    class Bitmap {
+        public int width, height;
+        public byte[] pixels;
+        /**
+         * Offset of the image's top left corner from the pen position
+         * at the top of the line.
+         */
+        public int xOffset, yOffset;
+        public float advance;
+
+        /**
+         * Makes sure the pixel array can hold an image of the given size.
+         */
+        public void resize(int width, int height) {
+            this.width = width;
+            this.height = height;
+            if (pixels == null || pixels.length < width*height)
+                pixels = new byte[Math.max(width*height, 64)];
+        }
+    }
+
+    /**
+     * Whether the source has an image for the given codepoint.
+     * @param codepoint
+     * @return
+     */
+    boolean hasGlyph(int codepoint);
+
+    /**
+     * Rasterizes a glyph.
+     * @param codepoint
+     * @param out The bitmap to write to, its pixel array is reused if large enough.
+     */
+    void rasterize(int codepoint, Bitmap out);
+
+    /**
+     * Rasterizes many glyphs.  Sources that can work in parallel override this,
+     * by default the glyphs are rasterized one at a time.
+     * @param codepoints The glyphs to rasterize.
+     * @param out One bitmap per codepoint.
+     * @param count The number of glyphs.
+     * @param threads The number of threads the source may use.
+     */
+    default void rasterizeAll(int[] codepoints, Bitmap[] out, int count, int threads) {
+        for (int i = 0; i < count; i++)
+            rasterize(codepoints[i], out[i]);
+    }
+
+    /**
+     * The height of a line, in pixels.
+     * @return
+     */
+    float lineHeight();
+
+    /**
+     * Whether the glyph images should be sampled with linear filtering.
+     * Pixel fonts should not be.
+     * @return
+     */
+    boolean filter();
+}
@@ -0,0 +1,177 @@
+package mote4.util.font;
+
+import java.util.Arrays;
+
+/**
+ * Packs rectangles into a fixed-size area using the skyline bottom-left method.
+ * The top edge of the packed area is tracked as a list of horizontal segments,
+ * and each rectangle is placed where it ends up lowest, breaking ties by the
+ * narrowest fit.  Rectangles are never moved once placed, so the packer is
+ * suitable for atlases that grow as glyphs are added.
+ * Does not use OpenGL.
+ * @author Peter
+ */
+public class RectanglePacker {
+
+    private final int width, height, padding;
+    // skyline segments, sorted by x, covering the full width
+    private int[] segX, segY, segW;
+    private int numSegments;
+    private int lastX, lastY;
+    private long usedArea;
+
+    /**
+     * @param width Width of the area.
+     * @param height Height of the area.
+     * @param padding Empty space to leave to the right of and below every rectangle.
+     */
+    public RectanglePacker(int width, int height, int padding) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Packing area must have a positive size.");
+        this.width = width;
+        this.height = height;
+        this.padding = Math.max(0, padding);
+        segX = new int[16];
+        segY = new int[16];
+        segW = new int[16];
+        clear();
+    }
+
+    /**
+     * Removes all rectangles.
+     */
+    public void clear() {
+        numSegments = 1;
+        segX[0] = 0;
+        segY[0] = 0;
+        segW[0] = width;
+        usedArea = 0;
+    }
+
+    /**
+     * Places a rectangle.  If it fits, its position is available from x() and y().
+     * @param w Width of the rectangle.
+     * @param h Height of the rectangle.
+     * @return False if there is no room for the rectangle.
+     */
+    public boolean pack(int w, int h) {
+        if (w < 0 || h < 0)
+            throw new IllegalArgumentException("Rectangle size must not be negative.");
+        int pw = Math.min(w+padding, width),
+            ph = h+padding;
+        if (w > width || h > height)
+            return false;
+
+        int bestIndex = -1, bestY = Integer.MAX_VALUE, bestWidth = Integer.MAX_VALUE;
+        for (int i = 0; i < numSegments; i++) {
+            int y = fit(i, pw);
+            if (y < 0 || y+h > height)
+                continue;
+            if (y < bestY || (y == bestY && segW[i] < bestWidth)) {
+                bestIndex = i;
+                bestY = y;
+                bestWidth = segW[i];
+            }
+        }
+        if (bestIndex == -1)
+            return false;
+
+        lastX = segX[bestIndex];
+        lastY = bestY;
+        addSegment(bestIndex, lastX, Math.min(bestY+ph, height), pw);
+        usedArea += (long)w*h;
+        return true;
+    }
+
+    /**
+     * The X position of the last packed rectangle.
+     * @return
+     */
+    public int x() { return lastX; }
+    /**
+     * The Y position of the last packed rectangle.
+     * @return
+     */
+    public int y() { return lastY; }
+
+    public int width() { return width; }
+    public int height() { return height; }
+    public int padding() { return padding; }
+
+    /**
+     * The fraction of the area covered by packed rectangles, not counting padding.
+     * @return
+     */
+    public float occupancy() {
+        return (float)((double)usedArea/((long)width*height));
+    }
+
+    /**
+     * The lowest Y a rectangle of width w can be placed at, with its left edge
+     * at the start of segment i, or -1 if it would extend past the right edge.
+     */
+    private int fit(int i, int w) {
+        int x = segX[i];
+        if (x+w > width)
+            return -1;
+        int y = 0, remaining = w;
+        while (remaining > 0) {
+            y = Math.max(y, segY[i]);
+            remaining -= segW[i];
+            i++;
+        }
+        return y;
+    }
+
+    /**
+     * Raises the skyline from x to x+w to the given height.
+     */
+    private void addSegment(int index, int x, int y, int w) {
+        ensureSegments(numSegments+1);
+        System.arraycopy(segX, index, segX, index+1, numSegments-index);
+        System.arraycopy(segY, index, segY, index+1, numSegments-index);
+        System.arraycopy(segW, index, segW, index+1, numSegments-index);
+        segX[index] = x;
+        segY[index] = y;
+        segW[index] = w;
+        numSegments++;
+
+        // shrink or remove the segments now covered by the new one
+        int end = x+w;
+        int i = index+1;
+        while (i < numSegments && segX[i] < end) {
+            int segEnd = segX[i]+segW[i];
+            if (segEnd <= end) {
+                removeSegment(i);
+            } else {
+                segW[i] = segEnd-end;
+                segX[i] = end;
+                break;
+            }
+        }
+
+        // merge neighbors at the same height
+        for (i = 0; i < numSegments-1; ) {
+            if (segY[i] == segY[i+1]) {
+                segW[i] += segW[i+1];
+                removeSegment(i+1);
+            } else
+                i++;
+        }
+    }
+
+    private void removeSegment(int i) {
+        System.arraycopy(segX, i+1, segX, i, numSegments-i-1);
+        System.arraycopy(segY, i+1, segY, i, numSegments-i-1);
+        System.arraycopy(segW, i+1, segW, i, numSegments-i-1);
+        numSegments--;
+    }
+
+    private void ensureSegments(int n) {
+        if (n > segX.length) {
+            segX = Arrays.copyOf(segX, n*2);
+            segY = Arrays.copyOf(segY, n*2);
+            segW = Arrays.copyOf(segW, n*2);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package mote4.util.font;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import mote4.util.IntMap;
+
+/**
+ * Checks the data structures GlyphAtlas is built on, without OpenGL.
+ *
+ * RectanglePacker packs random rectangles until pack() reports a page full,
+ * then fills the gaps with smaller squares down to 1x1.  Every rectangle
+ * and its padding must be inside the page and must not overlap any other.
+ * Exact tilings must fill the page completely.
+ *
+ * IntMap is compared against a HashMap under random puts, overwrites and
+ * lookups, with keys chosen to collide, while it grows from its smallest size.
+ *
+ * Usage: RectanglePackerCheck [pages]
+ * @author Peter
+ */
+public class RectanglePackerCheck {
+
+    public static void main(String[] args) {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        Random random = new Random(12);
+
+        double occupancy = 0;
+        int rectangles = 0;
+        for (int p = 0; p < pages; p++) {
+            int size = 64 << random.nextInt(4);
+            int padding = random.nextInt(3);
+            int maxSide = 4+random.nextInt(size/4);
+            RectanglePacker packer = new RectanglePacker(size, size, padding);
+            rectangles += fillPage(packer, random, maxSide);
+            occupancy += packer.occupancy();
+
+            packer.clear();
+            if (packer.occupancy() != 0 || !packer.pack(1, 1) || packer.x() != 0 || packer.y() != 0)
+                fail("a cleared packer should place the next rectangle at 0,0");
+        }
+        checkTiling();
+        checkLimits();
+        System.out.printf("OK: %d pages, %d rectangles packed, %.1f%% average occupancy of a filled page%n",
+                pages, rectangles, occupancy/pages*100);
+
+        int operations = checkIntMap(random);
+        System.out.println("OK: "+operations+" IntMap operations matched HashMap");
+    }
+
+    /**
+     * Packs random rectangles until the page reports it is full, then keeps
+     * offering smaller ones, checking every placement.
+     * @return The number of rectangles placed.
+     */
+    private static int fillPage(RectanglePacker packer, Random random, int maxSide) {
+        int width = packer.width(), height = packer.height();
+        // which packed rectangle covers each pixel, including its padding
+        int[] owner = new int[width*height];
+        int placed = 0;
+        boolean full = false;
+        for (int attempts = 0; attempts < 100000 && !full; attempts++) {
+            int w = 1+random.nextInt(maxSide), h = 1+random.nextInt(maxSide);
+            if (packer.pack(w, h))
+                place(packer, owner, ++placed, w, h);
+            else
+                full = true;
+        }
+        if (!full)
+            fail("a "+width+"x"+height+" page never reported being full");
+        float occupancy = packer.occupancy();
+
+        // a full page can still hold smaller rectangles, down to 1x1
+        for (int side = maxSide; side > 0; side /= 2)
+            while (packer.pack(side, side))
+                place(packer, owner, ++placed, side, side);
+        if (packer.occupancy() < occupancy)
+            fail("occupancy went down from "+occupancy+" to "+packer.occupancy());
+        return placed;
+    }
+
+    private static void place(RectanglePacker packer, int[] owner, int id, int w, int h) {
+        int width = packer.width(), height = packer.height();
+        int x = packer.x(), y = packer.y();
+        if (x < 0 || y < 0 || x+w > width || y+h > height)
+            fail(w+"x"+h+" rectangle at "+x+","+y+" is outside the "+width+"x"+height+" page");
+        int padding = packer.padding();
+        int right = Math.min(x+w+padding, width), bottom = Math.min(y+h+padding, height);
+        for (int py = y; py < bottom; py++)
+            for (int px = x; px < right; px++) {
+                int i = py*width+px;
+                if (owner[i] != 0)
+                    fail(w+"x"+h+" rectangle at "+x+","+y+" (padding "+padding+") overlaps rectangle "
+                            +owner[i]+" at pixel "+px+","+py);
+                owner[i] = id;
+            }
+    }
+
+    /**
+     * Rectangles that tile the page exactly must fill it, and the next one must not fit.
+     */
+    private static void checkTiling() {
+        int[][] tilings = {{64, 64, 8, 8}, {128, 64, 16, 32}, {60, 60, 20, 15}, {256, 256, 1, 256}};
+        for (int[] t : tilings) {
+            RectanglePacker packer = new RectanglePacker(t[0], t[1], 0);
+            int[] owner = new int[t[0]*t[1]];
+            int count = (t[0]/t[2])*(t[1]/t[3]);
+            for (int i = 1; i <= count; i++) {
+                if (!packer.pack(t[2], t[3]))
+                    fail("only "+(i-1)+" of "+count+" "+t[2]+"x"+t[3]+" tiles fit in a "+t[0]+"x"+t[1]+" page");
+                place(packer, owner, i, t[2], t[3]);
+            }
+            if (packer.occupancy() != 1)
+                fail("an exactly tiled "+t[0]+"x"+t[1]+" page should be completely occupied");
+            if (packer.pack(1, 1))
+                fail("a completely occupied page accepted another rectangle");
+        }
+    }
+
+    private static void checkLimits() {
+        RectanglePacker packer = new RectanglePacker(32, 16, 1);
+        if (packer.pack(33, 1) || packer.pack(1, 17))
+            fail("a rectangle larger than the page was packed");
+        if (!packer.pack(32, 16) || packer.x() != 0 || packer.y() != 0)
+            fail("a rectangle the size of the page should fit, padding is clipped at the edges");
+        if (packer.pack(1, 1))
+            fail("a page filled by one rectangle accepted another");
+        if (!new RectanglePacker(8, 8, 0).pack(0, 0))
+            fail("an empty rectangle should always fit in an empty page");
+        try {
+            packer.pack(-1, 1);
+            fail("a negative size should be rejected");
+        } catch (IllegalArgumentException e) {}
+        try {
+            new RectanglePacker(0, 8, 0);
+            fail("an empty page should be rejected");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    /**
+     * @return The number of operations checked.
+     */
+    private static int checkIntMap(Random random) {
+        int operations = 0;
+        // keys from a small range overwrite often, multiples of large powers of two collide after hashing less well
+        int[][] keySets = {
+            {Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE},
+            range(-50, 50),
+            multiples(1 << 16, 64),
+            multiples(1 << 24, 64),
+            randomKeys(random, 5000),
+        };
+        for (int[] keySet : keySets) {
+            IntMap<Integer> map = new IntMap<>(1);
+            HashMap<Integer,Integer> reference = new HashMap<>();
+            for (int n = 0; n < keySet.length*20; n++) {
+                int key = keySet[random.nextInt(keySet.length)];
+                if (random.nextInt(3) > 0) {
+                    Integer value = random.nextInt(8) == 0 ? null : random.nextInt();
+                    boolean existed = reference.containsKey(key);
+                    Integer expected = reference.put(key, value), actual = map.put(key, value);
+                    if (expected != actual && (expected == null || !expected.equals(actual)))
+                        fail("put("+key+") returned "+actual+", expected "+expected+(existed ? " (overwrite)" : ""));
+                } else {
+                    int missing = random.nextInt();
+                    if (!reference.containsKey(missing) && (map.get(missing) != null || map.containsKey(missing)))
+                        fail("get("+missing+") found a key that was never put");
+                }
+                if (map.size() != reference.size())
+                    fail("size is "+map.size()+", expected "+reference.size());
+                operations++;
+            }
+            for (int key : keySet) {
+                if (map.containsKey(key) != reference.containsKey(key))
+                    fail("containsKey("+key+") is "+map.containsKey(key));
+                Integer expected = reference.get(key), actual = map.get(key);
+                if (expected != actual && (expected == null || !expected.equals(actual)))
+                    fail("get("+key+") returned "+actual+", expected "+expected);
+                operations++;
+            }
+
+            map.clear();
+            if (!map.isEmpty() || map.containsKey(keySet[0]) || map.get(keySet[0]) != null)
+                fail("a cleared map should be empty");
+            map.put(keySet[0], 1);
+            if (map.size() != 1 || map.get(keySet[0]) != 1)
+                fail("a cleared map should accept new keys");
+        }
+        return operations;
+    }
+
+    private static int[] range(int from, int to) {
+        int[] keys = new int[to-from];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = from+i;
+        return keys;
+    }
+    private static int[] multiples(int step, int count) {
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++)
+            keys[i] = i*step;
+        return keys;
+    }
+    private static int[] randomKeys(Random random, int count) {
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++)
+            keys[i] = random.nextInt();
+        return keys;
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: "+message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,184 @@
+package mote4.util.font;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.system.MemoryStack;
+
+import static org.lwjgl.stb.STBImage.*;
+import static org.lwjgl.stb.STBImageWrite.stbi_write_png;
+
+/**
+ * Offline tools for distance field fonts.
+ *
+ * Converts a font texture in the 16x16 grid used by FontUtils into a grid
+ * of distance fields, so existing .metric files keep working with the result.
+ * The output is white, with the field in alpha; draw it with the distanceField
+ * uniform of the texture or text shader enabled.  The field of each glyph is
+ * cropped to its cell, so the spread should be small relative to the cell size.
+ *
+ * Usage: SDFFontBaker input.png output.png [spread] [downscale] [threads]
+ *        SDFFontBaker benchmark
+ * @author Peter
+ */
+public class SDFFontBaker {
+
+    private static final int GRID = 16;
+
+    public static void main(String[] args) {
+        if (args.length == 1 && args[0].equals("benchmark")) {
+            benchmark();
+            return;
+        }
+        if (args.length < 2) {
+            System.err.println("Usage: SDFFontBaker input.png output.png [spread] [downscale] [threads]");
+            System.err.println("       SDFFontBaker benchmark");
+            return;
+        }
+        int spread = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int downscale = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        long time = System.nanoTime();
+        if (bake(args[0], args[1], spread, downscale, threads))
+            System.out.println("Wrote "+args[1]+" in "+(System.nanoTime()-time)/1000000+" ms.");
+    }
+
+    /**
+     * Converts a grid font texture into a grid of distance fields.
+     * @param input The .png file to read.
+     * @param output The .png file to write.
+     * @param spread The distance in output pixels at which the field saturates.
+     * @param downscale How many input pixels make up an output pixel.
+     * @param threads The number of threads to use.
+     * @return False if the input could not be read or the output written.
+     */
+    public static boolean bake(String input, String output, int spread, int downscale, int threads) {
+        int width, height;
+        byte[] coverage;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1), h = stack.mallocInt(1), comp = stack.mallocInt(1);
+            ByteBuffer image = stbi_load(input, w, h, comp, 4);
+            if (image == null) {
+                System.err.println("Failed to load "+input+": "+stbi_failure_reason());
+                return false;
+            }
+            width = w.get(0);
+            height = h.get(0);
+            boolean hasAlpha = comp.get(0) == 2 || comp.get(0) == 4;
+            coverage = new byte[width*height];
+            for (int i = 0; i < coverage.length; i++)
+                coverage[i] = image.get(i*4 + (hasAlpha ? 3 : 0));
+            stbi_image_free(image);
+        }
+        int cellWidth = width/GRID, cellHeight = height/GRID;
+        if (cellWidth % downscale != 0 || cellHeight % downscale != 0) {
+            System.err.println("Cell size "+cellWidth+"x"+cellHeight+" is not divisible by "+downscale+".");
+            return false;
+        }
+
+        GlyphSource.Bitmap[] cells = new GlyphSource.Bitmap[GRID*GRID],
+                             fields = new GlyphSource.Bitmap[GRID*GRID];
+        for (int c = 0; c < cells.length; c++) {
+            GlyphSource.Bitmap cell = cells[c] = new GlyphSource.Bitmap();
+            fields[c] = new GlyphSource.Bitmap();
+            cell.resize(cellWidth, cellHeight);
+            int cx = (c%GRID)*cellWidth, cy = (c/GRID)*cellHeight;
+            for (int y = 0; y < cellHeight; y++)
+                System.arraycopy(coverage, (cy+y)*width + cx, cell.pixels, y*cellWidth, cellWidth);
+        }
+        SDFGenerator.generateAll(cells, fields, cells.length, spread, downscale, threads);
+
+        // crop every field back to its cell
+        int outCellWidth = cellWidth/downscale, outCellHeight = cellHeight/downscale;
+        int outWidth = outCellWidth*GRID, outHeight = outCellHeight*GRID;
+        ByteBuffer out = BufferUtils.createByteBuffer(outWidth*outHeight*4);
+        for (int c = 0; c < fields.length; c++) {
+            GlyphSource.Bitmap field = fields[c];
+            int cx = (c%GRID)*outCellWidth, cy = (c/GRID)*outCellHeight;
+            for (int y = 0; y < outCellHeight; y++) {
+                for (int x = 0; x < outCellWidth; x++) {
+                    int i = ((cy+y)*outWidth + cx+x)*4;
+                    out.put(i, (byte)-1).put(i+1, (byte)-1).put(i+2, (byte)-1)
+                       .put(i+3, field.pixels[(y+spread)*field.width + x+spread]);
+                }
+            }
+        }
+        if (!stbi_write_png(output, outWidth, outHeight, 4, out, outWidth*4)) {
+            System.err.println("Failed to write "+output+".");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Measures distance field generation time for increasing glyph and thread counts.
+     * Uses generated glyphs, so no files or OpenGL context are needed.
+     */
+    public static void benchmark() {
+        int spread = 8, downscale = 4, size = 128;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        int[] counts = {64, 256, 1024};
+
+        Random random = new Random(4);
+        GlyphSource.Bitmap[] glyphs = new GlyphSource.Bitmap[counts[counts.length-1]];
+        for (int i = 0; i < glyphs.length; i++)
+            glyphs[i] = randomGlyph(random, size);
+        GlyphSource.Bitmap[] out = new GlyphSource.Bitmap[glyphs.length];
+        for (int i = 0; i < out.length; i++)
+            out[i] = new GlyphSource.Bitmap();
+
+        // warm up the JIT before timing anything
+        SDFGenerator.generateAll(glyphs, out, 128, spread, downscale, maxThreads);
+
+        System.out.println("Glyphs of "+size+"px, spread "+spread+", downscale "+downscale+".");
+        System.out.printf("%8s %8s %10s %12s %8s%n", "glyphs", "threads", "ms", "glyphs/sec", "speedup");
+        for (int count : counts) {
+            double single = 0;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                long time = System.nanoTime();
+                SDFGenerator.generateAll(glyphs, out, count, spread, downscale, threads);
+                double ms = (System.nanoTime()-time)/1e6;
+                if (threads == 1)
+                    single = ms;
+                System.out.printf("%8d %8d %10.1f %12.0f %7.2fx%n", count, threads, ms, count/ms*1000, single/ms);
+                if (threads < maxThreads && threads*2 > maxThreads)
+                    threads = maxThreads/2; // always measure every core
+            }
+        }
+    }
+
+    /**
+     * A glyph-like shape: a few random strokes and rings.
+     */
+    private static GlyphSource.Bitmap randomGlyph(Random random, int size) {
+        GlyphSource.Bitmap b = new GlyphSource.Bitmap();
+        b.resize(size/2 + random.nextInt(size/2), size);
+        b.advance = b.width;
+        float stroke = size/12f;
+        int shapes = 2 + random.nextInt(3);
+        for (int s = 0; s < shapes; s++) {
+            float x0 = random.nextFloat()*b.width, y0 = random.nextFloat()*b.height,
+                  x1 = random.nextFloat()*b.width, y1 = random.nextFloat()*b.height;
+            boolean ring = random.nextBoolean();
+            float r = size/6f + random.nextFloat()*size/6f;
+            for (int y = 0; y < b.height; y++) {
+                for (int x = 0; x < b.width; x++) {
+                    float d;
+                    if (ring)
+                        d = Math.abs((float)Math.hypot(x-x0, y-y0) - r);
+                    else {
+                        float dx = x1-x0, dy = y1-y0;
+                        float t = Math.max(0, Math.min(1, ((x-x0)*dx + (y-y0)*dy)/(dx*dx + dy*dy + 1e-6f)));
+                        d = (float)Math.hypot(x - (x0+t*dx), y - (y0+t*dy));
+                    }
+                    if (d < stroke)
+                        b.pixels[y*b.width+x] = (byte)-1;
+                }
+            }
+        }
+        return b;
+    }
+}
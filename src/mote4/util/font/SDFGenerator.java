@@ -0,0 +1,210 @@
+package mote4.util.font;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts coverage bitmaps into signed distance fields.
+ * Each output pixel stores the distance to the nearest edge of the glyph,
+ * 128 on the edge, higher inside and lower outside, reaching 0 and 255
+ * at the spread distance.  A shader can then find the edge at any scale
+ * by thresholding at 0.5.
+ *
+ * Distances are computed exactly with a two-pass squared Euclidean distance
+ * transform (Felzenszwalb and Huttenlocher).  A generator keeps its working
+ * memory between calls and must only be used by one thread at a time.
+ * @author Peter
+ */
+public class SDFGenerator {
+
+    private static final float INF = 1e20f;
+
+    private final int spread;
+    private float[] inside, outside;
+    private double[] f, d, z;
+    private int[] v;
+
+    /**
+     * @param spread The distance in output pixels at which the field saturates.
+     */
+    public SDFGenerator(int spread) {
+        if (spread < 1)
+            throw new IllegalArgumentException("Spread must be at least 1.");
+        this.spread = spread;
+        inside = outside = new float[0];
+        f = d = z = new double[0];
+        v = new int[0];
+    }
+
+    public int spread() { return spread; }
+
+    /**
+     * Generates the distance field of a glyph.
+     * The output is larger than the input by the spread on every side, so
+     * the field has room to fall off, and is smaller by the downscale factor.
+     * Offsets and advance are converted to match.
+     * @param in The coverage bitmap.
+     * @param out The bitmap to write the distance field to.
+     * @param downscale How many input pixels make up an output pixel, rendering the
+     *                  input at a higher resolution gives a more accurate field.
+     */
+    public void generate(GlyphSource.Bitmap in, GlyphSource.Bitmap out, int downscale) {
+        out.advance = in.advance/downscale;
+        if (in.width == 0 || in.height == 0) {
+            out.resize(0, 0);
+            out.xOffset = in.xOffset/downscale;
+            out.yOffset = in.yOffset/downscale;
+            return;
+        }
+
+        int pad = spread*downscale;
+        int w = in.width + pad*2, h = in.height + pad*2;
+        int n = w*h;
+        if (inside.length < n) {
+            inside = new float[n];
+            outside = new float[n];
+        }
+        int m = Math.max(w, h);
+        if (f.length < m+1) {
+            f = new double[m+1];
+            d = new double[m+1];
+            z = new double[m+1];
+            v = new int[m+1];
+        }
+
+        // seed: 0 at pixels of the set, infinity elsewhere
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int ix = x-pad, iy = y-pad;
+                boolean covered = ix >= 0 && iy >= 0 && ix < in.width && iy < in.height
+                               && (in.pixels[iy*in.width+ix] & 0xFF) >= 128;
+                inside[y*w+x] = covered ? 0 : INF;   // distance to the glyph
+                outside[y*w+x] = covered ? INF : 0;  // distance to the background
+            }
+        }
+        transform(inside, w, h);
+        transform(outside, w, h);
+
+        // sample the field at the center of each output pixel
+        int ow = (w + downscale-1)/downscale, oh = (h + downscale-1)/downscale;
+        out.resize(ow, oh);
+        out.xOffset = Math.round((in.xOffset - pad)/(float)downscale);
+        out.yOffset = Math.round((in.yOffset - pad)/(float)downscale);
+        float scale = 1f/(downscale*spread);
+        for (int oy = 0; oy < oh; oy++) {
+            for (int ox = 0; ox < ow; ox++) {
+                float sum = 0;
+                int count = 0;
+                for (int y = oy*downscale; y < Math.min(h, (oy+1)*downscale); y++) {
+                    for (int x = ox*downscale; x < Math.min(w, (ox+1)*downscale); x++) {
+                        int i = y*w+x;
+                        // pixels on either side of an edge are half a pixel from it
+                        float dist = inside[i] > 0 ? (float)Math.sqrt(inside[i]) - .5f
+                                                   : .5f - (float)Math.sqrt(outside[i]);
+                        sum += dist;
+                        count++;
+                    }
+                }
+                float value = .5f - (sum/count)*scale*.5f;
+                out.pixels[oy*ow+ox] = (byte)Math.round(Math.max(0, Math.min(1, value))*255);
+            }
+        }
+    }
+
+    /**
+     * In-place squared distance transform of a 2D grid, columns then rows.
+     */
+    private void transform(float[] grid, int w, int h) {
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++)
+                f[y] = grid[y*w+x];
+            transform1D(h);
+            for (int y = 0; y < h; y++)
+                grid[y*w+x] = (float)d[y];
+        }
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++)
+                f[x] = grid[y*w+x];
+            transform1D(w);
+            for (int x = 0; x < w; x++)
+                grid[y*w+x] = (float)d[x];
+        }
+    }
+
+    /**
+     * 1D squared distance transform of f into d, using the lower envelope of parabolas.
+     */
+    private void transform1D(int n) {
+        int k = 0;
+        v[0] = 0;
+        z[0] = -INF;
+        z[1] = INF;
+        for (int q = 1; q < n; q++) {
+            double s = ((f[q] + q*q) - (f[v[k]] + v[k]*v[k])) / (2*q - 2*v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = ((f[q] + q*q) - (f[v[k]] + v[k]*v[k])) / (2*q - 2*v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k+1] = INF;
+        }
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k+1] < q)
+                k++;
+            double dq = q - v[k];
+            d[q] = dq*dq + f[v[k]];
+        }
+    }
+
+    /**
+     * Generates the distance fields of many glyphs on multiple threads.
+     * Every thread uses its own generator.
+     * @param in The coverage bitmaps.
+     * @param out The bitmaps to write to, one per input.
+     * @param count The number of bitmaps.
+     * @param spread The spread of the fields.
+     * @param downscale The downscale factor, see generate().
+     * @param threads The number of threads to use, 1 or less runs on the calling thread.
+     */
+    public static void generateAll(GlyphSource.Bitmap[] in, GlyphSource.Bitmap[] out, int count,
+                                   int spread, int downscale, int threads)
+    {
+        if (threads <= 1 || count <= 1) {
+            SDFGenerator gen = new SDFGenerator(spread);
+            for (int i = 0; i < count; i++)
+                gen.generate(in[i], out[i], downscale);
+            return;
+        }
+
+        // glyphs differ in size, so workers take glyphs one at a time
+        AtomicInteger next = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            tasks.add(() -> {
+                SDFGenerator gen = new SDFGenerator(spread);
+                int i;
+                while ((i = next.getAndIncrement()) < count)
+                    gen.generate(in[i], out[i], downscale);
+                return null;
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invokeAll(tasks).forEach(task -> {
+                try {
+                    task.get();
+                } catch (Exception e) {
+                    throw new IllegalStateException("Distance field generation failed.", e);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package mote4.util.font;
+
+/**
+ * Turns the glyphs of another source into signed distance fields,
+ * so a single atlas can be drawn sharply at any size.
+ * Draw the atlas with the distanceField uniform of the text shader enabled.
+ * @author Peter
+ */
+public class SDFGlyphSource implements GlyphSource {
+
+    private final GlyphSource base;
+    private final SDFGenerator generator;
+    private final int downscale;
+    private final Bitmap scratch;
+
+    /**
+     * @param base The source of the coverage bitmaps.
+     * @param spread The distance in atlas pixels at which the field saturates.
+     * @param downscale How many base pixels make up an atlas pixel.  A TrueType
+     *                  source can be created at a multiple of the atlas
+     *                  resolution for a more accurate field, bitmap fonts should use 1.
+     */
+    public SDFGlyphSource(GlyphSource base, int spread, int downscale) {
+        this.base = base;
+        this.downscale = Math.max(1, downscale);
+        generator = new SDFGenerator(spread);
+        scratch = new Bitmap();
+    }
+
+    @Override
+    public boolean hasGlyph(int codepoint) {
+        return base.hasGlyph(codepoint);
+    }
+
+    @Override
+    public void rasterize(int codepoint, Bitmap out) {
+        base.rasterize(codepoint, scratch);
+        generator.generate(scratch, out, downscale);
+    }
+
+    /**
+     * Rasterizes the base glyphs on the calling thread, since sources such as
+     * TrueTypeFontSource are not thread safe, then generates the distance
+     * fields on multiple threads.
+     */
+    @Override
+    public void rasterizeAll(int[] codepoints, Bitmap[] out, int count, int threads) {
+        Bitmap[] coverage = new Bitmap[count];
+        for (int i = 0; i < count; i++) {
+            coverage[i] = new Bitmap();
+            base.rasterize(codepoints[i], coverage[i]);
+        }
+        SDFGenerator.generateAll(coverage, out, count, generator.spread(), downscale, threads);
+    }
+
+    @Override
+    public float lineHeight() { return base.lineHeight()/downscale; }
+
+    @Override
+    public boolean filter() { return true; }
+}
@@ -0,0 +1,73 @@
+package mote4.util.font;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import mote4.util.FileIO;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.stb.STBTTFontinfo;
+
+import static org.lwjgl.stb.STBTruetype.*;
+
+/**
+ * Glyphs rasterized from a TrueType font with stb_truetype.
+ * @author Peter
+ */
+public class TrueTypeFontSource implements GlyphSource {
+
+    private final ByteBuffer data; // must stay alive as long as the font info
+    private final STBTTFontinfo info;
+    private final float scale, lineHeight;
+    private final int ascent;
+    private final int[] a = new int[1], b = new int[1], c = new int[1], d = new int[1];
+    private ByteBuffer scratch;
+
+    /**
+     * Loads a TrueType font.
+     * @param file The .ttf file, relative to /res/fonts/ and without the extension.
+     * @param pixelHeight The height of a line, in pixels.
+     * @throws IOException If the file cannot be read or is not a valid font.
+     */
+    public TrueTypeFontSource(String file, float pixelHeight) throws IOException {
+        data = FileIO.getByteBuffer("/res/fonts/" + file + ".ttf");
+        info = STBTTFontinfo.create();
+        if (!stbtt_InitFont(info, data))
+            throw new IOException("Failed to read font: " + file);
+
+        scale = stbtt_ScaleForPixelHeight(info, pixelHeight);
+        stbtt_GetFontVMetrics(info, a, b, c);
+        ascent = Math.round(a[0]*scale);
+        lineHeight = (a[0] - b[0] + c[0])*scale;
+    }
+
+    @Override
+    public boolean hasGlyph(int codepoint) {
+        return stbtt_FindGlyphIndex(info, codepoint) != 0;
+    }
+
+    @Override
+    public void rasterize(int codepoint, Bitmap out) {
+        stbtt_GetCodepointHMetrics(info, codepoint, a, b);
+        out.advance = a[0]*scale;
+
+        stbtt_GetCodepointBitmapBox(info, codepoint, scale, scale, a, b, c, d);
+        int width = c[0]-a[0], height = d[0]-b[0];
+        out.resize(Math.max(width, 0), Math.max(height, 0));
+        out.xOffset = a[0];
+        out.yOffset = ascent + b[0]; // box is relative to the baseline, Y down
+        if (width <= 0 || height <= 0)
+            return;
+
+        if (scratch == null || scratch.capacity() < width*height)
+            scratch = BufferUtils.createByteBuffer(Math.max(width*height, 4096));
+        stbtt_MakeCodepointBitmap(info, scratch, width, height, width, scale, scale, codepoint);
+        scratch.clear();
+        scratch.get(out.pixels, 0, width*height);
+    }
+
+    @Override
+    public float lineHeight() { return lineHeight; }
+
+    @Override
+    public boolean filter() { return true; }
+}
@@ -1,7 +1,7 @@
 package mote4.util.matrix;
 
 import mote4.util.shader.Bindable;
-import mote4.util.shader.Uniform;
+import mote4.util.shader.UniformHandle;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.lwjgl.BufferUtils;
@@ -15,10 +15,10 @@ import java.nio.FloatBuffer;
 public class CubeMapMatrix implements Bindable {
 
     protected Matrix4f[] matrix;
-    private final String uniformName;
+    private final UniformHandle uniform;
     
     public CubeMapMatrix(String un, float near, float far) {
-        uniformName = un;
+        uniform = new UniformHandle(un);
         matrix = new Matrix4f[6];
         for (int i = 0; i < 6; i++) {
             matrix[i] = new Matrix4f();
@@ -61,7 +61,7 @@ public class CubeMapMatrix implements Bindable {
             i += 16;
         }
         
-        Uniform.mat4(uniformName, buffer);
+        uniform.mat4(buffer);
     }
 
     public void translate(float x, float y, float z) {
@@ -1,7 +1,9 @@
 package mote4.util.matrix;
 
 import mote4.util.shader.Bindable;
-import mote4.util.shader.Uniform;
+import mote4.util.shader.ShaderMap;
+import mote4.util.shader.UniformBlocks;
+import mote4.util.shader.UniformHandle;
 import org.joml.Matrix3f;
 import org.lwjgl.BufferUtils;
 
@@ -9,6 +11,10 @@ import java.nio.FloatBuffer;
 
 /**
  * Encapsulates a projection, view, and model matrix in one object.
+ * If the current program has the Camera and Model uniform blocks described
+ * in UniformBlocks, the matrices are written to those blocks; projection and
+ * view are then only uploaded when they change, instead of once per program.
+ * Otherwise they are set as plain uniforms.
  * @author Peter
  */
 public class Transform implements Bindable {
@@ -26,15 +32,16 @@ public class Transform implements Bindable {
     public final TransformationMatrix projection,view,model;
     private boolean enableSetCurrent = false, enableNormalMatrix = false;
     private Matrix3f normalMatrix;
+    private final UniformHandle normalMatrixUniform = new UniformHandle("normalMatrix");
     
     public Transform() {
         this(false);
     }
     public Transform(boolean e) {
         enableSetCurrent = e;
-        projection = new TransformationMatrix("projectionMatrix");
-        view = new TransformationMatrix("viewMatrix");
-        model = new TransformationMatrix("modelMatrix");
+        projection = new CameraMatrix("projectionMatrix");
+        view = new CameraMatrix("viewMatrix");
+        model = new ModelMatrix("modelMatrix");
         normalMatrix = new Matrix3f();
     }
 
@@ -42,25 +49,63 @@ public class Transform implements Bindable {
     public void bind() {
         if (enableSetCurrent)
             currentTransform = this;
-        projection.bind();
-        view.bind();
+        if (ShaderMap.usesBlock(UniformBlocks.CAMERA_BINDING))
+            UniformBlocks.camera(projection.matrix, view.matrix);
+        else {
+            projection.bind();
+            view.bind();
+        }
         model.bind();
-        if (enableNormalMatrix)
-            bindWorldspaceNormalMatrix();
     }
 
-    private void bindWorldspaceNormalMatrix() {
+    private void updateNormalMatrix() {
         normalMatrix.identity();
 
         normalMatrix.set(model.matrix);
         normalMatrix.invert();
         normalMatrix.transpose();
+    }
+
+    /**
+     * Binds projection and view together to the Camera block when the program has it.
+     */
+    private class CameraMatrix extends TransformationMatrix {
+        CameraMatrix(String name) { super(name); }
+
+        @Override
+        public void bind() {
+            if (ShaderMap.usesBlock(UniformBlocks.CAMERA_BINDING))
+                UniformBlocks.camera(projection.matrix, view.matrix);
+            else
+                super.bind();
+        }
+    }
+
+    /**
+     * Binds the model matrix, and the normal matrix if enabled, to a new
+     * range of the Model block when the program has it.
+     */
+    private class ModelMatrix extends TransformationMatrix {
+        ModelMatrix(String name) { super(name); }
 
-        normalMatrix.get(normalMatrixBuffer);
-        Uniform.mat3("normalMatrix", normalMatrixBuffer);
+        @Override
+        public void bind() {
+            if (enableNormalMatrix)
+                updateNormalMatrix();
+            if (ShaderMap.usesBlock(UniformBlocks.MODEL_BINDING)) {
+                UniformBlocks.model(matrix, enableNormalMatrix ? normalMatrix : null);
+                return;
+            }
+            super.bind();
+            if (enableNormalMatrix) {
+                normalMatrix.get(normalMatrixBuffer);
+                normalMatrixUniform.mat3(normalMatrixBuffer);
+            }
+        }
     }
 
     public void enableNormalMatrix(boolean b) { enableNormalMatrix = b; }
+    public boolean normalMatrixEnabled() { return enableNormalMatrix; }
 
     /**
      * Sets the view matrix to an orthographic view, making walls and floors appear like 2D tiles.
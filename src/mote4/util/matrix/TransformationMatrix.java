@@ -2,6 +2,7 @@ package mote4.util.matrix;
 
 import mote4.util.shader.Bindable;
 import mote4.util.shader.Uniform;
+import mote4.util.shader.UniformHandle;
 import org.joml.Matrix4f;
 import org.joml.Vector3d;
 import org.joml.Vector3f;
@@ -20,12 +21,14 @@ public class TransformationMatrix implements Bindable {
     private static FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
 
     protected String uniformName;
+    protected UniformHandle uniform;
     protected Matrix4f matrix;
     protected List<Matrix4f> stack;
     protected int stackIndex;
     
     public TransformationMatrix(String name) {
         uniformName = name;
+        uniform = new UniformHandle(name);
         stack = new ArrayList<>();
         stackIndex = -1;
         matrix = new Matrix4f();
@@ -136,7 +139,7 @@ public class TransformationMatrix implements Bindable {
     public void bind() {
         //FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
         matrix.get(buffer);
-        Uniform.mat4(uniformName, buffer);
+        uniform.mat4(buffer);
     }
 
     public void bindAs(String name) {
@@ -0,0 +1,67 @@
+package mote4.util.pacing;
+
+/**
+ * Limits the framerate by waiting at the end of every frame.
+ * Frames are scheduled at fixed intervals from the first frame, so time
+ * lost to oversleeping is made up by later frames instead of accumulating.
+ * If a frame is late by more than a whole interval the schedule restarts
+ * from the current time rather than rushing to catch up.
+ *
+ * Subclasses decide how to wait until the next frame is due.
+ * @author Peter
+ */
+public abstract class FramePacer {
+
+    private long frameStart = -1; // when the current frame was scheduled to start
+    private long returned; // when sync() last returned
+    private int fps;
+
+    /**
+     * Waits until it is time to start the next frame.
+     * @param fps The target framerate.  A value <= 0 returns immediately.
+     */
+    public void sync(int fps) {
+        long now = System.nanoTime();
+        if (fps <= 0 || frameStart == -1 || fps != this.fps) {
+            this.fps = fps;
+            frameStart = returned = now;
+            return;
+        }
+        frameTime(now-returned);
+        long period = 1_000_000_000L/fps;
+        long deadline = frameStart+period;
+        if (now-deadline > period)
+            deadline = now; // too far behind, restart the schedule
+        else
+            waitUntil(wakeTime(deadline));
+        frameStart = deadline;
+        returned = System.nanoTime();
+    }
+
+    /**
+     * Forgets the schedule, the next call to sync() will not wait.
+     */
+    public void reset() {
+        frameStart = -1;
+    }
+
+    /**
+     * Waits until System.nanoTime() reaches a time.
+     * @param time
+     */
+    protected abstract void waitUntil(long time);
+
+    /**
+     * When sync() should return for a frame that is due at the given time.
+     * @param deadline
+     * @return
+     */
+    protected long wakeTime(long deadline) { return deadline; }
+
+    /**
+     * Called with the time between the last return from sync() and the
+     * start of the current call, which is the time the frame took to run.
+     * @param nanos
+     */
+    protected void frameTime(long nanos) {}
+}
@@ -0,0 +1,42 @@
+package mote4.util.pacing;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Parks the thread for most of the wait, then spins for the last part.
+ * The spin time follows the largest recent oversleep of a park, so the
+ * thread only spins for as long as parking is unreliable on this system.
+ * @author Peter
+ */
+public class HybridPacer extends FramePacer {
+
+    private static final long MIN_SPIN = 50_000, MAX_SPIN = 2_000_000;
+
+    private long spin = 500_000; // time to spin before a deadline, in nanoseconds
+
+    @Override
+    protected void waitUntil(long time) {
+        long now = System.nanoTime();
+        while (time-now > spin) {
+            long request = time-now-spin;
+            LockSupport.parkNanos(request);
+            long woke = System.nanoTime();
+            if (woke-now >= request) {
+                long over = woke-now-request;
+                // grow quickly when a park overshoots, shrink slowly otherwise
+                if (over*2 > spin)
+                    spin = Math.min(MAX_SPIN, over*2);
+                else
+                    spin = Math.max(MIN_SPIN, spin - spin/64);
+            }
+            now = woke;
+        }
+        while (System.nanoTime()-time < 0)
+            Thread.onSpinWait();
+    }
+
+    /**
+     * @return The time spent spinning before each deadline, in nanoseconds.
+     */
+    public long spinTime() { return spin; }
+}
@@ -0,0 +1,95 @@
+package mote4.util.pacing;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares frame pacing strategies without a window.
+ * Every frame busy-waits for a random 20-60% of the frame interval to stand
+ * in for update and render, then calls sync().  The time at which each frame's
+ * work finishes stands in for when it is presented.
+ *
+ * For every strategy and framerate this prints the achieved framerate, the
+ * mean and 99th percentile deviation from the target interval of the time
+ * between returns from sync() (how accurately the pacer wakes) and between
+ * presents (what the player sees), and the CPU time spent inside sync() as
+ * a percentage of one core.
+ *
+ * Usage: PacingBenchmark [seconds per run]
+ * @author Peter
+ */
+public class PacingBenchmark {
+
+    private static final int[] RATES = {60, 144, 240};
+
+    public static void main(String[] args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!threads.isCurrentThreadCpuTimeSupported()) {
+            System.err.println("Thread CPU time is not supported on this JVM.");
+            return;
+        }
+        String[] names = {"yield", "park", "hybrid", "predictive"};
+        Supplier<?>[] pacers = {YieldPacer::new, ParkPacer::new, HybridPacer::new, PredictivePacer::new};
+
+        // warm up the JIT before timing anything
+        for (Supplier<?> pacer : pacers)
+            run((FramePacer)pacer.get(), 240, .2, threads);
+
+        System.out.printf("%-11s %5s %9s %10s %10s %10s %10s %9s%n", "strategy", "fps", "achieved",
+                "wake ms", "wake p99", "present ms", "pres p99", "sync cpu");
+        for (int fps : RATES)
+            for (int i = 0; i < pacers.length; i++) {
+                double[] r = run((FramePacer)pacers[i].get(), fps, seconds, threads);
+                System.out.printf("%-11s %5d %9.1f %10.3f %10.3f %10.3f %10.3f %8.1f%%%n",
+                        names[i], fps, r[0], r[1], r[2], r[3], r[4], r[5]);
+            }
+    }
+
+    /**
+     * @return Achieved fps, mean and p99 wake and present interval deviation in ms, and sync CPU percentage.
+     */
+    private static double[] run(FramePacer pacer, int fps, double seconds, ThreadMXBean threads) {
+        Random random = new Random(1);
+        int frames = (int)(fps*seconds);
+        long period = 1_000_000_000L/fps;
+        long[] wakes = new long[frames], presents = new long[frames];
+        long syncCpu = 0;
+
+        pacer.sync(fps);
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            wakes[i] = System.nanoTime();
+            long work = (long)(period*(.2 + .4*random.nextDouble()));
+            long end = System.nanoTime()+work;
+            while (System.nanoTime() < end)
+                Thread.onSpinWait();
+            presents[i] = System.nanoTime();
+
+            long cpu = threads.getCurrentThreadCpuTime();
+            pacer.sync(fps);
+            syncCpu += threads.getCurrentThreadCpuTime()-cpu;
+        }
+        long elapsed = System.nanoTime()-start;
+
+        double[] wake = deviation(wakes, period), present = deviation(presents, period);
+        return new double[] {frames/(elapsed/1e9), wake[0], wake[1], present[0], present[1], syncCpu*100.0/elapsed};
+    }
+
+    /**
+     * @return The mean and 99th percentile deviation of the intervals from the period, in ms.
+     */
+    private static double[] deviation(long[] times, long period) {
+        double[] deviation = new double[times.length-1];
+        double sum = 0;
+        for (int i = 1; i < times.length; i++) {
+            deviation[i-1] = Math.abs(times[i]-times[i-1]-period)/1e6;
+            sum += deviation[i-1];
+        }
+        Arrays.sort(deviation);
+        return new double[] {sum/deviation.length, deviation[(int)Math.ceil(.99*deviation.length)-1]};
+    }
+}
@@ -0,0 +1,35 @@
+package mote4.util.pacing;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Parks the thread until the next frame, waking early by the amount the
+ * thread has recently overslept.  Never spins, so it uses the least CPU,
+ * at the cost of frames occasionally starting a little late or early.
+ * @author Peter
+ */
+public class ParkPacer extends FramePacer {
+
+    private static final double SMOOTHING = .1;
+
+    private double oversleep = 100_000; // estimated oversleep of one park, in nanoseconds
+
+    @Override
+    protected void waitUntil(long time) {
+        long now = System.nanoTime();
+        while (time-now > oversleep) {
+            long request = time-now-(long)oversleep;
+            LockSupport.parkNanos(request);
+            long woke = System.nanoTime();
+            // spurious wakeups return early and say nothing about oversleep
+            if (woke-now >= request)
+                oversleep += (woke-now-request-oversleep)*SMOOTHING;
+            now = woke;
+        }
+    }
+
+    /**
+     * @return The current estimate of how late a park returns, in nanoseconds.
+     */
+    public double oversleep() { return oversleep; }
+}
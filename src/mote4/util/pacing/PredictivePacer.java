@@ -0,0 +1,59 @@
+package mote4.util.pacing;
+
+/**
+ * Predicts how long the next frame will take to run, and starts it late
+ * enough that it finishes when it is due instead of when it starts.
+ * Frames are presented at the same steady rate as with HybridPacer, but each
+ * frame reads input closer to when it is shown, reducing latency.
+ *
+ * The prediction is the recent average frame time plus a multiple of its
+ * deviation, so frames that take longer than usual rarely miss their deadline.
+ * @author Peter
+ */
+public class PredictivePacer extends HybridPacer {
+
+    private static final double SMOOTHING = .1;
+
+    private final double margin;
+    private double mean = -1, deviation;
+
+    public PredictivePacer() {
+        this(2);
+    }
+    /**
+     * @param margin How many deviations to add to the predicted frame time.
+     */
+    public PredictivePacer(double margin) {
+        this.margin = margin;
+    }
+
+    @Override
+    protected void frameTime(long nanos) {
+        if (mean < 0) {
+            mean = nanos;
+            return;
+        }
+        double diff = nanos-mean;
+        mean += diff*SMOOTHING;
+        deviation += (Math.abs(diff)-deviation)*SMOOTHING;
+    }
+
+    @Override
+    protected long wakeTime(long deadline) {
+        return deadline-predicted();
+    }
+
+    /**
+     * @return The predicted time of the next frame, in nanoseconds.
+     */
+    public long predicted() {
+        return mean < 0 ? 0 : (long)(mean + deviation*margin);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        mean = -1;
+        deviation = 0;
+    }
+}
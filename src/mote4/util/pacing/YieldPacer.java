@@ -0,0 +1,45 @@
+package mote4.util.pacing;
+
+/**
+ * Sleeps in 1 ms steps, then yields for the last part of the frame.
+ * The time spent yielding adapts to how much the system oversleeps.
+ * Accurate, but keeps a core busy while yielding; this is how Window
+ * paced frames before FramePacer existed.
+ * @author kappa (On the LWJGL Forums)
+ */
+public class YieldPacer extends FramePacer {
+
+    private long yieldTime;
+
+    @Override
+    protected void waitUntil(long time) {
+        long remaining = time-System.nanoTime();
+        // yieldTime + remainder micro & nano seconds if smaller than remaining
+        long yield = Math.min(Math.max(0, remaining), yieldTime + Math.max(0, remaining) % (1000*1000));
+        long overSleep = 0;
+        try {
+            while (true) {
+                long t = time-System.nanoTime();
+                if (t > yield) {
+                    Thread.sleep(1);
+                } else if (t > 0) {
+                    // burn the last few CPU cycles to ensure accuracy
+                    Thread.yield();
+                } else {
+                    overSleep = -t;
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        // auto tune the time spent yielding
+        if (overSleep > yieldTime) {
+            // increase by 200 microseconds (1/5 a ms)
+            yieldTime = Math.min(yieldTime + 200*1000, Math.max(0, remaining));
+        } else if (overSleep < yieldTime - 200*1000) {
+            // decrease by 2 microseconds
+            yieldTime = Math.max(yieldTime - 2*1000, 0);
+        }
+    }
+}
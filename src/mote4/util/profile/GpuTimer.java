@@ -0,0 +1,250 @@
+package mote4.util.profile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mote4.scenegraph.Layer;
+import mote4.scenegraph.target.Target;
+
+/**
+ * Measures the GPU time of every render pass with timer queries.
+ * A pass starts whenever a Target is made current and ends when another
+ * Target is made current or the Layer that made it finishes rendering.
+ * Window marks Layers with beginLayer() and endLayer(), and Target calls pass().
+ *
+ * Queries are triple buffered: results are read two frames after they are
+ * recorded, so reading them does not wait on the GPU, and results that are
+ * still not available then are dropped.
+ * Each result is added to the Profiler on a separate GPU row, starting at
+ * the CPU time of the pass, and summed per Layer and Target.
+ *
+ * Disabled by default, in which case every method only checks a flag.
+ * @author Peter
+ */
+public class GpuTimer {
+
+    private static final int FRAMES = 3;
+    private static final double SMOOTHING = .1;
+
+    private static QueryBackend backend = new OpenGLQueryBackend();
+    private static boolean enabled = false;
+
+    /**
+     * The passes recorded in one frame.
+     */
+    private static class Frame {
+        int[] queries = new int[8];
+        Layer[] layers = new Layer[8];
+        Target[] targets = new Target[8];
+        long[] starts = new long[8];
+        int count;
+    }
+
+    /**
+     * GPU time of one Layer or Target.
+     */
+    private static class Stat {
+        long sum, last;
+        double average = -1;
+    }
+
+    private static final Frame[] frames = new Frame[FRAMES];
+    private static int frameIndex;
+    private static Layer currentLayer;
+    private static Target passTarget;
+    private static boolean passOpen;
+    private static final Map<Object,Stat> stats = new IdentityHashMap<>();
+    private static final List<Object> order = new ArrayList<>(); // keys in the order they first appeared
+    private static long dropped;
+
+    static {
+        for (int i = 0; i < FRAMES; i++)
+            frames[i] = new Frame();
+    }
+
+    /**
+     * Replaces the backend used for queries, deleting all queries of the old one.
+     * @param b The new backend, such as a NullQueryBackend.
+     */
+    public static void setBackend(QueryBackend b) {
+        destroy();
+        backend = b;
+    }
+    public static QueryBackend getBackend() { return backend; }
+
+    /**
+     * Enables timing.  Requires OpenGL 3.3 with the default backend.
+     * @param e
+     */
+    public static void setEnabled(boolean e) {
+        if (!e)
+            endPass();
+        enabled = e;
+    }
+    public static boolean isEnabled() { return enabled; }
+
+    /**
+     * Marks the start of a Layer's render.  Passes are attributed to this
+     * Layer until endLayer().
+     * @param l
+     */
+    public static void beginLayer(Layer l) {
+        if (!enabled)
+            return;
+        currentLayer = l;
+    }
+    public static void endLayer() {
+        if (!enabled)
+            return;
+        endPass();
+        currentLayer = null;
+    }
+
+    /**
+     * Starts a new pass, ending the previous one.  Called by Target.makeCurrent(),
+     * nothing happens if the Target is already being timed.
+     * @param t
+     */
+    public static void pass(Target t) {
+        if (!enabled || (passOpen && t == passTarget))
+            return;
+        endPass();
+        Frame f = frames[frameIndex];
+        if (f.count == f.queries.length) {
+            int n = f.count*2;
+            f.queries = Arrays.copyOf(f.queries, n);
+            f.layers = Arrays.copyOf(f.layers, n);
+            f.targets = Arrays.copyOf(f.targets, n);
+            f.starts = Arrays.copyOf(f.starts, n);
+        }
+        int i = f.count++;
+        if (f.queries[i] == 0)
+            f.queries[i] = backend.create();
+        f.layers[i] = currentLayer;
+        f.targets[i] = t;
+        f.starts[i] = System.nanoTime();
+        backend.begin(f.queries[i]);
+        passTarget = t;
+        passOpen = true;
+    }
+
+    private static void endPass() {
+        if (!passOpen)
+            return;
+        backend.end();
+        passOpen = false;
+        passTarget = null;
+    }
+
+    /**
+     * Marks the end of a frame, and reads the results of the oldest frame.
+     * Called by Window once per frame, after swapping buffers.
+     */
+    public static void frame() {
+        if (!enabled)
+            return;
+        endPass();
+        frameIndex = (frameIndex+1) % FRAMES;
+        collect(frames[frameIndex]);
+    }
+
+    private static void collect(Frame f) {
+        for (Stat s : stats.values())
+            s.sum = 0;
+        int collected = 0;
+        for (int i = 0; i < f.count; i++) {
+            int q = f.queries[i];
+            if (!backend.available(q)) {
+                dropped++;
+                continue;
+            }
+            collected++;
+            long nanos = backend.result(q);
+            if (f.layers[i] != null)
+                stat(f.layers[i]).sum += nanos;
+            stat(f.targets[i]).sum += nanos;
+            String name = f.layers[i] != null ? Profiler.name(f.layers[i])+" > "+Profiler.name(f.targets[i])
+                                              : Profiler.name(f.targets[i]);
+            Profiler.record(name, f.starts[i], nanos, Profiler.GPU_THREAD);
+        }
+        if (collected > 0)
+            for (Stat s : stats.values()) {
+                s.last = s.sum;
+                s.average = s.average < 0 ? s.sum : s.average + (s.sum-s.average)*SMOOTHING;
+            }
+        Arrays.fill(f.layers, 0, f.count, null);
+        Arrays.fill(f.targets, 0, f.count, null);
+        f.count = 0;
+    }
+
+    private static Stat stat(Object key) {
+        Stat s = stats.get(key);
+        if (s == null) {
+            s = new Stat();
+            stats.put(key, s);
+            order.add(key);
+        }
+        return s;
+    }
+
+    /**
+     * The GPU time of a Layer in the most recent frame with results.
+     * @param l
+     * @return The time in nanoseconds, or -1 if the Layer has not been timed.
+     */
+    public static long layerNanos(Layer l) { return last(l); }
+    /**
+     * The GPU time of all passes rendering to a Target in the most recent frame with results.
+     * @param t
+     * @return The time in nanoseconds, or -1 if the Target has not been timed.
+     */
+    public static long targetNanos(Target t) { return last(t); }
+    private static long last(Object key) {
+        Stat s = stats.get(key);
+        return s == null ? -1 : s.last;
+    }
+    /**
+     * @return The number of results that were not available in time.
+     */
+    public static long dropped() { return dropped; }
+
+    /**
+     * The smoothed GPU time of every Layer and Target.
+     * @return
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Object key : order) {
+            Stat s = stats.get(key);
+            sb.append(String.format("%-6s %-32s %8.3f ms%n", key instanceof Layer ? "layer" : "target",
+                    Profiler.name(key), Math.max(0, s.average)/1e6));
+        }
+        if (dropped > 0)
+            sb.append(dropped).append(" results dropped\n");
+        return sb.toString();
+    }
+
+    /**
+     * Deletes all queries and discards all results.
+     */
+    public static void destroy() {
+        endPass();
+        for (Frame f : frames) {
+            for (int i = 0; i < f.queries.length; i++)
+                if (f.queries[i] != 0) {
+                    backend.delete(f.queries[i]);
+                    f.queries[i] = 0;
+                }
+            Arrays.fill(f.layers, null);
+            Arrays.fill(f.targets, null);
+            f.count = 0;
+        }
+        stats.clear();
+        order.clear();
+        dropped = 0;
+        currentLayer = null;
+    }
+}
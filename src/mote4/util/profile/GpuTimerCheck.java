@@ -0,0 +1,176 @@
+package mote4.util.profile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import mote4.scenegraph.Layer;
+import mote4.scenegraph.target.Target;
+
+/**
+ * Checks GpuTimer's bookkeeping with a NullQueryBackend, without a GPU.
+ *
+ * Every frame renders the same passes: a Layer that switches between two
+ * Targets, making one current twice in a row, a second Layer, and a pass
+ * outside any Layer.  Every pass takes a different time, which also changes
+ * every frame, so each result can be traced to its pass and frame.
+ *
+ * The sums of a frame must be readable from layerNanos() and targetNanos()
+ * exactly two frames later, and never before.  Results that are not
+ * available when they are read must be dropped and counted, leaving the last
+ * sums alone.  Every collected pass must add one Profiler row on the GPU
+ * thread, named after its Layer and Target.  Queries must be reused once
+ * every frame of the ring has been used, and deleted by destroy().
+ *
+ * Usage: GpuTimerCheck [frames]
+ * @author Peter
+ */
+public class GpuTimerCheck {
+
+    private static class ShadowTarget extends Target {
+        @Override public void destroy() {}
+    }
+    private static class ScreenTarget extends Target {
+        @Override public void destroy() {}
+    }
+    private static class WorldLayer extends Layer {
+        WorldLayer(Target t) { super(t); }
+    }
+    private static class UILayer extends Layer {
+        UILayer(Target t) { super(t); }
+    }
+
+    private static final NullQueryBackend backend = new NullQueryBackend();
+    private static final Target shadow = new ShadowTarget(), screen = new ScreenTarget();
+    private static final Layer world = new WorldLayer(screen), ui = new UILayer(screen);
+
+    public static void main(String[] args) throws IOException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int late = frames/2; // the frame whose results are not ready when read
+
+        GpuTimer.setBackend(backend);
+        GpuTimer.setEnabled(true);
+        Profiler.setEnabled(true);
+        Profiler.reset();
+
+        List<String> expectedRows = new ArrayList<>();
+        int queries = 0;
+        for (int k = 0; k < frames; k++) {
+            render(k);
+            backend.setAvailable(k != late+2);
+            GpuTimer.frame();
+
+            // results are read two frames late
+            int read = k-2;
+            if (read < 0) {
+                if (GpuTimer.layerNanos(world) != -1 || GpuTimer.targetNanos(screen) != -1)
+                    fail("frame "+k+": results were read before they were two frames old");
+            } else if (read == late) {
+                if (GpuTimer.dropped() != 5)
+                    fail("frame "+k+": "+GpuTimer.dropped()+" results dropped, expected the 5 passes of frame "+read);
+                // the sums of the frame before are kept
+                checkSums(read-1, "frame "+k+" after dropping frame "+read);
+            } else {
+                checkSums(read, "frame "+k);
+                addRows(read, expectedRows);
+            }
+            if (k == 2)
+                queries = backend.created();
+        }
+        if (queries != 15 || backend.created() != queries)
+            fail(backend.created()+" queries exist, expected 5 passes for each of the 3 frames in flight");
+        System.out.println("OK: "+frames+" frames summed per Layer and Target two frames late, dropped results counted");
+
+        checkRows(expectedRows);
+
+        GpuTimer.destroy();
+        if (backend.created() != 0)
+            fail("destroy() left "+backend.created()+" queries");
+        GpuTimer.setEnabled(false);
+        Profiler.setEnabled(false);
+    }
+
+    /**
+     * The time of a pass in a frame, in whole microseconds so the trace shows it exactly.
+     */
+    private static long nanos(int pass, int frame) {
+        return (pass*1000 + frame*10000)*1000L;
+    }
+
+    private static void render(int k) {
+        GpuTimer.beginLayer(world);
+        pass(shadow, nanos(1, k));
+        pass(screen, nanos(2, k));
+        pass(screen, nanos(9, k)); // already current, not a new pass
+        pass(shadow, nanos(3, k));
+        GpuTimer.endLayer();
+
+        GpuTimer.beginLayer(ui);
+        pass(screen, nanos(4, k));
+        GpuTimer.endLayer();
+
+        pass(screen, nanos(5, k)); // outside any Layer, ended by frame()
+    }
+
+    private static void pass(Target t, long nanos) {
+        backend.setElapsed(nanos);
+        GpuTimer.pass(t);
+    }
+
+    private static void checkSums(int k, String what) {
+        check(GpuTimer.layerNanos(world), nanos(1, k)+nanos(2, k)+nanos(3, k), what+", WorldLayer");
+        check(GpuTimer.layerNanos(ui), nanos(4, k), what+", UILayer");
+        check(GpuTimer.targetNanos(shadow), nanos(1, k)+nanos(3, k), what+", ShadowTarget");
+        check(GpuTimer.targetNanos(screen), nanos(2, k)+nanos(4, k)+nanos(5, k), what+", ScreenTarget");
+    }
+    private static void check(long actual, long expected, String what) {
+        if (actual != expected)
+            fail(what+": "+actual+" ns, expected "+expected);
+    }
+
+    private static void addRows(int k, List<String> rows) {
+        rows.add("WorldLayer > ShadowTarget "+nanos(1, k)/1000);
+        rows.add("WorldLayer > ScreenTarget "+nanos(2, k)/1000);
+        rows.add("WorldLayer > ShadowTarget "+nanos(3, k)/1000);
+        rows.add("UILayer > ScreenTarget "+nanos(4, k)/1000);
+        rows.add("ScreenTarget "+nanos(5, k)/1000);
+    }
+
+    /**
+     * Compares the GPU rows of the exported trace with the passes that were collected.
+     */
+    private static void checkRows(List<String> expected) throws IOException {
+        Path file = Files.createTempFile("gputimer", ".json");
+        try {
+            Profiler.exportChromeTrace(file.toString());
+            List<String> rows = new ArrayList<>();
+            for (String line : Files.readAllLines(file)) {
+                if (!line.contains("\"ph\":\"X\"") || !line.contains("\"tid\":"+Profiler.GPU_THREAD+","))
+                    continue;
+                String name = field(line, "name").replace("\"", "");
+                String dur = field(line, "dur");
+                rows.add(name+" "+dur.substring(0, dur.indexOf('.')));
+            }
+            if (!rows.equals(expected))
+                fail("the GPU rows are "+rows+", expected "+expected);
+        } finally {
+            Files.delete(file);
+        }
+        System.out.println("OK: "+expected.size()+" GPU rows recorded in the Profiler");
+    }
+
+    private static String field(String line, String name) {
+        int start = line.indexOf("\""+name+"\":")+name.length()+3;
+        int end = start;
+        while (line.charAt(end) != ',' && line.charAt(end) != '}')
+            end++;
+        return line.substring(start, end);
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: "+message);
+        System.exit(1);
+    }
+}
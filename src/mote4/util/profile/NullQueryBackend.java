@@ -0,0 +1,57 @@
+package mote4.util.profile;
+
+import java.util.Arrays;
+
+/**
+ * A query backend that needs no OpenGL context.
+ * Every query reports the time that was set when it began, and results can
+ * be made unavailable to simulate a GPU that is behind.
+ * @author Peter
+ */
+public class NullQueryBackend implements QueryBackend {
+
+    private int nextQuery = 1, active = 0, created = 0;
+    private long elapsed = 0;
+    private long[] results = new long[16]; // by query
+    private boolean available = true;
+
+    /**
+     * @param nanos The time queries that begin from now on will report.
+     */
+    public void setElapsed(long nanos) { elapsed = nanos; }
+    /**
+     * @param a Whether query results are available.
+     */
+    public void setAvailable(boolean a) { available = a; }
+    /**
+     * @return The number of queries created and not deleted.
+     */
+    public int created() { return created; }
+
+    @Override
+    public int create() {
+        created++;
+        return nextQuery++;
+    }
+    @Override
+    public void delete(int query) { created--; }
+
+    @Override
+    public void begin(int query) {
+        if (active != 0)
+            throw new IllegalStateException("Query "+active+" is already active.");
+        active = query;
+        if (query >= results.length)
+            results = Arrays.copyOf(results, Math.max(query+1, results.length*2));
+        results[query] = elapsed;
+    }
+    @Override
+    public void end() {
+        if (active == 0)
+            throw new IllegalStateException("No query is active.");
+        active = 0;
+    }
+
+    @Override public boolean available(int query) { return available; }
+    @Override public long result(int query) { return results[query]; }
+}
@@ -0,0 +1,27 @@
+package mote4.util.profile;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL33.GL_TIME_ELAPSED;
+import static org.lwjgl.opengl.GL33.glGetQueryObjectui64;
+
+/**
+ * Times GpuTimer passes with GL_TIME_ELAPSED queries.
+ * @author Peter
+ */
+public class OpenGLQueryBackend implements QueryBackend {
+
+    @Override public int create() { return glGenQueries(); }
+    @Override public void delete(int query) { glDeleteQueries(query); }
+
+    @Override public void begin(int query) { glBeginQuery(GL_TIME_ELAPSED, query); }
+    @Override public void end() { glEndQuery(GL_TIME_ELAPSED); }
+
+    @Override
+    public boolean available(int query) {
+        return glGetQueryObjecti(query, GL_QUERY_RESULT_AVAILABLE) == GL_TRUE;
+    }
+    @Override
+    public long result(int query) {
+        return glGetQueryObjectui64(query, GL_QUERY_RESULT);
+    }
+}
@@ -0,0 +1,242 @@
+package mote4.util.profile;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records nested CPU timing scopes and frame times.
+ * Scopes are opened with begin() and closed with end() on the same thread,
+ * and can be nested.  Window records scopes for the update and render phases,
+ * every Layer and Scene, buffer swapping and frame syncing.
+ *
+ * Finished scopes are written to a fixed size ring buffer that any number of
+ * threads can write to without locking; once it is full the oldest scopes are
+ * overwritten.  The recorded scopes can be written as a Chrome trace, to be
+ * opened in chrome://tracing or Perfetto.  GpuTimer adds GPU pass times
+ * to the same trace on a separate row.
+ *
+ * The profiler is disabled by default, in which case begin() and end()
+ * only check a flag.
+ * @author Peter
+ */
+public class Profiler {
+
+    private static final int SCOPES = 1 << 16, FRAMES = 1024;
+    /**
+     * The thread ID GPU times are recorded under.
+     */
+    public static final long GPU_THREAD = 0;
+
+    private static volatile boolean enabled = false;
+
+    // finished scopes; seq holds index+1 once a slot is completely written
+    private static final AtomicLong head = new AtomicLong();
+    private static final AtomicLongArray seq = new AtomicLongArray(SCOPES);
+    private static final String[] names = new String[SCOPES];
+    private static final long[] starts = new long[SCOPES], durations = new long[SCOPES], threads = new long[SCOPES];
+
+    private static final ThreadLocal<Stack> stacks = ThreadLocal.withInitial(Stack::new);
+    private static final ClassValue<String> classNames = new ClassValue<>() {
+        @Override
+        protected String computeValue(Class<?> c) {
+            return c.getSimpleName().isEmpty() ? c.getName() : c.getSimpleName();
+        }
+    };
+    private static final long epoch = System.nanoTime();
+
+    private static final long[] frameTimes = new long[FRAMES];
+    private static final long[] sorted = new long[FRAMES];
+    private static int numFrames, frameIndex;
+    private static long frameStart = -1;
+
+    /**
+     * Open scopes of one thread.
+     */
+    private static class Stack {
+        String[] names = new String[16];
+        long[] starts = new long[16];
+        int depth;
+    }
+
+    public static void setEnabled(boolean e) {
+        enabled = e;
+        frameStart = -1;
+    }
+    public static boolean isEnabled() { return enabled; }
+
+    /**
+     * Opens a scope on the current thread.
+     * @param name
+     */
+    public static void begin(String name) {
+        if (!enabled)
+            return;
+        Stack s = stacks.get();
+        if (s.depth == s.names.length) {
+            s.names = Arrays.copyOf(s.names, s.depth*2);
+            s.starts = Arrays.copyOf(s.starts, s.depth*2);
+        }
+        s.names[s.depth] = name;
+        s.starts[s.depth++] = System.nanoTime();
+    }
+    /**
+     * Opens a scope named after an object's class, such as a Scene.
+     * @param o
+     */
+    public static void begin(Object o) {
+        if (enabled)
+            begin(classNames.get(o.getClass()));
+    }
+    /**
+     * The name scopes for an object are recorded under.
+     * @param o
+     * @return The simple name of the object's class.
+     */
+    public static String name(Object o) {
+        return classNames.get(o.getClass());
+    }
+
+    /**
+     * Closes the most recently opened scope on the current thread.
+     * Scopes opened while the profiler was disabled are ignored.
+     */
+    public static void end() {
+        if (!enabled)
+            return;
+        long now = System.nanoTime();
+        Stack s = stacks.get();
+        if (s.depth == 0)
+            return;
+        s.depth--;
+        write(s.names[s.depth], s.starts[s.depth], now-s.starts[s.depth], Thread.currentThread().getId());
+        s.names[s.depth] = null;
+    }
+
+    /**
+     * Records a scope that was timed elsewhere, such as on the GPU.
+     * @param name
+     * @param start The start time, from System.nanoTime().
+     * @param duration The duration in nanoseconds.
+     * @param thread The thread ID to show the scope under.
+     */
+    public static void record(String name, long start, long duration, long thread) {
+        if (enabled)
+            write(name, start, duration, thread);
+    }
+
+    private static void write(String name, long start, long duration, long thread) {
+        long index = head.getAndIncrement();
+        int slot = (int)(index & (SCOPES-1));
+        seq.set(slot, 0);
+        VarHandle.storeStoreFence();
+        names[slot] = name;
+        starts[slot] = start;
+        durations[slot] = duration;
+        threads[slot] = thread;
+        seq.lazySet(slot, index+1);
+    }
+
+    /**
+     * Marks the end of a frame, recording the time since the previous call.
+     * Called by Window once per frame.
+     */
+    public static void frame() {
+        if (!enabled)
+            return;
+        long now = System.nanoTime();
+        if (frameStart != -1) {
+            frameTimes[frameIndex] = now-frameStart;
+            frameIndex = (frameIndex+1) % FRAMES;
+            numFrames = Math.min(numFrames+1, FRAMES);
+        }
+        frameStart = now;
+    }
+
+    /**
+     * A percentile of the recorded frame times, over the last 1024 frames.
+     * @param p The percentile, from 0 to 100.
+     * @return The frame time in milliseconds, or 0 if no frames were recorded.
+     */
+    public static double percentile(double p) {
+        if (numFrames == 0)
+            return 0;
+        System.arraycopy(frameTimes, 0, sorted, 0, numFrames);
+        Arrays.sort(sorted, 0, numFrames);
+        int i = (int)Math.ceil(p/100*numFrames)-1;
+        return sorted[Math.max(0, Math.min(numFrames-1, i))]/1e6;
+    }
+    public static double p50() { return percentile(50); }
+    public static double p95() { return percentile(95); }
+    public static double p99() { return percentile(99); }
+    public static int numFrames() { return numFrames; }
+
+    /**
+     * Discards all recorded scopes and frame times.
+     * Should not be called while other threads are recording.
+     */
+    public static void reset() {
+        for (int i = 0; i < SCOPES; i++)
+            seq.set(i, 0);
+        head.set(0);
+        numFrames = frameIndex = 0;
+        frameStart = -1;
+    }
+
+    public static String report() {
+        return String.format("%d frames: p50 %.2f ms, p95 %.2f ms, p99 %.2f ms", numFrames, p50(), p95(), p99());
+    }
+
+    /**
+     * Writes the recorded scopes in the Chrome trace event format.
+     * Scopes that are being overwritten while exporting are skipped.
+     * @param filepath
+     * @throws IOException
+     */
+    public static void exportChromeTrace(String filepath) throws IOException {
+        long end = head.get();
+        long start = Math.max(0, end-SCOPES);
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(filepath), StandardCharsets.UTF_8)) {
+            out.write("{\"traceEvents\":[\n");
+            out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":"+GPU_THREAD+",\"args\":{\"name\":\"GPU\"}}");
+            for (long index = start; index < end; index++) {
+                int slot = (int)(index & (SCOPES-1));
+                if (seq.get(slot) != index+1)
+                    continue;
+                String name = names[slot];
+                long ts = starts[slot]-epoch, dur = durations[slot], tid = threads[slot];
+                VarHandle.acquireFence();
+                if (seq.get(slot) != index+1) // overwritten while reading
+                    continue;
+                out.write(",\n");
+                out.write("{\"name\":\""+escape(name)+"\",\"ph\":\"X\",\"pid\":1,\"tid\":"+tid
+                        +",\"ts\":"+micros(ts)+",\"dur\":"+micros(dur)+"}");
+            }
+            out.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+        }
+    }
+
+    private static String micros(long nanos) {
+        return nanos/1000+"."+String.format("%03d", nanos%1000);
+    }
+    private static String escape(String s) {
+        if (s == null)
+            return "";
+        StringBuilder sb = new StringBuilder(s.length());
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int)c));
+            else
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,34 @@
+package mote4.util.profile;
+
+/**
+ * The timer query calls made by GpuTimer.
+ * The default backend uses OpenGL GL_TIME_ELAPSED queries; a NullQueryBackend
+ * can be used instead to test GpuTimer without a GPU.
+ * @author Peter
+ */
+public interface QueryBackend {
+
+    /**
+     * @return A new query object.
+     */
+    int create();
+    void delete(int query);
+
+    /**
+     * Starts timing the commands that follow.  Only one query is active at a time.
+     * @param query
+     */
+    void begin(int query);
+    void end();
+
+    /**
+     * @param query
+     * @return Whether the result of the query can be read without waiting.
+     */
+    boolean available(int query);
+    /**
+     * @param query
+     * @return The GPU time elapsed between begin and end, in nanoseconds.
+     */
+    long result(int query);
+}
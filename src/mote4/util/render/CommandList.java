@@ -0,0 +1,283 @@
+package mote4.util.render;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import mote4.util.matrix.Transform;
+import mote4.util.shader.Bindable;
+import mote4.util.shader.ShaderMap;
+import mote4.util.shader.UniformHandle;
+import mote4.util.state.GLState;
+import mote4.util.texture.Texture;
+import mote4.util.texture.TextureMap;
+import mote4.util.vertex.mesh.IndexedVAO;
+import mote4.util.vertex.mesh.InstanceBuffer;
+import mote4.util.vertex.mesh.Mesh;
+import mote4.util.vertex.mesh.VAO;
+import org.joml.Matrix4f;
+import org.lwjgl.BufferUtils;
+
+/**
+ * A list of draw commands, recorded without making any OpenGL calls and
+ * replayed later on the thread that owns the context.
+ * This allows the expensive parts of rendering a scene (culling, sorting,
+ * matrix math) to run on any thread; see RecordingLayer.
+ *
+ * Recording only reads ShaderMap and TextureMap, so programs and textures
+ * must not be added or removed while lists are being recorded.  A list must
+ * only be used by one thread at a time, and is reused by calling clear().
+ * @author Peter
+ */
+public class CommandList {
+
+    private static final int PROGRAM = 0, TEXTURE = 1, UNIFORM = 2, UNIFORM_INT = 3,
+                             MATRIX = 4, TRANSFORM = 5, BIND = 6, DRAW = 7, DRAW_INSTANCED = 8;
+
+    // shared by replay(), which only runs on the OpenGL thread
+    private static final FloatBuffer matrixBuffer = BufferUtils.createFloatBuffer(16);
+    private static final Transform transform = new Transform();
+
+    private int[] ops = new int[64];
+    private float[] floats = new float[256];
+    private Object[] refs = new Object[64];
+    private int numOps, numFloats, numRefs, numCommands;
+
+    /**
+     * Removes all commands.
+     */
+    public void clear() {
+        Arrays.fill(refs, 0, numRefs, null);
+        numOps = numFloats = numRefs = numCommands = 0;
+    }
+
+    /**
+     * The number of commands recorded.
+     * @return
+     */
+    public int size() { return numCommands; }
+    public boolean isEmpty() { return numCommands == 0; }
+
+    /**
+     * @param name The name of the program in ShaderMap.
+     * @return This list.
+     */
+    public CommandList program(String name) {
+        if (ShaderMap.get(name) == -1)
+            throw new IllegalArgumentException(name+" is not a valid shader program!");
+        op(PROGRAM);
+        ref(name);
+        return this;
+    }
+
+    /**
+     * Binds a texture to a texture unit.
+     * @param unit The texture unit index.
+     * @param texture
+     * @return This list.
+     */
+    public CommandList texture(int unit, Texture texture) {
+        op(TEXTURE);
+        arg(unit);
+        ref(texture);
+        return this;
+    }
+    /**
+     * @param unit The texture unit index.
+     * @param name The name of the texture in TextureMap.
+     * @return This list.
+     */
+    public CommandList texture(int unit, String name) {
+        Texture t = TextureMap.get(name);
+        if (t == null)
+            throw new IllegalArgumentException("Attempted to bind unrecognized texture '"+name+"'.");
+        return texture(unit, t);
+    }
+
+    public CommandList uniform(UniformHandle u, float x) {
+        return uniform(u, 1, x, 0, 0, 0);
+    }
+    public CommandList uniform(UniformHandle u, float x, float y) {
+        return uniform(u, 2, x, y, 0, 0);
+    }
+    public CommandList uniform(UniformHandle u, float x, float y, float z) {
+        return uniform(u, 3, x, y, z, 0);
+    }
+    public CommandList uniform(UniformHandle u, float x, float y, float z, float w) {
+        return uniform(u, 4, x, y, z, w);
+    }
+    private CommandList uniform(UniformHandle u, int size, float x, float y, float z, float w) {
+        op(UNIFORM);
+        arg(size);
+        ref(u);
+        floats(4);
+        floats[numFloats++] = x;
+        floats[numFloats++] = y;
+        floats[numFloats++] = z;
+        floats[numFloats++] = w;
+        return this;
+    }
+    public CommandList uniformInt(UniformHandle u, int x) {
+        op(UNIFORM_INT);
+        arg(x);
+        ref(u);
+        return this;
+    }
+    /**
+     * Sets a 4x4 matrix uniform.  The matrix is copied.
+     * @param u
+     * @param m
+     * @return This list.
+     */
+    public CommandList uniform(UniformHandle u, Matrix4f m) {
+        op(MATRIX);
+        ref(u);
+        floats(16);
+        m.get(floats, numFloats);
+        numFloats += 16;
+        return this;
+    }
+
+    /**
+     * Copies the current matrices of a transform, which is bound on replay.
+     * @param t
+     * @return This list.
+     */
+    public CommandList transform(Transform t) {
+        op(TRANSFORM);
+        arg(t.normalMatrixEnabled() ? 1 : 0);
+        floats(48);
+        t.projection.matrix().get(floats, numFloats);
+        t.view.matrix().get(floats, numFloats+16);
+        t.model.matrix().get(floats, numFloats+32);
+        numFloats += 48;
+        return this;
+    }
+
+    /**
+     * Binds any other state on replay.  The object is bound when the list
+     * is replayed, not copied, so it must not change until then.
+     * @param b
+     * @return This list.
+     */
+    public CommandList bind(Bindable b) {
+        op(BIND);
+        ref(b);
+        return this;
+    }
+
+    public CommandList draw(Mesh mesh) {
+        op(DRAW);
+        ref(mesh);
+        return this;
+    }
+    /**
+     * Draws the mesh once per instance in the buffer, which must be attached to the mesh.
+     * The buffer may be filled while recording, as it is only uploaded on replay.
+     * @param buffer
+     * @param mesh
+     * @return This list.
+     */
+    public CommandList draw(InstanceBuffer buffer, VAO mesh) {
+        op(DRAW_INSTANCED);
+        ref(buffer);
+        ref(mesh);
+        return this;
+    }
+    public CommandList draw(InstanceBuffer buffer, IndexedVAO mesh) {
+        op(DRAW_INSTANCED);
+        ref(buffer);
+        ref(mesh);
+        return this;
+    }
+
+    /**
+     * Executes the commands in the order they were recorded.
+     * Must be called on the thread that owns the OpenGL context.
+     * State changes go through ShaderMap and GLState, so redundant ones are skipped.
+     * Draws and uniform block writes also go through GLState, so everything
+     * a replay does can be seen with a RecordingBackend.
+     */
+    public void replay() {
+        int o = 0, f = 0, r = 0;
+        boolean textures = false;
+        while (o < numOps) {
+            switch (ops[o++]) {
+                case PROGRAM:
+                    ShaderMap.use((String)refs[r++]);
+                    break;
+                case TEXTURE:
+                    GLState.activeTexture(ops[o++]);
+                    ((Texture)refs[r++]).bind();
+                    textures = true;
+                    break;
+                case UNIFORM: {
+                    int size = ops[o++];
+                    UniformHandle u = (UniformHandle)refs[r++];
+                    switch (size) {
+                        case 1: u.vec(floats[f]); break;
+                        case 2: u.vec(floats[f], floats[f+1]); break;
+                        case 3: u.vec(floats[f], floats[f+1], floats[f+2]); break;
+                        default: u.vec(floats[f], floats[f+1], floats[f+2], floats[f+3]); break;
+                    }
+                    f += 4;
+                    break;
+                }
+                case UNIFORM_INT:
+                    ((UniformHandle)refs[r++]).vecInt(ops[o++]);
+                    break;
+                case MATRIX:
+                    matrixBuffer.clear();
+                    matrixBuffer.put(floats, f, 16).flip();
+                    ((UniformHandle)refs[r++]).mat4(matrixBuffer);
+                    f += 16;
+                    break;
+                case TRANSFORM:
+                    transform.enableNormalMatrix(ops[o++] == 1);
+                    transform.projection.matrix().set(floats, f);
+                    transform.view.matrix().set(floats, f+16);
+                    transform.model.matrix().set(floats, f+32);
+                    transform.bind();
+                    f += 48;
+                    break;
+                case BIND:
+                    ((Bindable)refs[r++]).bind();
+                    break;
+                case DRAW:
+                    ((Mesh)refs[r++]).render();
+                    break;
+                case DRAW_INSTANCED: {
+                    InstanceBuffer buffer = (InstanceBuffer)refs[r++];
+                    Object mesh = refs[r++];
+                    if (mesh instanceof VAO)
+                        buffer.render((VAO)mesh);
+                    else
+                        buffer.render((IndexedVAO)mesh);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Corrupt command list.");
+            }
+        }
+        if (textures)
+            GLState.activeTexture(0);
+    }
+
+    private void op(int op) {
+        numCommands++;
+        arg(op);
+    }
+    private void arg(int x) {
+        if (numOps == ops.length)
+            ops = Arrays.copyOf(ops, numOps*2);
+        ops[numOps++] = x;
+    }
+    private void ref(Object o) {
+        if (numRefs == refs.length)
+            refs = Arrays.copyOf(refs, numRefs*2);
+        refs[numRefs++] = o;
+    }
+    private void floats(int n) {
+        if (numFloats+n > floats.length)
+            floats = Arrays.copyOf(floats, Math.max(floats.length*2, numFloats+n));
+    }
+}
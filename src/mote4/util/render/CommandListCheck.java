@@ -0,0 +1,282 @@
+package mote4.util.render;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import mote4.util.matrix.Transform;
+import mote4.util.shader.ShaderMap;
+import mote4.util.shader.UniformBlocks;
+import mote4.util.shader.UniformHandle;
+import mote4.util.state.GLState;
+import mote4.util.state.RecordingBackend;
+import mote4.util.texture.Texture;
+import mote4.util.vertex.mesh.IndexedVAO;
+import mote4.util.vertex.mesh.InstanceBuffer;
+import mote4.util.vertex.mesh.VAO;
+import org.joml.Matrix4f;
+import org.lwjgl.BufferUtils;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+
+/**
+ * Checks that CommandList.replay() makes the same OpenGL calls, in the same
+ * order, as making the recorded calls directly, using a RecordingBackend
+ * and programs registered without OpenGL.
+ *
+ * Random lists mix programs with and without the Camera and Model uniform
+ * blocks, textures, uniforms, transforms, other state and draws of plain,
+ * indexed and instanced meshes.  Values are changed after recording, as the
+ * list must replay what was current when each command was recorded.  A fixed
+ * list also checks the exact order of programs, block ranges and draws.
+ *
+ * Usage: CommandListCheck [lists]
+ * @author Peter
+ */
+public class CommandListCheck {
+
+    private static final int FLAT = 21, BLOCKS = 22;
+
+    private static final UniformHandle tint = new UniformHandle("tint"),
+                                       level = new UniformHandle("level"),
+                                       extra = new UniformHandle("extraMatrix");
+
+    public static void main(String[] args) {
+        int lists = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Random random = new Random(19);
+
+        HashMap<String,Integer> flatUniforms = new HashMap<>();
+        flatUniforms.put("projectionMatrix", 0);
+        flatUniforms.put("viewMatrix", 1);
+        flatUniforms.put("modelMatrix", 2);
+        flatUniforms.put("normalMatrix", 3);
+        flatUniforms.put("tint", 4);
+        flatUniforms.put("level", 5);
+        flatUniforms.put("extraMatrix", 6);
+        ShaderMap.add(FLAT, new int[0], "check-flat", 0, flatUniforms);
+        HashMap<String,Integer> blockUniforms = new HashMap<>();
+        blockUniforms.put("tint", 0);
+        blockUniforms.put("level", 1);
+        blockUniforms.put("extraMatrix", 2);
+        ShaderMap.add(BLOCKS, new int[0], "check-blocks",
+                (1 << UniformBlocks.CAMERA_BINDING) | (1 << UniformBlocks.MODEL_BINDING), blockUniforms);
+
+        GLState.setBackend(new RecordingBackend());
+        Scene scene = new Scene();
+
+        int commands = 0;
+        for (int n = 0; n < lists; n++) {
+            CommandList list = new CommandList();
+            List<Runnable> direct = new ArrayList<>();
+            int size = 1+random.nextInt(40);
+            scene.program(random, list, direct);
+            for (int i = 0; i < size; i++) {
+                scene.record(random, list, direct);
+                scene.scramble(random);
+            }
+            commands += list.size();
+
+            List<String> replayed = run(scene, list::replay);
+            List<String> expected = run(scene, () -> {
+                boolean textures = false;
+                for (Runnable r : direct) {
+                    r.run();
+                    textures |= r instanceof TextureCommand;
+                }
+                if (textures)
+                    GLState.activeTexture(0);
+            });
+            compare(expected, replayed, "list "+n);
+        }
+        System.out.println("OK: "+lists+" lists, "+commands+" commands replayed like direct calls");
+
+        checkOrder(scene);
+    }
+
+    /**
+     * Runs the calls against a new backend, with a new uniform block buffer
+     * and the scene's instances waiting to be uploaded.
+     * @return The calls made.
+     */
+    private static List<String> run(Scene scene, Runnable calls) {
+        UniformBlocks.destroy();
+        scene.fillInstances();
+        RecordingBackend backend = new RecordingBackend();
+        GLState.setBackend(backend);
+        calls.run();
+        return new ArrayList<>(backend.calls());
+    }
+
+    /**
+     * A list with one of each draw, whose programs, block ranges and draws must come out in order.
+     */
+    private static void checkOrder(Scene scene) {
+        Transform t = new Transform();
+        CommandList list = new CommandList();
+        list.program("check-flat").transform(t).draw(scene.vao)
+            .program("check-blocks").transform(t).draw(scene.indexed)
+            .draw(scene.instances, scene.vao);
+        t.model.translate(1, 2, 3);
+        list.transform(t).draw(scene.indexed);
+        scene.numInstances = 2;
+
+        List<String> calls = run(scene, list::replay);
+        List<String> order = new ArrayList<>();
+        for (String call : calls)
+            if (call.startsWith("useProgram") || call.startsWith("bindBufferRange") || call.startsWith("draw"))
+                order.add(call);
+        // the block buffer is created with identity blocks by the first transform
+        // that uses it, so the identity camera is not written again
+        List<String> expected = List.of(
+            "useProgram "+FLAT,
+            "drawArrays "+GL_TRIANGLES+" 0 6",
+            "useProgram "+BLOCKS,
+            "bindBufferRange "+GL_UNIFORM_BUFFER+" 0 1 0 128",
+            "bindBufferRange "+GL_UNIFORM_BUFFER+" 1 1 128 112",
+            "bindBufferRange "+GL_UNIFORM_BUFFER+" 1 1 240 112",
+            "drawElements "+GL_TRIANGLES+" 36 "+GL_UNSIGNED_SHORT+" 0",
+            "drawArraysInstanced "+GL_TRIANGLES+" 0 6 2",
+            "bindBufferRange "+GL_UNIFORM_BUFFER+" 1 1 352 112",
+            "drawElements "+GL_TRIANGLES+" 36 "+GL_UNSIGNED_SHORT+" 0");
+        compare(expected, order, "the fixed list");
+        System.out.println("OK: programs, uniform block ranges and draws replayed in recorded order");
+    }
+
+    private static void compare(List<String> expected, List<String> actual, String what) {
+        for (int i = 0; i < Math.min(expected.size(), actual.size()); i++)
+            if (!expected.get(i).equals(actual.get(i)))
+                fail(what+": call "+i+" is \""+actual.get(i)+"\", expected \""+expected.get(i)+"\"");
+        if (expected.size() != actual.size())
+            fail(what+": "+actual.size()+" calls, expected "+expected.size());
+    }
+
+    /**
+     * Marks direct calls that change the active texture unit, which replay() resets afterwards.
+     */
+    private interface TextureCommand extends Runnable {}
+
+    /**
+     * Meshes, textures and state shared by the recorded lists.
+     */
+    private static class Scene {
+        final VAO vao = new VAO(31, new int[] {41}, new int[] {0, 1}, GL_TRIANGLES, 6);
+        final IndexedVAO indexed = new IndexedVAO(32, new int[] {42, 43}, new int[] {0, 2}, GL_TRIANGLES, 36, GL_UNSIGNED_SHORT);
+        final InstanceBuffer instances = new InstanceBuffer(true, false, 2);
+        final Texture[] textures = {new Texture(51, GL_TEXTURE_2D) {}, new Texture(52, GL_TEXTURE_2D) {}};
+        // changed after recording, so replay must not read them later
+        final Transform transform = new Transform();
+        final Matrix4f matrix = new Matrix4f();
+        final float[] color = new float[4];
+        int numInstances;
+
+        void program(Random random, CommandList list, List<Runnable> direct) {
+            String name = random.nextBoolean() ? "check-flat" : "check-blocks";
+            list.program(name);
+            direct.add(() -> ShaderMap.use(name));
+        }
+
+        void record(Random random, CommandList list, List<Runnable> direct) {
+            switch (random.nextInt(9)) {
+                case 0:
+                    program(random, list, direct);
+                    break;
+                case 1: {
+                    int unit = random.nextInt(3);
+                    Texture t = textures[random.nextInt(textures.length)];
+                    list.texture(unit, t);
+                    direct.add((TextureCommand)() -> {
+                        GLState.activeTexture(unit);
+                        t.bind();
+                    });
+                    break;
+                }
+                case 2: {
+                    float x = color[0], y = color[1], z = color[2], w = color[3];
+                    switch (random.nextInt(4)) {
+                        case 0: list.uniform(tint, x); direct.add(() -> tint.vec(x)); break;
+                        case 1: list.uniform(tint, x, y); direct.add(() -> tint.vec(x, y)); break;
+                        case 2: list.uniform(tint, x, y, z); direct.add(() -> tint.vec(x, y, z)); break;
+                        default: list.uniform(tint, x, y, z, w); direct.add(() -> tint.vec(x, y, z, w)); break;
+                    }
+                    break;
+                }
+                case 3: {
+                    int x = random.nextInt(4);
+                    list.uniformInt(level, x);
+                    direct.add(() -> level.vecInt(x));
+                    break;
+                }
+                case 4: {
+                    list.uniform(extra, matrix);
+                    FloatBuffer copy = matrix.get(BufferUtils.createFloatBuffer(16));
+                    direct.add(() -> extra.mat4(copy));
+                    break;
+                }
+                case 5: {
+                    transform.enableNormalMatrix(random.nextBoolean());
+                    list.transform(transform);
+                    Transform copy = new Transform();
+                    copy.enableNormalMatrix(transform.normalMatrixEnabled());
+                    copy.projection.matrix().set(transform.projection.matrix());
+                    copy.view.matrix().set(transform.view.matrix());
+                    copy.model.matrix().set(transform.model.matrix());
+                    direct.add(copy::bind);
+                    break;
+                }
+                case 6: {
+                    int x = random.nextInt(4);
+                    list.bind(() -> level.vecInt(x));
+                    direct.add(() -> level.vecInt(x));
+                    break;
+                }
+                case 7: {
+                    boolean plain = random.nextBoolean();
+                    list.draw(plain ? vao : indexed);
+                    direct.add(plain ? vao::render : indexed::render);
+                    break;
+                }
+                default: {
+                    if (random.nextBoolean()) {
+                        list.draw(instances, vao);
+                        direct.add(() -> instances.render(vao));
+                    } else {
+                        list.draw(instances, indexed);
+                        direct.add(() -> instances.render(indexed));
+                    }
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Changes every value a list might still refer to, after it was recorded.
+         */
+        void scramble(Random random) {
+            for (int i = 0; i < 4; i++)
+                color[i] = random.nextInt(3)/2f;
+            matrix.identity().translate(random.nextInt(3), 0, 0);
+            // few distinct values, so some calls are skipped as redundant
+            transform.projection.matrix().identity().scale(1+random.nextInt(2));
+            transform.view.matrix().identity().translate(0, random.nextInt(2), 0);
+            transform.model.matrix().identity().translate(0, 0, random.nextInt(3));
+            numInstances = random.nextInt(3);
+        }
+
+        /**
+         * Refills the instance buffer, which is only uploaded on replay.
+         */
+        void fillInstances() {
+            instances.clear();
+            for (int i = 0; i < numInstances; i++)
+                instances.add(new Matrix4f().translate(i, 0, 0), 1, 1, 1, 1);
+        }
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: "+message);
+        System.exit(1);
+    }
+}
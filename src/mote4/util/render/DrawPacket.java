@@ -0,0 +1,274 @@
+package mote4.util.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import mote4.scenegraph.target.Target;
+import mote4.util.matrix.Transform;
+import mote4.util.shader.Bindable;
+import mote4.util.shader.ShaderMap;
+import mote4.util.shader.UniformHandle;
+import mote4.util.texture.Texture;
+import mote4.util.texture.TextureMap;
+import mote4.util.vertex.mesh.IndexedVAO;
+import mote4.util.vertex.mesh.InstanceBuffer;
+import mote4.util.vertex.mesh.Mesh;
+import mote4.util.vertex.mesh.VAO;
+import org.joml.Matrix4f;
+
+/**
+ * Everything needed for one draw call: target, program, textures, uniforms,
+ * transform and mesh.  Packets are obtained from RenderQueue.submit(),
+ * filled in with the chained setters, and reused by the queue every frame,
+ * so they must not be kept after the queue is flushed.
+ * @author Peter
+ */
+public class DrawPacket {
+
+    static final int MAX_TEXTURES = 8;
+    // kinds of uniform values
+    static final byte FLOAT = 0, INT = 1;
+
+    Target target;
+    boolean translucent;
+    String programName;
+    int program;
+    final Texture[] textures = new Texture[MAX_TEXTURES];
+    int numTextures;
+    Mesh mesh;
+    InstanceBuffer instances;
+
+    boolean hasTransform, normalMatrix;
+    final Matrix4f projection = new Matrix4f(), view = new Matrix4f(), model = new Matrix4f();
+    float depth;
+    boolean hasDepth;
+
+    UniformHandle[] uniforms = new UniformHandle[4];
+    byte[] uniformKind = new byte[4];
+    byte[] uniformSize = new byte[4];
+    float[] uniformValues = new float[16];
+    int numUniforms;
+    final ArrayList<Bindable> bindables = new ArrayList<>();
+
+    DrawPacket() {}
+
+    void reset() {
+        target = null;
+        translucent = false;
+        programName = null;
+        program = 0;
+        for (int i = 0; i < numTextures; i++)
+            textures[i] = null;
+        numTextures = 0;
+        mesh = null;
+        instances = null;
+        hasTransform = false;
+        normalMatrix = false;
+        hasDepth = false;
+        for (int i = 0; i < numUniforms; i++)
+            uniforms[i] = null;
+        numUniforms = 0;
+        bindables.clear();
+    }
+
+    /**
+     * The Target to draw to.  Targets are drawn in the order they are first
+     * used in a frame; null draws to whichever Target is current at flush.
+     * @param t
+     * @return This packet.
+     */
+    public DrawPacket target(Target t) {
+        target = t;
+        return this;
+    }
+
+    /**
+     * Translucent packets are drawn after the opaque packets of their target,
+     * back to front, without writing depth.
+     * @param t
+     * @return This packet.
+     */
+    public DrawPacket translucent(boolean t) {
+        translucent = t;
+        return this;
+    }
+
+    /**
+     * @param name The name of the program in ShaderMap.
+     * @return This packet.
+     */
+    public DrawPacket program(String name) {
+        int id = ShaderMap.get(name);
+        if (id == -1)
+            throw new IllegalArgumentException(name+" is not a valid shader program!");
+        programName = name;
+        program = id;
+        return this;
+    }
+
+    /**
+     * Binds a texture to a texture unit.  The texture on unit 0 is used for sorting.
+     * @param unit The texture unit index.
+     * @param texture
+     * @return This packet.
+     */
+    public DrawPacket texture(int unit, Texture texture) {
+        if (unit < 0 || unit >= MAX_TEXTURES)
+            throw new IllegalArgumentException("Texture unit must be less than "+MAX_TEXTURES+".");
+        textures[unit] = texture;
+        numTextures = Math.max(numTextures, unit+1);
+        return this;
+    }
+    /**
+     * @param unit The texture unit index.
+     * @param name The name of the texture in TextureMap.
+     * @return This packet.
+     */
+    public DrawPacket texture(int unit, String name) {
+        Texture t = TextureMap.get(name);
+        if (t == null)
+            throw new IllegalArgumentException("Attempted to bind unrecognized texture '"+name+"'.");
+        return texture(unit, t);
+    }
+
+    /**
+     * Draws the mesh once, replacing any instances() set before.
+     * @param m
+     * @return This packet.
+     */
+    public DrawPacket mesh(Mesh m) {
+        mesh = m;
+        instances = null;
+        return this;
+    }
+    /**
+     * Draws a mesh once per instance in the buffer, which must be attached to the mesh.
+     * @param buffer
+     * @param m
+     * @return This packet.
+     */
+    public DrawPacket instances(InstanceBuffer buffer, VAO m) {
+        mesh = m;
+        instances = buffer;
+        return this;
+    }
+    public DrawPacket instances(InstanceBuffer buffer, IndexedVAO m) {
+        mesh = m;
+        instances = buffer;
+        return this;
+    }
+
+    /**
+     * Copies the current matrices of a transform.
+     * Unless depth() is set, the depth used for sorting is the distance of
+     * the model's origin along the view direction.
+     * @param t
+     * @return This packet.
+     */
+    public DrawPacket transform(Transform t) {
+        hasTransform = true;
+        projection.set(t.projection.matrix());
+        view.set(t.view.matrix());
+        model.set(t.model.matrix());
+        normalMatrix = t.normalMatrixEnabled();
+        return this;
+    }
+
+    /**
+     * Sets the depth used for sorting, in the range given to RenderQueue.setDepthRange().
+     * @param d
+     * @return This packet.
+     */
+    public DrawPacket depth(float d) {
+        depth = d;
+        hasDepth = true;
+        return this;
+    }
+
+    public DrawPacket uniform(UniformHandle u, float x) {
+        return addUniform(u, FLOAT, 1, x, 0, 0, 0);
+    }
+    public DrawPacket uniform(UniformHandle u, float x, float y) {
+        return addUniform(u, FLOAT, 2, x, y, 0, 0);
+    }
+    public DrawPacket uniform(UniformHandle u, float x, float y, float z) {
+        return addUniform(u, FLOAT, 3, x, y, z, 0);
+    }
+    public DrawPacket uniform(UniformHandle u, float x, float y, float z, float w) {
+        return addUniform(u, FLOAT, 4, x, y, z, w);
+    }
+    public DrawPacket uniformInt(UniformHandle u, int x) {
+        return addUniform(u, INT, 1, Float.intBitsToFloat(x), 0, 0, 0);
+    }
+
+    /**
+     * Adds any other state to set before drawing, bound after the transform and uniforms.
+     * @param b
+     * @return This packet.
+     */
+    public DrawPacket bind(Bindable b) {
+        bindables.add(b);
+        return this;
+    }
+
+    private DrawPacket addUniform(UniformHandle u, byte kind, int size, float x, float y, float z, float w) {
+        if (numUniforms == uniforms.length) {
+            int n = uniforms.length*2;
+            uniforms = Arrays.copyOf(uniforms, n);
+            uniformKind = Arrays.copyOf(uniformKind, n);
+            uniformSize = Arrays.copyOf(uniformSize, n);
+            uniformValues = Arrays.copyOf(uniformValues, n*4);
+        }
+        int i = numUniforms++;
+        uniforms[i] = u;
+        uniformKind[i] = kind;
+        uniformSize[i] = (byte)size;
+        uniformValues[i*4] = x;
+        uniformValues[i*4+1] = y;
+        uniformValues[i*4+2] = z;
+        uniformValues[i*4+3] = w;
+        return this;
+    }
+
+    void bindUniforms() {
+        for (int i = 0; i < numUniforms; i++) {
+            float[] v = uniformValues;
+            int j = i*4;
+            if (uniformKind[i] == INT) {
+                uniforms[i].vecInt(Float.floatToRawIntBits(v[j]));
+                continue;
+            }
+            switch (uniformSize[i]) {
+                case 1: uniforms[i].vec(v[j]); break;
+                case 2: uniforms[i].vec(v[j], v[j+1]); break;
+                case 3: uniforms[i].vec(v[j], v[j+1], v[j+2]); break;
+                default: uniforms[i].vec(v[j], v[j+1], v[j+2], v[j+3]); break;
+            }
+        }
+        for (Bindable b : bindables)
+            b.bind();
+    }
+
+    /**
+     * Draws the mesh, once per instance if instances() was set.
+     */
+    void render() {
+        if (instances == null)
+            mesh.render();
+        else if (mesh instanceof VAO)
+            instances.render((VAO)mesh);
+        else
+            instances.render((IndexedVAO)mesh);
+    }
+
+    /**
+     * The depth used for sorting, from depth() or the transform.
+     */
+    float sortDepth() {
+        if (hasDepth || !hasTransform)
+            return hasDepth ? depth : 0;
+        // view-space z of the model origin, negated so farther is larger
+        float x = model.m30(), y = model.m31(), z = model.m32();
+        return -(view.m02()*x + view.m12()*y + view.m22()*z + view.m32());
+    }
+}
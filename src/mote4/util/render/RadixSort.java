@@ -0,0 +1,57 @@
+package mote4.util.render;
+
+import java.util.Arrays;
+
+/**
+ * Least significant digit radix sort of 64-bit keys, compared as unsigned,
+ * carrying an int value with each key.  The sort is stable, so equal keys
+ * keep their original order.  Passes over bytes that are the same in every
+ * key are skipped, so keys that only use a few bits sort in a few passes.
+ * Does not allocate.
+ * @author Peter
+ */
+public class RadixSort {
+
+    private RadixSort() {}
+
+    /**
+     * Sorts keys and values together.
+     * @param keys The keys, sorted in place.
+     * @param values The values, reordered with the keys.
+     * @param n The number of entries to sort.
+     * @param tmpKeys Scratch space of at least n keys.
+     * @param tmpValues Scratch space of at least n values.
+     * @param counts Scratch space of at least 256 ints.
+     */
+    public static void sort(long[] keys, int[] values, int n,
+                            long[] tmpKeys, int[] tmpValues, int[] counts)
+    {
+        long[] srcK = keys, dstK = tmpKeys;
+        int[] srcV = values, dstV = tmpValues;
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0, 256, 0);
+            for (int i = 0; i < n; i++)
+                counts[(int)(srcK[i] >>> shift) & 0xFF]++;
+            if (n == 0 || counts[(int)(srcK[0] >>> shift) & 0xFF] == n)
+                continue; // every key has the same byte here
+
+            int sum = 0;
+            for (int b = 0; b < 256; b++) {
+                int c = counts[b];
+                counts[b] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                int j = counts[(int)(srcK[i] >>> shift) & 0xFF]++;
+                dstK[j] = srcK[i];
+                dstV[j] = srcV[i];
+            }
+            long[] tk = srcK; srcK = dstK; dstK = tk;
+            int[] tv = srcV; srcV = dstV; dstV = tv;
+        }
+        if (srcK != keys) {
+            System.arraycopy(srcK, 0, keys, 0, n);
+            System.arraycopy(srcV, 0, values, 0, n);
+        }
+    }
+}
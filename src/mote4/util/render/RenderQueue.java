@@ -0,0 +1,266 @@
+package mote4.util.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import mote4.scenegraph.target.Target;
+import mote4.util.matrix.Transform;
+import mote4.util.shader.ShaderMap;
+import mote4.util.state.GLState;
+import mote4.util.texture.Texture;
+
+import static org.lwjgl.opengl.GL11.glDepthMask;
+
+/**
+ * Collects draw calls for a frame and draws them in an order that needs
+ * as few state changes as possible.
+ *
+ * Instead of binding state and drawing immediately, a scene submits a
+ * DrawPacket per draw call.  flush() gives every packet a 64-bit sort key,
+ * radix sorts the keys, and draws the packets in key order, only changing
+ * the target, program and textures when they differ from the previous packet.
+ *
+ * Keys are ordered by target, then opaque before translucent.  Opaque packets
+ * are then grouped by program and texture and drawn front to back within a
+ * group; translucent packets are drawn back to front.
+ * @author Peter
+ */
+public class RenderQueue {
+
+    private static final int TARGET_SHIFT = 56, TRANSLUCENT_SHIFT = 55;
+    private static final int DEPTH_BITS = 24, PROGRAM_BITS = 10, TEXTURE_BITS = 16;
+    private static final long DEPTH_MAX = (1L << DEPTH_BITS)-1;
+
+    /**
+     * State changes made by the last flush, and how many the same packets
+     * would have needed if drawn in the order they were submitted.
+     */
+    public static class Stats {
+        public int packets;
+        public int targetChanges, programChanges, textureChanges, translucencyChanges;
+        public int unsortedTargetChanges, unsortedProgramChanges, unsortedTextureChanges, unsortedTranslucencyChanges;
+
+        public int changes() {
+            return targetChanges + programChanges + textureChanges + translucencyChanges;
+        }
+        public int unsortedChanges() {
+            return unsortedTargetChanges + unsortedProgramChanges + unsortedTextureChanges + unsortedTranslucencyChanges;
+        }
+        /**
+         * The number of state changes avoided by sorting.
+         * @return
+         */
+        public int saved() { return unsortedChanges() - changes(); }
+
+        void clear() {
+            packets = 0;
+            targetChanges = programChanges = textureChanges = translucencyChanges = 0;
+            unsortedTargetChanges = unsortedProgramChanges = unsortedTextureChanges = unsortedTranslucencyChanges = 0;
+        }
+
+        @Override
+        public String toString() {
+            return packets+" packets, "+changes()+" state changes ("+programChanges+" program, "
+                   +textureChanges+" texture, "+targetChanges+" target), "+saved()+" saved by sorting";
+        }
+    }
+
+    private DrawPacket[] packets;
+    private int count;
+    private long[] keys, tmpKeys;
+    private int[] order, tmpOrder;
+    private final int[] counts = new int[256];
+    private final ArrayList<Target> targets = new ArrayList<>();
+    private final Texture[] bound = new Texture[DrawPacket.MAX_TEXTURES];
+    private final Transform transform = new Transform();
+    private final Stats stats = new Stats();
+    private float depthNear = 0, depthFar = 1000;
+
+    public RenderQueue() {
+        this(256);
+    }
+    /**
+     * @param capacity The initial number of packets per frame.
+     */
+    public RenderQueue(int capacity) {
+        capacity = Math.max(16, capacity);
+        packets = new DrawPacket[capacity];
+        for (int i = 0; i < capacity; i++)
+            packets[i] = new DrawPacket();
+        keys = new long[capacity];
+        tmpKeys = new long[capacity];
+        order = new int[capacity];
+        tmpOrder = new int[capacity];
+    }
+
+    /**
+     * Sets the depth range packets are sorted in, depths outside it are clamped.
+     * @param near
+     * @param far
+     */
+    public void setDepthRange(float near, float far) {
+        if (far <= near)
+            throw new IllegalArgumentException("Far depth must be greater than near depth.");
+        depthNear = near;
+        depthFar = far;
+    }
+
+    /**
+     * Adds a draw call to the queue.  At least a program and a mesh must be
+     * set on the returned packet.
+     * @return An empty packet, valid until the next flush.
+     */
+    public DrawPacket submit() {
+        if (count == packets.length) {
+            int n = count*2;
+            packets = Arrays.copyOf(packets, n);
+            for (int i = count; i < n; i++)
+                packets[i] = new DrawPacket();
+            keys = new long[n];
+            tmpKeys = new long[n];
+            order = new int[n];
+            tmpOrder = new int[n];
+        }
+        DrawPacket p = packets[count++];
+        p.reset();
+        return p;
+    }
+
+    public int size() { return count; }
+
+    /**
+     * Sorts and draws all submitted packets, then empties the queue.
+     */
+    public void flush() {
+        stats.clear();
+        stats.packets = count;
+        Target flushTarget = Target.getCurrent();
+
+        targets.clear();
+        for (int i = 0; i < count; i++) {
+            DrawPacket p = packets[i];
+            if (p.programName == null || p.mesh == null)
+                throw new IllegalStateException("Draw packets must have a program and a mesh.");
+            keys[i] = key(p);
+            order[i] = i;
+        }
+        countChanges(false, flushTarget);
+        RadixSort.sort(keys, order, count, tmpKeys, tmpOrder, counts);
+        countChanges(true, flushTarget);
+
+        int currentProgram = -1;
+        Target currentTarget = flushTarget;
+        boolean translucent = false, textures = false;
+        Arrays.fill(bound, null);
+        for (int i = 0; i < count; i++) {
+            DrawPacket p = packets[order[i]];
+            Target t = p.target != null ? p.target : flushTarget;
+            if (t != currentTarget && t != null) {
+                t.makeCurrent();
+                currentTarget = t;
+            }
+            if (p.translucent != translucent) {
+                glDepthMask(!p.translucent);
+                translucent = p.translucent;
+            }
+            if (p.program != currentProgram) {
+                ShaderMap.use(p.programName);
+                currentProgram = p.program;
+            }
+            for (int u = 0; u < p.numTextures; u++) {
+                Texture tex = p.textures[u];
+                if (tex != null && tex != bound[u]) {
+                    GLState.activeTexture(u);
+                    tex.bind();
+                    bound[u] = tex;
+                    textures = true;
+                }
+            }
+            if (p.hasTransform) {
+                transform.projection.matrix().set(p.projection);
+                transform.view.matrix().set(p.view);
+                transform.model.matrix().set(p.model);
+                transform.enableNormalMatrix(p.normalMatrix);
+                transform.bind();
+            }
+            p.bindUniforms();
+            p.render();
+        }
+        if (translucent)
+            glDepthMask(true);
+        if (textures)
+            GLState.activeTexture(0);
+        clear();
+    }
+
+    /**
+     * Empties the queue without drawing.
+     */
+    public void clear() {
+        for (int i = 0; i < count; i++)
+            packets[i].reset();
+        count = 0;
+        targets.clear();
+    }
+
+    /**
+     * Statistics of the last flush.
+     * @return
+     */
+    public Stats stats() { return stats; }
+
+    private long key(DrawPacket p) {
+        int target = targets.indexOf(p.target);
+        if (target == -1) {
+            target = targets.size();
+            targets.add(p.target);
+            if (target > 0xFF)
+                throw new IllegalStateException("Too many targets in one frame.");
+        }
+        long program = p.program & ((1L << PROGRAM_BITS)-1);
+        long texture = p.numTextures > 0 && p.textures[0] != null ? p.textures[0].ID & ((1L << TEXTURE_BITS)-1) : 0;
+        float d = (p.sortDepth()-depthNear)/(depthFar-depthNear);
+        long depth = (long)(Math.max(0, Math.min(1, d))*DEPTH_MAX);
+
+        long key = (long)target << TARGET_SHIFT;
+        if (!p.translucent)
+            return key | program << 45 | texture << 29 | depth << 5;
+        // back to front, depth first so blending is correct
+        return key | 1L << TRANSLUCENT_SHIFT | (DEPTH_MAX-depth) << 31 | program << 21 | texture << 5;
+    }
+
+    /**
+     * Counts the state changes needed to draw the packets in the current order.
+     */
+    private void countChanges(boolean sorted, Target flushTarget) {
+        int programs = 0, textures = 0, targetChanges = 0, translucency = 0;
+        int program = -1;
+        Target target = flushTarget;
+        boolean translucent = false;
+        Arrays.fill(bound, null);
+        for (int i = 0; i < count; i++) {
+            DrawPacket p = packets[order[i]];
+            Target t = p.target != null ? p.target : flushTarget;
+            if (t != target && t != null) { targetChanges++; target = t; }
+            if (p.translucent != translucent) { translucency++; translucent = p.translucent; }
+            if (p.program != program) { programs++; program = p.program; }
+            for (int u = 0; u < p.numTextures; u++) {
+                if (p.textures[u] != null && p.textures[u] != bound[u]) {
+                    textures++;
+                    bound[u] = p.textures[u];
+                }
+            }
+        }
+        if (sorted) {
+            stats.programChanges = programs;
+            stats.textureChanges = textures;
+            stats.targetChanges = targetChanges;
+            stats.translucencyChanges = translucency;
+        } else {
+            stats.unsortedProgramChanges = programs;
+            stats.unsortedTextureChanges = textures;
+            stats.unsortedTargetChanges = targetChanges;
+            stats.unsortedTranslucencyChanges = translucency;
+        }
+    }
+}
@@ -1,23 +1,34 @@
 package mote4.util.shader;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
 import mote4.util.ErrorUtils;
+import mote4.util.state.GLState;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.system.MemoryStack;
 
 /**
  * Global store for shaders.
+ * The active uniforms of each program are read when it is added,
+ * so uniform locations can be looked up without calling OpenGL.
  * @author Peter
  */
 public class ShaderMap {
 
     private static String currentName = null;
     private static int currentProgram = 0; // 0 = fixed function
+    private static Map<String,Integer> currentUniforms = new HashMap<>();
+    private static int currentBlocks = 0;
+    // incremented whenever a program is deleted, since program IDs can be reused
+    private static int generation = 0;
     
     private static Map<String,Integer> programMap = new HashMap<>();
     private static Map<Integer, int[]> shaderMap = new HashMap<>();
+    private static Map<Integer, Map<String,Integer>> uniformMap = new HashMap<>();
+    private static Map<Integer, Integer> blockMap = new HashMap<>();
     
     /**
      * Adds the shader ID to the map of shader programs.
@@ -26,22 +37,76 @@ public class ShaderMap {
      * @param name The name of the shader.
      */
     public static void add(int id, int[] shaders, String name) {
+        add(id, shaders, name, UniformBlocks.bind(id));
+    }
+    /**
+     * Adds the shader ID to the map of shader programs.
+     * @param id The ID of the shader program.
+     * @param shaders List of shaders in this program.
+     * @param name The name of the shader.
+     * @param blocks The binding points of the uniform blocks the program uses, from UniformBlocks.bind().
+     */
+    public static void add(int id, int[] shaders, String name, int blocks) {
+        if (!programMap.containsValue(id))
+            add(id, shaders, name, blocks, readUniforms(id));
+    }
+    /**
+     * Adds a program whose uniform locations are already known, without calling OpenGL.
+     * @param id The ID of the shader program.
+     * @param shaders List of shaders in this program.
+     * @param name The name of the shader.
+     * @param blocks The binding points of the uniform blocks the program uses.
+     * @param uniforms The location of each uniform by name.
+     */
+    public static void add(int id, int[] shaders, String name, int blocks, Map<String,Integer> uniforms) {
         if (!programMap.containsValue(id)) {
             programMap.put(name, id);
             shaderMap.put(id, shaders);
+            uniformMap.put(id, new HashMap<>(uniforms));
+            blockMap.put(id, blocks);
+        }
+    }
+
+    /**
+     * Builds the table of uniform locations of a linked program.
+     * Array uniforms can be found both by their name and by name[0].
+     */
+    private static Map<String,Integer> readUniforms(int program) {
+        Map<String,Integer> uniforms = new HashMap<>();
+        int count = GL20.glGetProgrami(program, GL20.GL_ACTIVE_UNIFORMS);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer size = stack.mallocInt(1), type = stack.mallocInt(1);
+            for (int i = 0; i < count; i++) {
+                String uniform = GL20.glGetActiveUniform(program, i, size, type);
+                int loc = GL20.glGetUniformLocation(program, uniform);
+                if (loc == -1) // uniforms in blocks have no location
+                    continue;
+                uniforms.put(uniform, loc);
+                if (uniform.endsWith("[0]")) {
+                    String base = uniform.substring(0, uniform.length()-3);
+                    uniforms.put(base, loc);
+                    for (int j = 1; j < size.get(0); j++)
+                        uniforms.put(base+"["+j+"]", loc+j);
+                }
+            }
         }
+        ErrorUtils.checkGLError();
+        return uniforms;
     }
     
     /**
      * Makes the specified program active, and sets its ID to the getCurrent return.
+     * Nothing is sent to OpenGL if the program is already active.
      * @param name The program to use.
      */
     public static void use(String name) {
         try {
             int program = programMap.get(name);
-            GL20.glUseProgram(program);
+            GLState.useProgram(program);
             currentProgram = program;
             currentName = name;
+            currentUniforms = uniformMap.get(program);
+            currentBlocks = blockMap.get(program);
         } catch (NullPointerException e) {
             System.err.println(name+" is not a valid shader program!");
             e.printStackTrace();
@@ -54,6 +119,43 @@ public class ShaderMap {
      */
     public static int getCurrent() { return currentProgram; }
     public static String getCurrentName() { return currentName; }
+
+    /**
+     * Whether the current program has a uniform block at a binding point.
+     * @param binding A binding point from UniformBlocks.
+     * @return
+     */
+    public static boolean usesBlock(int binding) {
+        return (currentBlocks & (1 << binding)) != 0;
+    }
+
+    /**
+     * Returns the location of a uniform in the current program, without calling OpenGL.
+     * @param uniformName The name of the uniform.
+     * @return The location, or -1 if the program has no such uniform.
+     */
+    public static int getUniformLocation(String uniformName) {
+        return currentUniforms.getOrDefault(uniformName, -1);
+    }
+    /**
+     * Returns the location of a uniform in a program, without calling OpenGL.
+     * @param program The ID of the program.
+     * @param uniformName The name of the uniform.
+     * @return The location, or -1 if the program or uniform does not exist.
+     */
+    public static int getUniformLocation(int program, String uniformName) {
+        Map<String,Integer> uniforms = uniformMap.get(program);
+        if (uniforms == null)
+            return -1;
+        return uniforms.getOrDefault(uniformName, -1);
+    }
+
+    /**
+     * Changes whenever a program is deleted, cached uniform locations
+     * from an older generation may no longer be valid.
+     * @return
+     */
+    public static int generation() { return generation; }
     
     /**
      * Returns the shader program ID associated with the given key.
@@ -77,9 +179,17 @@ public class ShaderMap {
             for (int i : shaders)
                 GL20.glDeleteShader(i);
             shaderMap.remove(ind);
+            uniformMap.remove(ind);
+            blockMap.remove(ind);
 
+            GLState.deleteProgram(ind);
             GL20.glDeleteProgram(ind);
             programMap.remove(name);
+            generation++;
+            if (ind == currentProgram) {
+                currentUniforms = new HashMap<>();
+                currentBlocks = 0;
+            }
 
             ErrorUtils.checkGLError();
         }
@@ -90,6 +200,7 @@ public class ShaderMap {
      */
     public static void clear() {
         for (int i : programMap.values()) {
+            GLState.deleteProgram(i);
             GL20.glDeleteProgram(i);
         }
         programMap.clear();
@@ -97,6 +208,11 @@ public class ShaderMap {
             for (int i : ii)
                 GL20.glDeleteShader(i);
         shaderMap.clear();
+        uniformMap.clear();
+        blockMap.clear();
+        currentUniforms = new HashMap<>();
+        currentBlocks = 0;
+        generation++;
     }
 
 }
\ No newline at end of file
@@ -132,7 +132,9 @@ public class ShaderUtils {
         GL20.glLinkProgram(id);
         GL20.glValidateProgram(id);
         //Util.checkGLError();
-        ShaderMap.add(id, shaders, name);
+        // shared uniform blocks always use the same binding points
+        int blocks = UniformBlocks.bind(id);
+        ShaderMap.add(id, shaders, name, blocks);
         return id;
     }
     /**
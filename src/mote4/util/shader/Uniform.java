@@ -4,22 +4,23 @@ import java.nio.FloatBuffer;
 import java.util.Arrays;
 
 import mote4.util.ErrorUtils;
+import mote4.util.state.GLState;
 import mote4.util.texture.TextureMap;
 import org.lwjgl.BufferUtils;
 
-import static org.lwjgl.opengl.GL11.glGetInteger;
-import static org.lwjgl.opengl.GL13.*;
-import static org.lwjgl.opengl.GL20.*;
 
 /**
  * Utility for setting shader uniform variables.
  * The utility will attempt to apply the uniform value to the current shader program.
+ * Values are set through GLState, so setting a uniform to the value it already has is skipped.
+ * Locations come from the table ShaderMap builds for each program; for values
+ * set every frame, a UniformHandle avoids even that lookup.
  * @author Peter
  */
 public class Uniform {
 
     private static int getLoc(String uniformName) {
-        int loc = glGetUniformLocation(ShaderMap.getCurrent(), uniformName);
+        int loc = ShaderMap.getUniformLocation(uniformName);
         if (ErrorUtils.debug() && loc == -1) {
             System.err.println("The uniform '"+uniformName+"' does not exist in the program '"+ShaderMap.getCurrentName()+"'.");
             //System.err.println(Arrays.toString((new Throwable()).getStackTrace()));
@@ -35,10 +36,10 @@ public class Uniform {
     public static void vec(String uniformName, float... values) {
         int loc = getLoc(uniformName);
         switch(values.length) {
-            case 1: glUniform1f(loc, values[0]); break;
-            case 2: glUniform2f(loc, values[0], values[1]); break;
-            case 3: glUniform3f(loc, values[0], values[1], values[2]); break;
-            case 4: glUniform4f(loc, values[0], values[1], values[2], values[3]); break;
+            case 1: GLState.uniform(loc, values[0]); break;
+            case 2: GLState.uniform(loc, values[0], values[1]); break;
+            case 3: GLState.uniform(loc, values[0], values[1], values[2]); break;
+            case 4: GLState.uniform(loc, values[0], values[1], values[2], values[3]); break;
             default:
                 throw new IllegalArgumentException("The max component size for a vec is 4.");
         }
@@ -53,10 +54,10 @@ public class Uniform {
     public static void vecInt(String uniformName, int... values) {
         int loc = getLoc(uniformName);
         switch(values.length) {
-            case 1: glUniform1i(loc, values[0]); break;
-            case 2: glUniform2i(loc, values[0], values[1]); break;
-            case 3: glUniform3i(loc, values[0], values[1], values[2]); break;
-            case 4: glUniform4i(loc, values[0], values[1], values[2], values[3]); break;
+            case 1: GLState.uniformInt(loc, values[0]); break;
+            case 2: GLState.uniformInt(loc, values[0], values[1]); break;
+            case 3: GLState.uniformInt(loc, values[0], values[1], values[2]); break;
+            case 4: GLState.uniformInt(loc, values[0], values[1], values[2], values[3]); break;
             default:
                 throw new IllegalArgumentException("The max component size for a vec is 4.");
         }
@@ -74,14 +75,9 @@ public class Uniform {
         FloatBuffer buffer = BufferUtils.createFloatBuffer(values.length);
         buffer.put(values);
         buffer.rewind();
-        switch (componentSize) {
-            case 1: glUniform1fv(loc, buffer); break;
-            case 2: glUniform2fv(loc, buffer); break;
-            case 3: glUniform3fv(loc, buffer); break;
-            case 4: glUniform4fv(loc, buffer); break;
-            default:
-                throw new IllegalArgumentException("The max component size for a vec is 4.");
-        }
+        if (componentSize < 1 || componentSize > 4)
+            throw new IllegalArgumentException("The max component size for a vec is 4.");
+        GLState.uniformArray(componentSize, loc, buffer);
         ErrorUtils.checkGLError();
     }
 
@@ -92,7 +88,7 @@ public class Uniform {
      */
     public static void mat4(String uniformName, FloatBuffer buffer) {
         int matrixLoc = getLoc(uniformName);
-        glUniformMatrix4fv(matrixLoc, false, buffer);
+        GLState.uniformMatrix(4, matrixLoc, buffer);
     }
 
     /**
@@ -102,7 +98,7 @@ public class Uniform {
      */
     public static void mat3(String uniformName, FloatBuffer buffer) {
         int matrixLoc = getLoc(uniformName);
-        glUniformMatrix3fv(matrixLoc, false, buffer);
+        GLState.uniformMatrix(3, matrixLoc, buffer);
     }
 
     /**
@@ -112,7 +108,7 @@ public class Uniform {
      */
     public static void sampler(String uniformName, int textureIndex) {
         int texLoc = getLoc(uniformName);
-        glUniform1i(texLoc, textureIndex);
+        GLState.uniformInt(texLoc, textureIndex);
     }
 
     /**
@@ -125,23 +121,23 @@ public class Uniform {
      * @param filter Whether the texture should be filtered.
      */
     public static void sampler(String uniformName, int textureIndex, String texName, boolean filter) {
-        int currentTexture = glGetInteger(GL_ACTIVE_TEXTURE);
-        glActiveTexture(GL_TEXTURE0 + textureIndex);
+        int currentTexture = GLState.queryActiveTexture();
+        GLState.activeTexture(textureIndex);
         if (filter)
             TextureMap.bindFiltered(texName);
         else
             TextureMap.bindUnfiltered(texName);
         sampler(uniformName, textureIndex);
-        glActiveTexture(currentTexture);
+        GLState.activeTexture(currentTexture);
         ErrorUtils.checkGLError();
     }
 
     public static void samplerNoFilter(String uniformName, int textureIndex, String texName) {
-        int currentTexture = glGetInteger(GL_ACTIVE_TEXTURE);
-        glActiveTexture(GL_TEXTURE0 + textureIndex);
+        int currentTexture = GLState.queryActiveTexture();
+        GLState.activeTexture(textureIndex);
         TextureMap.bind(texName);
         sampler(uniformName, textureIndex);
-        glActiveTexture(currentTexture);
+        GLState.activeTexture(currentTexture);
         ErrorUtils.checkGLError();
     }
 }
\ No newline at end of file
@@ -0,0 +1,142 @@
+package mote4.util.shader;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.lwjgl.BufferUtils;
+
+import static org.lwjgl.opengl.GL31.*;
+
+/**
+ * Uniform blocks shared by all programs.
+ * Every program is linked with its blocks assigned to fixed binding points,
+ * so a block only needs to be uploaded once for all programs that use it:
+ *
+ *   layout(std140) uniform Camera { mat4 projectionMatrix; mat4 viewMatrix; };
+ *   layout(std140) uniform Model { mat4 modelMatrix; mat3 normalMatrix; };
+ *
+ * Transform writes to these blocks when the current program has them, and
+ * falls back to plain uniforms when it does not.  Other blocks can be given
+ * a binding point with register().
+ * @author Peter
+ */
+public class UniformBlocks {
+
+    public static final String CAMERA = "Camera", MODEL = "Model";
+    public static final int CAMERA_BINDING = 0, MODEL_BINDING = 1;
+    private static final int CAMERA_SIZE = 128, MODEL_SIZE = 112;
+
+    private static final ArrayList<String> blocks = new ArrayList<>();
+    static {
+        blocks.add(CAMERA);
+        blocks.add(MODEL);
+    }
+
+    private static int ringSize = 256*1024;
+    private static UniformRing ring;
+    private static final ByteBuffer block = BufferUtils.createByteBuffer(256);
+    private static final Matrix4f lastProjection = new Matrix4f(), lastView = new Matrix4f();
+    private static final Matrix3f identity3 = new Matrix3f();
+    private static boolean cameraBound = false;
+
+    /**
+     * Gives a uniform block a binding point in all programs linked from now on.
+     * @param blockName The name of the block in the shader source.
+     * @return The binding point.
+     */
+    public static int register(String blockName) {
+        int i = blocks.indexOf(blockName);
+        if (i != -1)
+            return i;
+        if (blocks.size() >= 32)
+            throw new IllegalStateException("Too many uniform blocks registered.");
+        blocks.add(blockName);
+        return blocks.size()-1;
+    }
+
+    /**
+     * Assigns the binding points of all registered blocks a linked program uses.
+     * Called by ShaderUtils when a program is linked.
+     * @param program The ID of the program.
+     * @return A bit mask of the binding points the program uses.
+     */
+    public static int bind(int program) {
+        int mask = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            int index = glGetUniformBlockIndex(program, blocks.get(i));
+            if (index != GL_INVALID_INDEX) {
+                glUniformBlockBinding(program, index, i);
+                mask |= 1 << i;
+            }
+        }
+        if ((mask & ((1 << CAMERA_BINDING) | (1 << MODEL_BINDING))) != 0)
+            ring(); // give the built-in blocks identity defaults
+        return mask;
+    }
+
+    /**
+     * Sets the buffer size used for blocks created from now on.
+     * @param bytes
+     */
+    public static void setRingSize(int bytes) {
+        ringSize = bytes;
+    }
+
+    /**
+     * The buffer blocks are written to, created on first use.
+     * @return
+     */
+    public static UniformRing ring() {
+        if (ring == null) {
+            ring = new UniformRing(ringSize);
+            camera(new Matrix4f(), new Matrix4f());
+            model(new Matrix4f(), null);
+        }
+        return ring;
+    }
+
+    /**
+     * Uploads the camera block, unless the same matrices are already bound.
+     * @param projection
+     * @param view
+     */
+    public static void camera(Matrix4f projection, Matrix4f view) {
+        UniformRing r = ring();
+        if (cameraBound && lastProjection.equals(projection) && lastView.equals(view))
+            return;
+        block.clear();
+        projection.get(0, block);
+        view.get(64, block);
+        block.limit(CAMERA_SIZE);
+        r.push(CAMERA_BINDING, block);
+        lastProjection.set(projection);
+        lastView.set(view);
+        cameraBound = true;
+    }
+
+    /**
+     * Uploads a model block to a new range of the buffer.
+     * @param model
+     * @param normal The normal matrix, or null for identity.
+     */
+    public static void model(Matrix4f model, Matrix3f normal) {
+        block.clear();
+        model.get(0, block);
+        (normal != null ? normal : identity3).get3x4(64, block);
+        block.limit(MODEL_SIZE);
+        ring().push(MODEL_BINDING, block);
+    }
+
+    /**
+     * Deletes the buffer, it is created again when next needed.
+     */
+    public static void destroy() {
+        if (ring != null) {
+            ring.destroy();
+            ring = null;
+            cameraBound = false;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package mote4.util.shader;
+
+import java.nio.FloatBuffer;
+
+import mote4.util.ErrorUtils;
+import mote4.util.state.GLState;
+
+/**
+ * A uniform that remembers its location, for values that are set every frame.
+ * The location is looked up the first time the uniform is set in a program,
+ * and reused for as long as that program stays current, so objects that bind
+ * the same uniform repeatedly do no lookups at all.
+ * The uniform is always set in the current program, like with Uniform.
+ * @author Peter
+ */
+public class UniformHandle {
+
+    private final String name;
+    private int program = -1, generation = -1, location = -1;
+
+    /**
+     * Creates a handle that resolves its location when first used.
+     * @param uniformName The name of the uniform.
+     */
+    public UniformHandle(String uniformName) {
+        name = uniformName;
+    }
+    /**
+     * Creates a handle with its location in a program already resolved.
+     * @param programName The program the uniform will be set in most often.
+     * @param uniformName The name of the uniform.
+     */
+    public UniformHandle(String programName, String uniformName) {
+        this(uniformName);
+        int id = ShaderMap.get(programName);
+        if (id != -1)
+            resolve(id);
+    }
+
+    public String name() { return name; }
+
+    /**
+     * The location of the uniform in the current program.
+     * @return The location, or -1 if the current program does not have this uniform.
+     */
+    public int location() {
+        int current = ShaderMap.getCurrent();
+        if (current != program || generation != ShaderMap.generation())
+            resolve(current);
+        return location;
+    }
+
+    private void resolve(int id) {
+        program = id;
+        generation = ShaderMap.generation();
+        location = ShaderMap.getUniformLocation(id, name);
+        if (ErrorUtils.debug() && location == -1 && id == ShaderMap.getCurrent())
+            System.err.println("The uniform '"+name+"' does not exist in the program '"+ShaderMap.getCurrentName()+"'.");
+    }
+
+    public void vec(float x) {
+        GLState.uniform(location(), x);
+        ErrorUtils.checkGLError();
+    }
+    public void vec(float x, float y) {
+        GLState.uniform(location(), x, y);
+        ErrorUtils.checkGLError();
+    }
+    public void vec(float x, float y, float z) {
+        GLState.uniform(location(), x, y, z);
+        ErrorUtils.checkGLError();
+    }
+    public void vec(float x, float y, float z, float w) {
+        GLState.uniform(location(), x, y, z, w);
+        ErrorUtils.checkGLError();
+    }
+    public void vecInt(int x) {
+        GLState.uniformInt(location(), x);
+        ErrorUtils.checkGLError();
+    }
+
+    /**
+     * Sets the value of a 4x4 matrix uniform.
+     * @param buffer The 4x4 matrix, or matrices for an array uniform.
+     */
+    public void mat4(FloatBuffer buffer) {
+        GLState.uniformMatrix(4, location(), buffer);
+    }
+    /**
+     * Sets the value of a 3x3 matrix uniform.
+     * @param buffer The 3x3 matrix.
+     */
+    public void mat3(FloatBuffer buffer) {
+        GLState.uniformMatrix(3, location(), buffer);
+    }
+    /**
+     * Sets the value of a sampler uniform.
+     * @param textureIndex The active texture index, NOT the texture handle.
+     */
+    public void sampler(int textureIndex) {
+        GLState.uniformInt(location(), textureIndex);
+    }
+}
@@ -0,0 +1,110 @@
+package mote4.util.shader;
+
+import java.nio.ByteBuffer;
+
+import mote4.util.ErrorUtils;
+import mote4.util.state.GLState;
+import org.lwjgl.BufferUtils;
+
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT;
+
+/**
+ * A uniform buffer that is written front to back, one block at a time.
+ * Every push() writes to a fresh range of the buffer and binds that range,
+ * so a block can be changed between draw calls without waiting for earlier
+ * draws that still read the old contents.  When the end is reached the
+ * buffer is orphaned and writing starts over from the front; the last block
+ * pushed to each binding point is written again so bindings stay valid.
+ * All calls go through GLState, so they can be recorded with a RecordingBackend.
+ * @author Peter
+ */
+public class UniformRing {
+
+    private static final int MAX_BINDINGS = 32;
+
+    private final int id, size, alignment;
+    private final ByteBuffer[] last;
+    private final int[] lastSize;
+    private int offset, wraps;
+    private long bytesPushed;
+
+    /**
+     * @param size The size of the buffer in bytes.  Larger buffers are orphaned less often.
+     */
+    public UniformRing(int size) {
+        this.size = size;
+        alignment = Math.max(16, GLState.getInteger(GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT));
+        last = new ByteBuffer[MAX_BINDINGS];
+        lastSize = new int[MAX_BINDINGS];
+
+        id = GLState.genBuffer();
+        GLState.bindBuffer(GL_UNIFORM_BUFFER, id);
+        GLState.bufferData(GL_UNIFORM_BUFFER, size, GL_STREAM_DRAW);
+        GLState.bindBuffer(GL_UNIFORM_BUFFER, 0);
+        ErrorUtils.checkGLError();
+    }
+
+    /**
+     * Writes a block to the buffer and binds it to a binding point.
+     * @param binding The uniform block binding point.
+     * @param data The block contents, from position to limit.  Not modified.
+     */
+    public void push(int binding, ByteBuffer data) {
+        int n = data.remaining();
+        if (n > size)
+            throw new IllegalArgumentException("Block of "+n+" bytes does not fit in a uniform ring of "+size+" bytes.");
+        if (binding < 0 || binding >= MAX_BINDINGS)
+            throw new IllegalArgumentException("Binding point must be less than "+MAX_BINDINGS+".");
+
+        GLState.bindBuffer(GL_UNIFORM_BUFFER, id);
+        if (offset+n > size)
+            wrap();
+        write(binding, data, n);
+
+        // remember the block in case the buffer wraps before it is replaced
+        if (last[binding] == null || last[binding].capacity() < n)
+            last[binding] = BufferUtils.createByteBuffer(Math.max(n, 256));
+        ByteBuffer copy = last[binding];
+        copy.clear();
+        copy.put(data.duplicate());
+        lastSize[binding] = n;
+    }
+
+    private void write(int binding, ByteBuffer data, int n) {
+        GLState.bufferSubData(GL_UNIFORM_BUFFER, offset, data, data.position(), n);
+        GLState.bindBufferRange(GL_UNIFORM_BUFFER, binding, id, offset, n);
+        offset = (offset+n+alignment-1)/alignment*alignment;
+        bytesPushed += n;
+    }
+
+    private void wrap() {
+        // orphan the old storage, draws that still use it keep it alive
+        GLState.bufferData(GL_UNIFORM_BUFFER, size, GL_STREAM_DRAW);
+        offset = 0;
+        wraps++;
+        for (int b = 0; b < MAX_BINDINGS; b++) {
+            if (last[b] != null) {
+                ByteBuffer copy = last[b];
+                copy.position(0).limit(lastSize[b]);
+                write(b, copy, lastSize[b]);
+            }
+        }
+    }
+
+    /**
+     * How many times the buffer has been orphaned.  Ranges written before the
+     * last wrap are gone, except for the most recent block of each binding.
+     * @return
+     */
+    public int wraps() { return wraps; }
+    public long bytesPushed() { return bytesPushed; }
+    public int size() { return size; }
+    public int alignment() { return alignment; }
+
+    public void destroy() {
+        GLState.deleteBuffer(id);
+        ErrorUtils.checkGLError();
+    }
+}
@@ -0,0 +1,71 @@
+package mote4.util.state;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * The OpenGL calls made by GLState.
+ * The default backend calls OpenGL; a RecordingBackend can be used instead
+ * to check which calls are made without an OpenGL context.
+ * Besides the shadowed state, this includes the buffer and draw calls
+ * meshes and uniform blocks make while drawing, so a whole frame can be recorded.
+ * @author Peter
+ */
+public interface GLBackend {
+
+    void useProgram(int program);
+
+    /**
+     * @param texture The texture unit enum, GL_TEXTURE0 + index.
+     */
+    void activeTexture(int texture);
+    void bindTexture(int target, int texture);
+    void texParameteri(int target, int pname, int param);
+
+    void uniform1f(int location, float x);
+    void uniform2f(int location, float x, float y);
+    void uniform3f(int location, float x, float y, float z);
+    void uniform4f(int location, float x, float y, float z, float w);
+    void uniform1i(int location, int x);
+    void uniform2i(int location, int x, int y);
+    void uniform3i(int location, int x, int y, int z);
+    void uniform4i(int location, int x, int y, int z, int w);
+    /**
+     * Sets a float array uniform.
+     * @param components Components per element, 1 to 4.
+     */
+    void uniformv(int components, int location, FloatBuffer values);
+    /**
+     * Sets a square matrix uniform.
+     * @param size 3 or 4.
+     */
+    void uniformMatrix(int size, int location, FloatBuffer values);
+
+    // buffers
+    int genBuffer();
+    void deleteBuffer(int buffer);
+    void bindBuffer(int target, int buffer);
+    /**
+     * Allocates new storage for the bound buffer, without data.
+     */
+    void bufferData(int target, long size, int usage);
+    /**
+     * @param data Copied from the byte at index first, ignoring its position and limit.
+     */
+    void bufferSubData(int target, long offset, ByteBuffer data, int first, int size);
+    void bindBufferRange(int target, int index, int buffer, long offset, long size);
+    int getInteger(int pname);
+
+    // drawing
+    void bindVertexArray(int array);
+    void enableVertexAttribArray(int index);
+    void disableVertexAttribArray(int index);
+    void vertexAttrib4f(int index, float x, float y, float z, float w);
+    void drawArrays(int mode, int first, int count);
+    void drawArraysInstanced(int mode, int first, int count, int instances);
+    /**
+     * @param indices The byte offset into the element buffer.
+     */
+    void drawElements(int mode, int count, int type, long indices);
+    void drawElementsInstanced(int mode, int count, int type, long indices, int instances);
+}
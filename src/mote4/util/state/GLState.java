@@ -0,0 +1,486 @@
+package mote4.util.state;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import mote4.util.IntMap;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_WRAP_R;
+import static org.lwjgl.opengl.GL13.GL_ACTIVE_TEXTURE;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP;
+import static org.lwjgl.opengl.GL32.GL_TEXTURE_2D_MULTISAMPLE;
+
+/**
+ * Shadows OpenGL state to skip calls that would not change anything.
+ * Tracks the current program, the active texture unit, the textures bound
+ * to each unit, common texture parameters, and the last value set for each
+ * uniform of each program.  Calls that match the shadowed state are counted
+ * as skipped instead of reaching the driver.
+ *
+ * State changed by calling OpenGL directly is not seen by this class;
+ * call invalidate() afterwards, or make the change through this class.
+ * The buffer and draw calls made while drawing are not shadowed, but also
+ * go through the backend, so a RecordingBackend sees them in order.
+ * Must only be used from the thread that owns the OpenGL context.
+ * @author Peter
+ */
+public class GLState {
+
+    /**
+     * Kinds of calls, for the counters.
+     */
+    public enum Call { PROGRAM, ACTIVE_TEXTURE, BIND_TEXTURE, TEXTURE_PARAMETER, UNIFORM }
+
+    private static final int MAX_UNITS = 32;
+    private static final int[] TARGETS = {GL_TEXTURE_2D, GL_TEXTURE_CUBE_MAP, GL_TEXTURE_2D_MULTISAMPLE};
+    private static final int[] PARAMETERS = {GL_TEXTURE_MIN_FILTER, GL_TEXTURE_MAG_FILTER,
+                                             GL_TEXTURE_WRAP_S, GL_TEXTURE_WRAP_T, GL_TEXTURE_WRAP_R};
+    private static final int UNKNOWN = -1;
+
+    // kinds of uniform values
+    private static final byte NONE = 0, FLOAT = 1, INT = 5, MAT3 = 9, MAT4 = 10;
+    private static final int UNIFORM_STRIDE = 16;
+
+    private static GLBackend backend = new OpenGLBackend();
+    private static boolean enabled = true;
+
+    private static int program = UNKNOWN, activeUnit = UNKNOWN;
+    private static final int[][] bound = new int[TARGETS.length][MAX_UNITS];
+    private static IntMap<int[]> textureParameters = new IntMap<>();
+    private static IntMap<ProgramUniforms> uniforms = new IntMap<>();
+    private static ProgramUniforms currentUniforms;
+
+    private static final long[] issued = new long[Call.values().length],
+                                skipped = new long[Call.values().length];
+
+    static {
+        invalidate();
+    }
+
+    /**
+     * The last value set for each uniform location of a program.
+     */
+    private static class ProgramUniforms {
+        byte[] kind = new byte[16];
+        int[] bits = new int[16*UNIFORM_STRIDE];
+
+        void ensure(int location) {
+            if (location >= kind.length) {
+                int n = Math.max(location+1, kind.length*2);
+                kind = Arrays.copyOf(kind, n);
+                bits = Arrays.copyOf(bits, n*UNIFORM_STRIDE);
+            }
+        }
+        void forget(int location, int count) {
+            for (int i = location; i < Math.min(location+count, kind.length); i++)
+                kind[i] = NONE;
+        }
+    }
+
+    ////////////
+
+    /**
+     * Replaces the object that makes the OpenGL calls, and forgets all state.
+     * @param b The new backend, such as a RecordingBackend.
+     */
+    public static void setBackend(GLBackend b) {
+        backend = b;
+        invalidate();
+    }
+    public static GLBackend getBackend() { return backend; }
+
+    /**
+     * Enables or disables skipping redundant calls.  When disabled every call
+     * is passed on, which is useful for comparing performance.
+     * @param e
+     */
+    public static void setEnabled(boolean e) {
+        enabled = e;
+        invalidate();
+    }
+    public static boolean isEnabled() { return enabled; }
+
+    /**
+     * Forgets all shadowed state, so the next call of every kind is passed on.
+     * Should be called after changing state by calling OpenGL directly.
+     */
+    public static void invalidate() {
+        program = UNKNOWN;
+        activeUnit = UNKNOWN;
+        for (int[] units : bound)
+            Arrays.fill(units, UNKNOWN);
+        textureParameters.clear();
+        uniforms.clear();
+        currentUniforms = null;
+    }
+
+    ////////////
+
+    /**
+     * Makes a program current.
+     * @param id The ID of the program.
+     */
+    public static void useProgram(int id) {
+        if (enabled && id == program) {
+            skipped[Call.PROGRAM.ordinal()]++;
+            return;
+        }
+        issued[Call.PROGRAM.ordinal()]++;
+        backend.useProgram(id);
+        program = id;
+        currentUniforms = null;
+        if (enabled) {
+            currentUniforms = uniforms.get(id);
+            if (currentUniforms == null) {
+                currentUniforms = new ProgramUniforms();
+                uniforms.put(id, currentUniforms);
+            }
+        }
+    }
+    /**
+     * The current program, or -1 if not known.
+     * @return
+     */
+    public static int program() { return program; }
+
+    /**
+     * Forgets the uniform values of a program that is being deleted,
+     * as its ID may be reused.
+     * @param id
+     */
+    public static void deleteProgram(int id) {
+        uniforms.put(id, null);
+        if (program == id) {
+            program = UNKNOWN;
+            currentUniforms = null;
+        }
+    }
+
+    /**
+     * Selects the active texture unit.
+     * @param unit The index of the unit, NOT GL_TEXTUREi.
+     */
+    public static void activeTexture(int unit) {
+        if (enabled && unit == activeUnit) {
+            skipped[Call.ACTIVE_TEXTURE.ordinal()]++;
+            return;
+        }
+        issued[Call.ACTIVE_TEXTURE.ordinal()]++;
+        backend.activeTexture(GL_TEXTURE0+unit);
+        activeUnit = unit < MAX_UNITS ? unit : UNKNOWN;
+    }
+    /**
+     * The index of the active texture unit, or -1 if not known.
+     * @return
+     */
+    public static int activeTexture() { return activeUnit; }
+    /**
+     * The index of the active texture unit, asking OpenGL if it is not
+     * known, such as after invalidate().  The answer is shadowed.
+     * @return
+     */
+    public static int queryActiveTexture() {
+        if (activeUnit != UNKNOWN)
+            return activeUnit;
+        int unit = backend.getInteger(GL_ACTIVE_TEXTURE)-GL_TEXTURE0;
+        activeUnit = unit < MAX_UNITS ? unit : UNKNOWN;
+        return unit;
+    }
+
+    /**
+     * Binds a texture to the active texture unit.
+     * @param target The texture type, such as GL_TEXTURE_2D.
+     * @param id The texture, or 0 to unbind.
+     */
+    public static void bindTexture(int target, int id) {
+        int t = targetIndex(target);
+        if (enabled && t != -1 && activeUnit != UNKNOWN && bound[t][activeUnit] == id) {
+            skipped[Call.BIND_TEXTURE.ordinal()]++;
+            return;
+        }
+        issued[Call.BIND_TEXTURE.ordinal()]++;
+        backend.bindTexture(target, id);
+        if (t != -1 && activeUnit != UNKNOWN)
+            bound[t][activeUnit] = id;
+        else if (t != -1) // the unit is not known, so neither is any unit's binding
+            for (int[] units : bound)
+                Arrays.fill(units, UNKNOWN);
+    }
+
+    /**
+     * Sets a parameter of the texture bound to the active unit.
+     * Filter and wrap parameters are remembered per texture.
+     * @param target The texture type, such as GL_TEXTURE_2D.
+     * @param pname The parameter.
+     * @param param The value.
+     */
+    public static void texParameteri(int target, int pname, int param) {
+        int t = targetIndex(target), p = parameterIndex(pname);
+        int texture = t != -1 && activeUnit != UNKNOWN ? bound[t][activeUnit] : UNKNOWN;
+        int[] values = null;
+        if (enabled && texture != UNKNOWN && p != -1) {
+            values = textureParameters.get(texture);
+            if (values == null) {
+                values = new int[PARAMETERS.length];
+                Arrays.fill(values, UNKNOWN);
+                textureParameters.put(texture, values);
+            }
+            if (values[p] == param) {
+                skipped[Call.TEXTURE_PARAMETER.ordinal()]++;
+                return;
+            }
+        }
+        issued[Call.TEXTURE_PARAMETER.ordinal()]++;
+        backend.texParameteri(target, pname, param);
+        if (values != null)
+            values[p] = param;
+    }
+
+    /**
+     * Forgets the parameters of a texture that is being deleted,
+     * and unbinds it from every unit it was bound to.
+     * @param id
+     */
+    public static void deleteTexture(int id) {
+        textureParameters.put(id, null);
+        for (int[] units : bound)
+            for (int i = 0; i < units.length; i++)
+                if (units[i] == id)
+                    units[i] = 0;
+    }
+
+    ////////////
+
+    public static void uniform(int location, float x) {
+        if (same(location, FLOAT, 1, Float.floatToRawIntBits(x), 0, 0, 0))
+            return;
+        backend.uniform1f(location, x);
+    }
+    public static void uniform(int location, float x, float y) {
+        if (same(location, (byte)(FLOAT+1), 2, Float.floatToRawIntBits(x), Float.floatToRawIntBits(y), 0, 0))
+            return;
+        backend.uniform2f(location, x, y);
+    }
+    public static void uniform(int location, float x, float y, float z) {
+        if (same(location, (byte)(FLOAT+2), 3, Float.floatToRawIntBits(x), Float.floatToRawIntBits(y),
+                 Float.floatToRawIntBits(z), 0))
+            return;
+        backend.uniform3f(location, x, y, z);
+    }
+    public static void uniform(int location, float x, float y, float z, float w) {
+        if (same(location, (byte)(FLOAT+3), 4, Float.floatToRawIntBits(x), Float.floatToRawIntBits(y),
+                 Float.floatToRawIntBits(z), Float.floatToRawIntBits(w)))
+            return;
+        backend.uniform4f(location, x, y, z, w);
+    }
+    public static void uniformInt(int location, int x) {
+        if (same(location, INT, 1, x, 0, 0, 0))
+            return;
+        backend.uniform1i(location, x);
+    }
+    public static void uniformInt(int location, int x, int y) {
+        if (same(location, (byte)(INT+1), 2, x, y, 0, 0))
+            return;
+        backend.uniform2i(location, x, y);
+    }
+    public static void uniformInt(int location, int x, int y, int z) {
+        if (same(location, (byte)(INT+2), 3, x, y, z, 0))
+            return;
+        backend.uniform3i(location, x, y, z);
+    }
+    public static void uniformInt(int location, int x, int y, int z, int w) {
+        if (same(location, (byte)(INT+3), 4, x, y, z, w))
+            return;
+        backend.uniform4i(location, x, y, z, w);
+    }
+
+    /**
+     * Sets a float array uniform.  Array values are not remembered.
+     * @param components Components per element, 1 to 4.
+     * @param location The location of the first element.
+     * @param values
+     */
+    public static void uniformArray(int components, int location, FloatBuffer values) {
+        if (location == -1) {
+            skipped[Call.UNIFORM.ordinal()]++;
+            return;
+        }
+        issued[Call.UNIFORM.ordinal()]++;
+        backend.uniformv(components, location, values);
+        if (currentUniforms != null)
+            currentUniforms.forget(location, values.remaining()/components);
+    }
+
+    /**
+     * Sets a 3x3 or 4x4 matrix uniform.  Arrays of matrices are passed on
+     * without being remembered.
+     * @param size 3 or 4.
+     * @param location
+     * @param values The matrix, from the buffer's position.
+     */
+    public static void uniformMatrix(int size, int location, FloatBuffer values) {
+        int n = size*size;
+        if (location == -1) {
+            skipped[Call.UNIFORM.ordinal()]++;
+            return;
+        }
+        ProgramUniforms u = currentUniforms;
+        if (u == null || values.remaining() != n) {
+            issued[Call.UNIFORM.ordinal()]++;
+            backend.uniformMatrix(size, location, values);
+            if (u != null)
+                u.forget(location, values.remaining()/n);
+            return;
+        }
+
+        byte kind = size == 3 ? MAT3 : MAT4;
+        u.ensure(location);
+        int base = location*UNIFORM_STRIDE, pos = values.position();
+        boolean same = u.kind[location] == kind;
+        for (int i = 0; i < n && same; i++)
+            same = u.bits[base+i] == Float.floatToRawIntBits(values.get(pos+i));
+        if (same) {
+            skipped[Call.UNIFORM.ordinal()]++;
+            return;
+        }
+        issued[Call.UNIFORM.ordinal()]++;
+        backend.uniformMatrix(size, location, values);
+        u.kind[location] = kind;
+        for (int i = 0; i < n; i++)
+            u.bits[base+i] = Float.floatToRawIntBits(values.get(pos+i));
+    }
+
+    /**
+     * Checks a uniform value against the remembered value, remembering the
+     * new value and counting the call either way.
+     * @return True if the call can be skipped.
+     */
+    private static boolean same(int location, byte kind, int n, int a, int b, int c, int d) {
+        if (location == -1) { // OpenGL ignores these
+            skipped[Call.UNIFORM.ordinal()]++;
+            return true;
+        }
+        ProgramUniforms u = currentUniforms;
+        if (u == null) {
+            issued[Call.UNIFORM.ordinal()]++;
+            return false;
+        }
+        u.ensure(location);
+        int i = location*UNIFORM_STRIDE;
+        if (u.kind[location] == kind && u.bits[i] == a && (n < 2 || u.bits[i+1] == b)
+            && (n < 3 || u.bits[i+2] == c) && (n < 4 || u.bits[i+3] == d))
+        {
+            skipped[Call.UNIFORM.ordinal()]++;
+            return true;
+        }
+        issued[Call.UNIFORM.ordinal()]++;
+        u.kind[location] = kind;
+        u.bits[i] = a;
+        u.bits[i+1] = b;
+        u.bits[i+2] = c;
+        u.bits[i+3] = d;
+        return false;
+    }
+
+    ////////////
+    // not shadowed, passed on to the backend as they are
+
+    public static int genBuffer() { return backend.genBuffer(); }
+    public static void deleteBuffer(int id) { backend.deleteBuffer(id); }
+    public static void bindBuffer(int target, int id) { backend.bindBuffer(target, id); }
+    /**
+     * Allocates new storage for the bound buffer, orphaning the old storage.
+     * @param target
+     * @param size The size in bytes.
+     * @param usage
+     */
+    public static void bufferData(int target, long size, int usage) { backend.bufferData(target, size, usage); }
+    /**
+     * Copies data into the bound buffer.
+     * @param target
+     * @param offset The byte offset in the buffer.
+     * @param data The data, ignoring its position and limit.
+     * @param first The index of the first byte to copy.
+     * @param size The number of bytes.
+     */
+    public static void bufferSubData(int target, long offset, ByteBuffer data, int first, int size) {
+        backend.bufferSubData(target, offset, data, first, size);
+    }
+    public static void bindBufferRange(int target, int index, int id, long offset, long size) {
+        backend.bindBufferRange(target, index, id, offset, size);
+    }
+    public static int getInteger(int pname) { return backend.getInteger(pname); }
+
+    public static void bindVertexArray(int id) { backend.bindVertexArray(id); }
+    public static void enableVertexAttribArray(int index) { backend.enableVertexAttribArray(index); }
+    public static void disableVertexAttribArray(int index) { backend.disableVertexAttribArray(index); }
+    public static void vertexAttrib(int index, float x, float y, float z, float w) {
+        backend.vertexAttrib4f(index, x, y, z, w);
+    }
+    public static void drawArrays(int mode, int first, int count) { backend.drawArrays(mode, first, count); }
+    public static void drawArraysInstanced(int mode, int first, int count, int instances) {
+        backend.drawArraysInstanced(mode, first, count, instances);
+    }
+    /**
+     * Draws from the element buffer of the bound vertex array.
+     * @param mode
+     * @param count
+     * @param type
+     * @param indices The byte offset into the element buffer.
+     */
+    public static void drawElements(int mode, int count, int type, long indices) {
+        backend.drawElements(mode, count, type, indices);
+    }
+    public static void drawElementsInstanced(int mode, int count, int type, long indices, int instances) {
+        backend.drawElementsInstanced(mode, count, type, indices, instances);
+    }
+
+    ////////////
+
+    private static int targetIndex(int target) {
+        for (int i = 0; i < TARGETS.length; i++)
+            if (TARGETS[i] == target)
+                return i;
+        return -1;
+    }
+    private static int parameterIndex(int pname) {
+        for (int i = 0; i < PARAMETERS.length; i++)
+            if (PARAMETERS[i] == pname)
+                return i;
+        return -1;
+    }
+
+    /**
+     * The number of calls of a kind passed on to OpenGL since the counters were reset.
+     * @param call
+     * @return
+     */
+    public static long issued(Call call) { return issued[call.ordinal()]; }
+    /**
+     * The number of calls of a kind skipped since the counters were reset.
+     * @param call
+     * @return
+     */
+    public static long skipped(Call call) { return skipped[call.ordinal()]; }
+    public static long issued() { return Arrays.stream(issued).sum(); }
+    public static long skipped() { return Arrays.stream(skipped).sum(); }
+
+    public static void resetCounters() {
+        Arrays.fill(issued, 0);
+        Arrays.fill(skipped, 0);
+    }
+
+    /**
+     * The counters as text, one line per kind of call.
+     * @return
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Call c : Call.values())
+            sb.append(String.format("%-18s %8d issued %8d skipped%n", c, issued[c.ordinal()], skipped[c.ordinal()]));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package mote4.util.state;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import mote4.util.shader.ShaderMap;
+import mote4.util.shader.Uniform;
+import mote4.util.texture.Texture;
+import mote4.util.texture.TextureMap;
+
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL13.GL_ACTIVE_TEXTURE;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+
+/**
+ * Checks with a RecordingBackend that Uniform.sampler() and samplerNoFilter()
+ * leave the texture unit that was active before them active, including when
+ * GLState does not know it: at startup and after invalidate(), setEnabled()
+ * or setBackend().  The unit is then asked from the backend once, and
+ * textures bound afterwards must go to that unit.
+ *
+ * Usage: GLStateCheck
+ * @author Peter
+ */
+public class GLStateCheck {
+
+    private static final int PROGRAM = 61, TEXTURE = 71;
+    private static int other = 72;
+
+    public static void main(String[] args) {
+        HashMap<String,Integer> uniforms = new HashMap<>();
+        uniforms.put("tex", 0);
+        ShaderMap.add(PROGRAM, new int[0], "check-sampler", 0, uniforms);
+        TextureMap.add(new Texture(TEXTURE, GL_TEXTURE_2D) {}, "check-texture");
+
+        for (boolean enabled : new boolean[] {true, false}) {
+            for (int variant = 0; variant < 2; variant++) {
+                String what = (variant == 0 ? "sampler()" : "samplerNoFilter()")+(enabled ? "" : " with skipping disabled");
+
+                // a new backend starts at unit 0, as OpenGL does
+                RecordingBackend backend = new RecordingBackend();
+                GLState.setBackend(backend);
+                GLState.setEnabled(enabled);
+                check(backend, variant, 0, true, what+" on a new backend");
+                // known now, so not asked again
+                check(backend, variant, 0, false, what+" after a known unit");
+
+                // changed behind GLState's back, then forgotten
+                backend.activeTexture(GL_TEXTURE0+2);
+                GLState.invalidate();
+                check(backend, variant, 2, true, what+" after invalidate()");
+            }
+        }
+        GLState.setEnabled(true);
+        System.out.println("OK: samplers restored the active unit, known or not, and later binds went to it");
+    }
+
+    /**
+     * Sets a sampler on unit 3, then binds a texture, which must go to the unit active before.
+     * The texture is a new one every time, so binding it is never skipped.
+     */
+    private static void check(RecordingBackend backend, int variant, int unit, boolean query, String what) {
+        ShaderMap.use("check-sampler");
+        TextureMap.untrack("check-other");
+        TextureMap.add(new Texture(++other, GL_TEXTURE_2D) {}, "check-other");
+        backend.clear();
+        if (variant == 0)
+            Uniform.sampler("tex", 3, "check-texture", true);
+        else
+            Uniform.samplerNoFilter("tex", 3, "check-texture");
+        TextureMap.bind("check-other");
+
+        List<String> calls = new ArrayList<>(backend.calls());
+        int queries = 0;
+        List<Integer> units = new ArrayList<>();
+        for (String call : calls) {
+            if (call.equals("getInteger "+GL_ACTIVE_TEXTURE))
+                queries++;
+            else if (call.startsWith("activeTexture "))
+                units.add(Integer.parseInt(call.substring(14))-GL_TEXTURE0);
+        }
+        if (queries != (query ? 1 : 0))
+            fail(what+": asked for the active unit "+queries+" times, expected "+(query ? 1 : 0));
+        if (units.isEmpty() || units.get(0) != 3 || units.get(units.size()-1) != unit)
+            fail(what+": selected units "+units+", expected 3 and then "+unit);
+        if (!calls.get(calls.size()-1).equals("bindTexture "+GL_TEXTURE_2D+" "+other))
+            fail(what+": the last call is \""+calls.get(calls.size()-1)+"\", expected the bind of the other texture");
+        if (GLState.activeTexture() != unit)
+            fail(what+": GLState shadows unit "+GLState.activeTexture()+", expected "+unit);
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: "+message);
+        System.exit(1);
+    }
+}
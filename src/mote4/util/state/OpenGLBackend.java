@@ -0,0 +1,87 @@
+package mote4.util.state;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.glBindBufferRange;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL31.glDrawArraysInstanced;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+
+/**
+ * Passes GLState calls on to OpenGL.
+ * @author Peter
+ */
+public class OpenGLBackend implements GLBackend {
+
+    @Override public void useProgram(int program) { glUseProgram(program); }
+
+    @Override public void activeTexture(int texture) { glActiveTexture(texture); }
+    @Override public void bindTexture(int target, int texture) { glBindTexture(target, texture); }
+    @Override public void texParameteri(int target, int pname, int param) { glTexParameteri(target, pname, param); }
+
+    @Override public void uniform1f(int location, float x) { glUniform1f(location, x); }
+    @Override public void uniform2f(int location, float x, float y) { glUniform2f(location, x, y); }
+    @Override public void uniform3f(int location, float x, float y, float z) { glUniform3f(location, x, y, z); }
+    @Override public void uniform4f(int location, float x, float y, float z, float w) { glUniform4f(location, x, y, z, w); }
+    @Override public void uniform1i(int location, int x) { glUniform1i(location, x); }
+    @Override public void uniform2i(int location, int x, int y) { glUniform2i(location, x, y); }
+    @Override public void uniform3i(int location, int x, int y, int z) { glUniform3i(location, x, y, z); }
+    @Override public void uniform4i(int location, int x, int y, int z, int w) { glUniform4i(location, x, y, z, w); }
+
+    @Override
+    public void uniformv(int components, int location, FloatBuffer values) {
+        switch (components) {
+            case 1: glUniform1fv(location, values); break;
+            case 2: glUniform2fv(location, values); break;
+            case 3: glUniform3fv(location, values); break;
+            case 4: glUniform4fv(location, values); break;
+            default:
+                throw new IllegalArgumentException("The max component size for a vec is 4.");
+        }
+    }
+
+    @Override
+    public void uniformMatrix(int size, int location, FloatBuffer values) {
+        switch (size) {
+            case 3: glUniformMatrix3fv(location, false, values); break;
+            case 4: glUniformMatrix4fv(location, false, values); break;
+            default:
+                throw new IllegalArgumentException("Only 3x3 and 4x4 matrices are supported.");
+        }
+    }
+
+    @Override public int genBuffer() { return glGenBuffers(); }
+    @Override public void deleteBuffer(int buffer) { glDeleteBuffers(buffer); }
+    @Override public void bindBuffer(int target, int buffer) { glBindBuffer(target, buffer); }
+    @Override public void bufferData(int target, long size, int usage) { glBufferData(target, size, usage); }
+    @Override
+    public void bufferSubData(int target, long offset, ByteBuffer data, int first, int size) {
+        nglBufferSubData(target, offset, size, memAddress(data, first));
+    }
+    @Override
+    public void bindBufferRange(int target, int index, int buffer, long offset, long size) {
+        glBindBufferRange(target, index, buffer, offset, size);
+    }
+    @Override public int getInteger(int pname) { return glGetInteger(pname); }
+
+    @Override public void bindVertexArray(int array) { glBindVertexArray(array); }
+    @Override public void enableVertexAttribArray(int index) { glEnableVertexAttribArray(index); }
+    @Override public void disableVertexAttribArray(int index) { glDisableVertexAttribArray(index); }
+    @Override public void vertexAttrib4f(int index, float x, float y, float z, float w) { glVertexAttrib4f(index, x, y, z, w); }
+    @Override public void drawArrays(int mode, int first, int count) { glDrawArrays(mode, first, count); }
+    @Override
+    public void drawArraysInstanced(int mode, int first, int count, int instances) {
+        glDrawArraysInstanced(mode, first, count, instances);
+    }
+    @Override public void drawElements(int mode, int count, int type, long indices) { glDrawElements(mode, count, type, indices); }
+    @Override
+    public void drawElementsInstanced(int mode, int count, int type, long indices, int instances) {
+        glDrawElementsInstanced(mode, count, type, indices, instances);
+    }
+}
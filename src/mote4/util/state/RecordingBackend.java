@@ -0,0 +1,113 @@
+package mote4.util.state;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL13.GL_ACTIVE_TEXTURE;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+
+/**
+ * A backend that records every call as a line of text instead of calling OpenGL.
+ * Install it with GLState.setBackend() to see exactly which calls reach
+ * the driver, for example when testing without an OpenGL context.
+ * Generated buffers are numbered from 1.  getInteger() returns the last
+ * unit passed to activeTexture() for GL_ACTIVE_TEXTURE, GL_TEXTURE0 before
+ * any, and 0 for everything else.
+ * @author Peter
+ */
+public class RecordingBackend implements GLBackend {
+
+    private final List<String> calls = new ArrayList<>();
+    private int buffers;
+    private int activeTexture = GL_TEXTURE0;
+
+    /**
+     * The calls made so far, such as "bindTexture 3553 7".
+     * @return
+     */
+    public List<String> calls() { return Collections.unmodifiableList(calls); }
+    public int size() { return calls.size(); }
+    public void clear() { calls.clear(); }
+
+    private void record(String name, Object... args) {
+        StringBuilder sb = new StringBuilder(name);
+        for (Object o : args)
+            sb.append(' ').append(o);
+        calls.add(sb.toString());
+    }
+
+    private static String values(FloatBuffer values) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = values.position(); i < values.limit(); i++)
+            sb.append(i == values.position() ? "" : ",").append(values.get(i));
+        return sb.append(']').toString();
+    }
+
+    @Override public void useProgram(int program) { record("useProgram", program); }
+
+    @Override
+    public void activeTexture(int texture) {
+        record("activeTexture", texture);
+        activeTexture = texture;
+    }
+    @Override public void bindTexture(int target, int texture) { record("bindTexture", target, texture); }
+    @Override public void texParameteri(int target, int pname, int param) { record("texParameteri", target, pname, param); }
+
+    @Override public void uniform1f(int location, float x) { record("uniform1f", location, x); }
+    @Override public void uniform2f(int location, float x, float y) { record("uniform2f", location, x, y); }
+    @Override public void uniform3f(int location, float x, float y, float z) { record("uniform3f", location, x, y, z); }
+    @Override public void uniform4f(int location, float x, float y, float z, float w) { record("uniform4f", location, x, y, z, w); }
+    @Override public void uniform1i(int location, int x) { record("uniform1i", location, x); }
+    @Override public void uniform2i(int location, int x, int y) { record("uniform2i", location, x, y); }
+    @Override public void uniform3i(int location, int x, int y, int z) { record("uniform3i", location, x, y, z); }
+    @Override public void uniform4i(int location, int x, int y, int z, int w) { record("uniform4i", location, x, y, z, w); }
+
+    @Override
+    public void uniformv(int components, int location, FloatBuffer values) {
+        record("uniform"+components+"fv", location, values(values));
+    }
+    @Override
+    public void uniformMatrix(int size, int location, FloatBuffer values) {
+        record("uniformMatrix"+size+"fv", location, values(values));
+    }
+
+    @Override
+    public int genBuffer() {
+        record("genBuffer");
+        return ++buffers;
+    }
+    @Override public void deleteBuffer(int buffer) { record("deleteBuffer", buffer); }
+    @Override public void bindBuffer(int target, int buffer) { record("bindBuffer", target, buffer); }
+    @Override public void bufferData(int target, long size, int usage) { record("bufferData", target, size, usage); }
+    @Override
+    public void bufferSubData(int target, long offset, ByteBuffer data, int first, int size) {
+        record("bufferSubData", target, offset, size);
+    }
+    @Override
+    public void bindBufferRange(int target, int index, int buffer, long offset, long size) {
+        record("bindBufferRange", target, index, buffer, offset, size);
+    }
+    @Override
+    public int getInteger(int pname) {
+        record("getInteger", pname);
+        return pname == GL_ACTIVE_TEXTURE ? activeTexture : 0;
+    }
+
+    @Override public void bindVertexArray(int array) { record("bindVertexArray", array); }
+    @Override public void enableVertexAttribArray(int index) { record("enableVertexAttribArray", index); }
+    @Override public void disableVertexAttribArray(int index) { record("disableVertexAttribArray", index); }
+    @Override public void vertexAttrib4f(int index, float x, float y, float z, float w) { record("vertexAttrib4f", index, x, y, z, w); }
+    @Override public void drawArrays(int mode, int first, int count) { record("drawArrays", mode, first, count); }
+    @Override
+    public void drawArraysInstanced(int mode, int first, int count, int instances) {
+        record("drawArraysInstanced", mode, first, count, instances);
+    }
+    @Override public void drawElements(int mode, int count, int type, long indices) { record("drawElements", mode, count, type, indices); }
+    @Override
+    public void drawElementsInstanced(int mode, int count, int type, long indices, int instances) {
+        record("drawElementsInstanced", mode, count, type, indices, instances);
+    }
+}
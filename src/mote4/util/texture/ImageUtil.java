@@ -3,6 +3,7 @@ package mote4.util.texture;
 import mote4.scenegraph.Window;
 import mote4.util.ErrorUtils;
 import mote4.util.FileIO;
+import mote4.util.state.GLState;
 import org.lwjgl.system.MemoryStack;
 
 import java.io.IOException;
@@ -78,7 +79,7 @@ public class ImageUtil {
 
     private static Texture createTexture(ByteBuffer image, int width, int height, int components, int texType, boolean filter, boolean mipmap) {
         int textureID = glGenTextures();
-        glBindTexture(texType, textureID);
+        GLState.bindTexture(texType, textureID);
 
         int internalFormat, format,
             minFilter, magFilter;
@@ -113,23 +114,23 @@ public class ImageUtil {
                 float aniso = glGetFloat(GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT);
                 glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAX_ANISOTROPY_EXT, aniso);
                 // filtering
-                glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, minFilter);
-                glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, magFilter);
+                GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, minFilter);
+                GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, magFilter);
                 // wrap mode
-                glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
-                glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+                GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
+                GLState.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
 
                 glTexImage2D(GL_TEXTURE_2D, 0, internalFormat, width, height, 0, format, GL_UNSIGNED_BYTE, image);
                 break;
             case GL_TEXTURE_CUBE_MAP:
                 glEnable(GL_TEXTURE_CUBE_MAP_SEAMLESS); // enable filtering across cubemap faces
                 // filtering
-                glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MIN_FILTER, minFilter);
-                glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, magFilter);
+                GLState.texParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MIN_FILTER, minFilter);
+                GLState.texParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, magFilter);
                 // wrap mode
-                glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-                glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
-                glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
+                GLState.texParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+                GLState.texParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+                GLState.texParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
 
                 for (int i = 0; i < 6; i++) {
                     glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + i,0, internalFormat, width, height, 0, format, GL_UNSIGNED_BYTE, image);
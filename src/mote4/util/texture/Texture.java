@@ -2,6 +2,7 @@ package mote4.util.texture;
 
 import mote4.util.ErrorUtils;
 import mote4.util.shader.Bindable;
+import mote4.util.state.GLState;
 
 import static org.lwjgl.opengl.GL11.*;
 
@@ -32,22 +33,23 @@ public class Texture implements Bindable {
     
     public void bindFiltered() {
         bind();
-        glTexParameteri(TYPE, GL_TEXTURE_MIN_FILTER, GL_LINEAR/*_MIPMAP_LINEAR*/);
-        glTexParameteri(TYPE, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        GLState.texParameteri(TYPE, GL_TEXTURE_MIN_FILTER, GL_LINEAR/*_MIPMAP_LINEAR*/);
+        GLState.texParameteri(TYPE, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
     }
 
     public void bindUnfiltered() {
         bind();
-        glTexParameteri(TYPE, GL_TEXTURE_MIN_FILTER, GL_NEAREST/*_MIPMAP_LINEAR*/);
-        glTexParameteri(TYPE, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        GLState.texParameteri(TYPE, GL_TEXTURE_MIN_FILTER, GL_NEAREST/*_MIPMAP_LINEAR*/);
+        GLState.texParameteri(TYPE, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
     }
 
     @Override
     public void bind() {
-        glBindTexture(TYPE, ID);
+        GLState.bindTexture(TYPE, ID);
     }
     
     public void destroy() {
+        GLState.deleteTexture(ID);
         glDeleteTextures(ID);
         ErrorUtils.checkGLError();
     }
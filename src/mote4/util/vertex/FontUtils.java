@@ -3,13 +3,15 @@ package mote4.util.vertex;
 import mote4.scenegraph.Window;
 import mote4.util.FileIO;
 import mote4.util.vertex.builder.StaticMeshBuilder;
+import mote4.util.vertex.builder.VertexLayout;
 import mote4.util.vertex.mesh.Mesh;
+import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.StringTokenizer;
 
 /**
  *
@@ -27,6 +29,9 @@ public class FontUtils {
     
     private static byte[] metrics;
     private static HashMap<String,byte[]> metricMap = new HashMap<>();
+    private static ByteBuffer scratch;
+
+    public static final int VERTICES_PER_GLYPH = 6;
     
     static {
         // default monospaced metric
@@ -57,9 +62,8 @@ public class FontUtils {
      * @return A vbo containing the string.
      */
     public static Mesh createString(String text, float xPos, float yPos, float xScale, float yScale) {
-        int stride = 6*2; // 6 vertices per letter, with 2 coords per vertex
-        float[] vertices = new float[text.length()*stride]; 
-        float[] texCoords = new float[text.length()*stride];
+        VertexLayout layout = textLayout(false);
+        ByteBuffer vertexData = scratch(text.length()*VERTICES_PER_GLYPH*layout.stride());
         float yOffset = 0; // incremented every newline
         float xOffset = 0; // incremented every character, reset every newline
 
@@ -73,61 +77,13 @@ public class FontUtils {
             }
             else 
             {
-                float currentCharWidth = letterWidth * (float)metrics[(int)c%256]/charPixelWidth;
-
-                // add vertex coordinates
-                vertices[i*stride  ] = xPos +xOffset*xScale;
-                vertices[i*stride+1] = yPos +yOffset*yScale;
-
-                vertices[i*stride+2] = xPos +xOffset*xScale;
-                vertices[i*stride+3] = yPos +letterHeight*yScale +yOffset*yScale;
-
-                vertices[i*stride+4] = xPos +(xOffset+currentCharWidth)*xScale;
-                vertices[i*stride+5] = yPos +yOffset*yScale;
-                
-                vertices[i*stride+6] = xPos +xOffset*xScale;
-                vertices[i*stride+7] = yPos +letterHeight*yScale +yOffset*yScale;
-                
-                vertices[i*stride+8] = xPos +(xOffset+currentCharWidth)*xScale;
-                vertices[i*stride+9] = yPos +letterHeight*yScale +yOffset*yScale;
-
-                vertices[i*stride+10] = xPos +(xOffset+currentCharWidth)*xScale;
-                vertices[i*stride+11] = yPos +yOffset*yScale;
-                
-                xOffset += currentCharWidth;
-
-                // texture coords
-                int x = ((int)c)%COLUMNS;
-                int y = ((int)c)/ROWS;
-                float xCoord = x*COLUMN_WIDTH;
-                float yCoord = y*ROW_HEIGHT;
-
-                // add texture coordinates
-                texCoords[i*stride  ] = xCoord;
-                texCoords[i*stride+1] = yCoord;
-
-                texCoords[i*stride+2] = xCoord;
-                texCoords[i*stride+3] = yCoord+ROW_HEIGHT*letterHeight;
-                
-                texCoords[i*stride+4] = xCoord+COLUMN_WIDTH*currentCharWidth;
-                texCoords[i*stride+5] = yCoord;
-                
-                texCoords[i*stride+6] = xCoord;
-                texCoords[i*stride+7] = yCoord+ROW_HEIGHT*letterHeight;
-
-                texCoords[i*stride+8] = xCoord+COLUMN_WIDTH*currentCharWidth;
-                texCoords[i*stride+9] = yCoord+ROW_HEIGHT*letterHeight;
-
-                texCoords[i*stride+10] = xCoord+COLUMN_WIDTH*currentCharWidth;
-                texCoords[i*stride+11] = yCoord;
+                putGlyph(vertexData, c, xPos+xOffset*xScale, yPos+yOffset*yScale, xScale, yScale, null);
+                xOffset += glyphWidth(c);
             }
         }
+        vertexData.flip();
         
-        return StaticMeshBuilder.constructVAO(GL11.GL_TRIANGLES,
-                                              2,vertices,
-                                              2,texCoords,
-                                              0,null,
-                                              null);
+        return StaticMeshBuilder.constructInterleavedVAO(GL11.GL_TRIANGLES, layout, vertexData, null, 0);
     }
     /**
      * Creates a Mesh designed to display a bitmap font texture.
@@ -141,11 +97,9 @@ public class FontUtils {
      * @return A vbo containing the string.
      */
     public static Mesh createStringColor(String text, float xPos, float yPos, float xScale, float yScale) {
-        int stride = 6*2; // 6 vertices per letter, 2 coords per vertex
-        float[] vertices = new float[text.length()*stride]; 
+        VertexLayout layout = textLayout(true);
+        ByteBuffer vertexData = scratch(text.length()*VERTICES_PER_GLYPH*layout.stride());
         float[] colorVal = new float[] {1,1,1,1};
-        float[] colors = new float[text.length()*stride*2];
-        float[] texCoords = new float[text.length()*stride]; // color has 4 components
         float yOffset = 0; // incremented every newline
         float xOffset = 0; // incremented every character, reset every newline
 
@@ -156,87 +110,138 @@ public class FontUtils {
                 yOffset += lineSpace;
                 xOffset = 0;
             }
-            else if (c == '@' && text.charAt(i+1) == '{')
+            else if (isColor(text, i))
             {
                 // this is a color value, parse the contents
-                int end = text.indexOf('}', i+2);
-                StringTokenizer tok = new StringTokenizer(text.substring(i+2,end),",");
-                int colorInd = 0;
-                while (tok.hasMoreTokens() && colorInd < 4) {
-                    try {
-                        colorVal[colorInd] = Float.valueOf(tok.nextToken());
-                    } catch (NumberFormatException e) {
-                        System.err.println("Invalid text color value: "+text.substring(i+2,end));
-                    }
-                    colorInd++;
-                }
-                i = end;
+                i = parseColor(text, i, colorVal);
             }
             else 
             {
-                float newWidth = letterWidth * (float)metrics[(int)c%256]/charPixelWidth;
+                putGlyph(vertexData, c, xPos+xOffset*xScale, yPos+yOffset*yScale, xScale, yScale, colorVal);
+                xOffset += glyphWidth(c);
+            }
+        }
+        vertexData.flip();
+        
+        return StaticMeshBuilder.constructInterleavedVAO(GL11.GL_TRIANGLES, layout, vertexData, null, 0);
+    }
 
-                // add vertex coordinates
-                vertices[i*stride  ] = xPos+xOffset*xScale;
-                vertices[i*stride+1] = yPos+yOffset*yScale;
+    /**
+     * Whether a color value in the form @{r,g,b,a} starts at the given index.
+     */
+    static boolean isColor(CharSequence text, int i) {
+        return text.charAt(i) == '@' && i+1 < text.length() && text.charAt(i+1) == '{';
+    }
+    /**
+     * Parses a color value in the form @{r,g,b,a} where values are floats of range 0-1.
+     * Missing values are left unchanged.
+     * @param text The text containing the color value.
+     * @param i The index of the '@'.
+     * @param color The color to write to.
+     * @return The index of the closing '}'.
+     */
+    static int parseColor(String text, int i, float[] color) {
+        int end = text.indexOf('}', i+2);
+        if (end == -1)
+            end = text.length();
+        int colorInd = 0;
+        int start = i+2;
+        while (start < end && colorInd < 4) {
+            int comma = text.indexOf(',', start);
+            if (comma == -1 || comma > end)
+                comma = end;
+            try {
+                color[colorInd] = Float.parseFloat(text.substring(start, comma).trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid text color value: "+text.substring(i+2,end));
+            }
+            colorInd++;
+            start = comma+1;
+        }
+        return end;
+    }
 
-                vertices[i*stride+2] = xPos+xOffset*xScale;
-                vertices[i*stride+3] = yPos+letterHeight*yScale+yOffset*yScale;
+    /**
+     * The interleaved vertex layout of text meshes: 2D vertices and tex coords,
+     * with 4 component colors if colored is true.
+     * @param colored
+     * @return
+     */
+    public static VertexLayout textLayout(boolean colored) {
+        return StaticMeshBuilder.layout(2, 2, true, 4, colored, false);
+    }
 
-                vertices[i*stride+4] = xPos+(xOffset+newWidth)*xScale;
-                vertices[i*stride+5] = yPos+yOffset*yScale;
-                
-                vertices[i*stride+6] = xPos+xOffset*xScale;
-                vertices[i*stride+7] = yPos+letterHeight*yScale+yOffset*yScale;
-                
-                vertices[i*stride+8] = xPos+(xOffset+newWidth)*xScale;
-                vertices[i*stride+9] = yPos+letterHeight*yScale+yOffset*yScale;
+    /**
+     * The width of a character in the current metric, before scaling.
+     * @param c
+     * @return
+     */
+    public static float glyphWidth(char c) {
+        return letterWidth * (float)metrics[gridIndex(c)]/charPixelWidth;
+    }
 
-                vertices[i*stride+10] = xPos+(xOffset+newWidth)*xScale;
-                vertices[i*stride+11] = yPos+yOffset*yScale;
-                
-                xOffset += newWidth;
+    /**
+     * The cell of a character in the 16x16 font grid.
+     * Characters outside the grid are shown as '?', use a GlyphAtlas for full Unicode text.
+     */
+    private static int gridIndex(char c) {
+        return c < ROWS*COLUMNS ? c : '?';
+    }
 
-                // texture coords
-                int x = ((int)c)%COLUMNS;
-                int y = ((int)c)/ROWS;
-                float xCoord = x*COLUMN_WIDTH;
-                float yCoord = y*ROW_HEIGHT;
+    /**
+     * The distance between lines in the current metric, before scaling.
+     * @return
+     */
+    public static float lineSpace() {
+        return lineSpace;
+    }
 
-                // add texture coordinates
-                texCoords[i*stride  ] = xCoord;
-                texCoords[i*stride+1] = yCoord;
+    /**
+     * Writes the two triangles of a single character into a buffer,
+     * in the layout returned by textLayout().  Does not allocate.
+     * @param out The buffer to write to, at its position.
+     * @param c The character.
+     * @param x X position of the character's corner.
+     * @param y Y position of the character's corner.
+     * @param xScale X scale.
+     * @param yScale Y scale.
+     * @param color The color of the character as {r,g,b,a}, or null for a layout without colors.
+     */
+    public static void putGlyph(ByteBuffer out, char c, float x, float y, float xScale, float yScale, float[] color) {
+        float width = glyphWidth(c);
+        float x1 = x+width*xScale,
+              y1 = y+letterHeight*yScale;
 
-                texCoords[i*stride+2] = xCoord;
-                texCoords[i*stride+3] = yCoord+ROW_HEIGHT*letterHeight;
-                
-                texCoords[i*stride+4] = xCoord+COLUMN_WIDTH*newWidth;
-                texCoords[i*stride+5] = yCoord;
-                
-                texCoords[i*stride+6] = xCoord;
-                texCoords[i*stride+7] = yCoord+ROW_HEIGHT*letterHeight;
+        // texture coords
+        int index = gridIndex(c);
+        float u0 = (index%COLUMNS)*COLUMN_WIDTH,
+              v0 = (index/ROWS)*ROW_HEIGHT;
+        float u1 = u0+COLUMN_WIDTH*width,
+              v1 = v0+ROW_HEIGHT*letterHeight;
 
-                texCoords[i*stride+8] = xCoord+COLUMN_WIDTH*newWidth;
-                texCoords[i*stride+9] = yCoord+ROW_HEIGHT*letterHeight;
+        putVertex(out, x,  y,  u0, v0, color);
+        putVertex(out, x,  y1, u0, v1, color);
+        putVertex(out, x1, y,  u1, v0, color);
+        putVertex(out, x,  y1, u0, v1, color);
+        putVertex(out, x1, y1, u1, v1, color);
+        putVertex(out, x1, y,  u1, v0, color);
+    }
+    private static void putVertex(ByteBuffer out, float x, float y, float u, float v, float[] color) {
+        out.putFloat(x).putFloat(y);
+        if (color != null)
+            out.putFloat(color[0]).putFloat(color[1]).putFloat(color[2]).putFloat(color[3]);
+        out.putFloat(u).putFloat(v);
+    }
 
-                texCoords[i*stride+10] = xCoord+COLUMN_WIDTH*newWidth;
-                texCoords[i*stride+11] = yCoord;
-                
-                // add color values
-                for (int k = 0; k < 6; k++) {
-                    colors[i*stride*2+k*4  ] = colorVal[0];
-                    colors[i*stride*2+k*4+1] = colorVal[1];
-                    colors[i*stride*2+k*4+2] = colorVal[2];
-                    colors[i*stride*2+k*4+3] = colorVal[3];
-                }
-            }
-        }
-        
-        return StaticMeshBuilder.constructVAO(GL11.GL_TRIANGLES,
-                                              2,vertices,
-                                              2,texCoords,
-                                              4,colors,
-                                              null);
+    /**
+     * A shared buffer for building text meshes, cleared and grown if needed.
+     * The contents are copied by OpenGL, so the buffer can be reused by every call.
+     */
+    private static ByteBuffer scratch(int bytes) {
+        if (scratch == null || scratch.capacity() < bytes)
+            scratch = BufferUtils.createByteBuffer(Math.max(bytes, 4096));
+        scratch.clear();
+        return scratch;
     }
     
     /**
@@ -264,9 +269,7 @@ public class FontUtils {
                 width = 0;
             }
             else {
-                int i = (int) c;
-                i %= 256;
-                width += letterWidth * (float) metrics[i] / charPixelWidth;
+                width += glyphWidth(c);
             }
         }
         return Math.max(maxWidth, width);
@@ -279,17 +282,25 @@ public class FontUtils {
      */
     public static void loadMetric(String file, String name) {
         try {
-            byte[] m = FileIO.getByteArray("/res/textures/" + file + ".metric");
-            if (m.length != 258)
-                throw new IllegalArgumentException("Metrics file must be 258 bytes long, was " + m.length + " bytes.");
-            metricMap.put(name, m);
-            useMetric(name);
+            addMetric(FileIO.getByteArray("/res/textures/" + file + ".metric"), name);
         } catch (IOException e) {
             e.printStackTrace();
             Window.destroy();
             return;
         }
     }
+    /**
+     * Adds metric data for a font and makes it the current metric.
+     * @param m The 256 character widths followed by the character width and height, in pixels.
+     * @param name Name to use when binding this metric.
+     */
+    public static void addMetric(byte[] m, String name) {
+        if (m.length != 258)
+            throw new IllegalArgumentException("Metrics file must be 258 bytes long, was " + m.length + " bytes.");
+        metricMap.put(name, m);
+        TextLayout.clearCache(); // cached layouts may use an old metric with this name
+        useMetric(name);
+    }
     public static void useMetric(String name) {
         if (!metricMap.containsKey(name))
             throw new IllegalArgumentException("Font metric '"+name+"' is not loaded.");
@@ -300,50 +311,18 @@ public class FontUtils {
         lineSpace = letterHeight = 1;
     }
 
+    /**
+     * Inserts newlines into a string so no line is longer than the limit,
+     * and makes fontMetric the current metric.
+     * Results are cached, see TextLayout.
+     * @param source The text to break.
+     * @param fontMetric The name of the font metric to measure with.
+     * @param lineLengthLimit The maximum width of a line.
+     * @return
+     */
     public static String breakIntoLines(String source, String fontMetric, double lineLengthLimit) {
-        useMetric(fontMetric);
-        StringBuilder sb = new StringBuilder();
-        float spaceLength = getStringWidth(" ");
-
-        String[] lines = source.split("\n", -1);
-        int lineIndex = 0;
-        for (String line : lines)
-        {
-            boolean lastLine = lineIndex == lines.length-1;
-            lineIndex++;
-
-            float lineLength = 0;
-            String[] words = line.split(" ", -1);
-            int wordIndex = 0;
-            for (String word : words)
-            {
-                boolean lastWord = wordIndex == words.length-1;
-                wordIndex++;
-
-                //word = word.trim();
-                float wordLength = getStringWidth(word);
-
-                if (lineLength+spaceLength+wordLength > lineLengthLimit) {
-                    sb.append("\n");
-                    sb.append(word);
-                    if (!lastWord)
-                        sb.append(" ");
-                    lineLength = wordLength+spaceLength;
-                } else {
-                    sb.append(word);
-                    if (!lastWord)
-                        sb.append(" ");
-                    lineLength += wordLength+spaceLength;
-                }
-            }
-            if (!lastLine)
-                sb.append("\n");
-        }
-        /*int i = source.length()-1;
-        while (i >= 0 && source.charAt(i) == '\n') {
-            sb.append("\n"); // re-append trailing newines
-            i--;
-        }*/
-        return sb.toString();//.trim();
+        TextLayout layout = TextLayout.get(source, fontMetric, lineLengthLimit);
+        useMetric(fontMetric); // cached layouts are not measured, but callers expect this metric to be current
+        return layout.text();
     }
 }
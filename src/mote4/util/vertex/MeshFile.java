@@ -0,0 +1,237 @@
+package mote4.util.vertex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import mote4.util.FileIO;
+import mote4.util.vertex.builder.StaticMeshBuilder;
+import mote4.util.vertex.builder.VertexLayout;
+import mote4.util.vertex.mesh.Mesh;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * Engine-native binary mesh format.  Meshes are stored exactly as they
+ * are uploaded to OpenGL, so loading one is a memory-map and a buffer upload.
+ * <pre>
+ * Header, little endian ints:
+ *   magic              "MMSH"
+ *   version            1
+ *   primitive type     e.g. GL_TRIANGLES
+ *   attribute count    N
+ *   N attributes       { attribute index, size, type, normalized, offset }
+ *   stride             bytes per vertex
+ *   vertex count
+ *   index count        0 if the mesh is not indexed
+ *   index type         GL_UNSIGNED_SHORT, GL_UNSIGNED_INT or 0
+ *   bounds             6 floats, min x,y,z then max x,y,z
+ * Vertex data          vertex count * stride bytes, interleaved
+ * Index data           index count * index size bytes
+ * </pre>
+ * @author Peter
+ */
+public class MeshFile {
+
+    public static final String EXTENSION = ".mmesh";
+    private static final int MAGIC = 'M' | 'M'<<8 | 'S'<<16 | 'H'<<24,
+                             VERSION = 1;
+
+    public final int primitiveType, vertexCount, indexCount, indexType;
+    public final VertexLayout layout;
+    private final float[] bounds;
+    private final ByteBuffer vertexData, indexData;
+
+    private MeshFile(int primitiveType, VertexLayout layout, int vertexCount, int indexCount, int indexType,
+                     float[] bounds, ByteBuffer vertexData, ByteBuffer indexData)
+    {
+        this.primitiveType = primitiveType;
+        this.layout = layout;
+        this.vertexCount = vertexCount;
+        this.indexCount = indexCount;
+        this.indexType = indexType;
+        this.bounds = bounds;
+        this.vertexData = vertexData;
+        this.indexData = indexData;
+    }
+
+    /**
+     * The bounding box of the mesh.
+     * @return {min x, min y, min z, max x, max y, max z}
+     */
+    public float[] getBounds() { return bounds.clone(); }
+
+    /**
+     * Uploads the mesh data to OpenGL.
+     * @return A VAO, or an IndexedVAO if the mesh is indexed.
+     */
+    public Mesh createMesh() {
+        return StaticMeshBuilder.constructInterleavedVAO(primitiveType, layout,
+                vertexData.duplicate(),
+                indexCount > 0 ? indexData.duplicate() : null, indexType);
+    }
+
+    /**
+     * Loads a mesh file resource.  If the resource is a plain file it is
+     * memory-mapped, otherwise it is read into a direct buffer.
+     * @param filepath
+     * @return
+     */
+    public static MeshFile load(String filepath) throws IOException {
+        Path path = FileIO.getFilePath(filepath);
+        if (path != null)
+            return map(path);
+        return read(FileIO.getByteBuffer(filepath));
+    }
+
+    /**
+     * Memory-maps a mesh file.  The vertex and index data are views of
+     * the mapped file and are never copied into the Java heap.
+     * @param path
+     * @return
+     */
+    public static MeshFile map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads a mesh file from a buffer.  The returned object keeps views of
+     * the buffer rather than copying the vertex and index data.
+     * @param file
+     * @return
+     */
+    public static MeshFile read(ByteBuffer file) {
+        ByteBuffer buf = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.remaining() < 8 || buf.getInt() != MAGIC)
+            throw new IllegalArgumentException("Not a mesh file, header is missing.");
+        int version = buf.getInt();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unsupported mesh file version "+version+", expected "+VERSION+".");
+
+        int primitiveType = buf.getInt();
+        int numAttribs = buf.getInt();
+        VertexLayout layout = new VertexLayout();
+        for (int i = 0; i < numAttribs; i++) {
+            int attrib = buf.getInt(), size = buf.getInt(), type = buf.getInt(),
+                normalized = buf.getInt(), offset = buf.getInt();
+            layout.add(attrib, size, type, normalized != 0);
+            if (layout.elements().get(i).offset != offset)
+                throw new IllegalArgumentException("Mesh file attribute "+attrib+" has an unsupported offset.");
+        }
+        int stride = buf.getInt();
+        if (stride != layout.stride())
+            throw new IllegalArgumentException("Mesh file stride ("+stride+") does not match its attributes.");
+        int vertexCount = buf.getInt();
+        int indexCount = buf.getInt();
+        int indexType = buf.getInt();
+        float[] bounds = new float[6];
+        for (int i = 0; i < 6; i++)
+            bounds[i] = buf.getFloat();
+
+        ByteBuffer vertexData = slice(buf, vertexCount*stride);
+        ByteBuffer indexData = null;
+        if (indexCount > 0)
+            indexData = slice(buf, indexCount*VertexLayout.typeSize(indexType));
+
+        return new MeshFile(primitiveType, layout, vertexCount, indexCount, indexType, bounds, vertexData, indexData);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int length) {
+        if (buf.remaining() < length)
+            throw new IllegalArgumentException("Mesh file is truncated.");
+        ByteBuffer view = buf.duplicate();
+        view.limit(view.position()+length);
+        buf.position(buf.position()+length);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Converts the contents of an .obj file into a mesh file.
+     * The mesh is welded and indexed the same way OBJLoader.createIndexedVAO() does.
+     * @param obj The loaded .obj file.
+     * @param path Where to write the mesh file.
+     */
+    public static void write(OBJLoader obj, Path path) throws IOException {
+        WeldedMesh mesh = obj.weld();
+
+        VertexLayout layout = new VertexLayout();
+        layout.add(StaticMeshBuilder.VERTEX_ATTRIB, 3);
+        if (mesh.texCoords != null)
+            layout.add(StaticMeshBuilder.TEXCOORD_ATTRIB, 2);
+        if (mesh.normals != null)
+            layout.add(StaticMeshBuilder.NORMAL_ATTRIB, 3);
+        int indexType = StaticMeshBuilder.indexType(mesh.numVertices);
+
+        int headerSize = 4*(4 + 5*layout.elements().size() + 4) + 6*4;
+        int size = headerSize + mesh.numVertices*layout.stride() + mesh.indices.length*mesh.indexSize();
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+        buf.putInt(MAGIC).putInt(VERSION).putInt(GL11.GL_TRIANGLES);
+        buf.putInt(layout.elements().size());
+        for (VertexLayout.Element e : layout.elements())
+            buf.putInt(e.attrib).putInt(e.size).putInt(e.type).putInt(e.normalized ? 1 : 0).putInt(e.offset);
+        buf.putInt(layout.stride()).putInt(mesh.numVertices).putInt(mesh.indices.length).putInt(indexType);
+        for (float f : bounds(mesh.vertices))
+            buf.putFloat(f);
+
+        for (int i = 0; i < mesh.numVertices; i++) {
+            buf.putFloat(mesh.vertices[i*3]).putFloat(mesh.vertices[i*3+1]).putFloat(mesh.vertices[i*3+2]);
+            if (mesh.texCoords != null)
+                buf.putFloat(mesh.texCoords[i*2]).putFloat(mesh.texCoords[i*2+1]);
+            if (mesh.normals != null)
+                buf.putFloat(mesh.normals[i*3]).putFloat(mesh.normals[i*3+1]).putFloat(mesh.normals[i*3+2]);
+        }
+        for (int i : mesh.indices) {
+            if (indexType == GL11.GL_UNSIGNED_SHORT)
+                buf.putShort((short)i);
+            else
+                buf.putInt(i);
+        }
+        buf.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (buf.hasRemaining())
+                channel.write(buf);
+        }
+    }
+
+    private static float[] bounds(float[] vertices) {
+        float[] b = new float[6];
+        if (vertices.length == 0)
+            return b;
+        for (int i = 0; i < 3; i++)
+            b[i] = b[i+3] = vertices[i];
+        for (int i = 0; i < vertices.length; i += 3) {
+            for (int j = 0; j < 3; j++) {
+                b[j]   = Math.min(b[j],   vertices[i+j]);
+                b[j+3] = Math.max(b[j+3], vertices[i+j]);
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Command line converter from .obj to mesh files.
+     * Usage: MeshFile input.obj output.mmesh [center]
+     * @param args
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: MeshFile input.obj output"+EXTENSION+" [center]");
+            return;
+        }
+        boolean center = args.length > 2 && args[2].equals("center");
+        OBJLoader obj = new OBJLoader(Files.readAllBytes(Paths.get(args[0])), center,
+                                      Runtime.getRuntime().availableProcessors());
+        write(obj, Paths.get(args[1]));
+        System.out.println("Wrote "+args[1]+" ("+Files.size(Paths.get(args[1]))+" bytes).");
+    }
+}
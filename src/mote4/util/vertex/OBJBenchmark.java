@@ -0,0 +1,156 @@
+package mote4.util.vertex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import mote4.util.FloatList;
+import mote4.util.IntList;
+
+/**
+ * Measures how OBJ parsing scales with threads, on a generated file.
+ *
+ * The file is a height field of triangles and quads with positions, tex
+ * coords and normals, written in rows the way exporters write objects, so
+ * every chunk holds both vertex and face records.  Half of the faces use
+ * relative indices, which only resolve correctly if every chunk knows how
+ * many records precede it.
+ *
+ * Every thread count must parse to exactly the same data as one thread
+ * parsing the same file written with absolute indices.
+ * Prints the best and median time of several runs for 1, 2, 4 and 8 threads,
+ * and the speedup over one thread.  Thread counts above the number of
+ * cores cannot be expected to scale.
+ *
+ * Usage: OBJBenchmark [faces] [runs]
+ * @author Peter
+ */
+public class OBJBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8};
+
+    public static void main(String[] args) {
+        int faces = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        long start = System.nanoTime();
+        byte[] file = generate(faces, true, 1);
+        System.out.printf("Generated %d faces, %.1f MB in %.0f ms, %d cores available%n", faces,
+                file.length/1e6, (System.nanoTime()-start)/1e6, Runtime.getRuntime().availableProcessors());
+
+        // the same file with absolute indices, parsed on one thread
+        byte[] absolute = generate(faces, false, 1);
+        OBJData reference = new OBJData();
+        new OBJParser(reference).parse(absolute, 0, absolute.length);
+        absolute = null;
+        double single = 0;
+        System.out.printf("%7s %10s %10s %10s %8s%n", "threads", "best ms", "median ms", "MB/s", "speedup");
+        for (int threads : THREADS) {
+            long[] times = new long[runs];
+            OBJData data = null;
+            for (int run = -1; run < runs; run++) { // the first run warms up
+                data = new OBJData();
+                long t = System.nanoTime();
+                OBJParser.parseParallel(file, data, threads);
+                if (run >= 0)
+                    times[run] = System.nanoTime()-t;
+            }
+            compare(reference, data, threads+" threads");
+
+            Arrays.sort(times);
+            double best = times[0]/1e6, median = times[runs/2]/1e6;
+            if (threads == 1)
+                single = median;
+            System.out.printf("%7d %10.1f %10.1f %10.1f %7.2fx%n", threads, best, median,
+                    file.length/1e6/(median/1e3), single/median);
+        }
+        System.out.println("OK: every thread count parsed "+reference.numFaces()+" faces identically");
+    }
+
+    /**
+     * Generates an .obj file.
+     * @param faces The number of faces, about half of them quads.
+     * @param relative Whether every other face uses negative, relative indices.
+     * @param seed
+     * @return The contents of the file.
+     */
+    static byte[] generate(int faces, boolean relative, long seed) {
+        Random random = new Random(seed);
+        // every cell holds one quad or two triangles, 1.5 faces on average
+        int cols = (int)Math.sqrt(faces/1.5)+1;
+        StringBuilder sb = new StringBuilder(faces*110);
+        sb.append("# generated by OBJBenchmark\no grid\n");
+
+        int emitted = 0, written = 0;
+        for (int row = 0; emitted < faces; row++) {
+            for (int col = 0; col <= cols; col++) {
+                // smooth enough that every quad projects to a convex polygon
+                float height = (float)(.05*Math.sin(col*.1)*Math.cos(row*.1)) + random.nextFloat()*.001f;
+                sb.append("v ").append(col*.01f).append(' ')
+                  .append(height).append(' ')
+                  .append(row*-.01f).append('\n');
+                sb.append("vt ").append(col/(float)cols).append(' ').append(random.nextFloat()).append('\n');
+                float nx = random.nextFloat()*.2f-.1f, nz = random.nextFloat()*.2f-.1f;
+                float length = (float)Math.sqrt(nx*nx + 1 + nz*nz);
+                sb.append("vn ").append(nx/length).append(' ').append(1/length).append(' ')
+                  .append(nz/length).append('\n');
+            }
+            written += cols+1;
+            if (row == 0)
+                continue;
+
+            for (int col = 0; col < cols && emitted < faces; col++) {
+                // corners of the cell, counter-clockwise seen from above
+                int a = written-2*(cols+1)+col+1, b = a+1, c = b+cols+1, d = a+cols+1;
+                boolean rel = relative && (emitted & 1) == 1;
+                if (random.nextBoolean() || emitted+1 == faces) {
+                    face(sb, rel, written, a, b, c, d);
+                    emitted++;
+                } else {
+                    face(sb, rel, written, a, b, c);
+                    face(sb, rel, written, a, c, d);
+                    emitted += 2;
+                }
+            }
+        }
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void face(StringBuilder sb, boolean relative, int written, int... corners) {
+        sb.append('f');
+        for (int index : corners) {
+            int i = relative ? index-written-1 : index;
+            sb.append(' ').append(i).append('/').append(i).append('/').append(i);
+        }
+        sb.append('\n');
+    }
+
+    static void compare(OBJData expected, OBJData actual, String what) {
+        compare(expected.positions, actual.positions, what+" positions");
+        compare(expected.texCoords, actual.texCoords, what+" tex coords");
+        compare(expected.normals, actual.normals, what+" normals");
+        compare(expected.faceSizes, actual.faceSizes, what+" face sizes");
+        compare(expected.faceV, actual.faceV, what+" position indices");
+        compare(expected.faceVT, actual.faceVT, what+" tex coord indices");
+        compare(expected.faceVN, actual.faceVN, what+" normal indices");
+    }
+    private static void compare(FloatList expected, FloatList actual, String what) {
+        if (expected.size() != actual.size())
+            fail(what+": "+actual.size()+" values, expected "+expected.size());
+        int i = Arrays.mismatch(expected.array(), 0, expected.size(), actual.array(), 0, actual.size());
+        if (i >= 0)
+            fail(what+" differ at "+i+": "+actual.array()[i]+", expected "+expected.array()[i]);
+    }
+    private static void compare(IntList expected, IntList actual, String what) {
+        if (expected.size() != actual.size())
+            fail(what+": "+actual.size()+" values, expected "+expected.size());
+        int i = Arrays.mismatch(expected.array(), 0, expected.size(), actual.array(), 0, actual.size());
+        if (i >= 0)
+            fail(what+" differ at "+i+": "+actual.array()[i]+", expected "+expected.array()[i]);
+    }
+
+    static void fail(String message) {
+        System.err.println("FAILED: "+message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,68 @@
+package mote4.util.vertex;
+
+import mote4.util.FloatList;
+import mote4.util.IntList;
+
+/**
+ * Raw geometry read from a .obj file, stored in primitive lists.
+ * Positions and normals have 3 components, texture coordinates have 2.
+ * Faces are stored as a list of corner counts, with the position, tex coord
+ * and normal index of every corner stored in order.  Indices are 1-based,
+ * an index of 0 means the corner did not specify that attribute.
+ * @author Peter
+ */
+class OBJData {
+
+    final FloatList positions, texCoords, normals;
+    final IntList faceSizes, faceV, faceVT, faceVN;
+
+    OBJData() {
+        positions = new FloatList(1024);
+        texCoords = new FloatList(1024);
+        normals   = new FloatList(1024);
+        faceSizes = new IntList(1024);
+        faceV  = new IntList(1024);
+        faceVT = new IntList(1024);
+        faceVN = new IntList(1024);
+    }
+
+    int numPositions() { return positions.size()/3; }
+    int numTexCoords() { return texCoords.size()/2; }
+    int numNormals()   { return normals.size()/3; }
+    int numFaces()     { return faceSizes.size(); }
+
+    /**
+     * Reserves space for the given number of records.
+     */
+    void ensureCapacity(int numPositions, int numTexCoords, int numNormals) {
+        positions.ensureCapacity(numPositions*3);
+        texCoords.ensureCapacity(numTexCoords*2);
+        normals.ensureCapacity(numNormals*3);
+    }
+
+    /**
+     * Appends all records from another OBJData.
+     * Face indices are copied as-is, so they must already be resolved
+     * against the combined data.
+     * @param other
+     */
+    void append(OBJData other) {
+        positions.addAll(other.positions);
+        texCoords.addAll(other.texCoords);
+        normals.addAll(other.normals);
+        faceSizes.addAll(other.faceSizes);
+        faceV.addAll(other.faceV);
+        faceVT.addAll(other.faceVT);
+        faceVN.addAll(other.faceVN);
+    }
+
+    void clear() {
+        positions.clear();
+        texCoords.clear();
+        normals.clear();
+        faceSizes.clear();
+        faceV.clear();
+        faceVT.clear();
+        faceVN.clear();
+    }
+}
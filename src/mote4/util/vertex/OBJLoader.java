@@ -2,41 +2,38 @@ package mote4.util.vertex;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
-import mote4.util.ErrorUtils;
-import org.lwjgl.opengl.GL11;
-import mote4.util.vertex.builder.MeshBuilder;
+import mote4.util.FloatList;
+import mote4.util.vertex.builder.StaticMeshBuilder;
+import mote4.util.vertex.mesh.IndexedVAO;
 import mote4.util.vertex.mesh.VAO;
+import org.lwjgl.opengl.GL11;
 
 /**
  * !!!! Modified for this engine to support vertex buffer objects and vertex array objects.
  *
- *
+ * Parsing is done by OBJParser directly on the bytes of the file, and all
+ * geometry is stored in primitive arrays.
  *
  * @author Jeremy Adams (elias4444)
  *
  * Use these lines if reading from a file
  * FileReader fr = new FileReader(ref);
  * BufferedReader br = new BufferedReader(fr);
- * 
+ *
  * Use these lines if reading from within a jar
  * InputStreamReader fr = new InputStreamReader(new BufferedInputStream(getClass().getClassLoader().getResourceAsStream(ref)));
  * BufferedReader br = new BufferedReader(fr);
  */
 
 public class OBJLoader {
-    private ArrayList vertexsets = new ArrayList(); // Vertex Coordinates
-    private ArrayList vertexsetsnorms = new ArrayList(); // Vertex Coordinates Normals
-    private ArrayList vertexsetstexs = new ArrayList(); // Vertex Coordinates Textures
-    private ArrayList faces = new ArrayList(); // Array of Faces (vertex sets)
-    private ArrayList facestexs = new ArrayList(); // Array of of Faces textures
-    private ArrayList facesnorms = new ArrayList(); // Array of Faces normals
-    
-    private int objectlist;
+
+    private final OBJData data = new OBJData();
     private int numpolys = 0;
-    
+    private long expandedSize = 0, indexedSize = 0;
+
     //// Statistics for drawing ////
     public float toppoint = 0;		// y+
     public float bottompoint = 0;	// y-
@@ -44,252 +41,333 @@ public class OBJLoader {
     public float rightpoint = 0;	// x+
     public float farpoint = 0;		// z-
     public float nearpoint = 0;		// z+
-    
+
+    /**
+     * Loads an .obj file from a reader.
+     * The contents are read fully into memory before parsing, prefer
+     * OBJLoader(byte[], boolean) when the raw bytes are available.
+     * @param ref
+     * @param centerit
+     */
     public OBJLoader (BufferedReader ref, boolean centerit) {
-        loadobject(ref);
+        this(readFully(ref), centerit);
+    }
+    /**
+     * Loads an .obj file from its raw bytes.
+     * @param file The contents of the .obj file.
+     * @param centerit Whether the model should be re-centered at the origin.
+     */
+    public OBJLoader (byte[] file, boolean centerit) {
+        this(file, centerit, 1);
+    }
+    /**
+     * Loads an .obj file from its raw bytes, parsing it on multiple threads.
+     * Small files are always parsed on the calling thread.
+     * @param file The contents of the .obj file.
+     * @param centerit Whether the model should be re-centered at the origin.
+     * @param threads The number of threads to parse with.
+     */
+    public OBJLoader (byte[] file, boolean centerit, int threads) {
+        loadobject(file, threads);
+        findBounds();
         if (centerit) {
             centerit();
         }
-        //opengldrawtolist();
-        numpolys = faces.size();
-        //cleanup();
+        numpolys = data.numFaces();
     }
-    
+
     private void cleanup() {
-        vertexsets.clear();
-        vertexsetsnorms.clear();
-        vertexsetstexs.clear();
-        faces.clear();
-        facestexs.clear();
-        facesnorms.clear();
+        data.clear();
     }
-    
-    private void loadobject(BufferedReader br) {
-        int linecounter = 0;
+
+    private static byte[] readFully(BufferedReader br) {
+        StringBuilder sb = new StringBuilder();
+        char[] chars = new char[8192];
         try {
-            
-            String newline;
-            boolean firstpass = true;
-            
-            while (((newline = br.readLine()) != null)) {
-                linecounter++;
-                newline = newline.trim();
-                //if (newline.startsWith("vt"))
-                    //System.out.println(newline);
-                if (newline.length() > 0) {
-                    if (newline.startsWith("v ")) {
-                    //if (newline.charAt(0) == 'v' && newline.charAt(1) == ' ') {
-                        float[] coords = new float[4];
-                        String[] coordstext;// = new String[4];
-                        coordstext = newline.split("\\s+");
-                        for (int i = 1;i < coordstext.length;i++) {
-                            coords[i-1] = Float.valueOf(coordstext[i]);
-                        }
-                        //// check for farpoints ////
-                        if (firstpass) {
-                            rightpoint = coords[0];
-                            leftpoint = coords[0];
-                            toppoint = coords[1];
-                            bottompoint = coords[1];
-                            nearpoint = coords[2];
-                            farpoint = coords[2];
-                            firstpass = false;
-                        }
-                        if (coords[0] > rightpoint) {
-                            rightpoint = coords[0];
-                        }
-                        if (coords[0] < leftpoint) {
-                            leftpoint = coords[0];
-                        }
-                        if (coords[1] > toppoint) {
-                            toppoint = coords[1];
-                        }
-                        if (coords[1] < bottompoint) {
-                            bottompoint = coords[1];
-                        }
-                        if (coords[2] > nearpoint) {
-                            nearpoint = coords[2];
-                        }
-                        if (coords[2] < farpoint) {
-                            farpoint = coords[2];
-                        }
-                        /////////////////////////////
-                        vertexsets.add(coords);
-                    }
-                    else if (newline.startsWith("vt")) {
-                    //if (newline.charAt(0) == 'v' && newline.charAt(1) == 't') {
-                        float[] coords = new float[4];
-                        String[] coordstext;// = new String[4];
-                        coordstext = newline.split("\\s+");
-                        for (int i = 1;i < coordstext.length;i++) {
-                            coords[i-1] = Float.valueOf(coordstext[i]);
-                        }
-                        
-                        vertexsetstexs.add(coords);
-                    }
-                    else if (newline.startsWith("vn")) {
-                    //if (newline.charAt(0) == 'v' && newline.charAt(1) == 'n') {
-                        float[] coords = new float[4];
-                        String[] coordstext;// = new String[4];
-                        coordstext = newline.split("\\s+");
-                        for (int i = 1;i < coordstext.length;i++) {
-                            coords[i-1] = Float.valueOf(coordstext[i]).floatValue();
-                        }
-                        vertexsetsnorms.add(coords);
-                    }
-                    
-                    //if (isReading) { /********/
-                    else if (newline.startsWith("f ")) {
-                    //if (newline.charAt(0) == 'f' && newline.charAt(1) == ' ') {
-                        String[] coordstext = newline.split("\\s+");
-                        int[] v = new int[coordstext.length - 1];
-                        int[] vt = new int[coordstext.length - 1];
-                        int[] vn = new int[coordstext.length - 1];
-                        
-                        for (int i = 1;i < coordstext.length;i++) {
-                            String fixstring = coordstext[i].replaceAll("//","/0/");
-                            String[] tempstring = fixstring.split("/");
-                            v[i-1] = Integer.valueOf(tempstring[0]);
-                            if (tempstring.length > 1) {
-                                vt[i-1] = Integer.valueOf(tempstring[1]);
-                            } else {
-                                vt[i-1] = 0;
-                            }
-                            if (tempstring.length > 2) {
-                                vn[i-1] = Integer.valueOf(tempstring[2]);
-                            } else {
-                                vn[i-1] = 0;
-                            }
-                        }
-                        faces.add(v);
-                        facestexs.add(vt);
-                        facesnorms.add(vn);
-                    }
-                    
-                    //} /***********/
-                    /*
-                    if (newline.startsWith("g ")) {
-                    if (newline.contains("polygon0"))
-                    isReading = false;
-                    else
-                    isReading = true;
-                    }*/
-                }
-            }
-            
+            int n;
+            while ((n = br.read(chars)) != -1)
+                sb.append(chars, 0, n);
         } catch (IOException e) {
             System.out.println("Failed to read file: " + br.toString());
             System.out.println(Arrays.toString(e.getStackTrace()));
             System.exit(0);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void loadobject(byte[] file, int threads) {
+        try {
+            OBJParser.parseParallel(file, data, threads);
         } catch (NumberFormatException e) {
-            System.out.println("Malformed OBJ (on line " + linecounter + "): " + br.toString() + "\r \r" + e.getMessage());
+            System.out.println("Malformed OBJ: " + e.getMessage());
             System.exit(0);
         } catch (Exception e) {
-            System.out.println("Error reading file: " + br.toString());
+            System.out.println("Error reading OBJ.");
             System.out.println(Arrays.toString(e.getStackTrace()));
             System.exit(0);
         }
+    }
 
+    private void findBounds() {
+        float[] v = data.positions.array();
+        int size = data.positions.size();
+        if (size == 0)
+            return;
+        rightpoint = leftpoint = v[0];
+        toppoint = bottompoint = v[1];
+        nearpoint = farpoint = v[2];
+        for (int i = 3; i < size; i += 3) {
+            rightpoint  = Math.max(rightpoint,  v[i]);
+            leftpoint   = Math.min(leftpoint,   v[i]);
+            toppoint    = Math.max(toppoint,    v[i+1]);
+            bottompoint = Math.min(bottompoint, v[i+1]);
+            nearpoint   = Math.max(nearpoint,   v[i+2]);
+            farpoint    = Math.min(farpoint,    v[i+2]);
+        }
     }
-    
+
     private void centerit() {
         float xshift = (rightpoint-leftpoint) /2f;
         float yshift = (toppoint - bottompoint) /2f;
         float zshift = (nearpoint - farpoint) /2f;
-        
-        for (int i=0; i < vertexsets.size(); i++) {
-            float[] coords = new float[4];
-            
-            coords[0] = ((float[])(vertexsets.get(i)))[0] - leftpoint - xshift;
-            coords[1] = ((float[])(vertexsets.get(i)))[1] - bottompoint - yshift;
-            coords[2] = ((float[])(vertexsets.get(i)))[2] - farpoint - zshift;
-            
-            vertexsets.set(i,coords); // = coords;
+
+        float[] v = data.positions.array();
+        int size = data.positions.size();
+        for (int i = 0; i < size; i += 3) {
+            v[i]   = v[i]   - leftpoint - xshift;
+            v[i+1] = v[i+1] - bottompoint - yshift;
+            v[i+2] = v[i+2] - farpoint - zshift;
         }
-        
     }
-    
+
     public float getXWidth() {
-        float returnval = 0;
-        returnval = rightpoint - leftpoint;
-        return returnval;
+        return rightpoint - leftpoint;
     }
-    
+
     public float getYHeight() {
-        float returnval = 0;
-        returnval = toppoint - bottompoint;
-        return returnval;
+        return toppoint - bottompoint;
     }
-    
+
     public float getZDepth() {
-        float returnval = 0;
-        returnval = nearpoint - farpoint;
-        return returnval;
+        return nearpoint - farpoint;
     }
-    
+
     public int numpolygons() {
         return numpolys;
     }
-    
+
+    /**
+     * The size in bytes the vertex data of the last created indexed mesh
+     * would have had without indexing.
+     * @return
+     */
+    public long getExpandedSize() {
+        return expandedSize;
+    }
+
+    /**
+     * The size in bytes of the vertex and index data of the last created indexed mesh.
+     * @return
+     */
+    public long getIndexedSize() {
+        return indexedSize;
+    }
+
     /**
      * Loads the model data into a vertex array object.
      * @return
      */
     public VAO createVAO() {
-        MeshBuilder builder = new MeshBuilder(3);
-        //System.out.println("faces size:    "+faces.size());
-        //System.out.println("vertex size:   "+vertexsets.size());
-        //System.out.println("normal size:   "+vertexsetsnorms.size());
-        //System.out.println("texcoord size: "+vertexsetstexs.size());
-        if (!vertexsetsnorms.isEmpty())
-            builder.includeNormals();
-        if (!vertexsetstexs.isEmpty())
-            builder.includeTexCoords(2);
-        
-        // for every face
-        for (int i = 0; i < faces.size(); i++) {
-            int[] tempfaces = (int[])(faces.get(i));
-            int[] tempfacesnorms = (int[])(facesnorms.get(i));
-            int[] tempfacestexs = (int[])(facestexs.get(i));
-            
-            int[] order;
-            //// Quad Begin Header ////
-            if (tempfaces.length == 3) {
-                order = new int[] {0,1,2};
-            } else if (tempfaces.length == 4) {
-                order = new int[] {0,1,2, 3,0,2};
-            } else {
-                throw new IllegalStateException("VAO constructor does not support polygon faces.");
-            }
-            ////////////////////////////
-            
-            // for every vertex
-            for (int j : order)
-            //for (int j = 0; j < tempfaces.length; j++)
-            {
-                if (tempfacesnorms[j] != 0)
-                {
-                    float normtempx = ((float[])vertexsetsnorms.get(tempfacesnorms[j] - 1))[0];
-                    float normtempy = ((float[])vertexsetsnorms.get(tempfacesnorms[j] - 1))[1];
-                    float normtempz = ((float[])vertexsetsnorms.get(tempfacesnorms[j] - 1))[2];
-                    builder.normals(new float[] {normtempx, normtempy, normtempz});
+        float[][] mesh = expand();
+        cleanup();
+        return StaticMeshBuilder.constructVAO(GL11.GL_TRIANGLES,
+                                              3, mesh[0],
+                                              2, mesh[1],
+                                              0, null,
+                                              mesh[2]);
+    }
+
+    /**
+     * Triangulates the faces into separate vertices, as createVAO() uploads them.
+     * @return The vertices, tex coords and normals, tex coords and normals are
+     *         null if the file has none.
+     */
+    float[][] expand() {
+        boolean hasNormals = !data.normals.isEmpty(),
+                hasTex = !data.texCoords.isEmpty();
+
+        // the face corner used by every triangle corner
+        int[] corners = triangulateFaces();
+        int numCorners = corners.length;
+
+        float[] vertices = new float[numCorners*3];
+        float[] texCoords = hasTex ? new float[numCorners*2] : null;
+        float[] normals = hasNormals ? new float[numCorners*3] : null;
+
+        // for every vertex
+        for (int i = 0; i < numCorners; i++)
+            copyCorner(corners[i], i, vertices, texCoords, normals);
+        return new float[][] {vertices, texCoords, normals};
+    }
+
+    /**
+     * Loads the model data into a vertex array object with an element buffer.
+     * Face corners that share the same position, tex coord and normal are
+     * welded into a single vertex.
+     * @return
+     */
+    public IndexedVAO createIndexedVAO() {
+        WeldedMesh mesh = weld();
+        expandedSize = mesh.expandedBytes();
+        indexedSize = mesh.indexedBytes();
+        cleanup();
+        return StaticMeshBuilder.constructIndexedVAO(GL11.GL_TRIANGLES,
+                                                     3, mesh.vertices,
+                                                     2, mesh.texCoords,
+                                                     0, null,
+                                                     mesh.normals,
+                                                     mesh.indices);
+    }
+
+    /**
+     * Merges identical face corners into a table of unique vertices,
+     * and triangulates the faces into a list of indices.
+     * @return
+     */
+    WeldedMesh weld() {
+        int[] faceV = data.faceV.array(),
+              faceVT = data.faceVT.array(),
+              faceVN = data.faceVN.array();
+        int numCorners = data.faceV.size();
+        boolean hasNormals = !data.normals.isEmpty(),
+                hasTex = !data.texCoords.isEmpty();
+
+        // open addressing hash table of (v,vt,vn) keys, storing unique index+1
+        int capacity = Integer.highestOneBit(Math.max(numCorners, 1)*2 - 1) << 1;
+        int mask = capacity-1;
+        int[] table = new int[capacity];
+        int[] cornerVertex = new int[numCorners];
+        int[] firstCorner = new int[numCorners];
+        int unique = 0;
+
+        for (int k = 0; k < numCorners; k++) {
+            int v = faceV[k];
+            int vt = hasTex ? faceVT[k] : 0;
+            int vn = hasNormals ? faceVN[k] : 0;
+            int h = hash(v, vt, vn) & mask;
+            while (true) {
+                int slot = table[h];
+                if (slot == 0) {
+                    // new unique vertex
+                    table[h] = unique+1;
+                    firstCorner[unique] = k;
+                    cornerVertex[k] = unique;
+                    unique++;
+                    break;
                 }
-                if (tempfacestexs[j] != 0)
+                int other = firstCorner[slot-1];
+                if (faceV[other] == v &&
+                    (!hasTex || faceVT[other] == vt) &&
+                    (!hasNormals || faceVN[other] == vn))
                 {
-                    float textempx = ((float[])vertexsetstexs.get(tempfacestexs[j] - 1))[0];
-                    float textempy = ((float[])vertexsetstexs.get(tempfacestexs[j] - 1))[1];
-                    //float textempz = ((float[])vertexsetstexs.get(tempfacestexs[w] - 1))[2];
-                    builder.texCoords(new float[] {textempx,textempy});//,textempz});
+                    cornerVertex[k] = slot-1;
+                    break;
                 }
-                float tempx = ((float[])vertexsets.get(tempfaces[j] - 1))[0];
-                float tempy = ((float[])vertexsets.get(tempfaces[j] - 1))[1];
-                float tempz = ((float[])vertexsets.get(tempfaces[j] - 1))[2];
-                builder.vertices(new float[] {tempx,tempy,tempz});
+                h = (h+1) & mask;
             }
-            ///////////////////////////
         }
-        cleanup();
-        return builder.constructVAO(GL11.GL_TRIANGLES);
+
+        float[] vertices = new float[unique*3];
+        float[] texCoords = hasTex ? new float[unique*2] : null;
+        float[] normals = hasNormals ? new float[unique*3] : null;
+        for (int u = 0; u < unique; u++)
+            copyCorner(firstCorner[u], u, vertices, texCoords, normals);
+
+        int[] indices = triangulateFaces();
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = cornerVertex[indices[i]];
+
+        return new WeldedMesh(vertices, texCoords, normals, indices);
+    }
+
+    private static int hash(int v, int vt, int vn) {
+        int h = v*0x9E3779B1 ^ vt*0x85EBCA77 ^ vn*0xC2B2AE3D;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Splits every face into triangles.  Polygons with more than 3 corners
+     * are split by a PolygonTriangulator, faces with less than 3 are skipped.
+     * @return The face corner used by every triangle corner, in order.
+     */
+    private int[] triangulateFaces() {
+        int[] sizes = data.faceSizes.array();
+        int[] faceV = data.faceV.array();
+        float[] positions = data.positions.array();
+        int numFaces = data.numFaces();
+
+        int numIndices = 0;
+        for (int i = 0; i < numFaces; i++)
+            if (sizes[i] >= 3)
+                numIndices += 3*(sizes[i]-2);
+        int[] corners = new int[numIndices];
+
+        PolygonTriangulator triangulator = new PolygonTriangulator();
+        float[] polygon = new float[3*8];
+        int k = 0, faceStart = 0;
+        for (int i = 0; i < numFaces; i++) {
+            int n = sizes[i];
+            if (n == 3) {
+                corners[k++] = faceStart;
+                corners[k++] = faceStart+1;
+                corners[k++] = faceStart+2;
+            } else if (n > 3) {
+                if (polygon.length < n*3)
+                    polygon = new float[n*3*2];
+                for (int j = 0; j < n; j++) {
+                    int v = faceV[faceStart+j];
+                    if (v < 1 || v > data.numPositions())
+                        throw new IllegalStateException("Face references missing vertex "+v+".");
+                    System.arraycopy(positions, (v-1)*3, polygon, j*3, 3);
+                }
+                int count = triangulator.triangulate(polygon, n);
+                int[] triangles = triangulator.indices();
+                for (int j = 0; j < count; j++)
+                    corners[k++] = faceStart + triangles[j];
+            }
+            faceStart += n;
+        }
+        return corners;
+    }
+
+    /**
+     * Copies the attributes of a face corner into the output arrays.
+     * @param k The index of the face corner.
+     * @param out The index of the output vertex.
+     */
+    private void copyCorner(int k, int out, float[] vertices, float[] texCoords, float[] normals) {
+        int v = data.faceV.array()[k];
+        if (v < 1 || v > data.numPositions())
+            throw new IllegalStateException("Face references missing vertex "+v+".");
+        copy(data.positions, v, 3, vertices, out);
+
+        if (texCoords != null) {
+            int vt = data.faceVT.array()[k];
+            if (vt > data.numTexCoords())
+                throw new IllegalStateException("Face references missing tex coord "+vt+".");
+            if (vt > 0)
+                copy(data.texCoords, vt, 2, texCoords, out);
+        }
+        if (normals != null) {
+            int vn = data.faceVN.array()[k];
+            if (vn > data.numNormals())
+                throw new IllegalStateException("Face references missing normal "+vn+".");
+            if (vn > 0)
+                copy(data.normals, vn, 3, normals, out);
+        }
+    }
+
+    private static void copy(FloatList src, int index, int size, float[] dest, int out) {
+        System.arraycopy(src.array(), (index-1)*size, dest, out*size, size);
     }
-    
-}
\ No newline at end of file
+}
@@ -0,0 +1,311 @@
+package mote4.util.vertex;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares OBJLoader with the String based loader it replaced, on a
+ * generated file from OBJBenchmark with millions of faces.
+ *
+ * Both loaders read the file from memory, center it and produce the vertex
+ * data createVAO() uploads.  The old loader is kept below as it was, with
+ * its MeshBuilder's ArrayList<Float> storage and the copy to a float array
+ * it made before uploading.  Both must produce exactly the same vertices,
+ * tex coords and normals.
+ *
+ * Prints the median time of the runs for each loader, and the mean bytes
+ * allocated and time spent in garbage collection per run.  The old loader needs a large heap,
+ * run with -Xmx4g for the default size.
+ *
+ * Usage: OBJLoaderBenchmark [faces] [runs]
+ * @author Peter
+ */
+public class OBJLoaderBenchmark {
+
+    // looked up once, as getThreadMXBean() itself allocates
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int faces = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        byte[] file = OBJBenchmark.generate(faces, false, 1);
+        System.out.printf("Generated %d faces, %.1f MB%n", faces, file.length/1e6);
+
+        float[][] expected = null, actual = null;
+        long[] legacyTimes = new long[runs], currentTimes = new long[runs];
+        double[] legacy = new double[2], current = new double[2];
+        for (int run = -1; run < runs; run++) { // the first run warms up
+            expected = null;
+            long[] before = measure();
+            expected = new LegacyOBJLoader(reader(file), true).createVAO();
+            accumulate(legacyTimes, legacy, before, run);
+
+            actual = null;
+            before = measure();
+            actual = new OBJLoader(file, true).expand();
+            accumulate(currentTimes, current, before, run);
+        }
+
+        String[] names = {"vertices", "tex coords", "normals"};
+        for (int i = 0; i < 3; i++) {
+            if (expected[i].length != actual[i].length)
+                OBJBenchmark.fail(names[i]+": "+actual[i].length+" values, expected "+expected[i].length);
+            int mismatch = Arrays.mismatch(expected[i], actual[i]);
+            if (mismatch >= 0)
+                OBJBenchmark.fail(names[i]+" differ at "+mismatch+": "+actual[i][mismatch]
+                        +", expected "+expected[i][mismatch]);
+        }
+
+        Arrays.sort(legacyTimes);
+        Arrays.sort(currentTimes);
+        double legacyMedian = legacyTimes[runs/2]/1e6, currentMedian = currentTimes[runs/2]/1e6;
+        System.out.printf("%-10s %10s %14s %10s%n", "loader", "median ms", "allocated MB", "GC ms");
+        System.out.printf("%-10s %10.1f %14.1f %10.1f%n", "String", legacyMedian, legacy[0]/runs, legacy[1]/runs);
+        System.out.printf("%-10s %10.1f %14.1f %10.1f%n", "OBJParser", currentMedian, current[0]/runs, current[1]/runs);
+        System.out.printf("OK: both loaders produced the same %d vertices, %.1fx faster%n",
+                actual[0].length/3, legacyMedian/currentMedian);
+    }
+
+    private static BufferedReader reader(byte[] file) {
+        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(file), StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * @return The current time, allocated bytes and GC time.
+     */
+    private static long[] measure() {
+        long gc = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            gc += Math.max(0, bean.getCollectionTime());
+        return new long[] {System.nanoTime(), threads.getCurrentThreadAllocatedBytes(), gc};
+    }
+
+    /**
+     * Stores the time of a run, and adds the allocation in MB and GC time in ms since before to the totals.
+     */
+    private static void accumulate(long[] times, double[] totals, long[] before, int run) {
+        long[] after = measure();
+        if (run < 0)
+            return;
+        times[run] = after[0]-before[0];
+        totals[0] += (after[1]-before[1])/1e6;
+        totals[1] += after[2]-before[2];
+    }
+
+    /**
+     * OBJLoader as it was before OBJParser, without the OpenGL upload.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static class LegacyOBJLoader {
+        private ArrayList vertexsets = new ArrayList(); // Vertex Coordinates
+        private ArrayList vertexsetsnorms = new ArrayList(); // Vertex Coordinates Normals
+        private ArrayList vertexsetstexs = new ArrayList(); // Vertex Coordinates Textures
+        private ArrayList faces = new ArrayList(); // Array of Faces (vertex sets)
+        private ArrayList facestexs = new ArrayList(); // Array of of Faces textures
+        private ArrayList facesnorms = new ArrayList(); // Array of Faces normals
+
+        public float toppoint = 0;		// y+
+        public float bottompoint = 0;	// y-
+        public float leftpoint = 0;		// x-
+        public float rightpoint = 0;	// x+
+        public float farpoint = 0;		// z-
+        public float nearpoint = 0;		// z+
+
+        LegacyOBJLoader(BufferedReader ref, boolean centerit) {
+            loadobject(ref);
+            if (centerit) {
+                centerit();
+            }
+        }
+
+        private void loadobject(BufferedReader br) {
+            try {
+                String newline;
+                boolean firstpass = true;
+
+                while (((newline = br.readLine()) != null)) {
+                    newline = newline.trim();
+                    if (newline.length() > 0) {
+                        if (newline.startsWith("v ")) {
+                            float[] coords = new float[4];
+                            String[] coordstext;
+                            coordstext = newline.split("\\s+");
+                            for (int i = 1;i < coordstext.length;i++) {
+                                coords[i-1] = Float.valueOf(coordstext[i]);
+                            }
+                            //// check for farpoints ////
+                            if (firstpass) {
+                                rightpoint = coords[0];
+                                leftpoint = coords[0];
+                                toppoint = coords[1];
+                                bottompoint = coords[1];
+                                nearpoint = coords[2];
+                                farpoint = coords[2];
+                                firstpass = false;
+                            }
+                            if (coords[0] > rightpoint) {
+                                rightpoint = coords[0];
+                            }
+                            if (coords[0] < leftpoint) {
+                                leftpoint = coords[0];
+                            }
+                            if (coords[1] > toppoint) {
+                                toppoint = coords[1];
+                            }
+                            if (coords[1] < bottompoint) {
+                                bottompoint = coords[1];
+                            }
+                            if (coords[2] > nearpoint) {
+                                nearpoint = coords[2];
+                            }
+                            if (coords[2] < farpoint) {
+                                farpoint = coords[2];
+                            }
+                            /////////////////////////////
+                            vertexsets.add(coords);
+                        }
+                        else if (newline.startsWith("vt")) {
+                            float[] coords = new float[4];
+                            String[] coordstext;
+                            coordstext = newline.split("\\s+");
+                            for (int i = 1;i < coordstext.length;i++) {
+                                coords[i-1] = Float.valueOf(coordstext[i]);
+                            }
+                            vertexsetstexs.add(coords);
+                        }
+                        else if (newline.startsWith("vn")) {
+                            float[] coords = new float[4];
+                            String[] coordstext;
+                            coordstext = newline.split("\\s+");
+                            for (int i = 1;i < coordstext.length;i++) {
+                                coords[i-1] = Float.valueOf(coordstext[i]).floatValue();
+                            }
+                            vertexsetsnorms.add(coords);
+                        }
+                        else if (newline.startsWith("f ")) {
+                            String[] coordstext = newline.split("\\s+");
+                            int[] v = new int[coordstext.length - 1];
+                            int[] vt = new int[coordstext.length - 1];
+                            int[] vn = new int[coordstext.length - 1];
+
+                            for (int i = 1;i < coordstext.length;i++) {
+                                String fixstring = coordstext[i].replaceAll("//","/0/");
+                                String[] tempstring = fixstring.split("/");
+                                v[i-1] = Integer.valueOf(tempstring[0]);
+                                if (tempstring.length > 1) {
+                                    vt[i-1] = Integer.valueOf(tempstring[1]);
+                                } else {
+                                    vt[i-1] = 0;
+                                }
+                                if (tempstring.length > 2) {
+                                    vn[i-1] = Integer.valueOf(tempstring[2]);
+                                } else {
+                                    vn[i-1] = 0;
+                                }
+                            }
+                            faces.add(v);
+                            facestexs.add(vt);
+                            facesnorms.add(vn);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void centerit() {
+            float xshift = (rightpoint-leftpoint) /2f;
+            float yshift = (toppoint - bottompoint) /2f;
+            float zshift = (nearpoint - farpoint) /2f;
+
+            for (int i=0; i < vertexsets.size(); i++) {
+                float[] coords = new float[4];
+
+                coords[0] = ((float[])(vertexsets.get(i)))[0] - leftpoint - xshift;
+                coords[1] = ((float[])(vertexsets.get(i)))[1] - bottompoint - yshift;
+                coords[2] = ((float[])(vertexsets.get(i)))[2] - farpoint - zshift;
+
+                vertexsets.set(i,coords);
+            }
+        }
+
+        /**
+         * The old createVAO(), storing into lists like the old MeshBuilder and
+         * copying them to arrays like its constructVAO() did before uploading.
+         * @return The vertices, tex coords and normals.
+         */
+        float[][] createVAO() {
+            ArrayList<Float> vertices = new ArrayList<>(), texCoords = new ArrayList<>(), normals = new ArrayList<>();
+
+            // for every face
+            for (int i = 0; i < faces.size(); i++) {
+                int[] tempfaces = (int[])(faces.get(i));
+                int[] tempfacesnorms = (int[])(facesnorms.get(i));
+                int[] tempfacestexs = (int[])(facestexs.get(i));
+
+                int[] order;
+                //// Quad Begin Header ////
+                if (tempfaces.length == 3) {
+                    order = new int[] {0,1,2};
+                } else if (tempfaces.length == 4) {
+                    order = new int[] {0,1,2, 3,0,2};
+                } else {
+                    throw new IllegalStateException("VAO constructor does not support polygon faces.");
+                }
+                ////////////////////////////
+
+                // for every vertex
+                for (int j : order)
+                {
+                    if (tempfacesnorms[j] != 0)
+                    {
+                        float normtempx = ((float[])vertexsetsnorms.get(tempfacesnorms[j] - 1))[0];
+                        float normtempy = ((float[])vertexsetsnorms.get(tempfacesnorms[j] - 1))[1];
+                        float normtempz = ((float[])vertexsetsnorms.get(tempfacesnorms[j] - 1))[2];
+                        add(normals, new float[] {normtempx, normtempy, normtempz});
+                    }
+                    if (tempfacestexs[j] != 0)
+                    {
+                        float textempx = ((float[])vertexsetstexs.get(tempfacestexs[j] - 1))[0];
+                        float textempy = ((float[])vertexsetstexs.get(tempfacestexs[j] - 1))[1];
+                        add(texCoords, new float[] {textempx,textempy});
+                    }
+                    float tempx = ((float[])vertexsets.get(tempfaces[j] - 1))[0];
+                    float tempy = ((float[])vertexsets.get(tempfaces[j] - 1))[1];
+                    float tempz = ((float[])vertexsets.get(tempfaces[j] - 1))[2];
+                    add(vertices, new float[] {tempx,tempy,tempz});
+                }
+                ///////////////////////////
+            }
+            vertexsets.clear();
+            vertexsetsnorms.clear();
+            vertexsetstexs.clear();
+            faces.clear();
+            facestexs.clear();
+            facesnorms.clear();
+            return new float[][] {toArray(vertices), toArray(texCoords), toArray(normals)};
+        }
+
+        private static void add(ArrayList<Float> list, float... v) {
+            for (float f : v)
+                list.add(f);
+        }
+        private static float[] toArray(ArrayList<Float> list) {
+            float[] fArray = new float[list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                fArray[i] = list.get(i);
+            }
+            return fArray;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package mote4.util.vertex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+/**
+ * Byte-level tokenizer for Wavefront .obj files.
+ * Reads straight from a byte array into the primitive lists of an OBJData,
+ * without creating a String for any line or token.  Only v, vt, vn and f
+ * records are read, all other records are skipped.
+ * @author Peter
+ */
+class OBJParser {
+
+    // exact powers of ten representable as doubles
+    private static final double[] POW10 = {
+            1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    // files smaller than this are always parsed on the calling thread
+    private static final int MIN_CHUNK_SIZE = 256*1024;
+
+    // pools for thread counts other than the common pool's, created on first use and kept
+    private static final HashMap<Integer,ForkJoinPool> pools = new HashMap<>();
+
+    private final OBJData out;
+    private byte[] buf;
+    private int pos, end, line;
+    // counts of records and lines that precede the parsed range
+    private int vBase, vtBase, vnBase, lineBase;
+
+    OBJParser(OBJData out) {
+        this.out = out;
+    }
+
+    /**
+     * Parses a whole file, splitting it into chunks at line boundaries
+     * and parsing the chunks in parallel.
+     * A counting pass runs first so every chunk knows how many v, vt and vn
+     * records precede it, which is needed to resolve relative face indices.
+     * The chunks are then appended to the output in file order, so all
+     * indices stay valid.
+     * @param buf The contents of the .obj file.
+     * @param out The data to append to.
+     * @param threads The number of threads to use, 1 or less parses on the calling thread.
+     */
+    static void parseParallel(byte[] buf, OBJData out, int threads) {
+        int numChunks = Math.min(threads*4, buf.length/MIN_CHUNK_SIZE);
+        if (threads <= 1 || numChunks <= 1) {
+            new OBJParser(out).parse(buf, 0, buf.length);
+            return;
+        }
+
+        // split at line boundaries
+        int[] bounds = new int[numChunks+1];
+        for (int i = 1; i < numChunks; i++) {
+            int b = Math.max(bounds[i-1], (int)((long)buf.length*i/numChunks));
+            while (b < buf.length && buf[b-1] != '\n')
+                b++;
+            bounds[i] = b;
+        }
+        bounds[numChunks] = buf.length;
+
+        ForkJoinPool pool = pool(threads);
+        // count records in each chunk
+        int[][] counts = new int[numChunks][];
+        runAll(pool, numChunks, chunk ->
+            counts[chunk] = count(buf, bounds[chunk], bounds[chunk+1]));
+
+        // every chunk starts with the totals of all previous chunks
+        int[][] bases = new int[numChunks][4];
+        for (int i = 1; i < numChunks; i++)
+            for (int j = 0; j < 4; j++)
+                bases[i][j] = bases[i-1][j] + counts[i-1][j];
+        int[] last = bases[numChunks-1], lastCount = counts[numChunks-1];
+        out.ensureCapacity(last[0]+lastCount[0], last[1]+lastCount[1], last[2]+lastCount[2]);
+
+        OBJData[] results = new OBJData[numChunks];
+        runAll(pool, numChunks, chunk -> {
+            OBJData data = new OBJData();
+            OBJParser parser = new OBJParser(data);
+            parser.vBase    = bases[chunk][0];
+            parser.vtBase   = bases[chunk][1];
+            parser.vnBase   = bases[chunk][2];
+            parser.lineBase = bases[chunk][3];
+            parser.parse(buf, bounds[chunk], bounds[chunk+1]);
+            results[chunk] = data;
+        });
+
+        // merge in file order
+        for (OBJData data : results)
+            out.append(data);
+    }
+
+    /**
+     * The pool to parse with on the given number of threads.  Pools are shared
+     * between files, so loading many models does not start new threads for each.
+     * Uses the common pool if it has the requested parallelism.
+     */
+    private static synchronized ForkJoinPool pool(int threads) {
+        if (threads == ForkJoinPool.getCommonPoolParallelism())
+            return ForkJoinPool.commonPool();
+        ForkJoinPool pool = pools.get(threads);
+        if (pool == null) {
+            // idle workers exit on their own, and are daemon threads
+            pool = new ForkJoinPool(threads);
+            pools.put(threads, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Runs a task for every chunk and waits for all of them to finish.
+     * If any chunks fail, the exception from the earliest chunk is rethrown.
+     */
+    private static void runAll(ForkJoinPool pool, int numChunks, IntConsumer task) {
+        RuntimeException[] errors = new RuntimeException[numChunks];
+        List<Callable<Void>> tasks = new ArrayList<>(numChunks);
+        for (int i = 0; i < numChunks; i++) {
+            final int chunk = i;
+            tasks.add(() -> {
+                try {
+                    task.accept(chunk);
+                } catch (RuntimeException e) {
+                    errors[chunk] = e;
+                }
+                return null;
+            });
+        }
+        pool.invokeAll(tasks);
+        for (RuntimeException e : errors)
+            if (e != null)
+                throw e;
+    }
+
+    /**
+     * Counts the v, vt and vn records and the lines in a range of the buffer,
+     * classifying lines the same way parse() does.
+     * @return {v count, vt count, vn count, line count}
+     */
+    private static int[] count(byte[] buf, int start, int end) {
+        int v = 0, vt = 0, vn = 0, lines = 0;
+        int pos = start;
+        while (pos < end) {
+            lines++;
+            while (pos < end && isSpace(buf[pos]))
+                pos++;
+            if (pos+1 < end && buf[pos] == 'v') {
+                byte next = buf[pos+1];
+                if (isSpace(next))
+                    v++;
+                else if (pos+2 < end && isSpace(buf[pos+2])) {
+                    if (next == 't')
+                        vt++;
+                    else if (next == 'n')
+                        vn++;
+                }
+            }
+            while (pos < end && buf[pos] != '\n')
+                pos++;
+            pos++;
+        }
+        return new int[] {v, vt, vn, lines};
+    }
+
+    /**
+     * Parses all records in the given range of the buffer.
+     * The range should begin at the start of a line.
+     * @param buf The contents of the .obj file.
+     * @param start Index of the first byte to read.
+     * @param end Index after the last byte to read.
+     * @throws NumberFormatException If a record contains a malformed number.
+     */
+    void parse(byte[] buf, int start, int end) {
+        this.buf = buf;
+        this.pos = start;
+        this.end = end;
+        line = 0;
+
+        while (pos < end) {
+            line++;
+            skipSpaces();
+            if (pos < end) {
+                byte c = buf[pos];
+                if (c == 'v') {
+                    byte next = peek(1);
+                    if (isSpace(next)) {
+                        pos++;
+                        out.positions.add(nextFloat(), nextFloat(), nextFloat());
+                    } else if (next == 't' && isSpace(peek(2))) {
+                        pos += 2;
+                        out.texCoords.add(nextFloat(), nextFloat());
+                    } else if (next == 'n' && isSpace(peek(2))) {
+                        pos += 2;
+                        out.normals.add(nextFloat(), nextFloat(), nextFloat());
+                    }
+                } else if (c == 'f' && isSpace(peek(1))) {
+                    pos++;
+                    readFace();
+                }
+            }
+            skipLine();
+        }
+    }
+
+    /**
+     * The number of the last line read by parse().
+     * @return
+     */
+    int line() { return lineBase + line; }
+
+    private void readFace() {
+        int corners = 0;
+        while (true) {
+            skipSpaces();
+            if (pos >= end || isLineEnd(buf[pos]) || buf[pos] == '#')
+                break;
+
+            int v = resolve(nextIndex(), vBase + out.numPositions());
+            int vt = 0, vn = 0;
+            if (pos < end && buf[pos] == '/') {
+                pos++;
+                if (startsIndex())
+                    vt = resolve(nextIndex(), vtBase + out.numTexCoords());
+                if (pos < end && buf[pos] == '/') {
+                    pos++;
+                    if (startsIndex())
+                        vn = resolve(nextIndex(), vnBase + out.numNormals());
+                }
+            }
+            out.faceV.add(v);
+            out.faceVT.add(vt);
+            out.faceVN.add(vn);
+            corners++;
+        }
+        out.faceSizes.add(corners);
+    }
+
+    /**
+     * Converts negative (relative) indices into absolute 1-based indices.
+     */
+    private static int resolve(int index, int count) {
+        if (index < 0)
+            return count + index + 1;
+        return index;
+    }
+
+    private boolean startsIndex() {
+        return pos < end && (isDigit(buf[pos]) || buf[pos] == '-');
+    }
+
+    private int nextIndex() {
+        boolean negative = false;
+        if (pos < end && buf[pos] == '-') {
+            negative = true;
+            pos++;
+        }
+        int start = pos;
+        int value = 0;
+        while (pos < end && isDigit(buf[pos])) {
+            value = value*10 + (buf[pos]-'0');
+            pos++;
+        }
+        if (pos == start)
+            throw malformed("Expected a face index");
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads the next float on the line.  Missing components are read as 0.
+     */
+    private float nextFloat() {
+        skipSpaces();
+        if (pos >= end || isLineEnd(buf[pos]) || buf[pos] == '#')
+            return 0;
+
+        int start = pos;
+        boolean negative = false;
+        if (buf[pos] == '-' || buf[pos] == '+') {
+            negative = buf[pos] == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0, digits = 0;
+        boolean anyDigits = false, exact = true;
+        while (pos < end && isDigit(buf[pos])) {
+            anyDigits = true;
+            if (digits < 18) {
+                mantissa = mantissa*10 + (buf[pos]-'0');
+                if (mantissa != 0)
+                    digits++;
+            } else {
+                exponent++;
+                exact &= buf[pos] == '0';
+            }
+            pos++;
+        }
+        if (pos < end && buf[pos] == '.') {
+            pos++;
+            while (pos < end && isDigit(buf[pos])) {
+                anyDigits = true;
+                if (digits < 18) {
+                    mantissa = mantissa*10 + (buf[pos]-'0');
+                    if (mantissa != 0)
+                        digits++;
+                    exponent--;
+                } else
+                    exact &= buf[pos] == '0';
+                pos++;
+            }
+        }
+        if (pos < end && (buf[pos] == 'e' || buf[pos] == 'E')) {
+            pos++;
+            boolean negativeExp = false;
+            if (pos < end && (buf[pos] == '-' || buf[pos] == '+')) {
+                negativeExp = buf[pos] == '-';
+                pos++;
+            }
+            int e = 0;
+            int expStart = pos;
+            while (pos < end && isDigit(buf[pos])) {
+                if (e < 10000)
+                    e = e*10 + (buf[pos]-'0');
+                pos++;
+            }
+            if (pos == expStart)
+                anyDigits = false;
+            exponent += negativeExp ? -e : e;
+        }
+
+        // the token must end at whitespace or the end of the line
+        while (pos < end && !isSpace(buf[pos]) && !isLineEnd(buf[pos])) {
+            pos++;
+            anyDigits = false;
+        }
+        if (!anyDigits)
+            return slowParse(start);
+
+        if (mantissa == 0)
+            return negative ? -0f : 0f;
+        if (!exact || mantissa >= MAX_EXACT_MANTISSA || exponent > 22 || exponent < -22)
+            return slowParse(start);
+
+        // both operands are exact, so the division or multiplication is correctly rounded
+        double value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+        // rounding a double to a float can round twice if the double landed exactly
+        // halfway between two floats, defer to the JDK for those rare values
+        long bits = Double.doubleToRawLongBits(value);
+        if ((bits & 0x1FFFFFFFL) == 0x10000000L || value < Float.MIN_NORMAL || value > Float.MAX_VALUE)
+            return slowParse(start);
+
+        float f = (float)value;
+        return negative ? -f : f;
+    }
+
+    private float slowParse(int start) {
+        String token = new String(buf, start, pos-start, StandardCharsets.ISO_8859_1);
+        try {
+            return Float.parseFloat(token);
+        } catch (NumberFormatException e) {
+            throw malformed("Invalid number '"+token+"'");
+        }
+    }
+
+    private NumberFormatException malformed(String message) {
+        return new NumberFormatException(message+" on line "+line()+".");
+    }
+
+    private byte peek(int offset) {
+        if (pos+offset < end)
+            return buf[pos+offset];
+        return '\n';
+    }
+
+    private void skipSpaces() {
+        while (pos < end && isSpace(buf[pos]))
+            pos++;
+    }
+
+    private void skipLine() {
+        while (pos < end && buf[pos] != '\n')
+            pos++;
+        pos++;
+    }
+
+    private static boolean isSpace(byte b) { return b == ' ' || b == '\t'; }
+    private static boolean isLineEnd(byte b) { return b == '\n' || b == '\r'; }
+    private static boolean isDigit(byte b) { return b >= '0' && b <= '9'; }
+}
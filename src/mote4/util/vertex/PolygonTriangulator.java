@@ -0,0 +1,184 @@
+package mote4.util.vertex;
+
+/**
+ * Splits planar polygons into triangles.
+ * Convex polygons are split into a fan, concave polygons are split by ear clipping.
+ * All working memory is kept between calls, so triangulating many polygons
+ * does not allocate once the buffers have grown to the largest polygon.
+ * Triangles keep the winding order of the polygon.
+ * @author Peter
+ */
+public class PolygonTriangulator {
+
+    private static final float EPSILON = 1e-12f;
+
+    private int[] indices = new int[3*8];
+    private float[] x = new float[16], y = new float[16];
+    private int[] remaining = new int[16];
+
+    /**
+     * Triangulates a polygon.
+     * @param xyz The positions of the polygon's corners, 3 floats per corner, in order.
+     * @param n The number of corners.
+     * @return The number of indices written to indices(), always 3*(n-2),
+     *         or 0 if the polygon has less than 3 corners.
+     */
+    public int triangulate(float[] xyz, int n) {
+        if (n < 3)
+            return 0;
+        if (indices.length < 3*(n-2))
+            indices = new int[3*(n-2)*2];
+        if (n == 3) {
+            indices[0] = 0;
+            indices[1] = 1;
+            indices[2] = 2;
+            return 3;
+        }
+
+        if (!project(xyz, n) || isConvex(n)) {
+            if (n == 4) {
+                // matches the order quads have always been split in
+                indices[0] = 0; indices[1] = 1; indices[2] = 2;
+                indices[3] = 3; indices[4] = 0; indices[5] = 2;
+                return 6;
+            }
+            return fan(n);
+        }
+        return clipEars(n);
+    }
+
+    /**
+     * The triangle indices written by the last call to triangulate().
+     * Each index is the number of a corner of the polygon.
+     * The array is reused by every call.
+     * @return
+     */
+    public int[] indices() { return indices; }
+
+    private int fan(int n) {
+        int k = 0;
+        for (int i = 1; i < n-1; i++) {
+            indices[k++] = 0;
+            indices[k++] = i;
+            indices[k++] = i+1;
+        }
+        return k;
+    }
+
+    /**
+     * Projects the polygon onto the plane of its largest normal axis,
+     * so the projected polygon is counter-clockwise.
+     * @return False if the polygon has no area.
+     */
+    private boolean project(float[] xyz, int n) {
+        if (x.length < n) {
+            x = new float[n*2];
+            y = new float[n*2];
+            remaining = new int[n*2];
+        }
+
+        // Newell's method for the polygon normal
+        float nx = 0, ny = 0, nz = 0;
+        for (int i = 0; i < n; i++) {
+            int a = i*3, b = ((i+1)%n)*3;
+            nx += (xyz[a+1]-xyz[b+1]) * (xyz[a+2]+xyz[b+2]);
+            ny += (xyz[a+2]-xyz[b+2]) * (xyz[a]  +xyz[b]);
+            nz += (xyz[a]  -xyz[b])   * (xyz[a+1]+xyz[b+1]);
+        }
+        float ax = Math.abs(nx), ay = Math.abs(ny), az = Math.abs(nz);
+        if (ax+ay+az < EPSILON)
+            return false;
+
+        // drop the dominant axis, and swap the remaining two if needed to keep the winding counter-clockwise
+        int u, v;
+        boolean flip;
+        if (ax >= ay && ax >= az) {
+            u = 1; v = 2; flip = nx < 0;
+        } else if (ay >= az) {
+            u = 2; v = 0; flip = ny < 0;
+        } else {
+            u = 0; v = 1; flip = nz < 0;
+        }
+        if (flip) {
+            int t = u; u = v; v = t;
+        }
+        for (int i = 0; i < n; i++) {
+            x[i] = xyz[i*3+u];
+            y[i] = xyz[i*3+v];
+        }
+        return true;
+    }
+
+    private boolean isConvex(int n) {
+        for (int i = 0; i < n; i++)
+            if (cross((i+n-1)%n, i, (i+1)%n) < -EPSILON)
+                return false;
+        return true;
+    }
+
+    /**
+     * Ear clipping on the projected, counter-clockwise polygon.
+     */
+    private int clipEars(int n) {
+        for (int i = 0; i < n; i++)
+            remaining[i] = i;
+        int count = n;
+        int k = 0;
+        int i = 0, sinceLastEar = 0;
+
+        while (count > 3) {
+            int prev = remaining[(i+count-1)%count],
+                curr = remaining[i],
+                next = remaining[(i+1)%count];
+            if (isEar(prev, curr, next, count) || sinceLastEar >= count) {
+                // if no ear can be found the polygon is self-intersecting,
+                // clip the vertex anyway so every corner is still used
+                indices[k++] = prev;
+                indices[k++] = curr;
+                indices[k++] = next;
+                System.arraycopy(remaining, i+1, remaining, i, count-i-1);
+                count--;
+                if (i >= count)
+                    i = 0;
+                sinceLastEar = 0;
+            } else {
+                i = (i+1)%count;
+                sinceLastEar++;
+            }
+        }
+        indices[k++] = remaining[0];
+        indices[k++] = remaining[1];
+        indices[k++] = remaining[2];
+        return k;
+    }
+
+    private boolean isEar(int a, int b, int c, int count) {
+        if (cross(a, b, c) <= EPSILON)
+            return false; // reflex or degenerate corner
+        for (int j = 0; j < count; j++) {
+            int p = remaining[j];
+            if (p == a || p == b || p == c)
+                continue;
+            if (samePoint(p, a) || samePoint(p, b) || samePoint(p, c))
+                continue;
+            if (inTriangle(p, a, b, c))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean samePoint(int p, int q) {
+        return x[p] == x[q] && y[p] == y[q];
+    }
+
+    /**
+     * Twice the signed area of triangle abc, positive if counter-clockwise.
+     */
+    private float cross(int a, int b, int c) {
+        return (x[b]-x[a])*(y[c]-y[a]) - (y[b]-y[a])*(x[c]-x[a]);
+    }
+
+    private boolean inTriangle(int p, int a, int b, int c) {
+        return cross(a, b, p) >= 0 && cross(b, c, p) >= 0 && cross(c, a, p) >= 0;
+    }
+}
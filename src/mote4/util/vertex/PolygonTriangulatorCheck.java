@@ -0,0 +1,287 @@
+package mote4.util.vertex;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Checks PolygonTriangulator on synthetic polygons, then measures its throughput.
+ *
+ * Every polygon is checked in several planes and in both windings: it must
+ * give 3*(n-2) indices of distinct corners, every triangle must keep the
+ * winding of the polygon, and the triangle areas must add up to the polygon's
+ * area, which only holds if the triangles cover it without overlapping.
+ * Polygons include convex and concave ones, collinear and reflex corners,
+ * and random star-shaped polygons.  Convex quads must be split in the order
+ * OBJLoader has always used.
+ *
+ * The benchmark triangulates random convex and concave polygons and fails
+ * if the timed loop allocates.
+ *
+ * Usage: PolygonTriangulatorCheck [polygons per benchmark run]
+ * @author Peter
+ */
+public class PolygonTriangulatorCheck {
+
+    // planes polygons are placed in, as {origin, u axis, v axis}
+    private static final float[][][] PLANES = {
+        {{0,0,0}, {1,0,0}, {0,1,0}},
+        {{0,0,5}, {0,1,0}, {0,0,1}},
+        {{3,-2,0}, {0,0,1}, {1,0,0}},
+        {{1,2,3}, {.6f,.8f,0}, {-.48f,.36f,.8f}},
+    };
+
+    // looked up once, as getThreadMXBean() itself allocates
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    private static final PolygonTriangulator triangulator = new PolygonTriangulator();
+    private static int checked;
+
+    public static void main(String[] args) {
+        int polygons = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        for (int n = 3; n <= 16; n++)
+            check("regular "+n+"-gon", regular(n, 1));
+        check("square", new float[] {0,0, 1,0, 1,1, 0,1});
+        check("L", new float[] {0,0, 2,0, 2,1, 1,1, 1,2, 0,2});
+        check("arrow", new float[] {0,0, 2,1, 0,2, .5f,1});
+        check("dart quad", new float[] {0,0, 1,.3f, 2,0, 1,2});
+        check("comb", new float[] {0,0, 5,0, 5,2, 4,2, 4,1, 3,1, 3,2, 2,2, 2,1, 1,1, 1,2, 0,2});
+        check("star", star(5, 1, .4f));
+        check("square with midpoints", new float[] {0,0, .5f,0, 1,0, 1,.5f, 1,1, .5f,1, 0,1, 0,.5f});
+        check("collinear first corner", new float[] {.5f,0, 1,0, 1,1, 0,1, 0,0});
+        check("L with collinear corners", new float[] {0,0, 1,0, 2,0, 2,1, 1.5f,1, 1,1, 1,2, 0,2, 0,1});
+        check("collinear next to reflex", new float[] {0,0, 2,0, 2,2, 1,1, .5f,.5f, 0,2});
+        check("U", new float[] {0,0, 3,0, 3,3, 2,3, 2,1, 1,1, 1,3, 0,3});
+        check("spiral", spiral());
+
+        Random random = new Random(5);
+        for (int i = 0; i < 2000; i++)
+            check("random star-shaped polygon "+i, randomStarShaped(random, 4+random.nextInt(40)));
+
+        checkQuadOrder();
+        checkDegenerate();
+        System.out.println("OK: "+checked+" polygons triangulated correctly");
+
+        benchmark(polygons);
+    }
+
+    /**
+     * Checks a 2D polygon, given counter-clockwise, in every plane and both windings.
+     */
+    private static void check(String name, float[] uv) {
+        int n = uv.length/2;
+        float[] reversed = new float[uv.length];
+        for (int i = 0; i < n; i++) {
+            reversed[i*2]   = uv[(n-1-i)*2];
+            reversed[i*2+1] = uv[(n-1-i)*2+1];
+        }
+        double area = Math.abs(area2D(uv));
+        for (float[][] plane : PLANES) {
+            checkPolygon(name+" (ccw)", place(uv, plane), n, plane, area, 1);
+            checkPolygon(name+" (cw)", place(reversed, plane), n, plane, area, -1);
+        }
+    }
+
+    /**
+     * @param winding 1 if the polygon is counter-clockwise in its plane, -1 if clockwise.
+     */
+    private static void checkPolygon(String name, float[] xyz, int n, float[][] plane, double area, int winding) {
+        checked++;
+        int count = triangulator.triangulate(xyz, n);
+        int[] idx = triangulator.indices();
+        if (count != 3*(n-2))
+            fail(name+": "+count+" indices, expected "+3*(n-2));
+
+        double[] normal = cross(plane[1], plane[2]);
+        double sum = 0, tolerance = 1e-4*Math.max(1, area);
+        for (int t = 0; t < count; t += 3) {
+            int a = idx[t], b = idx[t+1], c = idx[t+2];
+            if (a < 0 || b < 0 || c < 0 || a >= n || b >= n || c >= n)
+                fail(name+": triangle "+t/3+" uses a corner out of range");
+            if (a == b || b == c || c == a)
+                fail(name+": triangle "+t/3+" uses a corner twice");
+            double signed = winding*triangleArea(xyz, a, b, c, normal);
+            if (signed < -tolerance)
+                fail(name+": triangle "+t/3+" ("+a+", "+b+", "+c+") does not keep the polygon's winding");
+            sum += signed;
+        }
+        if (Math.abs(sum-area) > tolerance)
+            fail(name+": triangles cover an area of "+sum+", expected "+area);
+    }
+
+    private static void checkQuadOrder() {
+        int[] expected = {0,1,2, 3,0,2};
+        float[][] quads = {
+            {0,0, 1,0, 1,1, 0,1},
+            {0,1, 1,1, 1,0, 0,0},
+            {0,0, 3,-1, 4,2, -1,1.5f},
+        };
+        for (float[] quad : quads)
+            for (float[][] plane : PLANES) {
+                int count = triangulator.triangulate(place(quad, plane), 4);
+                for (int i = 0; i < 6; i++)
+                    if (count != 6 || triangulator.indices()[i] != expected[i])
+                        fail("a convex quad was not split as {0,1,2, 3,0,2}");
+            }
+    }
+
+    private static void checkDegenerate() {
+        if (triangulator.triangulate(new float[6], 2) != 0)
+            fail("polygons with less than 3 corners should give no triangles");
+        // zero area, every corner on one line
+        float[] line = place(new float[] {0,0, 1,0, 2,0, 3,0, 4,0}, PLANES[3]);
+        if (triangulator.triangulate(line, 5) != 9)
+            fail("a polygon without area should still give n-2 triangles");
+        // self-intersecting bowtie and pentagram
+        float[] bowtie = place(new float[] {0,0, 1,1, 1,0, 0,1}, PLANES[0]);
+        if (triangulator.triangulate(bowtie, 4) != 6)
+            fail("a self-intersecting quad should still give 2 triangles");
+        float[] pentagram = new float[15];
+        for (int i = 0; i < 5; i++) {
+            double angle = i*4*Math.PI/5;
+            pentagram[i*3] = (float)Math.cos(angle);
+            pentagram[i*3+1] = (float)Math.sin(angle);
+        }
+        if (triangulator.triangulate(pentagram, 5) != 9)
+            fail("a self-intersecting pentagon should still give 3 triangles");
+    }
+
+    private static void benchmark(int polygons) {
+        Random random = new Random(9);
+        int[] sizes = {4, 6, 8, 16, 32, 64};
+        System.out.printf("%-8s %5s %12s %12s%n", "shape", "n", "ns/polygon", "ns/triangle");
+        for (int n : sizes) {
+            for (int concave = 0; concave < 2; concave++) {
+                // a pool of different polygons, so the timed loop measures more than one shape
+                float[][] pool = new float[64][];
+                for (int i = 0; i < pool.length; i++) {
+                    float[] uv = concave == 1 ? randomStarShaped(random, n) : regular(n, .5f+random.nextFloat());
+                    pool[i] = place(uv, PLANES[i % PLANES.length]);
+                }
+                int runs = Math.max(1, polygons*8/n);
+                run(pool, n, runs); // warm up, and grow the triangulator's buffers
+
+                long allocated = allocatedBytes();
+                long start = System.nanoTime();
+                int sink = run(pool, n, runs);
+                long elapsed = System.nanoTime()-start;
+                allocated = allocatedBytes()-allocated;
+
+                if (sink != runs*3*(n-2))
+                    fail("benchmark gave the wrong number of indices");
+                if (allocated > 0)
+                    fail("triangulating "+runs+" polygons of "+n+" corners allocated "+allocated+" bytes");
+                System.out.printf("%-8s %5d %12.1f %12.1f%n", concave == 1 ? "concave" : "convex", n,
+                        (double)elapsed/runs, (double)elapsed/runs/(n-2));
+            }
+        }
+    }
+
+    private static int run(float[][] pool, int n, int runs) {
+        int sink = 0;
+        for (int i = 0; i < runs; i++)
+            sink += triangulator.triangulate(pool[i & (pool.length-1)], n);
+        return sink;
+    }
+
+    private static long allocatedBytes() {
+        return threads.getCurrentThreadAllocatedBytes();
+    }
+
+    private static float[] regular(int n, float radius) {
+        float[] uv = new float[n*2];
+        for (int i = 0; i < n; i++) {
+            double angle = 2*Math.PI*i/n;
+            uv[i*2]   = (float)(radius*Math.cos(angle));
+            uv[i*2+1] = (float)(radius*Math.sin(angle));
+        }
+        return uv;
+    }
+
+    private static float[] star(int points, float outer, float inner) {
+        float[] uv = new float[points*4];
+        for (int i = 0; i < points*2; i++) {
+            double angle = Math.PI*i/points;
+            float r = i % 2 == 0 ? outer : inner;
+            uv[i*2]   = (float)(r*Math.cos(angle));
+            uv[i*2+1] = (float)(r*Math.sin(angle));
+        }
+        return uv;
+    }
+
+    private static float[] spiral() {
+        // a thick spiral arm, counter-clockwise
+        int steps = 24;
+        float[] uv = new float[steps*4];
+        for (int i = 0; i < steps; i++) {
+            double angle = 3*Math.PI*i/(steps-1);
+            float outer = 1+.25f*i, inner = .5f+.25f*i;
+            uv[i*2]   = (float)(outer*Math.cos(angle));
+            uv[i*2+1] = (float)(outer*Math.sin(angle));
+            int j = 2*steps-1-i;
+            uv[j*2]   = (float)(inner*Math.cos(angle));
+            uv[j*2+1] = (float)(inner*Math.sin(angle));
+        }
+        return uv;
+    }
+
+    /**
+     * A counter-clockwise polygon with random corner distances around the origin.
+     * Every corner's angle is jittered within its share of the circle, so
+     * the origin can see every corner and the polygon never intersects itself.
+     */
+    private static float[] randomStarShaped(Random random, int n) {
+        float[] uv = new float[n*2];
+        for (int i = 0; i < n; i++) {
+            double angle = 2*Math.PI*(i+.9*random.nextDouble())/n;
+            double r = .2+random.nextDouble();
+            uv[i*2]   = (float)(r*Math.cos(angle));
+            uv[i*2+1] = (float)(r*Math.sin(angle));
+        }
+        return uv;
+    }
+
+    private static float[] place(float[] uv, float[][] plane) {
+        int n = uv.length/2;
+        float[] xyz = new float[n*3];
+        for (int i = 0; i < n; i++)
+            for (int k = 0; k < 3; k++)
+                xyz[i*3+k] = plane[0][k] + uv[i*2]*plane[1][k] + uv[i*2+1]*plane[2][k];
+        return xyz;
+    }
+
+    private static double area2D(float[] uv) {
+        int n = uv.length/2;
+        double a = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i+1)%n;
+            a += (double)uv[i*2]*uv[j*2+1] - (double)uv[j*2]*uv[i*2+1];
+        }
+        return a/2;
+    }
+
+    /**
+     * The area of a triangle, negative if it is clockwise around the normal.
+     */
+    private static double triangleArea(float[] xyz, int a, int b, int c, double[] normal) {
+        double[] ab = new double[3], ac = new double[3];
+        for (int k = 0; k < 3; k++) {
+            ab[k] = xyz[b*3+k]-xyz[a*3+k];
+            ac[k] = xyz[c*3+k]-xyz[a*3+k];
+        }
+        double[] n = cross(ab, ac);
+        return (n[0]*normal[0] + n[1]*normal[1] + n[2]*normal[2])/2;
+    }
+
+    private static double[] cross(float[] a, float[] b) {
+        return cross(new double[] {a[0],a[1],a[2]}, new double[] {b[0],b[1],b[2]});
+    }
+    private static double[] cross(double[] a, double[] b) {
+        return new double[] {a[1]*b[2]-a[2]*b[1], a[2]*b[0]-a[0]*b[2], a[0]*b[1]-a[1]*b[0]};
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: "+message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,318 @@
+package mote4.util.vertex;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import mote4.util.font.Glyph;
+import mote4.util.font.GlyphAtlas;
+import mote4.util.texture.TextureMap;
+import mote4.util.vertex.builder.VertexLayout;
+import mote4.util.vertex.mesh.DynamicVAO;
+import org.joml.Matrix4f;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * Collects the glyphs of many strings and draws them with a single draw call
+ * per font texture.  Every string can have its own position, transform and color,
+ * which are applied on the CPU as glyphs are added.
+ *
+ * Glyphs are drawn with the mote/text.vert and mote/text.frag shaders,
+ * which must be bound along with the projection and view matrices before
+ * calling flush().  The model matrix should be left as the identity.
+ *
+ * Typical use:
+ *   batch.add("font", "misterpixel", "Score: 10", x, y, .05f, .05f);
+ *   batch.add("font", "misterpixel", "@{1,0,0,1}Warning", matrix);
+ *   ShaderMap.use("text");
+ *   transform2D.bind();
+ *   batch.flush();
+ * @author Peter
+ */
+public class TextBatch {
+
+    /**
+     * The glyphs added for a single font texture.
+     */
+    private static class Page {
+        final String texture;
+        ByteBuffer data;
+        int numGlyphs;
+        boolean queued;
+
+        Page(String texture, int bytes) {
+            this.texture = texture;
+            data = BufferUtils.createByteBuffer(bytes);
+        }
+
+        void reserve(int bytes) {
+            if (data.remaining() < bytes) {
+                ByteBuffer newData = BufferUtils.createByteBuffer(Math.max(data.capacity()*2, data.position()+bytes));
+                data.flip();
+                newData.put(data);
+                data = newData;
+            }
+        }
+    }
+
+    private static final Matrix4f IDENTITY = new Matrix4f();
+
+    private final VertexLayout layout;
+    private final int glyphBytes;
+    private final DynamicVAO vao;
+    private final HashMap<String,Page> pageMap;
+    private final ArrayList<Page> pages;
+    private final float[] color;
+    private final Matrix4f transform;
+    private int drawCalls;
+
+    /**
+     * Creates an empty batch.
+     * @param capacity The initial number of glyphs the batch can hold, it grows as needed.
+     */
+    public TextBatch(int capacity) {
+        layout = FontUtils.textLayout(true);
+        glyphBytes = FontUtils.VERTICES_PER_GLYPH*layout.stride();
+        vao = new DynamicVAO(layout, capacity*FontUtils.VERTICES_PER_GLYPH, GL11.GL_TRIANGLES);
+        pageMap = new HashMap<>();
+        pages = new ArrayList<>();
+        color = new float[4];
+        transform = new Matrix4f();
+    }
+
+    /**
+     * Adds a string at the given position and scale, in white.
+     * The arguments are the same as FontUtils.createStringColor(), and
+     * color values in the form @{r,g,b,a} are supported.
+     * @param texture The name of the font texture in the TextureMap.
+     * @param metric The name of the font metric.
+     * @param text The string to display.
+     * @param xPos X offset from origin.
+     * @param yPos Y offset from origin.
+     * @param xScale X scale.
+     * @param yScale Y scale.
+     */
+    public void add(String texture, String metric, String text, float xPos, float yPos, float xScale, float yScale) {
+        transform.translation(xPos, yPos, 0).scale(xScale, yScale, 1);
+        add(texture, metric, text, transform, 1, 1, 1, 1);
+    }
+    /**
+     * Adds a string with a transform, in white.
+     * @param texture The name of the font texture in the TextureMap.
+     * @param metric The name of the font metric.
+     * @param text The string to display.
+     * @param matrix Transform applied to every glyph, only the 2D part is used.
+     */
+    public void add(String texture, String metric, String text, Matrix4f matrix) {
+        add(texture, metric, text, matrix, 1, 1, 1, 1);
+    }
+    /**
+     * Adds a string with a transform and a starting color.
+     * Color values in the form @{r,g,b,a} in the string replace the starting color.
+     * @param texture The name of the font texture in the TextureMap.
+     * @param metric The name of the font metric.
+     * @param text The string to display.
+     * @param matrix Transform applied to every glyph, only the 2D part is used.
+     *               Null for no transform.
+     */
+    public void add(String texture, String metric, String text, Matrix4f matrix, float r, float g, float b, float a) {
+        if (matrix == null)
+            matrix = IDENTITY;
+        FontUtils.useMetric(metric);
+        color[0] = r;
+        color[1] = g;
+        color[2] = b;
+        color[3] = a;
+
+        Page page = page(texture, text.length());
+        ByteBuffer out = page.data;
+
+        float lineSpace = FontUtils.lineSpace();
+        float xOffset = 0, yOffset = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                yOffset += lineSpace;
+                xOffset = 0;
+            } else if (FontUtils.isColor(text, i)) {
+                i = FontUtils.parseColor(text, i, color);
+            } else {
+                int start = out.position();
+                FontUtils.putGlyph(out, c, xOffset, yOffset, 1, 1, color);
+                transformGlyph(out, start, matrix);
+                xOffset += FontUtils.glyphWidth(c);
+                page.numGlyphs++;
+            }
+        }
+    }
+
+    /**
+     * Adds a string using glyphs from a GlyphAtlas, in white.
+     * Any Unicode text can be displayed, and glyphs are added to the atlas as needed.
+     * Units are line heights of the atlas' font.
+     * @param atlas The atlas to take glyphs from.
+     * @param text The string to display.
+     * @param matrix Transform applied to every glyph, only the 2D part is used.
+     *               Null for no transform.
+     */
+    public void add(GlyphAtlas atlas, String text, Matrix4f matrix) {
+        add(atlas, text, matrix, 1, 1, 1, 1);
+    }
+    /**
+     * Adds a string using glyphs from a GlyphAtlas, with a starting color.
+     * Color values in the form @{r,g,b,a} in the string replace the starting color.
+     * @param atlas The atlas to take glyphs from.
+     * @param text The string to display.
+     * @param matrix Transform applied to every glyph, only the 2D part is used.
+     *               Null for no transform.
+     */
+    public void add(GlyphAtlas atlas, String text, Matrix4f matrix, float r, float g, float b, float a) {
+        if (matrix == null)
+            matrix = IDENTITY;
+        color[0] = r;
+        color[1] = g;
+        color[2] = b;
+        color[3] = a;
+
+        float xOffset = 0, yOffset = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            int next = i+Character.charCount(cp);
+            if (cp == '\n') {
+                yOffset += 1;
+                xOffset = 0;
+            } else if (FontUtils.isColor(text, i)) {
+                next = FontUtils.parseColor(text, i, color)+1;
+            } else {
+                Glyph glyph = atlas.get(cp);
+                if (glyph != null) {
+                    if (glyph.isVisible()) {
+                        Page page = page(atlas.pageName(glyph.page), 1);
+                        int start = page.data.position();
+                        putQuad(page.data, xOffset+glyph.x0, yOffset+glyph.y0, xOffset+glyph.x1, yOffset+glyph.y1,
+                                glyph.u0, glyph.v0, glyph.u1, glyph.v1);
+                        transformGlyph(page.data, start, matrix);
+                        page.numGlyphs++;
+                    }
+                    xOffset += glyph.advance;
+                }
+            }
+            i = next;
+        }
+    }
+
+    /**
+     * The page for a texture, with room for at least the given number of glyphs.
+     * The page is queued to be drawn in the next flush.
+     */
+    private Page page(String texture, int glyphs) {
+        Page page = pageMap.get(texture);
+        if (page == null) {
+            page = new Page(texture, Math.max(glyphs, 64)*glyphBytes);
+            pageMap.put(texture, page);
+        }
+        if (!page.queued) {
+            page.queued = true;
+            pages.add(page); // first string for this texture in this frame
+        }
+        page.reserve(glyphs*glyphBytes);
+        return page;
+    }
+
+    /**
+     * Writes the two triangles of a quad, in the same order as FontUtils.putGlyph().
+     */
+    private void putQuad(ByteBuffer out, float x0, float y0, float x1, float y1,
+                         float u0, float v0, float u1, float v1) {
+        putVertex(out, x0, y0, u0, v0);
+        putVertex(out, x0, y1, u0, v1);
+        putVertex(out, x1, y0, u1, v0);
+        putVertex(out, x0, y1, u0, v1);
+        putVertex(out, x1, y1, u1, v1);
+        putVertex(out, x1, y0, u1, v0);
+    }
+    private void putVertex(ByteBuffer out, float x, float y, float u, float v) {
+        out.putFloat(x).putFloat(y);
+        out.putFloat(color[0]).putFloat(color[1]).putFloat(color[2]).putFloat(color[3]);
+        out.putFloat(u).putFloat(v);
+    }
+
+    /**
+     * Applies the 2D part of a transform to the vertices of the glyph starting at the given byte.
+     */
+    private void transformGlyph(ByteBuffer out, int start, Matrix4f m) {
+        int stride = layout.stride();
+        for (int v = 0; v < FontUtils.VERTICES_PER_GLYPH; v++) {
+            int o = start + v*stride;
+            float x = out.getFloat(o), y = out.getFloat(o+4);
+            out.putFloat(o,   m.m00()*x + m.m10()*y + m.m30());
+            out.putFloat(o+4, m.m01()*x + m.m11()*y + m.m31());
+        }
+    }
+
+    /**
+     * The number of glyphs added since the last flush.
+     * @return
+     */
+    public int size() {
+        int size = 0;
+        for (Page p : pages)
+            size += p.numGlyphs;
+        return size;
+    }
+
+    /**
+     * The number of draw calls made by the last flush.
+     * @return
+     */
+    public int drawCalls() { return drawCalls; }
+
+    /**
+     * Uploads all added glyphs in one buffer update, then draws them with one
+     * draw call per font texture, binding each texture in turn.
+     * The batch is empty afterwards.
+     */
+    public void flush() {
+        drawCalls = 0;
+        int total = size();
+        if (total == 0)
+            return;
+
+        vao.ensureCapacity(total*FontUtils.VERTICES_PER_GLYPH);
+        ByteBuffer data = vao.data();
+        data.clear();
+        for (Page p : pages) {
+            p.data.flip();
+            data.put(p.data);
+        }
+        vao.upload(total*FontUtils.VERTICES_PER_GLYPH);
+
+        int first = 0;
+        for (Page p : pages) {
+            int count = p.numGlyphs*FontUtils.VERTICES_PER_GLYPH;
+            TextureMap.bind(p.texture);
+            vao.render(first, count);
+            drawCalls++;
+            first += count;
+        }
+        clear();
+    }
+
+    /**
+     * Removes all added glyphs without drawing them.
+     */
+    public void clear() {
+        for (Page p : pages) {
+            p.data.clear();
+            p.numGlyphs = 0;
+            p.queued = false;
+        }
+        pages.clear();
+    }
+
+    public void destroy() {
+        clear();
+        vao.destroy();
+    }
+}
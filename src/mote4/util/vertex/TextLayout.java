@@ -0,0 +1,273 @@
+package mote4.util.vertex;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The word-wrapped layout of a string: where lines break and where every
+ * character is placed.  Layouts are cached by (text, metric, width limit),
+ * and the least recently used layouts are evicted when the cache is full.
+ *
+ * When a string is laid out that extends a recently laid out string, such as
+ * text that is being typed out, only the new suffix is measured: the result
+ * of the previous layout is reused up to the start of its last word.
+ *
+ * Lines are broken the same way FontUtils.breakIntoLines() always has.
+ * @author Peter
+ */
+public class TextLayout {
+
+    private static final int RECENT_SIZE = 8;
+
+    private static int cacheSize = 256;
+    private static final LinkedHashMap<Key,TextLayout> cache = new LinkedHashMap<Key,TextLayout>(16, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key,TextLayout> eldest) {
+            return size() > cacheSize;
+        }
+    };
+    // the most recently created layouts, searched for prefixes of new text
+    private static final TextLayout[] recent = new TextLayout[RECENT_SIZE];
+    private static int recentIndex = 0;
+    private static int hits, misses, resumed;
+
+    private static class Key {
+        final String text, metric;
+        final double limit;
+
+        Key(String text, String metric, double limit) {
+            this.text = text;
+            this.metric = metric;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return limit == k.limit && text.equals(k.text) && metric.equals(k.metric);
+        }
+        @Override
+        public int hashCode() {
+            return (text.hashCode()*31 + metric.hashCode())*31 + Double.hashCode(limit);
+        }
+    }
+
+    /**
+     * Returns the layout of a string, from the cache if possible.
+     * @param source The text to lay out.
+     * @param metric The name of the font metric.
+     * @param lineLengthLimit The maximum width of a line.
+     * @return
+     */
+    public static synchronized TextLayout get(String source, String metric, double lineLengthLimit) {
+        Key key = new Key(source, metric, lineLengthLimit);
+        TextLayout layout = cache.get(key);
+        if (layout != null) {
+            hits++;
+            return layout;
+        }
+        misses++;
+
+        TextLayout previous = null;
+        for (TextLayout l : recent)
+            if (l != null && l.canResume(source, metric, lineLengthLimit)
+                && (previous == null || l.source.length() > previous.source.length()))
+                previous = l;
+        if (previous != null)
+            resumed++;
+
+        layout = new TextLayout(source, metric, lineLengthLimit, previous);
+        cache.put(key, layout);
+        recent[recentIndex] = layout;
+        recentIndex = (recentIndex+1)%RECENT_SIZE;
+        return layout;
+    }
+
+    /**
+     * Sets the maximum number of cached layouts.
+     * @param size
+     */
+    public static synchronized void setCacheSize(int size) {
+        cacheSize = Math.max(1, size);
+        while (cache.size() > cacheSize)
+            cache.remove(cache.keySet().iterator().next());
+    }
+
+    /**
+     * Removes all cached layouts.  Should be called if a metric is reloaded.
+     */
+    public static synchronized void clearCache() {
+        cache.clear();
+        Arrays.fill(recent, null);
+    }
+
+    /**
+     * Cache statistics, as {hits, misses, misses that reused a previous layout}.
+     * @return
+     */
+    public static synchronized int[] stats() {
+        return new int[] {hits, misses, resumed};
+    }
+
+    ////////////
+
+    private final String source, metric, text;
+    private final double limit;
+    private final float[] x;
+    private final int[] line;
+    private final int numLines;
+    private final float width;
+    // state at the start of the last word of the source, where a longer text can resume
+    private final int resumeSource, resumeText, resumeLine;
+    private final float resumeLineLength, resumeX, resumeWidth;
+
+    private TextLayout(String source, String metric, double limit, TextLayout previous) {
+        this.source = source;
+        this.metric = metric;
+        this.limit = limit;
+
+        FontUtils.useMetric(metric);
+        float spaceLength = FontUtils.glyphWidth(' ');
+        StringBuilder sb = new StringBuilder(source.length()+16);
+        int capacity = source.length()+16;
+        if (previous != null)
+            capacity = Math.max(capacity, previous.text.length()+16);
+        float[] x = new float[capacity];
+        int[] line = new int[x.length];
+
+        int start = 0, currentLine = 0;
+        float lineLength = 0, lineX = 0, maxWidth = 0;
+        if (previous != null) {
+            // reuse everything before the previous layout's unfinished word
+            start = previous.resumeSource;
+            sb.append(previous.text, 0, previous.resumeText);
+            System.arraycopy(previous.x, 0, x, 0, previous.resumeText);
+            System.arraycopy(previous.line, 0, line, 0, previous.resumeText);
+            currentLine = previous.resumeLine;
+            lineLength = previous.resumeLineLength;
+            lineX = previous.resumeX;
+            maxWidth = previous.resumeWidth;
+        }
+
+        int rSource = start, rText = sb.length(), rLine = currentLine;
+        float rLineLength = lineLength, rX = lineX, rWidth = maxWidth;
+
+        int wordStart = start;
+        float wordLength = 0;
+        for (int i = start; i <= source.length(); i++) {
+            char c = i < source.length() ? source.charAt(i) : '\n';
+            if (c != ' ' && c != '\n') {
+                wordLength += FontUtils.glyphWidth(c);
+                continue;
+            }
+            if (i == source.length()) {
+                // the last word may still grow, remember where it started
+                rSource = wordStart;
+                rText = sb.length();
+                rLine = currentLine;
+                rLineLength = lineLength;
+                rX = lineX;
+                rWidth = maxWidth;
+            }
+
+            // the word from wordStart to i is complete
+            if (lineLength+spaceLength+wordLength > limit) {
+                maxWidth = Math.max(maxWidth, lineX);
+                if (x.length < sb.length()+1) { x = grow(x); line = grow(line); }
+                x[sb.length()] = lineX;
+                line[sb.length()] = currentLine;
+                sb.append('\n');
+                currentLine++;
+                lineX = 0;
+                lineLength = wordLength+spaceLength;
+            } else
+                lineLength += wordLength+spaceLength;
+
+            if (x.length < sb.length()+(i-wordStart)+1) { x = grow(x); line = grow(line); }
+            for (int j = wordStart; j < i; j++) {
+                char w = source.charAt(j);
+                x[sb.length()] = lineX;
+                line[sb.length()] = currentLine;
+                sb.append(w);
+                lineX += FontUtils.glyphWidth(w);
+            }
+            if (i < source.length()) {
+                x[sb.length()] = lineX;
+                line[sb.length()] = currentLine;
+                sb.append(c);
+                if (c == ' ')
+                    lineX += spaceLength;
+                else {
+                    maxWidth = Math.max(maxWidth, lineX);
+                    currentLine++;
+                    lineX = 0;
+                    lineLength = 0;
+                }
+            }
+            wordStart = i+1;
+            wordLength = 0;
+        }
+        maxWidth = Math.max(maxWidth, lineX);
+
+        text = sb.toString();
+        this.x = x;
+        this.line = line;
+        numLines = currentLine+1;
+        width = maxWidth;
+        resumeSource = rSource;
+        resumeText = rText;
+        resumeLine = rLine;
+        resumeLineLength = rLineLength;
+        resumeX = rX;
+        resumeWidth = rWidth;
+    }
+
+    private boolean canResume(String newSource, String newMetric, double newLimit) {
+        return limit == newLimit && metric.equals(newMetric)
+            && newSource.length() > source.length() && newSource.startsWith(source);
+    }
+
+    private static float[] grow(float[] a) { return Arrays.copyOf(a, a.length*2+16); }
+    private static int[] grow(int[] a) { return Arrays.copyOf(a, a.length*2+16); }
+
+    /**
+     * The text with newlines inserted where lines break.
+     * @return
+     */
+    public String text() { return text; }
+    public String source() { return source; }
+
+    /**
+     * The X position of a character of text(), before scaling.
+     * @param i The index of the character in text().
+     * @return
+     */
+    public float x(int i) {
+        checkIndex(i);
+        return x[i];
+    }
+    /**
+     * The line a character of text() is on, starting from 0.
+     * Newline characters belong to the line they end.
+     * @param i The index of the character in text().
+     * @return
+     */
+    public int line(int i) {
+        checkIndex(i);
+        return line[i];
+    }
+    public int numLines() { return numLines; }
+    /**
+     * The width of the longest line, before scaling.
+     * @return
+     */
+    public float width() { return width; }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= text.length())
+            throw new IndexOutOfBoundsException("Index "+i+" out of bounds for length "+text.length()+".");
+    }
+}
@@ -0,0 +1,154 @@
+package mote4.util.vertex;
+
+import java.util.Random;
+
+/**
+ * Checks that TextLayout wraps text exactly like the String.split based
+ * FontUtils.breakIntoLines() it replaced, including when resuming from a
+ * cached layout of a prefix, and that breakIntoLines() leaves the requested
+ * metric current whether or not the layout was cached.
+ * Runs without an OpenGL context, using generated font metrics.
+ *
+ * Usage: TextLayoutCheck [strings]
+ * @author Peter
+ */
+public class TextLayoutCheck {
+
+    public static void main(String[] args) {
+        int strings = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Random random = new Random(11);
+        FontUtils.addMetric(randomMetric(random), "check-a");
+        FontUtils.addMetric(randomMetric(random), "check-b");
+
+        int layouts = 0;
+        for (int n = 0; n < strings; n++) {
+            String source = randomText(random);
+            String metric = random.nextBoolean() ? "check-a" : "check-b";
+            double limit = 2 + random.nextDouble()*20;
+            // every prefix, in order, like text being typed out
+            int step = Math.max(1, source.length()/8);
+            for (int end = random.nextInt(step); end <= source.length(); end += step) {
+                check(source.substring(0, end), metric, limit);
+                layouts++;
+            }
+            check(source, metric, limit);
+            layouts++;
+        }
+
+        // a cache hit must still switch the current metric
+        String text = "the quick brown fox jumps over the lazy dog";
+        FontUtils.useMetric("check-a");
+        float widthA = FontUtils.getStringWidth(text);
+        FontUtils.useMetric("check-b");
+        if (FontUtils.getStringWidth(text) == widthA)
+            fail("the generated metrics should give different widths");
+        FontUtils.breakIntoLines(text, "check-a", 10);
+        FontUtils.useMetric("check-b");
+        FontUtils.breakIntoLines(text, "check-a", 10); // cached
+        if (FontUtils.getStringWidth(text) != widthA)
+            fail("breakIntoLines() did not make its metric current on a cache hit");
+
+        int[] stats = TextLayout.stats();
+        System.out.println("OK: "+layouts+" layouts matched ("+stats[0]+" cache hits, "
+                +stats[1]+" misses, "+stats[2]+" resumed from a prefix)");
+    }
+
+    private static void check(String source, String metric, double limit) {
+        String expected = referenceBreak(source, metric, limit);
+        String actual = FontUtils.breakIntoLines(source, metric, limit);
+        if (!expected.equals(actual))
+            fail("wrapped text differs for \""+escape(source)+"\" at limit "+limit
+                    +":\n  expected \""+escape(expected)+"\"\n  actual   \""+escape(actual)+"\"");
+
+        // every character is where measuring its line up to it would put it
+        TextLayout layout = TextLayout.get(source, metric, limit);
+        FontUtils.useMetric(metric);
+        int lineStart = 0, line = 0;
+        for (int i = 0; i < actual.length(); i++) {
+            float x = FontUtils.getStringWidth(actual.substring(lineStart, i));
+            if (layout.x(i) != x || layout.line(i) != line)
+                fail("character "+i+" of \""+escape(actual)+"\" is at ("+layout.x(i)+", line "+layout.line(i)
+                        +"), expected ("+x+", line "+line+")");
+            if (actual.charAt(i) == '\n') {
+                lineStart = i+1;
+                line++;
+            }
+        }
+        if (layout.numLines() != line+1)
+            fail("\""+escape(actual)+"\" has "+layout.numLines()+" lines, expected "+(line+1));
+    }
+
+    /**
+     * FontUtils.breakIntoLines() as it was before TextLayout.
+     */
+    private static String referenceBreak(String source, String fontMetric, double lineLengthLimit) {
+        FontUtils.useMetric(fontMetric);
+        StringBuilder sb = new StringBuilder();
+        float spaceLength = FontUtils.getStringWidth(" ");
+
+        String[] lines = source.split("\n", -1);
+        int lineIndex = 0;
+        for (String line : lines) {
+            boolean lastLine = lineIndex == lines.length-1;
+            lineIndex++;
+
+            float lineLength = 0;
+            String[] words = line.split(" ", -1);
+            int wordIndex = 0;
+            for (String word : words) {
+                boolean lastWord = wordIndex == words.length-1;
+                wordIndex++;
+
+                float wordLength = FontUtils.getStringWidth(word);
+                if (lineLength+spaceLength+wordLength > lineLengthLimit) {
+                    sb.append("\n");
+                    sb.append(word);
+                    if (!lastWord)
+                        sb.append(" ");
+                    lineLength = wordLength+spaceLength;
+                } else {
+                    sb.append(word);
+                    if (!lastWord)
+                        sb.append(" ");
+                    lineLength += wordLength+spaceLength;
+                }
+            }
+            if (!lastLine)
+                sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static byte[] randomMetric(Random random) {
+        byte[] m = new byte[258];
+        for (int i = 0; i < 256; i++)
+            m[i] = (byte)(1+random.nextInt(8));
+        m[256] = 8;
+        m[257] = 8;
+        return m;
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(120);
+        while (sb.length() < length) {
+            int r = random.nextInt(20);
+            if (r < 3)
+                sb.append(' ');
+            else if (r == 3)
+                sb.append('\n');
+            else
+                sb.append((char)('a'+random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String s) {
+        return s.replace("\n", "\\n");
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: "+message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,56 @@
+package mote4.util.vertex;
+
+/**
+ * Triangle geometry with duplicate vertices merged, ready to be
+ * uploaded as vertex buffers and an element buffer.
+ * Positions and normals have 3 components, texture coordinates have 2.
+ * @author Peter
+ */
+class WeldedMesh {
+
+    final float[] vertices, texCoords, normals; // texCoords and normals may be null
+    final int[] indices;
+    final int numVertices;
+
+    WeldedMesh(float[] vertices, float[] texCoords, float[] normals, int[] indices) {
+        this.vertices = vertices;
+        this.texCoords = texCoords;
+        this.normals = normals;
+        this.indices = indices;
+        numVertices = vertices.length/3;
+    }
+
+    /**
+     * The size of one vertex, in bytes.
+     */
+    int vertexSize() {
+        int floats = 3;
+        if (texCoords != null)
+            floats += 2;
+        if (normals != null)
+            floats += 3;
+        return floats*Float.BYTES;
+    }
+
+    /**
+     * The size of one index, in bytes.  16 bit indices are used whenever
+     * all vertices can be addressed with them.
+     */
+    int indexSize() {
+        return numVertices <= 65536 ? Short.BYTES : Integer.BYTES;
+    }
+
+    /**
+     * The size of the vertex data if every index were expanded into its own vertex.
+     */
+    long expandedBytes() {
+        return (long)indices.length*vertexSize();
+    }
+
+    /**
+     * The size of the welded vertex data plus the index data.
+     */
+    long indexedBytes() {
+        return (long)numVertices*vertexSize() + (long)indices.length*indexSize();
+    }
+}
@@ -4,7 +4,6 @@ import java.nio.FloatBuffer;
 import java.util.ArrayList;
 
 import mote4.util.ErrorUtils;
-import org.lwjgl.BufferUtils;
 import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
 import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
 import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
@@ -22,20 +21,22 @@ public class Attribute {
     
     public final int ATTRIB_INDEX, SIZE;
     private int drawHint = GL_STATIC_DRAW;
-    private ArrayList<Float> vertices;
+    private int type = GL_FLOAT;
+    private boolean normalized = false;
+    private GrowableFloatBuffer vertices;
     
     public Attribute(int index, int size) {
-        vertices = new ArrayList<>();
+        vertices = new GrowableFloatBuffer();
         ATTRIB_INDEX = index;
         SIZE = size;
     }
     
     public void add(float... data) {
-        for (float f : data)
-            vertices.add(f);
+        vertices.add(data);
     }
     public void add(ArrayList<Float> data) {
-        
+        for (Float f : data)
+            vertices.add(f);
     }
     
     /**
@@ -49,30 +50,56 @@ public class Attribute {
         return ((double)vertices.size())/SIZE;
     }
     
+    /**
+     * Sets the OpenGL drawing hint for this attribute's buffer.
+     * @param hint
+     */
+    public void drawHint(int hint) {
+        drawHint = hint;
+    }
+    int drawHint() { return drawHint; }
+
+    /**
+     * Sets the type the values are stored as on the GPU.
+     * Values are always added as floats and converted when the VAO is built,
+     * see VertexPacking for the conversions.  The default is GL_FLOAT.
+     * @param type The OpenGL data type, e.g. GL_HALF_FLOAT or GL_INT_2_10_10_10_REV.
+     * @param normalized Whether integer data is normalized to 0-1 or -1-1.
+     */
+    public void encoding(int type, boolean normalized) {
+        new VertexLayout().add(ATTRIB_INDEX, SIZE, type, normalized); // validate
+        this.type = type;
+        this.normalized = normalized;
+    }
+    public int type() { return type; }
+    public boolean normalized() { return normalized; }
+
+    /**
+     * The stored values, used by ModernMeshBuilder to interleave attributes.
+     * @return
+     */
+    FloatBuffer data() {
+        return vertices.buffer();
+    }
+
     /**
      * Called by ModernMeshBuilder to construct a VAO.
      * @return The buffer handle for the data.
      */
     protected int[] build() {
-        int vboID = glGenBuffers();
-
-        // convert ArrayList to FloatBuffer
-        /*
-        float[] fArray = new float[vertices.size()];
-        for (int i = 0; i < vertices.size(); i++) {
-            fArray[i] = vertices.get(i);
-        }*/
-        FloatBuffer vertexData = BufferUtils.createFloatBuffer(vertices.size());
-        //vertexData.put(fArray);
-        for (Float vertice : vertices) {
-            vertexData.put(vertice);
+        if (type != GL_FLOAT) {
+            // convert the values into a tightly packed buffer of the chosen type
+            VertexLayout layout = new VertexLayout().add(ATTRIB_INDEX, SIZE, type, normalized);
+            int vboID = layout.buffer(layout.interleave((int)numVertices(), data()), drawHint);
+            return new int[] {vboID, ATTRIB_INDEX};
         }
-        vertexData.flip();
+
+        int vboID = glGenBuffers();
 
         glEnableVertexAttribArray(ATTRIB_INDEX);  // record in VAO
 
         glBindBuffer(GL_ARRAY_BUFFER, vboID);
-        glBufferData(GL_ARRAY_BUFFER, vertexData, drawHint);
+        glBufferData(GL_ARRAY_BUFFER, vertices.buffer(), drawHint);
 
         glVertexAttribPointer(
             ATTRIB_INDEX,       // shader attribute
@@ -0,0 +1,69 @@
+package mote4.util.vertex.builder;
+
+import java.nio.FloatBuffer;
+
+import org.lwjgl.BufferUtils;
+
+/**
+ * A growable list of floats stored in a direct buffer.
+ * Values are never boxed, and the contents can be passed straight to
+ * glBufferData without copying them into another buffer first.
+ * @author Peter
+ */
+public class GrowableFloatBuffer {
+
+    private FloatBuffer data;
+    private int size;
+
+    public GrowableFloatBuffer() {
+        this(256);
+    }
+    public GrowableFloatBuffer(int capacity) {
+        data = BufferUtils.createFloatBuffer(Math.max(1, capacity));
+        size = 0;
+    }
+
+    public void add(float f) {
+        if (size == data.capacity())
+            grow(size+1);
+        data.put(size++, f);
+    }
+    public void add(float... f) {
+        if (size+f.length > data.capacity())
+            grow(size+f.length);
+        data.position(size);
+        data.put(f);
+        data.position(0);
+        size += f.length;
+    }
+
+    public float get(int i) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException("Index "+i+" out of bounds for size "+size+".");
+        return data.get(i);
+    }
+
+    public int size() { return size; }
+    public void clear() { size = 0; }
+
+    /**
+     * A view of the stored values, from position 0 to size().
+     * The view shares memory with this buffer and is only valid until
+     * more values are added.
+     * @return
+     */
+    public FloatBuffer buffer() {
+        FloatBuffer view = data.duplicate();
+        view.position(0);
+        view.limit(size);
+        return view;
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = Math.max(minCapacity, data.capacity()*2);
+        FloatBuffer newData = BufferUtils.createFloatBuffer(newCapacity);
+        newData.put(buffer());
+        newData.clear();
+        data = newData;
+    }
+}
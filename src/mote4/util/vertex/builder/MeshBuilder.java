@@ -1,10 +1,10 @@
 package mote4.util.vertex.builder;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
 
 import mote4.util.ErrorUtils;
-import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
 import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
@@ -23,9 +23,10 @@ import mote4.util.vertex.mesh.VAO;
  */
 public class MeshBuilder {
     
-    private ArrayList<Float> vertices, texCoords, colors, normals;
+    private GrowableFloatBuffer vertices, texCoords, colors, normals;
     private int vertexSize, texSize, colorSize;
-    private boolean incColor = false, incTex = false, incNormal = false;
+    private boolean incColor = false, incTex = false, incNormal = false,
+                    interleaved = false, compressed = false;
     private int vertexDrawHint = GL_STATIC_DRAW,
                 texDrawHint    = GL_STATIC_DRAW,
                 colorDrawHint  = GL_STATIC_DRAW,
@@ -39,45 +40,41 @@ public class MeshBuilder {
     
     public MeshBuilder(int s) {
         vertexSize = s;
-        vertices = new ArrayList<>();
+        vertices = new GrowableFloatBuffer();
     }
     
     public void includeTexCoords(int s) {
         incTex = true;
         texSize = s;
-        texCoords = new ArrayList<>();
+        texCoords = new GrowableFloatBuffer();
     }
     public void includeColors(int s) {
         incColor = true;
         colorSize = s;
-        colors = new ArrayList<>();
+        colors = new GrowableFloatBuffer();
     }
     public void includeNormals() {
         incNormal = true;
-        normals = new ArrayList<>();
+        normals = new GrowableFloatBuffer();
     }
     
     public void vertices(float... v) {
-        for (float f : v)
-            vertices.add(f);
+        vertices.add(v);
     }
     public void texCoords(float... v) {
         if (!incTex)
             throw new IllegalStateException("This MeshBuilder does not include tex coords.");
-        for (float f : v)
-            texCoords.add(f);
+        texCoords.add(v);
     }
     public void colors(float... v) {
         if (!incColor)
             throw new IllegalStateException("This MeshBuilder does not include colors.");
-        for (float f : v)
-            colors.add(f);
+        colors.add(v);
     }
     public void normals(float... v) {
         if (!incNormal)
             throw new IllegalStateException("This MeshBuilder does not include normals.");
-        for (float f : v)
-            normals.add(f);
+        normals.add(v);
     }
     
     /**
@@ -89,8 +86,29 @@ public class MeshBuilder {
         vertexDrawHint = hint;
     }
     
+    /**
+     * Sets whether all attributes are packed into a single interleaved buffer,
+     * instead of one buffer per attribute.  Interleaved meshes use the
+     * vertex draw hint for the whole buffer.
+     * @param interleave
+     */
+    public void interleave(boolean interleave) {
+        interleaved = interleave;
+    }
+
+    /**
+     * Sets whether attributes are stored in compact formats, see
+     * StaticMeshBuilder.compressedLayout().  Compressed meshes are always interleaved.
+     * @param compress
+     */
+    public void compress(boolean compress) {
+        compressed = compress;
+    }
+
     public VAO constructVAO(int primitiveType) {
         checkCompleteness();
+        if (interleaved || compressed)
+            return constructInterleavedVAO(primitiveType);
         
         int vaoId = glGenVertexArrays(); // construct the VAO
         ErrorUtils.checkGLError();
@@ -101,139 +119,19 @@ public class MeshBuilder {
         glBindVertexArray(vaoId); // "start recording the calls I make.."
         ErrorUtils.checkGLError();
         
-        {
-            int vertexVboId = glGenBuffers(); // VBO for vertices
-            vbos.add(vertexVboId);
-            attribs.add(VERTEX_ATTRIB);
-
-            // put the ArrayList of vertices in a FloatBuffer
-            float[] fArray = new float[vertices.size()];
-            for (int i = 0; i < vertices.size(); i++) {
-                fArray[i] = vertices.get(i);
-            }
-            FloatBuffer vertexData = BufferUtils.createFloatBuffer(vertices.size());
-            vertexData.put(fArray);
-            vertexData.flip();
-
-            glEnableVertexAttribArray(VERTEX_ATTRIB);  // record in VAO
-            ErrorUtils.checkGLError();
-
-            glBindBuffer(GL_ARRAY_BUFFER, vertexVboId);
-            glBufferData(GL_ARRAY_BUFFER, vertexData, vertexDrawHint);
-
-            glVertexAttribPointer(
-               VERTEX_ATTRIB,      // shader attribute
-               vertexSize,         // size
-               GL11.GL_FLOAT,      // type
-               false,              // normalized?
-               0,                  // stride
-               0                   // array buffer offset
-            );
-            ErrorUtils.checkGLError();
-            
-            glBindBuffer(GL_ARRAY_BUFFER, 0); // unbind VBO
-        }
-        
-        if (incColor)
-        {
-            int colorVboId = glGenBuffers(); // VBO for colors
-            vbos.add(colorVboId);
+        vbos.add(bufferAttribute(VERTEX_ATTRIB, vertexSize, vertices, vertexDrawHint));
+        attribs.add(VERTEX_ATTRIB);
+        if (incColor) {
+            vbos.add(bufferAttribute(COLOR_ATTRIB, colorSize, colors, colorDrawHint));
             attribs.add(COLOR_ATTRIB);
-
-            // put the ArrayList of colors in a FloatBuffer
-            float[] fArray = new float[colors.size()];
-            for (int i = 0; i < colors.size(); i++) {
-                fArray[i] = colors.get(i);
-            }
-            FloatBuffer colorData = BufferUtils.createFloatBuffer(colors.size());
-            colorData.put(fArray);
-            colorData.flip();
-
-            glEnableVertexAttribArray(COLOR_ATTRIB);  // record in VAO
-            ErrorUtils.checkGLError();
-
-            glBindBuffer(GL_ARRAY_BUFFER, colorVboId);
-            glBufferData(GL_ARRAY_BUFFER, colorData, colorDrawHint);
-
-            glVertexAttribPointer(
-               COLOR_ATTRIB,       // shader attribute
-               colorSize,          // size
-               GL11.GL_FLOAT,      // type
-               false,              // normalized?
-               0,                  // stride
-               0                   // array buffer offset
-            );
-            ErrorUtils.checkGLError();
-
-            glBindBuffer(GL_ARRAY_BUFFER, 0); // unbind VBO
         }
-        
-        if (incTex)
-        {
-            int texCoordVboId = glGenBuffers(); // VBO for tex coords
-            vbos.add(texCoordVboId);
+        if (incTex) {
+            vbos.add(bufferAttribute(TEXCOORD_ATTRIB, texSize, texCoords, texDrawHint));
             attribs.add(TEXCOORD_ATTRIB);
-
-            // put the ArrayList of tex coords in a FloatBuffer
-            float[] fArray = new float[texCoords.size()];
-            for (int i = 0; i < texCoords.size(); i++) {
-                fArray[i] = texCoords.get(i);
-            }
-            FloatBuffer texCoordData = BufferUtils.createFloatBuffer(texCoords.size());
-            texCoordData.put(fArray);
-            texCoordData.flip();
-
-            glEnableVertexAttribArray(TEXCOORD_ATTRIB);  // record in VAO
-            ErrorUtils.checkGLError();
-
-            glBindBuffer(GL_ARRAY_BUFFER, texCoordVboId);
-            glBufferData(GL_ARRAY_BUFFER, texCoordData, texDrawHint);
-
-            glVertexAttribPointer(
-               TEXCOORD_ATTRIB,    // shader attribute
-               texSize,            // size
-               GL11.GL_FLOAT,      // type
-               false,              // normalized?
-               0,                  // stride
-               0                   // array buffer offset
-            );
-            ErrorUtils.checkGLError();
-
-            glBindBuffer(GL_ARRAY_BUFFER, 0); // unbind VBO
         }
-        
-        if (incNormal)
-        {
-            int normalVboId = glGenBuffers(); // VBO for normals
-            vbos.add(normalVboId);
+        if (incNormal) {
+            vbos.add(bufferAttribute(NORMAL_ATTRIB, 3, normals, normalDrawHint));
             attribs.add(NORMAL_ATTRIB);
-
-            // put the ArrayList of tex coords in a FloatBuffer
-            float[] fArray = new float[normals.size()];
-            for (int i = 0; i < normals.size(); i++) {
-                fArray[i] = normals.get(i);
-            }
-            FloatBuffer normalData = BufferUtils.createFloatBuffer(normals.size());
-            normalData.put(fArray);
-            normalData.flip();
-
-            glEnableVertexAttribArray(NORMAL_ATTRIB);  // record in VAO
-            ErrorUtils.checkGLError();
-
-            glBindBuffer(GL_ARRAY_BUFFER, normalVboId);
-            glBufferData(GL_ARRAY_BUFFER, normalData, normalDrawHint);
-
-            glVertexAttribPointer(
-               NORMAL_ATTRIB,      // shader attribute
-               3,                  // size
-               GL11.GL_FLOAT,      // type
-               false,              // normalized?
-               0,                  // stride
-               0                   // array buffer offset
-            );
-            ErrorUtils.checkGLError();
-
-            glBindBuffer(GL_ARRAY_BUFFER, 0); // unbind VBO
         }
         
         // unbind the VAO
@@ -252,6 +150,71 @@ public class MeshBuilder {
         return new VAO(vaoId, vboArray, attribArray, primitiveType, vertices.size()/vertexSize); // wrap it all up nicely
     }
     
+    private VAO constructInterleavedVAO(int primitiveType) {
+        VertexLayout layout = compressed
+                ? StaticMeshBuilder.compressedLayout(vertexSize, texSize, incTex, colorSize, incColor, incNormal)
+                : StaticMeshBuilder.layout(vertexSize, texSize, incTex, colorSize, incColor, incNormal);
+        ArrayList<FloatBuffer> data = new ArrayList<>();
+        data.add(vertices.buffer());
+        if (incColor)
+            data.add(colors.buffer());
+        if (incTex)
+            data.add(texCoords.buffer());
+        if (incNormal)
+            data.add(normals.buffer());
+        int numVertices = vertices.size()/vertexSize;
+        ByteBuffer vertexData = layout.interleave(numVertices, data.toArray(new FloatBuffer[data.size()]));
+
+        int vaoId = glGenVertexArrays(); // construct the VAO
+        ErrorUtils.checkGLError();
+        glBindVertexArray(vaoId);
+        int vboId = layout.buffer(vertexData, vertexDrawHint);
+        glBindVertexArray(0);
+
+        return new VAO(vaoId, new int[] {vboId}, layout.attribs(), primitiveType, numVertices);
+    }
+
+    /**
+     * Creates a VBO for a single attribute and records it in the bound VAO.
+     * The stored data is uploaded directly, without an intermediate copy.
+     * @return The handle of the VBO.
+     */
+    private static int bufferAttribute(int attrib, int size, GrowableFloatBuffer data, int drawHint) {
+        int vboId = glGenBuffers();
+
+        glEnableVertexAttribArray(attrib);  // record in VAO
+        ErrorUtils.checkGLError();
+
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, data.buffer(), drawHint);
+
+        glVertexAttribPointer(
+           attrib,             // shader attribute
+           size,               // size
+           GL11.GL_FLOAT,      // type
+           false,              // normalized?
+           0,                  // stride
+           0                   // array buffer offset
+        );
+        ErrorUtils.checkGLError();
+
+        glBindBuffer(GL_ARRAY_BUFFER, 0); // unbind VBO
+        return vboId;
+    }
+
+    /**
+     * The stored data as constructVAO() uploads it without interleaving, one
+     * buffer per attribute in attribute order, null for attributes not included.
+     * @return
+     */
+    FloatBuffer[] data() {
+        checkCompleteness();
+        return new FloatBuffer[] {vertices.buffer(),
+                                  incColor  ? colors.buffer()    : null,
+                                  incTex    ? texCoords.buffer() : null,
+                                  incNormal ? normals.buffer()   : null};
+    }
+
     private void checkCompleteness() {
         float numVertices = vertices.size()/(float)vertexSize;
         if (numVertices%1 != 0)
@@ -0,0 +1,193 @@
+package mote4.util.vertex.builder;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.lwjgl.BufferUtils;
+
+/**
+ * Compares building large meshes with MeshBuilder against the ArrayList<Float>
+ * storage it used before GrowableFloatBuffer.
+ *
+ * Both build the same sphere with positions, colors, tex coords and normals
+ * through the same calls, then produce the buffers constructVAO() uploads:
+ * the old builder copied every list into a float array and then into a
+ * direct buffer, the new one uploads its storage directly.  Both must give
+ * identical buffers.
+ *
+ * Prints the median time of several runs, the heap allocated per build,
+ * and the heap and direct memory still held when the data is ready to upload,
+ * which is the peak of a build.  Needs no OpenGL context.
+ *
+ * Usage: MeshBuilderBenchmark [vertices] [runs]
+ * @author Peter
+ */
+public class MeshBuilderBenchmark {
+
+    // looked up once, as getThreadMXBean() itself allocates
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int vertices = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        String[] names = {"ArrayList", "Growable"};
+        long[][] times = new long[2][runs];
+        double[] allocated = new double[2], heldHeap = new double[2], heldDirect = new double[2];
+        FloatBuffer[][] results = new FloatBuffer[2][];
+        for (int run = -1; run < runs; run++) { // the first run warms up
+            for (int b = 0; b < 2; b++) {
+                results[b] = null;
+                collect();
+                long heap = usedHeap(), direct = usedDirect();
+                long bytes = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                Object builder;
+                if (b == 0) {
+                    LegacyMeshBuilder legacy = legacyBuilder(vertices);
+                    results[b] = legacy.data();
+                    builder = legacy;
+                } else {
+                    MeshBuilder growable = builder(vertices);
+                    results[b] = growable.data();
+                    builder = growable;
+                }
+
+                long elapsed = System.nanoTime()-start;
+                bytes = threads.getCurrentThreadAllocatedBytes()-bytes;
+                if (run >= 0) {
+                    times[b][run] = elapsed;
+                    allocated[b] += bytes/1e6/runs;
+                    // the builder and the upload data are both alive when constructVAO() uploads
+                    collect();
+                    heldHeap[b] += (usedHeap()-heap)/1e6/runs;
+                    heldDirect[b] += (usedDirect()-direct)/1e6/runs;
+                }
+                Reference.reachabilityFence(builder);
+            }
+            for (int a = 0; a < 4; a++)
+                if (!results[0][a].equals(results[1][a]))
+                    fail("attribute "+a+" differs between the two builders");
+        }
+
+        System.out.printf("%d vertices with positions, colors, tex coords and normals%n", vertices);
+        System.out.printf("%-10s %10s %14s %12s %14s%n", "storage", "median ms", "allocated MB", "held heap MB", "held direct MB");
+        for (int b = 0; b < 2; b++) {
+            Arrays.sort(times[b]);
+            System.out.printf("%-10s %10.1f %14.1f %12.1f %14.1f%n", names[b], times[b][runs/2]/1e6,
+                    allocated[b], heldHeap[b], heldDirect[b]);
+        }
+        System.out.println("OK: both builders produced identical buffers");
+    }
+
+    private static MeshBuilder builder(int vertices) {
+        MeshBuilder builder = new MeshBuilder(3);
+        builder.includeColors(4);
+        builder.includeTexCoords(2);
+        builder.includeNormals();
+        addSphere(vertices, builder::vertices, builder::colors, builder::texCoords, builder::normals);
+        return builder;
+    }
+
+    private static LegacyMeshBuilder legacyBuilder(int vertices) {
+        LegacyMeshBuilder builder = new LegacyMeshBuilder();
+        addSphere(vertices, builder::vertices, builder::colors, builder::texCoords, builder::normals);
+        return builder;
+    }
+
+    private interface Sink {
+        void add(float... v);
+    }
+
+    /**
+     * Adds points on a unit sphere, the way procedural geometry is usually built.
+     */
+    private static void addSphere(int vertices, Sink positions, Sink colors, Sink texCoords, Sink normals) {
+        int rings = (int)Math.sqrt(vertices);
+        for (int i = 0; i < vertices; i++) {
+            float u = (i % rings)/(float)rings, v = (i / rings)/(float)rings;
+            float theta = u*(float)(2*Math.PI), phi = v*(float)Math.PI;
+            float x = (float)(Math.sin(phi)*Math.cos(theta)),
+                  y = (float)Math.cos(phi),
+                  z = (float)(Math.sin(phi)*Math.sin(theta));
+            positions.add(x, y, z);
+            colors.add(u, v, 1-u, 1);
+            texCoords.add(u, v);
+            normals.add(x, y, z);
+        }
+    }
+
+    /**
+     * MeshBuilder's storage and copies before GrowableFloatBuffer.
+     */
+    private static class LegacyMeshBuilder {
+        private final ArrayList<Float> vertices = new ArrayList<>(), texCoords = new ArrayList<>(),
+                                       colors = new ArrayList<>(), normals = new ArrayList<>();
+
+        void vertices(float... v) {
+            for (float f : v)
+                vertices.add(f);
+        }
+        void texCoords(float... v) {
+            for (float f : v)
+                texCoords.add(f);
+        }
+        void colors(float... v) {
+            for (float f : v)
+                colors.add(f);
+        }
+        void normals(float... v) {
+            for (float f : v)
+                normals.add(f);
+        }
+
+        FloatBuffer[] data() {
+            return new FloatBuffer[] {upload(vertices), upload(colors), upload(texCoords), upload(normals)};
+        }
+
+        // what constructVAO() did for every attribute before glBufferData
+        private static FloatBuffer upload(ArrayList<Float> list) {
+            float[] fArray = new float[list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                fArray[i] = list.get(i);
+            }
+            FloatBuffer data = BufferUtils.createFloatBuffer(list.size());
+            data.put(fArray);
+            data.flip();
+            return data;
+        }
+    }
+
+    /**
+     * Collects garbage, and gives the cleaner time to free the memory of unreachable direct buffers.
+     */
+    private static void collect() {
+        System.gc();
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime r = Runtime.getRuntime();
+        return r.totalMemory()-r.freeMemory();
+    }
+    private static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+            if (pool.getName().equals("direct"))
+                return pool.getMemoryUsed();
+        return 0;
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: "+message);
+        System.exit(1);
+    }
+}
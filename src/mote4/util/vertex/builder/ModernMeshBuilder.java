@@ -1,5 +1,7 @@
 package mote4.util.vertex.builder;
 
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 
 import mote4.util.ErrorUtils;
@@ -18,6 +20,7 @@ import static org.lwjgl.opengl.GL30.glBindVertexArray;
 public class ModernMeshBuilder {
     
     private final ArrayList<Attribute> attribs;
+    private boolean interleaved = false;
     
     public ModernMeshBuilder() {
         attribs = new ArrayList<>();
@@ -27,10 +30,33 @@ public class ModernMeshBuilder {
         attribs.add(a);
     }
     
+    /**
+     * Sets whether all attributes are packed into a single interleaved buffer,
+     * in the order they were added, instead of one buffer per attribute.
+     * Interleaved meshes use the draw hint of the first attribute.
+     * @param interleave
+     */
+    public void interleave(boolean interleave) {
+        interleaved = interleave;
+    }
+
+    /**
+     * The interleaved layout of the added attributes.
+     * @return
+     */
+    public VertexLayout layout() {
+        VertexLayout layout = new VertexLayout();
+        for (Attribute a : attribs)
+            layout.add(a.ATTRIB_INDEX, a.SIZE, a.type(), a.normalized());
+        return layout;
+    }
+
     public VAO constructVAO(int primitiveType) {
         if (primitiveType == GL11.GL_QUADS)
             throw new IllegalArgumentException("GL_QUADS is not supported.");
         int size = checkCompleteness();
+        if (interleaved)
+            return constructInterleavedVAO(primitiveType, size);
         
         int vaoId = glGenVertexArrays(); // construct the VAO
         ErrorUtils.checkGLError();
@@ -54,7 +80,25 @@ public class ModernMeshBuilder {
         return new VAO(vaoId, vboArray, attribArray, primitiveType, size); // wrap it all up nicely
     }
     
+    private VAO constructInterleavedVAO(int primitiveType, int size) {
+        VertexLayout layout = layout();
+        FloatBuffer[] data = new FloatBuffer[attribs.size()];
+        for (int i = 0; i < data.length; i++)
+            data[i] = attribs.get(i).data();
+        ByteBuffer vertexData = layout.interleave(size, data);
+
+        int vaoId = glGenVertexArrays(); // construct the VAO
+        ErrorUtils.checkGLError();
+        glBindVertexArray(vaoId);
+        int vboId = layout.buffer(vertexData, attribs.get(0).drawHint());
+        glBindVertexArray(0);
+
+        return new VAO(vaoId, new int[] {vboId}, layout.attribs(), primitiveType, size);
+    }
+
     private int checkCompleteness() {
+        if (attribs.isEmpty())
+            throw new IllegalStateException("No attributes have been added.");
         int size = (int)attribs.get(0).numVertices();
         for (Attribute a : attribs) {
             double d = a.numVertices();
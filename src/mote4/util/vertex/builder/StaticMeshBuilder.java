@@ -1,18 +1,25 @@
 package mote4.util.vertex.builder;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
 
 import mote4.scenegraph.Window;
 import mote4.util.ErrorUtils;
 import mote4.util.FileIO;
 import mote4.util.vertex.OBJLoader;
+import mote4.util.vertex.mesh.IndexedVAO;
 import mote4.util.vertex.mesh.Mesh;
 import mote4.util.vertex.mesh.VAO;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL33;
 import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
 import static org.lwjgl.opengl.GL15.glBindBuffer;
 import static org.lwjgl.opengl.GL15.glBufferData;
@@ -26,6 +33,7 @@ import static org.lwjgl.opengl.GL30.*;
  */
 public class StaticMeshBuilder {
     
+    private static int objLoaderThreads = 1;
     private static int vertexDrawHint = GL_STATIC_DRAW,
                        texDrawHint    = GL_STATIC_DRAW,
                        colorDrawHint  = GL_STATIC_DRAW,
@@ -53,136 +61,277 @@ public class StaticMeshBuilder {
         
         // bind the vertex array
         glBindVertexArray(vaoId); // "start recording the calls I make.."
-        {
-            int vertexVboId = glGenBuffers(); // VBO for vertices
-            vbos.add(vertexVboId);
-            attribs.add(VERTEX_ATTRIB);
-
-            FloatBuffer vertexData = BufferUtils.createFloatBuffer(vertices.length);
-            vertexData.put(vertices);
-            vertexData.flip();
-
-            glEnableVertexAttribArray(VERTEX_ATTRIB);  // record in VAO
-            ErrorUtils.checkGLError();
-
-            glBindBuffer(GL_ARRAY_BUFFER, vertexVboId);
-            glBufferData(GL_ARRAY_BUFFER, vertexData, vertexDrawHint);
-
-            glVertexAttribPointer(
-                VERTEX_ATTRIB,      // shader attribute
-                vsize,              // size
-                GL11.GL_FLOAT,      // type
-                false,              // normalized?
-                0,                  // stride
-                0                   // array buffer offset
-            );
-            ErrorUtils.checkGLError();
-            
-            glBindBuffer(GL_ARRAY_BUFFER, 0); // unbind VBO
+        bufferAttributes(vbos, attribs, vsize, vertices, tsize, texCoords, csize, colors, normals);
+        // unbind the VAO
+        glBindVertexArray(0);
+
+        return new VAO(vaoId, toArray(vbos), toArray(attribs), primitiveType, vertices.length/vsize); // wrap it all up nicely
+    }
+
+    /**
+     * Constructs a mesh that draws its vertices by index.
+     * Indices are stored as unsigned shorts if every vertex can be
+     * addressed with 16 bits, otherwise as unsigned ints.
+     * @param indices Indices into the vertex data, in primitive order.
+     * @return
+     */
+    public static IndexedVAO constructIndexedVAO(int primitiveType,
+                                                 int vsize, float[] vertices,
+                                                 int tsize, float[] texCoords,
+                                                 int csize, float[] colors,
+                                                 float[] normals,
+                                                 int[] indices)
+    {
+        if (primitiveType == GL11.GL_QUADS)
+            throw new IllegalArgumentException("GL_QUADS is not supported.");
+        checkCompleteness(vsize,vertices,tsize,texCoords,csize,colors,normals);
+        int numVertices = vertices.length/vsize;
+        for (int i : indices)
+            if (i < 0 || i >= numVertices)
+                throw new IllegalStateException("Index "+i+" is out of range for "+numVertices+" vertices.");
+
+        int vaoId = glGenVertexArrays(); // construct the VAO
+        ErrorUtils.checkGLError();
+        ArrayList<Integer> vbos = new ArrayList<>();
+        ArrayList<Integer> attribs = new ArrayList<>();
+
+        glBindVertexArray(vaoId);
+        bufferAttributes(vbos, attribs, vsize, vertices, tsize, texCoords, csize, colors, normals);
+
+        // the element buffer binding is recorded in the VAO, so it stays bound until the VAO is unbound
+        int indexType = indexType(numVertices);
+        int elementVboId = glGenBuffers();
+        vbos.add(elementVboId);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, elementVboId);
+        if (indexType == GL11.GL_UNSIGNED_SHORT) {
+            ShortBuffer indexData = BufferUtils.createShortBuffer(indices.length);
+            for (int i : indices)
+                indexData.put((short)i);
+            indexData.flip();
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexData, vertexDrawHint);
+        } else {
+            IntBuffer indexData = BufferUtils.createIntBuffer(indices.length);
+            indexData.put(indices);
+            indexData.flip();
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexData, vertexDrawHint);
         }
-        
-        if (colors != null)
-        {
-            int colorVboId = glGenBuffers(); // VBO for colors
-            vbos.add(colorVboId);
-            attribs.add(COLOR_ATTRIB);
+        ErrorUtils.checkGLError();
+
+        glBindVertexArray(0);
+
+        return new IndexedVAO(vaoId, toArray(vbos), toArray(attribs), primitiveType, indices.length, indexType);
+    }
+
+    /**
+     * Constructs a mesh from a single buffer of interleaved vertex data.
+     * The buffers are passed to OpenGL as-is, so memory-mapped files
+     * can be uploaded without copying them into Java arrays.
+     * @param layout The layout of the vertex data.
+     * @param vertexData Interleaved vertex data, between position and limit.
+     * @param indexData Index data, or null to draw the vertices in order.
+     * @param indexType GL_UNSIGNED_SHORT or GL_UNSIGNED_INT, ignored if indexData is null.
+     * @return A VAO, or an IndexedVAO if index data is provided.
+     */
+    public static Mesh constructInterleavedVAO(int primitiveType, VertexLayout layout,
+                                               ByteBuffer vertexData,
+                                               ByteBuffer indexData, int indexType)
+    {
+        if (primitiveType == GL11.GL_QUADS)
+            throw new IllegalArgumentException("GL_QUADS is not supported.");
+        int numVertices = vertexData.remaining()/layout.stride();
+
+        int vaoId = glGenVertexArrays(); // construct the VAO
+        ErrorUtils.checkGLError();
+        glBindVertexArray(vaoId);
+
+        int vboId = layout.buffer(vertexData, vertexDrawHint);
 
-            FloatBuffer colorData = BufferUtils.createFloatBuffer(colors.length);
-            colorData.put(colors);
-            colorData.flip();
-
-            glEnableVertexAttribArray(COLOR_ATTRIB);  // record in VAO
-            ErrorUtils.checkGLError();
-
-            glBindBuffer(GL_ARRAY_BUFFER, colorVboId);
-            glBufferData(GL_ARRAY_BUFFER, colorData, colorDrawHint);
-
-            glVertexAttribPointer(
-                COLOR_ATTRIB,       // shader attribute
-                csize,              // size
-                GL11.GL_FLOAT,      // type
-                false,              // normalized?
-                0,                  // stride
-                0                   // array buffer offset
-            );
-            ErrorUtils.checkGLError();
-            
-            glBindBuffer(GL_ARRAY_BUFFER, 0); // unbind VBO
+        if (indexData == null) {
+            glBindVertexArray(0);
+            return new VAO(vaoId, new int[] {vboId}, layout.attribs(), primitiveType, numVertices);
         }
-        
+
+        int elementVboId = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, elementVboId);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexData, vertexDrawHint);
+        ErrorUtils.checkGLError();
+        glBindVertexArray(0);
+
+        int numIndices = indexData.remaining()/VertexLayout.typeSize(indexType);
+        return new IndexedVAO(vaoId, new int[] {vboId, elementVboId}, layout.attribs(), primitiveType, numIndices, indexType);
+    }
+
+    /**
+     * Constructs a mesh with all attributes interleaved in a single buffer.
+     * Takes the same arguments as constructVAO(), but uses one VBO
+     * instead of one per attribute.
+     * @return
+     */
+    public static VAO constructInterleavedVAO(int primitiveType,
+                                              int vsize, float[] vertices,
+                                              int tsize, float[] texCoords,
+                                              int csize, float[] colors,
+                                              float[] normals)
+    {
+        checkCompleteness(vsize,vertices,tsize,texCoords,csize,colors,normals);
+        VertexLayout layout = layout(vsize, tsize, texCoords != null, csize, colors != null, normals != null);
+        ArrayList<float[]> data = new ArrayList<>();
+        data.add(vertices);
+        if (colors != null)
+            data.add(colors);
         if (texCoords != null)
-        {
-            int texCoordVboId = glGenBuffers(); // VBO for tex coords
-            vbos.add(texCoordVboId);
-            attribs.add(TEXCOORD_ATTRIB);
+            data.add(texCoords);
+        if (normals != null)
+            data.add(normals);
+        ByteBuffer vertexData = layout.interleave(vertices.length/vsize, data.toArray(new float[data.size()][]));
+        return (VAO)constructInterleavedVAO(primitiveType, layout, vertexData, null, 0);
+    }
 
-            // put the ArrayList of tex coords in a FloatBuffer
-            FloatBuffer texCoordData = BufferUtils.createFloatBuffer(texCoords.length);
-            texCoordData.put(texCoords);
-            texCoordData.flip();
-
-            glEnableVertexAttribArray(TEXCOORD_ATTRIB);  // record in VAO
-            ErrorUtils.checkGLError();
-
-            glBindBuffer(GL_ARRAY_BUFFER, texCoordVboId);
-            glBufferData(GL_ARRAY_BUFFER, texCoordData, texDrawHint);
-
-            glVertexAttribPointer(
-               TEXCOORD_ATTRIB,    // shader attribute
-               tsize,              // size
-               GL11.GL_FLOAT,      // type
-               false,              // normalized?
-               0,                  // stride
-               0                   // array buffer offset
-            );
-            ErrorUtils.checkGLError();
-            
-            glBindBuffer(GL_ARRAY_BUFFER, 0); // unbind VBO
-        }
-        
+    /**
+     * Constructs an interleaved mesh with every attribute stored in a
+     * compact format, see compressedLayout().
+     * Takes the same arguments as constructVAO().
+     * @return
+     */
+    public static VAO constructCompressedVAO(int primitiveType,
+                                             int vsize, float[] vertices,
+                                             int tsize, float[] texCoords,
+                                             int csize, float[] colors,
+                                             float[] normals)
+    {
+        checkCompleteness(vsize,vertices,tsize,texCoords,csize,colors,normals);
+        VertexLayout layout = compressedLayout(vsize, tsize, texCoords != null, csize, colors != null, normals != null);
+        ArrayList<float[]> data = new ArrayList<>();
+        data.add(vertices);
+        if (colors != null)
+            data.add(colors);
+        if (texCoords != null)
+            data.add(texCoords);
         if (normals != null)
-        {
-            int normalVboId = glGenBuffers(); // VBO for normals
-            vbos.add(normalVboId);
-            attribs.add(NORMAL_ATTRIB);
+            data.add(normals);
+        int numVertices = vertices.length/vsize;
+        ByteBuffer vertexData = layout.interleave(numVertices, data.toArray(new float[data.size()][]));
+        if (ErrorUtils.debug()) {
+            int uncompressed = layout(vsize, tsize, texCoords != null, csize, colors != null, normals != null).stride()*numVertices;
+            System.out.println("Compressed mesh: "+vertexData.remaining()+" bytes, "
+                    +uncompressed+" bytes uncompressed, saved "+(uncompressed-vertexData.remaining())+" bytes.");
+        }
+        return (VAO)constructInterleavedVAO(primitiveType, layout, vertexData, null, 0);
+    }
+
+    /**
+     * The interleaved layout of the standard attributes, in the order
+     * vertex, color, tex coord, normal.
+     * @return
+     */
+    public static VertexLayout layout(int vsize,
+                                      int tsize, boolean includeTexCoords,
+                                      int csize, boolean includeColors,
+                                      boolean includeNormals)
+    {
+        VertexLayout layout = new VertexLayout().add(VERTEX_ATTRIB, vsize);
+        if (includeColors)
+            layout.add(COLOR_ATTRIB, csize);
+        if (includeTexCoords)
+            layout.add(TEXCOORD_ATTRIB, tsize);
+        if (includeNormals)
+            layout.add(NORMAL_ATTRIB, 3);
+        return layout;
+    }
+
+    /**
+     * The interleaved layout of the standard attributes in compact formats:
+     * half float vertices, 8 bit normalized colors, 16 bit normalized
+     * tex coords and normals packed as GL_INT_2_10_10_10_REV.
+     * Colors and tex coords are clamped to 0-1, so meshes with tiled
+     * tex coords should use a layout with half float tex coords instead.
+     * @return
+     */
+    public static VertexLayout compressedLayout(int vsize,
+                                                int tsize, boolean includeTexCoords,
+                                                int csize, boolean includeColors,
+                                                boolean includeNormals)
+    {
+        VertexLayout layout = new VertexLayout().add(VERTEX_ATTRIB, vsize, GL30.GL_HALF_FLOAT, false);
+        if (includeColors)
+            layout.add(COLOR_ATTRIB, csize, GL11.GL_UNSIGNED_BYTE, true);
+        if (includeTexCoords)
+            layout.add(TEXCOORD_ATTRIB, tsize, GL11.GL_UNSIGNED_SHORT, true);
+        if (includeNormals)
+            layout.add(NORMAL_ATTRIB, 3, GL33.GL_INT_2_10_10_10_REV, true);
+        return layout;
+    }
+
+    /**
+     * The smallest index type able to address the given number of vertices.
+     * @param numVertices
+     * @return GL_UNSIGNED_SHORT or GL_UNSIGNED_INT.
+     */
+    public static int indexType(int numVertices) {
+        return numVertices <= 65536 ? GL11.GL_UNSIGNED_SHORT : GL11.GL_UNSIGNED_INT;
+    }
 
-            FloatBuffer normalData = BufferUtils.createFloatBuffer(normals.length);
-            normalData.put(normals);
-            normalData.flip();
-
-            glEnableVertexAttribArray(NORMAL_ATTRIB);  // record in VAO
-            ErrorUtils.checkGLError();
-
-            glBindBuffer(GL_ARRAY_BUFFER, normalVboId);
-            glBufferData(GL_ARRAY_BUFFER, normalData, normalDrawHint);
-
-            glVertexAttribPointer(
-               NORMAL_ATTRIB,      // shader attribute
-               3,                  // size
-               GL11.GL_FLOAT,      // type
-               false,              // normalized?
-               0,                  // stride
-               0                   // array buffer offset
-            );
-            ErrorUtils.checkGLError();
-            
-            glBindBuffer(GL_ARRAY_BUFFER, 0); // unbind VBO
+    /**
+     * Creates a VBO for every attribute that is present and records it in the bound VAO.
+     */
+    private static void bufferAttributes(ArrayList<Integer> vbos, ArrayList<Integer> attribs,
+                                         int vsize, float[] vertices,
+                                         int tsize, float[] texCoords,
+                                         int csize, float[] colors,
+                                         float[] normals)
+    {
+        vbos.add(bufferAttribute(VERTEX_ATTRIB, vsize, vertices, vertexDrawHint));
+        attribs.add(VERTEX_ATTRIB);
+        if (colors != null) {
+            vbos.add(bufferAttribute(COLOR_ATTRIB, csize, colors, colorDrawHint));
+            attribs.add(COLOR_ATTRIB);
         }
-        
-        // unbind the VAO
-        glBindVertexArray(0);
-        
-        // pass the list of VBO handles to the VAO object
-        int[] vboArray = new int[vbos.size()];
-        for (int i = 0; i < vboArray.length; i++)
-            vboArray[i] = vbos.get(i);
-        
-        // pass the list of shader attribs to the VAO object
-        int[] attribArray = new int[attribs.size()];
-        for (int i = 0; i < attribArray.length; i++)
-            attribArray[i] = attribs.get(i);
+        if (texCoords != null) {
+            vbos.add(bufferAttribute(TEXCOORD_ATTRIB, tsize, texCoords, texDrawHint));
+            attribs.add(TEXCOORD_ATTRIB);
+        }
+        if (normals != null) {
+            vbos.add(bufferAttribute(NORMAL_ATTRIB, 3, normals, normalDrawHint));
+            attribs.add(NORMAL_ATTRIB);
+        }
+    }
+
+    /**
+     * Creates a VBO for a single attribute and records it in the bound VAO.
+     * @return The handle of the VBO.
+     */
+    private static int bufferAttribute(int attrib, int size, float[] data, int drawHint) {
+        int vboId = glGenBuffers();
 
-        return new VAO(vaoId, vboArray, attribArray, primitiveType, vertices.length/vsize); // wrap it all up nicely
+        FloatBuffer buffer = BufferUtils.createFloatBuffer(data.length);
+        buffer.put(data);
+        buffer.flip();
+
+        glEnableVertexAttribArray(attrib);  // record in VAO
+        ErrorUtils.checkGLError();
+
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, buffer, drawHint);
+
+        glVertexAttribPointer(
+            attrib,             // shader attribute
+            size,               // size
+            GL11.GL_FLOAT,      // type
+            false,              // normalized?
+            0,                  // stride
+            0                   // array buffer offset
+        );
+        ErrorUtils.checkGLError();
+
+        glBindBuffer(GL_ARRAY_BUFFER, 0); // unbind VBO
+        return vboId;
+    }
+
+    private static int[] toArray(ArrayList<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
     }
     
     private static void checkCompleteness(int vsize, float[] vertices,
@@ -257,6 +406,16 @@ public class StaticMeshBuilder {
                 0, null,null);
     }
 
+    /**
+     * Sets the number of threads used to parse .obj files.
+     * Large files are split into chunks and parsed in parallel,
+     * a value of 1 parses everything on the calling thread.
+     * @param threads
+     */
+    public static void setOBJLoaderThreads(int threads) {
+        objLoaderThreads = Math.max(1, threads);
+    }
+
     /**
      * Load a .obj file as a renderable mesh.
      * @param filename
@@ -264,9 +423,19 @@ public class StaticMeshBuilder {
      * @return 
      */
     public static VAO constructVAOFromOBJ(String filename, boolean center) {
+        return constructVAOFromOBJ(filename, center, objLoaderThreads);
+    }
+    /**
+     * Load a .obj file as a renderable mesh.
+     * @param filename
+     * @param center
+     * @param threads The number of threads to parse the file with.
+     * @return
+     */
+    public static VAO constructVAOFromOBJ(String filename, boolean center, int threads) {
         try {
             //System.out.println("Loading mesh: "+filename);
-            OBJLoader obj = new OBJLoader(FileIO.getBufferedReader("/res/models/" + filename + ".obj"), center);
+            OBJLoader obj = new OBJLoader(FileIO.getByteArray("/res/models/" + filename + ".obj"), center, threads);
             VAO vao = obj.createVAO();
             return vao;
         } catch (IOException e) {
@@ -275,4 +444,28 @@ public class StaticMeshBuilder {
             return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Load a .obj file as a renderable mesh with an element buffer.
+     * Identical face corners are welded into shared vertices.
+     * @param filename
+     * @param center
+     * @return
+     */
+    public static IndexedVAO constructIndexedVAOFromOBJ(String filename, boolean center) {
+        try {
+            OBJLoader obj = new OBJLoader(FileIO.getByteArray("/res/models/" + filename + ".obj"), center, objLoaderThreads);
+            IndexedVAO vao = obj.createIndexedVAO();
+            if (ErrorUtils.debug()) {
+                long saved = obj.getExpandedSize() - obj.getIndexedSize();
+                System.out.println("Mesh '"+filename+"': "+obj.getIndexedSize()+" bytes indexed, "
+                        +obj.getExpandedSize()+" bytes expanded, saved "+saved+" bytes.");
+            }
+            return vao;
+        } catch (IOException e) {
+            e.printStackTrace();
+            Window.destroy();
+            return null;
+        }
+    }
+}
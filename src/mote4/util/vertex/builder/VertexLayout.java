@@ -0,0 +1,294 @@
+package mote4.util.vertex.builder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import mote4.util.ErrorUtils;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL33;
+
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+
+/**
+ * Describes how vertex attributes are packed together in a single
+ * interleaved buffer.  Offsets and the stride are computed as attributes
+ * are added, every attribute starts on a 4 byte boundary.
+ * @author Peter
+ */
+public class VertexLayout {
+
+    /**
+     * A single attribute in the layout.
+     */
+    public static class Element {
+        public final int attrib, size, type, offset;
+        public final boolean normalized;
+
+        private Element(int attrib, int size, int type, boolean normalized, int offset) {
+            this.attrib = attrib;
+            this.size = size;
+            this.type = type;
+            this.normalized = normalized;
+            this.offset = offset;
+        }
+
+        /**
+         * The number of bytes this attribute uses in each vertex.
+         * @return
+         */
+        public int bytes() {
+            if (VertexPacking.isPacked(type))
+                return 4;
+            return size*typeSize(type);
+        }
+    }
+
+    private final List<Element> elements;
+    private int stride;
+
+    public VertexLayout() {
+        elements = new ArrayList<>();
+        stride = 0;
+    }
+
+    /**
+     * Adds a float attribute to the end of the layout.
+     * @param attrib The shader attribute index.
+     * @param size The number of components.
+     * @return This layout.
+     */
+    public VertexLayout add(int attrib, int size) {
+        return add(attrib, size, GL11.GL_FLOAT, false);
+    }
+    /**
+     * Adds an attribute to the end of the layout.
+     * Packed 2_10_10_10_REV types always store 4 components in a single int,
+     * a size of 3 leaves the w component at 0.
+     * @param attrib The shader attribute index.
+     * @param size The number of components.
+     * @param type The OpenGL data type of each component.
+     * @param normalized Whether integer data is normalized to 0-1 or -1-1.
+     * @return This layout.
+     */
+    public VertexLayout add(int attrib, int size, int type, boolean normalized) {
+        typeSize(type); // validate the type
+        if (VertexPacking.isPacked(type) && size != 3 && size != 4)
+            throw new IllegalArgumentException("Packed attributes must have 3 or 4 components.");
+        for (Element e : elements)
+            if (e.attrib == attrib)
+                throw new IllegalArgumentException("Attribute "+attrib+" is already in this layout.");
+        Element e = new Element(attrib, size, type, normalized, stride);
+        elements.add(e);
+        stride = align(stride + e.bytes());
+        return this;
+    }
+
+    /**
+     * Adds a 4x4 float matrix to the end of the layout, as four vec4
+     * columns using attribute indices attrib to attrib+3.
+     * @param attrib The shader attribute index of the first column.
+     * @return This layout.
+     */
+    public VertexLayout addMatrix(int attrib) {
+        for (int i = 0; i < 4; i++)
+            add(attrib+i, 4);
+        return this;
+    }
+
+    /**
+     * The element for a shader attribute index.
+     * @param attrib
+     * @return The element, or null if the attribute is not in this layout.
+     */
+    public Element element(int attrib) {
+        for (Element e : elements)
+            if (e.attrib == attrib)
+                return e;
+        return null;
+    }
+
+    /**
+     * The number of bytes between the start of consecutive vertices.
+     * @return
+     */
+    public int stride() { return stride; }
+
+    public List<Element> elements() { return Collections.unmodifiableList(elements); }
+
+    /**
+     * The shader attribute indices used by this layout, in order.
+     * @return
+     */
+    public int[] attribs() {
+        int[] attribs = new int[elements.size()];
+        for (int i = 0; i < attribs.length; i++)
+            attribs[i] = elements.get(i).attrib;
+        return attribs;
+    }
+
+    /**
+     * Sets the attribute pointers for this layout in the currently bound VAO.
+     * The interleaved vertex buffer must be bound to GL_ARRAY_BUFFER.
+     */
+    public void apply() {
+        apply(0);
+    }
+    /**
+     * Sets the attribute pointers for this layout in the currently bound VAO,
+     * advancing once every divisor instances instead of once per vertex.
+     * The buffer must be bound to GL_ARRAY_BUFFER.
+     * @param divisor 0 for per-vertex data, 1 for per-instance data.
+     */
+    public void apply(int divisor) {
+        for (Element e : elements) {
+            glEnableVertexAttribArray(e.attrib);  // record in VAO
+            glVertexAttribPointer(
+                e.attrib,       // shader attribute
+                VertexPacking.isPacked(e.type) ? 4 : e.size, // size
+                e.type,         // type
+                e.normalized,   // normalized?
+                stride,         // stride
+                e.offset        // array buffer offset
+            );
+            if (divisor != 0)
+                glVertexAttribDivisor(e.attrib, divisor);
+        }
+        ErrorUtils.checkGLError();
+    }
+
+    /**
+     * Creates a VBO holding interleaved vertex data and sets the attribute
+     * pointers for this layout in the currently bound VAO.
+     * @param vertexData Interleaved vertex data, between position and limit.
+     * @param drawHint The OpenGL drawing hint for the buffer.
+     * @return The handle of the VBO.
+     */
+    public int buffer(ByteBuffer vertexData, int drawHint) {
+        if (vertexData.remaining() % stride != 0)
+            throw new IllegalStateException("Vertex data size ("+vertexData.remaining()+") is not a multiple of the stride ("+stride+").");
+        int vboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, vertexData, drawHint);
+        apply();
+        glBindBuffer(GL_ARRAY_BUFFER, 0); // unbind VBO
+        return vboId;
+    }
+
+    /**
+     * Packs separate float arrays into a new interleaved buffer,
+     * converting every value to the type of its element.
+     * @param numVertices The number of vertices to pack.
+     * @param data One array per element of the layout, in the same order.
+     *             Each array holds size floats per vertex.
+     * @return A direct buffer in native byte order, ready to be uploaded.
+     */
+    public ByteBuffer interleave(int numVertices, float[]... data) {
+        FloatBuffer[] buffers = new FloatBuffer[data.length];
+        for (int i = 0; i < data.length; i++)
+            buffers[i] = data[i] == null ? null : FloatBuffer.wrap(data[i]);
+        return interleave(numVertices, buffers);
+    }
+    /**
+     * Packs separate float buffers into a new interleaved buffer,
+     * converting every value to the type of its element.
+     * @param numVertices The number of vertices to pack.
+     * @param data One buffer per element of the layout, in the same order.
+     *             Each buffer holds size floats per vertex, starting at its position.
+     * @return A direct buffer in native byte order, ready to be uploaded.
+     */
+    public ByteBuffer interleave(int numVertices, FloatBuffer... data) {
+        ByteBuffer out = BufferUtils.createByteBuffer(numVertices*stride);
+        interleave(out, numVertices, data);
+        out.flip();
+        return out;
+    }
+    /**
+     * Packs separate float buffers into an interleaved buffer,
+     * converting every value to the type of its element.
+     * Writing starts at the position of out, which is advanced past the written vertices.
+     * @param out The buffer to write to, must be in native byte order.
+     * @param numVertices The number of vertices to pack.
+     * @param data One buffer per element of the layout, in the same order.
+     */
+    public void interleave(ByteBuffer out, int numVertices, FloatBuffer... data) {
+        if (data.length != elements.size())
+            throw new IllegalArgumentException("Expected "+elements.size()+" attribute arrays, got "+data.length+".");
+        if (out.order() != ByteOrder.nativeOrder())
+            throw new IllegalArgumentException("Interleaved buffers must use the native byte order.");
+        if (out.remaining() < numVertices*stride)
+            throw new IllegalArgumentException("Buffer too small for "+numVertices+" vertices.");
+        for (int i = 0; i < data.length; i++) {
+            Element e = elements.get(i);
+            if (data[i] == null || data[i].remaining() < numVertices*e.size)
+                throw new IllegalArgumentException("Not enough data for attribute "+e.attrib+".");
+        }
+
+        int base = out.position();
+        float[] scratch = new float[4];
+        for (int i = 0; i < data.length; i++) {
+            Element e = elements.get(i);
+            FloatBuffer src = data[i];
+            int in = src.position();
+            if (e.type == GL11.GL_FLOAT) {
+                for (int v = 0; v < numVertices; v++) {
+                    int o = base + v*stride + e.offset;
+                    for (int c = 0; c < e.size; c++)
+                        out.putFloat(o + c*4, src.get(in++));
+                }
+            } else {
+                if (scratch.length < e.size)
+                    scratch = new float[e.size];
+                for (int v = 0; v < numVertices; v++) {
+                    for (int c = 0; c < e.size; c++)
+                        scratch[c] = src.get(in++);
+                    out.position(base + v*stride + e.offset);
+                    VertexPacking.encode(out, e.type, e.normalized, scratch, 0, e.size);
+                }
+            }
+        }
+        out.position(base + numVertices*stride);
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+
+    /**
+     * The size in bytes of a single component of the given OpenGL type.
+     * Packed types return the size of the whole attribute.
+     * @param type
+     * @return
+     */
+    public static int typeSize(int type) {
+        switch (type) {
+            case GL11.GL_BYTE:
+            case GL11.GL_UNSIGNED_BYTE:
+                return 1;
+            case GL11.GL_SHORT:
+            case GL11.GL_UNSIGNED_SHORT:
+            case GL30.GL_HALF_FLOAT:
+                return 2;
+            case GL11.GL_INT:
+            case GL11.GL_UNSIGNED_INT:
+            case GL11.GL_FLOAT:
+            case GL12.GL_UNSIGNED_INT_2_10_10_10_REV:
+            case GL33.GL_INT_2_10_10_10_REV:
+                return 4;
+            default:
+                throw new IllegalArgumentException("Unsupported vertex attribute type: "+type);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package mote4.util.vertex.builder;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL33;
+
+/**
+ * Conversions from floats to the compact vertex formats OpenGL can read,
+ * and back again.  The decoding functions match the conversions OpenGL
+ * performs when reading an attribute, so they can be used to measure the
+ * error a compressed format introduces.
+ * @author Peter
+ */
+public final class VertexPacking {
+
+    private VertexPacking() {}
+
+    ////////////////
+    // half float //
+    ////////////////
+
+    /**
+     * Converts a float to an IEEE 754 half-precision float, rounding to nearest even.
+     * Values too large for a half float become infinity.
+     * @param f
+     * @return The 16 bits of the half float.
+     */
+    public static short toHalf(float f) {
+        int bits = Float.floatToRawIntBits(f);
+        int sign = (bits >>> 16) & 0x8000;
+        int exp = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (exp == 0xFF) // infinity or NaN
+            return (short)(sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+
+        int e = exp - 127 + 15;
+        if (e >= 0x1F) // overflow
+            return (short)(sign | 0x7C00);
+        if (e <= 0) {
+            // subnormal half, or too small and flushed to zero
+            if (e < -10)
+                return (short)sign;
+            mantissa |= 0x800000;
+            int shift = 14 - e;
+            int half = mantissa >>> shift;
+            int rest = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (rest > halfway || (rest == halfway && (half & 1) != 0))
+                half++;
+            return (short)(sign | half);
+        }
+
+        int half = (e << 10) | (mantissa >>> 13);
+        int rest = mantissa & 0x1FFF;
+        // rounding up may carry into the exponent, which is still correct
+        if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0))
+            half++;
+        return (short)(sign | half);
+    }
+
+    /**
+     * Converts an IEEE 754 half-precision float to a float.
+     * @param h The 16 bits of the half float.
+     * @return
+     */
+    public static float fromHalf(short h) {
+        int sign = (h & 0x8000) << 16;
+        int exp = (h >>> 10) & 0x1F;
+        int mantissa = h & 0x3FF;
+
+        if (exp == 0x1F)
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        if (exp == 0) {
+            float f = mantissa / 16777216f; // mantissa * 2^-24
+            return sign == 0 ? f : -f;
+        }
+        return Float.intBitsToFloat(sign | ((exp - 15 + 127) << 23) | (mantissa << 13));
+    }
+
+    ////////////////////////
+    // normalized integers //
+    ////////////////////////
+
+    /**
+     * Converts a float in the range -1 to 1 to a signed normalized integer.
+     * Values outside the range are clamped.
+     * @param f
+     * @param bits The number of bits of the integer, including the sign bit.
+     * @return
+     */
+    public static int toSnorm(float f, int bits) {
+        int max = (1 << (bits - 1)) - 1;
+        return Math.round(clamp(f, -1, 1) * max);
+    }
+    public static float fromSnorm(int i, int bits) {
+        int max = (1 << (bits - 1)) - 1;
+        return Math.max(i / (float)max, -1);
+    }
+
+    /**
+     * Converts a float in the range 0 to 1 to an unsigned normalized integer.
+     * Values outside the range are clamped.
+     * @param f
+     * @param bits The number of bits of the integer.
+     * @return
+     */
+    public static int toUnorm(float f, int bits) {
+        long max = (1L << bits) - 1;
+        return (int)Math.round(clamp(f, 0, 1) * (double)max);
+    }
+    public static float fromUnorm(int i, int bits) {
+        long max = (1L << bits) - 1;
+        return (float)((i & 0xFFFFFFFFL) / (double)max);
+    }
+
+    /////////////////
+    // 2_10_10_10 //
+    /////////////////
+
+    /**
+     * Packs four signed normalized values into the GL_INT_2_10_10_10_REV format.
+     * x, y and z use 10 bits each, w uses 2 bits.
+     * @return
+     */
+    public static int packSnorm2101010(float x, float y, float z, float w) {
+        return (toSnorm(x, 10) & 0x3FF)
+             | (toSnorm(y, 10) & 0x3FF) << 10
+             | (toSnorm(z, 10) & 0x3FF) << 20
+             | (toSnorm(w, 2)  & 0x3)   << 30;
+    }
+    /**
+     * Packs four unsigned normalized values into the GL_UNSIGNED_INT_2_10_10_10_REV format.
+     * x, y and z use 10 bits each, w uses 2 bits.
+     * @return
+     */
+    public static int packUnorm2101010(float x, float y, float z, float w) {
+        return toUnorm(x, 10)
+             | toUnorm(y, 10) << 10
+             | toUnorm(z, 10) << 20
+             | toUnorm(w, 2)  << 30;
+    }
+
+    /**
+     * Reads one component of a value in a 2_10_10_10_REV format.
+     * @param packed The packed value.
+     * @param component 0 for x, 1 for y, 2 for z, 3 for w.
+     * @param signed Whether the format is GL_INT_2_10_10_10_REV.
+     * @return The normalized value.
+     */
+    public static float unpack2101010(int packed, int component, boolean signed) {
+        int bits = component == 3 ? 2 : 10;
+        int shift = component*10;
+        if (signed) {
+            int v = (packed << (32 - shift - bits)) >> (32 - bits); // sign extend
+            return fromSnorm(v, bits);
+        }
+        return fromUnorm((packed >>> shift) & ((1 << bits) - 1), bits);
+    }
+
+    //////////////
+    // encoding //
+    //////////////
+
+    /**
+     * Writes the components of one attribute in the given OpenGL type.
+     * Integer types are normalized if requested, otherwise the values are rounded.
+     * Packed 2_10_10_10 types write a single int, missing components are 0.
+     * @param out The buffer to write to, at its position.
+     * @param type The OpenGL data type.
+     * @param normalized
+     * @param src The source values.
+     * @param offset The index of the first component in src.
+     * @param size The number of components.
+     */
+    public static void encode(ByteBuffer out, int type, boolean normalized, float[] src, int offset, int size) {
+        if (isPacked(type)) {
+            float x = size > 0 ? src[offset]   : 0,
+                  y = size > 1 ? src[offset+1] : 0,
+                  z = size > 2 ? src[offset+2] : 0,
+                  w = size > 3 ? src[offset+3] : 0;
+            out.putInt(type == GL33.GL_INT_2_10_10_10_REV ? packSnorm2101010(x, y, z, w)
+                                                          : packUnorm2101010(x, y, z, w));
+            return;
+        }
+        for (int c = 0; c < size; c++) {
+            float f = src[offset+c];
+            switch (type) {
+                case GL11.GL_FLOAT:
+                    out.putFloat(f);
+                    break;
+                case GL30.GL_HALF_FLOAT:
+                    out.putShort(toHalf(f));
+                    break;
+                case GL11.GL_BYTE:
+                    out.put((byte)(normalized ? toSnorm(f, 8) : clampRound(f, Byte.MIN_VALUE, Byte.MAX_VALUE)));
+                    break;
+                case GL11.GL_UNSIGNED_BYTE:
+                    out.put((byte)(normalized ? toUnorm(f, 8) : clampRound(f, 0, 0xFF)));
+                    break;
+                case GL11.GL_SHORT:
+                    out.putShort((short)(normalized ? toSnorm(f, 16) : clampRound(f, Short.MIN_VALUE, Short.MAX_VALUE)));
+                    break;
+                case GL11.GL_UNSIGNED_SHORT:
+                    out.putShort((short)(normalized ? toUnorm(f, 16) : clampRound(f, 0, 0xFFFF)));
+                    break;
+                case GL11.GL_INT:
+                    out.putInt(normalized ? toSnorm(f, 32) : Math.round(f));
+                    break;
+                case GL11.GL_UNSIGNED_INT:
+                    out.putInt(normalized ? toUnorm(f, 32) : (int)Math.round((double)Math.max(f, 0)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported vertex attribute type: "+type);
+            }
+        }
+    }
+
+    /**
+     * Whether the type packs all components of an attribute into a single int.
+     * @param type
+     * @return
+     */
+    public static boolean isPacked(int type) {
+        return type == GL33.GL_INT_2_10_10_10_REV || type == GL12.GL_UNSIGNED_INT_2_10_10_10_REV;
+    }
+
+    private static float clamp(float f, float min, float max) {
+        return Math.max(min, Math.min(max, f));
+    }
+    private static int clampRound(float f, int min, int max) {
+        return Math.round(clamp(f, min, max));
+    }
+}
@@ -0,0 +1,281 @@
+package mote4.util.vertex.builder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL33;
+
+/**
+ * Checks that every VertexPacking format round trips within its error bound.
+ *
+ * Half floats are checked exhaustively in both directions: every half must
+ * decode and encode to itself, and random floats, including subnormals and
+ * values around the overflow threshold, must encode to the nearest half,
+ * ties to even.  Normalized formats must round trip every integer exactly
+ * and every float in range within half a step, with -1, 0 and 1 exact.
+ * Runs without an OpenGL context.
+ *
+ * Usage: VertexPackingCheck [random values per format]
+ * @author Peter
+ */
+public class VertexPackingCheck {
+
+    public static void main(String[] args) {
+        int values = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        Random random = new Random(8);
+
+        checkHalf(random, values);
+        checkUnorm(random, values, 16);
+        checkUnorm(random, values, 8);
+        checkSnorm(random, values, 16);
+        checkSnorm(random, values, 8);
+        check2101010(random, values);
+        checkEncode();
+        System.out.println("OK: half float, unorm16, unorm8, snorm16, snorm8 and 2_10_10_10_REV round trip within bounds");
+    }
+
+    ////////////////
+    // half float //
+    ////////////////
+
+    private static void checkHalf(Random random, int values) {
+        // every half survives a round trip through a float
+        for (int h = 0; h < 0x10000; h++) {
+            float f = VertexPacking.fromHalf((short)h);
+            short back = VertexPacking.toHalf(f);
+            if (isHalfNaN(h)) {
+                if (!isHalfNaN(back & 0xFFFF) || (back & 0x8000) != (h & 0x8000))
+                    fail(String.format("NaN half %04x became %04x", h, back & 0xFFFF));
+            } else if ((back & 0xFFFF) != h)
+                fail(String.format("half %04x decoded to %s and encoded back to %04x", h, f, back & 0xFFFF));
+        }
+
+        expectHalf(0f, 0x0000);
+        expectHalf(-0f, 0x8000);
+        expectHalf(1f, 0x3C00);
+        expectHalf(-2f, 0xC000);
+        expectHalf(65504f, 0x7BFF); // largest half
+        expectHalf(65519.99f, 0x7BFF);
+        expectHalf(65520f, 0x7C00); // rounds past the largest half
+        expectHalf(1e10f, 0x7C00);
+        expectHalf(-1e10f, 0xFC00);
+        expectHalf(Float.POSITIVE_INFINITY, 0x7C00);
+        expectHalf(Float.NEGATIVE_INFINITY, 0xFC00);
+        expectHalf(0x1p-24f, 0x0001); // smallest subnormal
+        expectHalf(0x1p-25f, 0x0000); // halfway to zero, ties to even
+        expectHalf(0x1.8p-24f, 0x0002); // halfway between 1 and 2, ties to even
+        expectHalf(0x1.0002p-25f, 0x0001);
+        expectHalf(-0x1p-26f, 0x8000);
+        expectHalf(0x1.ff8p-15f, 0x03FF); // largest subnormal
+        expectHalf(0x1.ffcp-15f, 0x0400); // halfway to the smallest normal, ties to even carry into the exponent
+        expectHalf(0x1p-14f, 0x0400); // smallest normal
+        expectHalf(Float.MIN_VALUE, 0x0000);
+        if (!Float.isNaN(VertexPacking.fromHalf(VertexPacking.toHalf(Float.NaN))))
+            fail("NaN did not survive a round trip");
+
+        // random floats in and around the half range, evenly spread over exponents
+        for (int i = 0; i < values; i++) {
+            int exp = 127-27+random.nextInt(46); // 2^-27 to 2^18
+            int bits = (random.nextBoolean() ? 0x80000000 : 0) | exp << 23 | random.nextInt(1 << 23);
+            if (i % 4 == 0)
+                bits = (bits & ~0x1FFF) | 0x1000; // make exact ties common
+            float f = Float.intBitsToFloat(bits);
+            checkNearestHalf(f, VertexPacking.toHalf(f) & 0xFFFF);
+        }
+    }
+
+    private static void expectHalf(float f, int expected) {
+        int h = VertexPacking.toHalf(f) & 0xFFFF;
+        if (h != expected)
+            fail(String.format("%s encoded to half %04x, expected %04x", f, h, expected));
+    }
+
+    /**
+     * Fails unless h is the half nearest to f, with ties going to the even half.
+     */
+    private static void checkNearestHalf(float f, int h) {
+        double value = f;
+        int sign = h & 0x8000;
+        int magnitude = h & 0x7FFF;
+        if ((sign != 0) != (Float.floatToRawIntBits(f) < 0))
+            fail(String.format("%s encoded to half %04x with the wrong sign", f, h));
+        if (magnitude == 0x7C00) {
+            // infinity is only correct from 65520 up, the halfway point to the next exponent
+            if (Math.abs(value) < 65520)
+                fail(String.format("%s overflowed to infinity", f));
+            return;
+        }
+        if (magnitude > 0x7C00)
+            fail(String.format("%s encoded to NaN %04x", f, h));
+        double error = Math.abs(halfValue(h) - value);
+        double below = magnitude > 0 ? Math.abs(halfValue(sign | magnitude-1) - value) : Double.MAX_VALUE;
+        double above = magnitude < 0x7BFF ? Math.abs(halfValue(sign | magnitude+1) - value) : Double.MAX_VALUE;
+        if (error > below || error > above)
+            fail(String.format("%s encoded to %s (%04x), which is not the nearest half", f, halfValue(h), h));
+        if ((error == below || error == above) && (magnitude & 1) != 0)
+            fail(String.format("%s is halfway between two halves and encoded to the odd one, %04x", f, h));
+        // the same bound as a relative error of 2^-11, or half the smallest subnormal
+        if (error > Math.max(Math.abs(value)*0x1p-11, 0x1p-25))
+            fail(String.format("%s encoded to %s, error %s is out of bounds", f, halfValue(h), error));
+    }
+
+    /**
+     * The exact value of a finite half, computed independently of fromHalf().
+     */
+    private static double halfValue(int h) {
+        int exp = (h >>> 10) & 0x1F, mantissa = h & 0x3FF;
+        double v = exp == 0 ? mantissa * 0x1p-24 : (1024+mantissa) * Math.pow(2, exp-25);
+        return (h & 0x8000) != 0 ? -v : v;
+    }
+
+    private static boolean isHalfNaN(int h) {
+        return (h & 0x7C00) == 0x7C00 && (h & 0x3FF) != 0;
+    }
+
+    /////////////////////////
+    // normalized integers //
+    /////////////////////////
+
+    private static void checkUnorm(Random random, int values, int bits) {
+        long max = (1L << bits)-1;
+        for (long i = 0; i <= max; i++) {
+            float f = VertexPacking.fromUnorm((int)i, bits);
+            if (VertexPacking.toUnorm(f, bits) != i)
+                fail("unorm"+bits+" "+i+" decoded to "+f+" and did not encode back");
+        }
+        expect("unorm"+bits, VertexPacking.toUnorm(0, bits), 0);
+        expect("unorm"+bits, VertexPacking.toUnorm(1, bits), max);
+        expect("unorm"+bits+" clamping", VertexPacking.toUnorm(-.5f, bits), 0);
+        expect("unorm"+bits+" clamping", VertexPacking.toUnorm(2, bits), max);
+        if (VertexPacking.fromUnorm((int)max, bits) != 1 || VertexPacking.fromUnorm(0, bits) != 0)
+            fail("unorm"+bits+" should decode 0 and 1 exactly");
+
+        double bound = .5/max + 0x1p-24;
+        for (int i = 0; i < values; i++) {
+            float f = random.nextFloat();
+            float back = VertexPacking.fromUnorm(VertexPacking.toUnorm(f, bits), bits);
+            if (Math.abs(back-f) > bound)
+                fail("unorm"+bits+" round trip of "+f+" gave "+back+", error is over half a step");
+        }
+    }
+
+    private static void checkSnorm(Random random, int values, int bits) {
+        int max = (1 << (bits-1))-1;
+        for (int i = -max; i <= max; i++) {
+            float f = VertexPacking.fromSnorm(i, bits);
+            if (VertexPacking.toSnorm(f, bits) != i)
+                fail("snorm"+bits+" "+i+" decoded to "+f+" and did not encode back");
+        }
+        // the most negative integer decodes to -1, like -max
+        if (VertexPacking.fromSnorm(-max-1, bits) != -1)
+            fail("snorm"+bits+" "+(-max-1)+" should decode to -1");
+        expect("snorm"+bits, VertexPacking.toSnorm(-1, bits), -max);
+        expect("snorm"+bits, VertexPacking.toSnorm(0, bits), 0);
+        expect("snorm"+bits, VertexPacking.toSnorm(1, bits), max);
+        expect("snorm"+bits+" clamping", VertexPacking.toSnorm(-3, bits), -max);
+
+        double bound = .5/max + 0x1p-24;
+        for (int i = 0; i < values; i++) {
+            float f = random.nextFloat()*2-1;
+            float back = VertexPacking.fromSnorm(VertexPacking.toSnorm(f, bits), bits);
+            if (Math.abs(back-f) > bound)
+                fail("snorm"+bits+" round trip of "+f+" gave "+back+", error is over half a step");
+        }
+    }
+
+    /////////////////
+    // 2_10_10_10 //
+    /////////////////
+
+    private static void check2101010(Random random, int values) {
+        float[] exact = {-1, 0, 1};
+        for (float x : exact)
+            for (float w : exact) {
+                int packed = VertexPacking.packSnorm2101010(x, -x, x, w);
+                expectComponent(packed, 0, true, x);
+                expectComponent(packed, 1, true, -x);
+                expectComponent(packed, 2, true, x);
+                expectComponent(packed, 3, true, w);
+            }
+        // the most negative values of each field also decode to -1
+        int minimum = 0x200 | 0x200 << 10 | 0x200 << 20 | 0x2 << 30;
+        for (int c = 0; c < 4; c++)
+            expectComponent(minimum, c, true, -1);
+        int ones = VertexPacking.packUnorm2101010(1, 0, 1, 1);
+        expectComponent(ones, 0, false, 1);
+        expectComponent(ones, 1, false, 0);
+        expectComponent(ones, 2, false, 1);
+        expectComponent(ones, 3, false, 1);
+
+        for (int i = 0; i < values; i++) {
+            float[] v = {random.nextFloat()*2-1, random.nextFloat()*2-1, random.nextFloat()*2-1, random.nextFloat()*2-1};
+            int packed = VertexPacking.packSnorm2101010(v[0], v[1], v[2], v[3]);
+            for (int c = 0; c < 4; c++) {
+                double bound = .5/(c == 3 ? 1 : 511) + 0x1p-24;
+                float back = VertexPacking.unpack2101010(packed, c, true);
+                if (Math.abs(back-v[c]) > bound)
+                    fail("signed 2_10_10_10 component "+c+" of "+v[c]+" gave "+back+", error is over half a step");
+            }
+            for (int c = 0; c < 4; c++)
+                v[c] = Math.abs(v[c]);
+            packed = VertexPacking.packUnorm2101010(v[0], v[1], v[2], v[3]);
+            for (int c = 0; c < 4; c++) {
+                double bound = .5/(c == 3 ? 3 : 1023) + 0x1p-24;
+                float back = VertexPacking.unpack2101010(packed, c, false);
+                if (Math.abs(back-v[c]) > bound)
+                    fail("unsigned 2_10_10_10 component "+c+" of "+v[c]+" gave "+back+", error is over half a step");
+            }
+        }
+    }
+
+    private static void expectComponent(int packed, int component, boolean signed, float expected) {
+        float actual = VertexPacking.unpack2101010(packed, component, signed);
+        if (actual != expected)
+            fail((signed ? "signed" : "unsigned")+" 2_10_10_10 component "+component+" of "
+                    +Integer.toHexString(packed)+" is "+actual+", expected "+expected);
+    }
+
+    //////////////
+    // encoding //
+    //////////////
+
+    /**
+     * encode() must write the same values as the conversion functions.
+     */
+    private static void checkEncode() {
+        float[] src = {.25f, -.75f, 1, 0};
+        ByteBuffer out = ByteBuffer.allocate(64).order(ByteOrder.nativeOrder());
+
+        VertexPacking.encode(out, GL30.GL_HALF_FLOAT, false, src, 0, 4);
+        VertexPacking.encode(out, GL11.GL_UNSIGNED_SHORT, true, src, 0, 2);
+        VertexPacking.encode(out, GL11.GL_UNSIGNED_BYTE, true, src, 2, 2);
+        VertexPacking.encode(out, GL33.GL_INT_2_10_10_10_REV, true, src, 0, 3);
+        VertexPacking.encode(out, GL12.GL_UNSIGNED_INT_2_10_10_10_REV, true, src, 2, 1);
+        out.flip();
+
+        for (int c = 0; c < 4; c++)
+            expect("encoded half", out.getShort(), VertexPacking.toHalf(src[c]));
+        expect("encoded unorm16", out.getShort() & 0xFFFF, VertexPacking.toUnorm(src[0], 16));
+        expect("encoded unorm16", out.getShort() & 0xFFFF, VertexPacking.toUnorm(src[1], 16));
+        expect("encoded unorm8", out.get() & 0xFF, 255);
+        expect("encoded unorm8", out.get() & 0xFF, 0);
+        expect("encoded 2_10_10_10", out.getInt(), VertexPacking.packSnorm2101010(src[0], src[1], src[2], 0));
+        expect("encoded 2_10_10_10", out.getInt(), VertexPacking.packUnorm2101010(1, 0, 0, 0));
+        if (out.hasRemaining())
+            fail("encode() wrote "+out.remaining()+" bytes too many");
+    }
+
+    private static void expect(String what, long actual, long expected) {
+        if (actual != expected)
+            fail(what+" is "+actual+", expected "+expected);
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: "+message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,199 @@
+package mote4.util.vertex.mesh;
+
+import java.nio.ByteBuffer;
+
+import mote4.util.ErrorUtils;
+import mote4.util.state.GLState;
+import mote4.util.vertex.builder.VertexLayout;
+import org.lwjgl.BufferUtils;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+
+/**
+ * A VAO for geometry that changes often.
+ * The vertex buffer is allocated once with a fixed capacity, along with a
+ * CPU-side copy of its contents.  Vertices are written into data() and
+ * then sent to the GPU with update() or upload(), which do not allocate.
+ * @author Peter
+ */
+public class DynamicVAO implements Mesh {
+
+    private boolean destroyed;
+    private final int vaoId, vboId, primitiveType;
+    private final int[] attribInds;
+    private final VertexLayout layout;
+    private ByteBuffer data;
+    private int capacity, numVertices;
+
+    /**
+     * Creates an empty dynamic mesh.
+     * @param layout The layout of the vertex data.
+     * @param capacity The initial number of vertices the mesh can hold.
+     * @param type The primitive type.
+     */
+    public DynamicVAO(VertexLayout layout, int capacity, int type) {
+        this.layout = layout;
+        this.capacity = Math.max(1, capacity);
+        primitiveType = type;
+        attribInds = layout.attribs();
+        numVertices = 0;
+        destroyed = false;
+
+        data = BufferUtils.createByteBuffer(this.capacity*layout.stride());
+
+        vaoId = glGenVertexArrays();
+        vboId = glGenBuffers();
+        glBindVertexArray(vaoId);
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, (long)this.capacity*layout.stride(), GL_DYNAMIC_DRAW);
+        layout.apply();
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+        ErrorUtils.checkGLError();
+    }
+
+    /**
+     * The CPU-side copy of the vertex data.  Vertex i starts at byte i*stride().
+     * Changes are not visible until update() or upload() is called.
+     * The buffer is replaced if the capacity grows.
+     * @return
+     */
+    public ByteBuffer data() { return data; }
+
+    public VertexLayout layout() { return layout; }
+    public int stride() { return layout.stride(); }
+    public int capacity() { return capacity; }
+
+    /**
+     * Sets the number of vertices drawn by render().
+     * @param n
+     */
+    public void setVertexCount(int n) {
+        if (n < 0 || n > capacity)
+            throw new IllegalArgumentException("Vertex count "+n+" is out of range for capacity "+capacity+".");
+        numVertices = n;
+    }
+    public int vertexCount() { return numVertices; }
+
+    /**
+     * Grows the mesh to hold at least the given number of vertices.
+     * The existing vertex data is kept.  Does nothing if the capacity is already large enough.
+     * The new data() buffer has the same position as the old one, and its
+     * limit is the new capacity unless the old limit was set below capacity.
+     * @param n
+     */
+    public void ensureCapacity(int n) {
+        if (n <= capacity)
+            return;
+        int newCapacity = Math.max(n, capacity*2);
+        data = grow(data, newCapacity*layout.stride());
+        capacity = newCapacity;
+
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        nglBufferData(GL_ARRAY_BUFFER, (long)capacity*layout.stride(), memAddress(data, 0), GL_DYNAMIC_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        ErrorUtils.checkGLError();
+    }
+
+    /**
+     * Copies a buffer into a larger one without changing the old buffer's
+     * position or limit, which may be in use by the caller.
+     * @param old The buffer to copy.
+     * @param bytes The size of the new buffer.
+     * @return The new buffer, at the old buffer's position.
+     */
+    static ByteBuffer grow(ByteBuffer old, int bytes) {
+        ByteBuffer grown = BufferUtils.createByteBuffer(bytes);
+        grown.put(old.duplicate().clear());
+        if (old.limit() != old.capacity())
+            grown.limit(old.limit());
+        grown.position(old.position());
+        return grown;
+    }
+
+    /**
+     * Copies a range of vertices from data() into the vertex buffer with glBufferSubData.
+     * Best for small changes to a mesh that is otherwise unchanged.
+     * @param first The first vertex to copy.
+     * @param count The number of vertices to copy.
+     */
+    public void update(int first, int count) {
+        if (destroyed)
+            throw new IllegalStateException("Attempted to update destroyed DynamicVAO mesh.");
+        if (first < 0 || count < 0 || first+count > capacity)
+            throw new IllegalArgumentException("Vertex range "+first+"+"+count+" is out of range for capacity "+capacity+".");
+        if (count == 0)
+            return;
+        int stride = layout.stride();
+        GLState.bindBuffer(GL_ARRAY_BUFFER, vboId);
+        GLState.bufferSubData(GL_ARRAY_BUFFER, (long)first*stride, data, first*stride, count*stride);
+        GLState.bindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Replaces the vertex buffer's storage and copies the first count vertices
+     * from data() into it, then sets the vertex count.
+     * Orphaning the old storage lets the driver keep drawing from it without
+     * waiting, which is best when the whole mesh is rewritten every frame.
+     * @param count The number of vertices to copy.
+     */
+    public void upload(int count) {
+        if (destroyed)
+            throw new IllegalStateException("Attempted to update destroyed DynamicVAO mesh.");
+        setVertexCount(count);
+        int stride = layout.stride();
+        GLState.bindBuffer(GL_ARRAY_BUFFER, vboId);
+        GLState.bufferData(GL_ARRAY_BUFFER, (long)capacity*stride, GL_DYNAMIC_DRAW);
+        if (count > 0)
+            GLState.bufferSubData(GL_ARRAY_BUFFER, 0, data, 0, count*stride);
+        GLState.bindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    @Override
+    public void render() {
+        render(0, numVertices);
+    }
+    /**
+     * Draws a range of the vertices.
+     * @param first The first vertex to draw.
+     * @param count The number of vertices to draw.
+     */
+    public void render(int first, int count) {
+        if (destroyed)
+            throw new IllegalStateException("Attempted to render destroyed DynamicVAO mesh.");
+        if (count == 0)
+            return;
+
+        GLState.bindVertexArray(vaoId);
+        for (int i : attribInds)
+            GLState.enableVertexAttribArray(i);
+
+        GLState.drawArrays(primitiveType, first, count);
+
+        for (int i : attribInds)
+            GLState.disableVertexAttribArray(i);
+        GLState.bindVertexArray(0);
+    }
+
+    @Override
+    public void destroy() {
+        if (!destroyed) {
+            destroyed = true;
+
+            glBindVertexArray(vaoId);
+            for (int i : attribInds)
+                glDisableVertexAttribArray(i);
+
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+            glDeleteBuffers(vboId);
+
+            glBindVertexArray(0);
+            glDeleteVertexArrays(vaoId);
+
+            ErrorUtils.checkGLError();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package mote4.util.vertex.mesh;
+
+import mote4.util.ErrorUtils;
+import mote4.util.state.GLState;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Vertex Array Object wrapper for meshes with an element buffer.
+ * Vertices are shared between primitives and drawn by index with glDrawElements.
+ * @author Peter
+ */
+public class IndexedVAO implements Mesh {
+
+    private boolean destroyed;
+    private final int vaoId, primitiveType, numIndices, indexType;
+    private final int[] vbos, attribInds;
+
+    /**
+     * @param vaoId The VAO handle, with the element buffer already bound to it.
+     * @param vbos All buffers used by the VAO, including the element buffer.
+     * @param attribInds The attribute indices used by the VAO.
+     * @param type The primitive type.
+     * @param nI The number of indices to draw.
+     * @param indexType Either GL_UNSIGNED_SHORT or GL_UNSIGNED_INT.
+     */
+    public IndexedVAO(int vaoId, int[] vbos, int[] attribInds, int type, int nI, int indexType) {
+        this.vaoId = vaoId;
+        this.vbos = vbos;
+        this.attribInds = attribInds;
+        primitiveType = type;
+        numIndices = nI;
+        this.indexType = indexType;
+        destroyed = false;
+    }
+
+    @Override
+    public void render() {
+        if (destroyed)
+            throw new IllegalStateException("Attempted to render destroyed IndexedVAO mesh.");
+
+        GLState.bindVertexArray(vaoId);
+        for (int i : attribInds)
+            GLState.enableVertexAttribArray(i);
+
+        // the element buffer is part of the VAO state
+        GLState.drawElements(primitiveType, numIndices, indexType, 0);
+
+        for (int i : attribInds)
+            GLState.disableVertexAttribArray(i);
+        GLState.bindVertexArray(0);
+    }
+
+    /**
+     * Draws several instances of the mesh in one call, for use with an InstanceBuffer.
+     * @param instances The number of instances.
+     */
+    public void renderInstanced(int instances) {
+        if (destroyed)
+            throw new IllegalStateException("Attempted to render destroyed IndexedVAO mesh.");
+
+        GLState.bindVertexArray(vaoId);
+        for (int i : attribInds)
+            GLState.enableVertexAttribArray(i);
+        GLState.drawElementsInstanced(primitiveType, numIndices, indexType, 0, instances);
+        for (int i : attribInds)
+            GLState.disableVertexAttribArray(i);
+        GLState.bindVertexArray(0);
+    }
+
+    int vaoId() { return vaoId; }
+
+    @Override
+    public void destroy() {
+        if (!destroyed) {
+            destroyed = true;
+
+            glBindVertexArray(vaoId);
+            for (int i : attribInds)
+                glDisableVertexAttribArray(i);
+            glBindVertexArray(0);
+
+            // delete the VBOs and element buffer
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+            for (int i : vbos)
+                glDeleteBuffers(i);
+
+            glDeleteVertexArrays(vaoId);
+
+            ErrorUtils.checkGLError();
+        }
+    }
+}
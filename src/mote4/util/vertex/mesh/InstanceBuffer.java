@@ -0,0 +1,228 @@
+package mote4.util.vertex.mesh;
+
+import java.nio.ByteBuffer;
+
+import mote4.util.ErrorUtils;
+import mote4.util.state.GLState;
+import mote4.util.vertex.builder.VertexLayout;
+import org.joml.Matrix4f;
+import org.lwjgl.BufferUtils;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+
+/**
+ * Per-instance vertex data, for drawing many copies of a mesh in one call.
+ * The buffer is attached to one or more meshes with attach(), filled with
+ * one entry per instance every frame, and drawn with render().
+ *
+ * The default layout has a model matrix at attributes 4-7, a color at 8
+ * and a texture coordinate offset at 9, matching mote/instanced.vert.
+ * Instance data is kept in a CPU-side buffer that grows as needed, and is
+ * streamed to the GPU by orphaning the vertex buffer once per upload.
+ * @author Peter
+ */
+public class InstanceBuffer {
+
+    public static final int MODEL_ATTRIB = 4, COLOR_ATTRIB = 8, UV_OFFSET_ATTRIB = 9;
+
+    /**
+     * The layout used by mote/instanced.vert.
+     * @param color Whether instances have a color.
+     * @param uvOffset Whether instances have a texture coordinate offset.
+     * @return
+     */
+    public static VertexLayout layout(boolean color, boolean uvOffset) {
+        VertexLayout layout = new VertexLayout().addMatrix(MODEL_ATTRIB);
+        if (color)
+            layout.add(COLOR_ATTRIB, 4);
+        if (uvOffset)
+            layout.add(UV_OFFSET_ATTRIB, 2);
+        return layout;
+    }
+
+    private boolean destroyed;
+    private final int vboId;
+    private final VertexLayout layout;
+    private final int stride, modelOffset, colorOffset, uvOffset;
+    private ByteBuffer data;
+    private int capacity, count;
+    private boolean dirty;
+
+    /**
+     * Creates an instance buffer with the default layout.
+     * @param color Whether instances have a color.
+     * @param uvOffset Whether instances have a texture coordinate offset.
+     * @param capacity The initial number of instances.
+     */
+    public InstanceBuffer(boolean color, boolean uvOffset, int capacity) {
+        this(layout(color, uvOffset), capacity);
+    }
+    /**
+     * Creates an instance buffer with any layout.  The add() methods write
+     * to the default attributes if the layout has them; other attributes
+     * can be written through next().
+     * @param layout The layout of the data of each instance.
+     * @param capacity The initial number of instances.
+     */
+    public InstanceBuffer(VertexLayout layout, int capacity) {
+        this.layout = layout;
+        stride = layout.stride();
+        modelOffset = offset(layout, MODEL_ATTRIB, 4);
+        colorOffset = offset(layout, COLOR_ATTRIB, 4);
+        uvOffset = offset(layout, UV_OFFSET_ATTRIB, 2);
+        this.capacity = Math.max(1, capacity);
+        data = BufferUtils.createByteBuffer(this.capacity*stride);
+
+        vboId = GLState.genBuffer();
+        GLState.bindBuffer(GL_ARRAY_BUFFER, vboId);
+        GLState.bufferData(GL_ARRAY_BUFFER, (long)this.capacity*stride, GL_STREAM_DRAW);
+        GLState.bindBuffer(GL_ARRAY_BUFFER, 0);
+        ErrorUtils.checkGLError();
+    }
+
+    /**
+     * The byte offset of a float attribute of the given size, or -1 if
+     * the layout does not have it in that form.
+     */
+    private static int offset(VertexLayout layout, int attrib, int size) {
+        VertexLayout.Element e = layout.element(attrib);
+        if (e == null || e.size != size || e.type != GL_FLOAT)
+            return -1;
+        return e.offset;
+    }
+
+    /**
+     * Adds this buffer's attributes to a mesh, so that renderInstanced()
+     * reads one entry of this buffer per instance.
+     * The attribute indices must not be used by the mesh itself.
+     * @param mesh
+     */
+    public void attach(VAO mesh) {
+        attach(mesh.vaoId());
+    }
+    public void attach(IndexedVAO mesh) {
+        attach(mesh.vaoId());
+    }
+    private void attach(int vaoId) {
+        glBindVertexArray(vaoId);
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        layout.apply(1);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+    }
+
+    /**
+     * Removes all instances.
+     */
+    public void clear() {
+        count = 0;
+        dirty = true;
+    }
+
+    /**
+     * Adds an instance and returns the buffer to write it to.
+     * The returned buffer is positioned at the start of the instance and is
+     * only valid until the next call, as the buffer is replaced when it grows.
+     * @return
+     */
+    public ByteBuffer next() {
+        if (count == capacity) {
+            capacity *= 2;
+            ByteBuffer newData = BufferUtils.createByteBuffer(capacity*stride);
+            data.clear();
+            newData.put(data);
+            data = newData;
+        }
+        data.limit(data.capacity());
+        data.position(count*stride);
+        count++;
+        dirty = true;
+        return data;
+    }
+
+    public void add(Matrix4f model) {
+        write(next(), model);
+    }
+    public void add(Matrix4f model, float r, float g, float b, float a) {
+        ByteBuffer buf = next();
+        write(buf, model);
+        color(buf, r, g, b, a);
+    }
+    public void add(Matrix4f model, float r, float g, float b, float a, float u, float v) {
+        ByteBuffer buf = next();
+        write(buf, model);
+        color(buf, r, g, b, a);
+        if (uvOffset != -1)
+            buf.putFloat(buf.position()+uvOffset, u).putFloat(buf.position()+uvOffset+4, v);
+    }
+
+    private void write(ByteBuffer buf, Matrix4f model) {
+        if (modelOffset == -1)
+            throw new IllegalStateException("The instance layout has no model matrix.");
+        model.get(buf.position()+modelOffset, buf);
+    }
+    private void color(ByteBuffer buf, float r, float g, float b, float a) {
+        if (colorOffset == -1)
+            return;
+        int i = buf.position()+colorOffset;
+        buf.putFloat(i, r).putFloat(i+4, g).putFloat(i+8, b).putFloat(i+12, a);
+    }
+
+    public int size() { return count; }
+    public VertexLayout layout() { return layout; }
+
+    /**
+     * Sends the instances to the GPU, if they changed since the last upload.
+     * Called by render(), but can be called earlier to upload before drawing.
+     */
+    public void upload() {
+        if (destroyed)
+            throw new IllegalStateException("Attempted to upload destroyed InstanceBuffer.");
+        if (!dirty)
+            return;
+        GLState.bindBuffer(GL_ARRAY_BUFFER, vboId);
+        // orphan the storage so draws from the previous upload do not stall this one
+        GLState.bufferData(GL_ARRAY_BUFFER, (long)capacity*stride, GL_STREAM_DRAW);
+        if (count > 0)
+            GLState.bufferSubData(GL_ARRAY_BUFFER, 0, data, 0, count*stride);
+        GLState.bindBuffer(GL_ARRAY_BUFFER, 0);
+        dirty = false;
+    }
+
+    /**
+     * Draws one copy of a mesh per instance.
+     * The mesh must have been attached to this buffer.
+     * @param mesh
+     */
+    public void render(VAO mesh) {
+        if (prepare())
+            mesh.renderInstanced(count);
+    }
+    public void render(IndexedVAO mesh) {
+        if (prepare())
+            mesh.renderInstanced(count);
+    }
+
+    /**
+     * Uploads the instances and sets the state they need before drawing.
+     * @return False if there is nothing to draw.
+     */
+    private boolean prepare() {
+        if (count == 0)
+            return false;
+        upload();
+        if (colorOffset == -1) // disabled attributes read the current generic value
+            GLState.vertexAttrib(COLOR_ATTRIB, 1, 1, 1, 1);
+        return true;
+    }
+
+    public void destroy() {
+        if (!destroyed) {
+            destroyed = true;
+            GLState.deleteBuffer(vboId);
+            ErrorUtils.checkGLError();
+        }
+    }
+}
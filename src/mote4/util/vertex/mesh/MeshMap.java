@@ -2,10 +2,13 @@ package mote4.util.vertex.mesh;
 
 import mote4.scenegraph.Window;
 import mote4.util.FileIO;
+import mote4.util.vertex.MeshFile;
 import mote4.util.vertex.builder.StaticMeshBuilder;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 
 /**
@@ -19,6 +22,10 @@ public class MeshMap {
     /**
      * Load all models specified in an index file.
      * The index file must be in the res/models directory.
+     * The line "!threads N" sets the number of threads used to
+     * parse the .obj files listed after it.
+     * If an .obj file has a compiled mesh file next to it that is newer,
+     * the compiled mesh is loaded instead.
      */
     public static void loadIndex(String filename) {
         String in = null;
@@ -28,14 +35,19 @@ public class MeshMap {
                 if (in.isEmpty() || in.startsWith("#")) // skip empty lines or comments
                     continue;
                 String[] keys = in.split("\t+");
-                if (keys.length >= 2) {
+                if (keys[0].startsWith("!threads")) {
+                    // set the number of OBJ parsing threads
+                    StaticMeshBuilder.setOBJLoaderThreads(Integer.parseInt(in.substring(8).trim()));
+                } else if (keys.length >= 2) {
                     for (int i = 0; i < keys.length; i++)
                         keys[i] = keys[i].trim();
                     if (keys[0].endsWith(".obj")) {
                         keys[0] = keys[0].substring(0,keys[0].length()-4);
-                        add(StaticMeshBuilder.constructVAOFromOBJ(keys[0], false), keys[1]);
+                        add(loadOBJ(keys[0]), keys[1]);
+                    } else if (keys[0].endsWith(MeshFile.EXTENSION)) {
+                        add(MeshFile.load("/res/models/"+keys[0]).createMesh(), keys[1]);
                     } else
-                        System.err.println("Unsupported model format, only .obj files can be loaded: "+keys[0]);
+                        System.err.println("Unsupported model format, only .obj and "+MeshFile.EXTENSION+" files can be loaded: "+keys[0]);
                 } else
                     System.err.println("Invalid model index line: "+in);
             }
@@ -46,6 +58,27 @@ public class MeshMap {
         }
     }
     
+    /**
+     * Loads a model from the res/models directory, preferring a compiled
+     * mesh file over the .obj file if the compiled one is newer.  A compiled
+     * mesh with the same modification time is not trusted, as a checkout or
+     * copy can give an edited .obj the time of a stale compiled mesh.
+     * When running from a JAR file, a packaged compiled mesh is always used.
+     * @param name The name of the model, without the extension.
+     */
+    private static Mesh loadOBJ(String name) throws IOException {
+        String objPath = "/res/models/"+name+".obj",
+               meshPath = "/res/models/"+name+MeshFile.EXTENSION;
+        if (FileIO.hasResource(meshPath)) {
+            Path obj = FileIO.getFilePath(objPath),
+                 mesh = FileIO.getFilePath(meshPath);
+            if (obj == null || mesh == null ||
+                Files.getLastModifiedTime(mesh).compareTo(Files.getLastModifiedTime(obj)) > 0)
+                return MeshFile.load(meshPath).createMesh();
+        }
+        return StaticMeshBuilder.constructIndexedVAOFromOBJ(name, false);
+    }
+
     public static void add(Mesh m, String name) {
         map.put(name, m);
     }
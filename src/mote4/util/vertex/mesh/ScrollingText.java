@@ -1,39 +1,40 @@
 package mote4.util.vertex.mesh;
 
+import java.nio.ByteBuffer;
+
 import mote4.scenegraph.Window;
 import mote4.util.vertex.FontUtils;
+import org.lwjgl.opengl.GL11;
 
 /**
  * Encapsulates a Mesh for rendering text.  The text will start out empty and
  * add characters every time render() is called.
+ * The mesh is allocated once for the full text, and only the newly written
+ * characters are sent to the GPU on each update.
  * Does not support colored text.
  * @author Peter
  */
 public class ScrollingText implements Mesh {
     
-    private VAO vao;
+    private DynamicVAO vao;
+    private Writer writer;
     private boolean destroyed;
     
     private double index;
-    private String fullStr, writeStr, metric;
-    private float xPos, yPos, xScale, yScale;
+    private String fullStr;
     private double charactersPerSecond;
     
     public ScrollingText(String text, String metric, float xPos, float yPos, float xScale, float yScale, double cps) {
         destroyed = false;
-        this.xPos = xPos;
-        this.yPos = yPos;
-        this.xScale = xScale;
-        this.yScale = yScale;
         charactersPerSecond = cps;
-        this.metric = metric;
         
         index = 0;
         fullStr = text;
-        writeStr = "";
+        writer = new Writer(text, metric, xPos, yPos, xScale, yScale);
 
-        // an empty mesh
-        vao = (VAO)FontUtils.createString("",0,0,0,0);
+        // an empty mesh with room for every character
+        vao = new DynamicVAO(FontUtils.textLayout(false),
+                             text.length()*FontUtils.VERTICES_PER_GLYPH, GL11.GL_TRIANGLES);
     }
 
     @Override
@@ -51,14 +52,21 @@ public class ScrollingText implements Mesh {
         {
             index += Window.delta()*charactersPerSecond;
             index = Math.min(fullStr.length(), index);
-            writeStr = fullStr.substring(0, (int)index);
-
-            if (vao != null)
-                vao.destroy();
-            FontUtils.useMetric(metric);
-            vao = (VAO)FontUtils.createString(writeStr, xPos, yPos, xScale, yScale);
+            writeTo((int)index);
         }
     }
+
+    /**
+     * Appends the characters up to the given index to the mesh.
+     */
+    private void writeTo(int end) {
+        int first = writer.numGlyphs()*FontUtils.VERTICES_PER_GLYPH;
+        int count = writer.write(vao.data(), vao.stride(), end)*FontUtils.VERTICES_PER_GLYPH;
+        if (count == 0)
+            return;
+        vao.update(first, count);
+        vao.setVertexCount(first+count);
+    }
     public void renderOnly() {
         if (destroyed)
             throw new IllegalStateException("Attempted to render destroyed ScrollingText mesh.");
@@ -89,4 +97,56 @@ public class ScrollingText implements Mesh {
      * @return
      */
     public String getFullStr() { return fullStr; }
+
+    /**
+     * Lays out the characters of the text into vertex data, continuing
+     * from where the previous call stopped.  Does not use OpenGL, and
+     * does not allocate.
+     */
+    static class Writer {
+
+        private final String text, metric;
+        private final float xPos, yPos, xScale, yScale;
+        // layout state after the last written character
+        private int written, numGlyphs;
+        private float xOffset, yOffset;
+
+        Writer(String text, String metric, float xPos, float yPos, float xScale, float yScale) {
+            this.text = text;
+            this.metric = metric;
+            this.xPos = xPos;
+            this.yPos = yPos;
+            this.xScale = xScale;
+            this.yScale = yScale;
+        }
+
+        /**
+         * Writes the glyphs of the characters up to end, after the glyphs already written.
+         * @param data The vertex data, in the layout of FontUtils.textLayout(false).
+         * @param stride The size of a vertex in bytes.
+         * @param end The index after the last character to write.
+         * @return The number of glyphs written.
+         */
+        int write(ByteBuffer data, int stride, int end) {
+            if (end <= written)
+                return 0;
+            FontUtils.useMetric(metric);
+            int firstGlyph = numGlyphs;
+            data.position(numGlyphs*FontUtils.VERTICES_PER_GLYPH*stride);
+            for (; written < end; written++) {
+                char c = text.charAt(written);
+                if (c == '\n') {
+                    yOffset += FontUtils.lineSpace();
+                    xOffset = 0;
+                } else {
+                    FontUtils.putGlyph(data, c, xPos+xOffset*xScale, yPos+yOffset*yScale, xScale, yScale, null);
+                    xOffset += FontUtils.glyphWidth(c);
+                    numGlyphs++;
+                }
+            }
+            return numGlyphs-firstGlyph;
+        }
+
+        int numGlyphs() { return numGlyphs; }
+    }
 }
@@ -0,0 +1,139 @@
+package mote4.util.vertex.mesh;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import mote4.util.vertex.FontUtils;
+import org.lwjgl.BufferUtils;
+
+/**
+ * Checks the CPU side of ScrollingText and DynamicVAO, without OpenGL.
+ *
+ * Text written a few characters at a time must give exactly the same
+ * vertices as the whole text written at once, and once warmed up writing
+ * must not allocate at all, measured with the thread's allocation counter.
+ * Growing a DynamicVAO's data must keep its contents and must not change
+ * the position or limit of the buffer the caller is writing to.
+ *
+ * Usage: ScrollingTextCheck [texts]
+ * @author Peter
+ */
+public class ScrollingTextCheck {
+
+    // looked up once, as getThreadMXBean() itself allocates
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int texts = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Random random = new Random(9);
+        FontUtils.addMetric(randomMetric(random), "check");
+        int stride = FontUtils.textLayout(false).stride();
+
+        int characters = 0;
+        for (int n = 0; n < texts; n++) {
+            String text = randomText(random);
+            characters += text.length();
+            ByteBuffer expected = write(text, stride, new int[] {text.length()});
+            int[] ends = new int[1+random.nextInt(text.length()+1)];
+            for (int i = 0; i < ends.length; i++)
+                ends[i] = random.nextInt(text.length()+1);
+            Arrays.sort(ends);
+            ends[ends.length-1] = text.length();
+            ByteBuffer actual = write(text, stride, ends);
+            if (!expected.equals(actual))
+                fail("writing \""+text.replace("\n", "\\n")+"\" in steps gave different vertices than writing it at once");
+        }
+        System.out.println("OK: "+texts+" texts, "+characters+" characters written in steps matched");
+
+        checkAllocation(stride);
+        checkGrow();
+    }
+
+    /**
+     * Writes the text up to each of the given ends in turn.
+     * @return The vertices written.
+     */
+    private static ByteBuffer write(String text, int stride, int[] ends) {
+        ByteBuffer data = BufferUtils.createByteBuffer(Math.max(1, text.length())*FontUtils.VERTICES_PER_GLYPH*stride);
+        ScrollingText.Writer writer = new ScrollingText.Writer(text, "check", 10, 20, 2, 3);
+        int glyphs = 0;
+        for (int end : ends)
+            glyphs += writer.write(data, stride, end);
+        if (glyphs != writer.numGlyphs())
+            fail("write() returned "+glyphs+" glyphs in total, numGlyphs() is "+writer.numGlyphs());
+        data.position(0).limit(glyphs*FontUtils.VERTICES_PER_GLYPH*stride);
+        return data;
+    }
+
+    /**
+     * Writes a long text one character at a time, like render() does for a slow text box.
+     */
+    private static void checkAllocation(int stride) {
+        StringBuilder sb = new StringBuilder();
+        for (int line = 0; line < 200; line++)
+            sb.append("The quick brown fox jumps over the lazy dog, line ").append(line).append('\n');
+        String text = sb.toString();
+        ByteBuffer data = BufferUtils.createByteBuffer(text.length()*FontUtils.VERTICES_PER_GLYPH*stride);
+
+        long bytes = 0;
+        for (int run = 0; run < 20; run++) { // the first runs warm up
+            ScrollingText.Writer writer = new ScrollingText.Writer(text, "check", 0, 0, 1, 1);
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int end = 1; end <= text.length(); end++)
+                writer.write(data, stride, end);
+            bytes = threads.getCurrentThreadAllocatedBytes()-before;
+        }
+        if (bytes != 0)
+            fail("writing "+text.length()+" characters one at a time allocated "+bytes+" bytes");
+        System.out.println("OK: writing "+text.length()+" characters one at a time allocated nothing");
+    }
+
+    private static void checkGrow() {
+        ByteBuffer old = BufferUtils.createByteBuffer(64);
+        for (int i = 0; i < 64; i++)
+            old.put((byte)i);
+        old.position(24).limit(40);
+        ByteBuffer grown = DynamicVAO.grow(old, 128);
+        if (old.position() != 24 || old.limit() != 40)
+            fail("growing changed the old buffer's position and limit to "+old.position()+", "+old.limit());
+        if (grown.capacity() != 128 || grown.position() != 24 || grown.limit() != 40)
+            fail("the grown buffer should keep position 24 and limit 40, is "+grown.position()+", "+grown.limit());
+        ByteBuffer contents = grown.duplicate().clear();
+        for (int i = 0; i < 64; i++)
+            if (contents.get(i) != i)
+                fail("byte "+i+" was not copied");
+
+        old.clear().position(16);
+        grown = DynamicVAO.grow(old, 128);
+        if (grown.position() != 16 || grown.limit() != 128)
+            fail("a buffer with its limit at capacity should grow to the new capacity, limit is "+grown.limit());
+        System.out.println("OK: growing kept the data and left the caller's buffer alone");
+    }
+
+    private static byte[] randomMetric(Random random) {
+        byte[] m = new byte[258];
+        for (int i = 0; i < 256; i++)
+            m[i] = (byte)(1+random.nextInt(8));
+        m[256] = 8;
+        m[257] = 8;
+        return m;
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(200);
+        while (sb.length() < length) {
+            int r = random.nextInt(12);
+            sb.append(r == 0 ? '\n' : r == 1 ? ' ' : (char)(32+random.nextInt(95)));
+        }
+        return sb.toString();
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: "+message);
+        System.exit(1);
+    }
+}
@@ -1,8 +1,8 @@
 package mote4.util.vertex.mesh;
 
 import mote4.util.ErrorUtils;
+import mote4.util.state.GLState;
 
-import static org.lwjgl.opengl.GL11.glDrawArrays;
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
@@ -33,19 +33,39 @@ public class VAO implements Mesh {
             throw new IllegalStateException("Attempted to render destroyed VAO mesh.");
 
         // Bind to the VAO that has all the information about the quad vertices
-        glBindVertexArray(vaoId);
+        GLState.bindVertexArray(vaoId);
         for (int i : attribInds)
-            glEnableVertexAttribArray(i);
+            GLState.enableVertexAttribArray(i);
 
         // Draw the vertices
-        glDrawArrays(primitiveType, 0, numVertices);
+        GLState.drawArrays(primitiveType, 0, numVertices);
 
         // Put everything back to default (deselect)
         for (int i : attribInds)
-            glDisableVertexAttribArray(i);
-        glBindVertexArray(0);
+            GLState.disableVertexAttribArray(i);
+        GLState.bindVertexArray(0);
     }
 
+    /**
+     * Draws several instances of the mesh in one call, for use with an InstanceBuffer.
+     * @param instances The number of instances.
+     */
+    public void renderInstanced(int instances) {
+        if (destroyed)
+            throw new IllegalStateException("Attempted to render destroyed VAO mesh.");
+
+        GLState.bindVertexArray(vaoId);
+        for (int i : attribInds)
+            GLState.enableVertexAttribArray(i);
+        // per-instance attributes stay enabled in the VAO
+        GLState.drawArraysInstanced(primitiveType, 0, numVertices, instances);
+        for (int i : attribInds)
+            GLState.disableVertexAttribArray(i);
+        GLState.bindVertexArray(0);
+    }
+
+    int vaoId() { return vaoId; }
+
     @Override
     public void destroy() {
         if (!destroyed) {
@@ -0,0 +1,15 @@
+// instanced fragment shader, used with InstanceBuffer
+#version 330 core
+
+in vec2 texCoord;
+in vec4 color;
+
+out vec4 FragColor;
+
+uniform sampler2D texture1;
+uniform vec4 colorMult = vec4(1.0);
+
+void main()
+{
+	FragColor = colorMult * color * texture(texture1, texCoord);
+}
@@ -0,0 +1,25 @@
+// instanced vertex shader, used with InstanceBuffer
+#version 330 core
+
+layout(location = 0) in vec4 VertexIn;
+layout(location = 2) in vec2 TexIn;
+// per instance
+layout(location = 4) in mat4 InstanceModel;
+layout(location = 8) in vec4 InstanceColor;
+layout(location = 9) in vec2 InstanceUVOffset;
+
+out vec2 texCoord;
+out vec4 color;
+
+// shared blocks, see UniformBlocks
+layout(std140) uniform Camera {
+	mat4 projectionMatrix;
+	mat4 viewMatrix;
+};
+
+void main()
+{
+	gl_Position = projectionMatrix * viewMatrix * InstanceModel * VertexIn;
+	texCoord = TexIn + InstanceUVOffset;
+	color = InstanceColor;
+}
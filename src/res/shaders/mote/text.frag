@@ -0,0 +1,23 @@
+// text fragment shader, used with TextBatch
+#version 330 core
+
+in vec2 texCoord;
+in vec4 color;
+
+out vec4 FragColor;
+
+uniform sampler2D texture1;
+uniform vec4 colorMult = vec4(1.0);
+// the texture holds distance fields in alpha, see SDFGenerator
+uniform bool distanceField = false;
+
+void main()
+{
+	vec4 tex = texture(texture1, texCoord);
+	if (distanceField) {
+		// antialias over one screen pixel, at any scale
+		float w = fwidth(tex.a);
+		tex.a = smoothstep(0.5 - w, 0.5 + w, tex.a);
+	}
+	FragColor = colorMult * color * tex;
+}
@@ -0,0 +1,26 @@
+// text vertex shader, used with TextBatch
+#version 330 core
+
+layout(location = 0) in vec4 VertexIn;
+layout(location = 1) in vec4 ColorIn;
+layout(location = 2) in vec2 TexIn;
+
+out vec2 texCoord;
+out vec4 color;
+
+// shared blocks, see UniformBlocks
+layout(std140) uniform Camera {
+	mat4 projectionMatrix;
+	mat4 viewMatrix;
+};
+layout(std140) uniform Model {
+	mat4 modelMatrix;
+	mat3 normalMatrix;
+};
+
+void main()
+{
+	gl_Position = projectionMatrix * viewMatrix * modelMatrix * VertexIn;
+	texCoord = TexIn;
+	color = ColorIn;
+}
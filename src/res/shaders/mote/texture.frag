@@ -8,9 +8,16 @@ out vec4 FragColor;
 uniform sampler2D texture1;
 uniform vec4 colorMult = vec4(1.0);
 uniform vec3 colorAdd = vec3(0.0);
+// the texture holds distance fields in alpha, see SDFGenerator
+uniform bool distanceField = false;
 
 void main()
 {
+	vec4 tex = texture(texture1, texCoord);
+	if (distanceField) {
+		float w = fwidth(tex.a);
+		tex.a = smoothstep(0.5 - w, 0.5 + w, tex.a);
+	}
 	// colorMult takes precedence over colorAdd
-	FragColor = colorMult * (vec4(colorAdd,0) + texture(texture1, texCoord));
+	FragColor = colorMult * (vec4(colorAdd,0) + tex);
 }
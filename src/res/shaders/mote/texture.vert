@@ -6,9 +6,15 @@ layout(location = 2) in vec2 TexIn;
 
 out vec2 texCoord;
 
-uniform mat4 projectionMatrix = mat4(1.0);
-uniform mat4 viewMatrix  = mat4(1.0);
-uniform mat4 modelMatrix  = mat4(1.0);
+// shared blocks, see UniformBlocks
+layout(std140) uniform Camera {
+	mat4 projectionMatrix;
+	mat4 viewMatrix;
+};
+layout(std140) uniform Model {
+	mat4 modelMatrix;
+	mat3 normalMatrix;
+};
 
 void main()
 {